@@ -0,0 +1,145 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.huberb.groktools.GrokIt.GrokMatchResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compare matching the lines of examples/server.log, and capturing their
+ * fields, with, and without dropping fields like --drop-fields.
+ * <p>
+ * The access log case matches combined apache log lines by COMBINEDAPACHELOG,
+ * keeping all fields, or dropping all fields but clientip, and response.
+ * <p>
+ * Each invocation matches the next line, and reads all captured values, thus
+ * the score is the time per line.
+ *
+ * @author berni3
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DropFieldsBenchmark {
+
+    @Benchmark
+    public void matchAndCapture(ServerLogState state, Blackhole blackhole) {
+        final String line = state.lines[state.index];
+        state.index = (state.index + 1) % state.lines.length;
+        consume(state.grokIt.match(state.grok, line), blackhole);
+    }
+
+    @Benchmark
+    public void matchAndCaptureAccessLog(AccessLogState state, Blackhole blackhole) {
+        final String line = AccessLogState.LINES[state.index];
+        state.index = (state.index + 1) % AccessLogState.LINES.length;
+        consume(state.grokIt.match(state.grok, line), blackhole);
+    }
+
+    static void consume(GrokMatchResult grokResult, Blackhole blackhole) {
+        for (Map.Entry<String, Object> e : grokResult.m.entrySet()) {
+            blackhole.consume(e.getKey());
+            blackhole.consume(e.getValue());
+        }
+    }
+
+    static List<String> dropFieldsOf(String dropFields) {
+        return dropFields.isEmpty()
+                ? Collections.emptyList()
+                : Arrays.asList(dropFields.split(","));
+    }
+
+    /**
+     * The lines of examples/server.log, matched by WILDFLY_SERVERLOG.
+     */
+    @State(Scope.Thread)
+    public static class ServerLogState {
+
+        /**
+         * Comma separated fields to drop, empty for dropping no field.
+         */
+        @Param({"", "UNWANTED", "UNWANTED,category,thread"})
+        String dropFields;
+
+        Grok grok;
+        GrokIt grokIt;
+        String[] lines;
+        int index;
+
+        @Setup
+        public void setUp() throws IOException {
+            this.grok = ExampleLogs.grokOf("WILDFLY_SERVERLOG", dropFieldsOf(this.dropFields));
+            this.grokIt = new GrokIt();
+            this.lines = ExampleLogs.linesOf("WILDFLY_SERVERLOG");
+        }
+    }
+
+    /**
+     * Combined apache log lines, matched by COMBINEDAPACHELOG.
+     */
+    @State(Scope.Thread)
+    public static class AccessLogState {
+
+        static final String[] LINES = {
+            "10.0.0.1 - - [04/Mar/2021:22:30:15 +0100] \"GET /index.html HTTP/1.1\" 200 5120 \"-\" \"Mozilla/5.0 (X11; Linux x86_64)\"",
+            "10.0.0.2 - frank [04/Mar/2021:22:30:16 +0100] \"POST /api/orders?id=42 HTTP/1.1\" 201 312 \"https://example.org/shop\" \"curl/7.68.0\"",
+            "192.168.1.17 - - [04/Mar/2021:22:30:17 +0100] \"GET /images/logo.png HTTP/1.1\" 304 - \"https://example.org/\" \"Mozilla/5.0 (Windows NT 10.0; Win64; x64)\"",
+            "example.org - - [04/Mar/2021:22:30:18 +0100] \"GET /missing HTTP/1.0\" 404 209 \"-\" \"Wget/1.20.3 (linux-gnu)\"",
+            "10.0.0.3 - - [04/Mar/2021:22:30:19 +0100] \"-\" 400 0 \"-\" \"-\"",
+            "10.0.0.4 - admin [04/Mar/2021:22:30:20 +0100] \"DELETE /api/orders/42 HTTP/2.0\" 500 1024 \"https://example.org/admin\" \"Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7)\""
+        };
+
+        /**
+         * Comma separated fields to drop, empty for dropping no field.
+         */
+        @Param({"", "ident,auth,timestamp,verb,request,httpversion,rawrequest,bytes,referrer,agent"})
+        String accessLogDropFields;
+
+        Grok grok;
+        GrokIt grokIt;
+        int index;
+
+        @Setup
+        public void setUp() throws IOException {
+            this.grok = new GrokBuilder()
+                    .pattern("%{COMBINEDAPACHELOG}")
+                    .namedOnly(true)
+                    .dropFields(dropFieldsOf(this.accessLogDropFields))
+                    .build();
+            this.grokIt = new GrokIt();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.huberb.groktools.GrokIt.GrokMatchResult;
+
+/**
+ * The example logs of src/main/resources/examples, and their patterns.
+ *
+ * @author berni3
+ */
+class ExampleLogs {
+
+    private ExampleLogs() {
+    }
+
+    /**
+     * Build the {@link Grok} of a pattern of the server_log pattern
+     * definitions.
+     *
+     * @param pattern pattern name, like "WILDFLY_SERVERLOG"
+     * @return
+     * @throws IOException
+     */
+    static Grok grokOf(String pattern) throws IOException {
+        return grokOf(pattern, Collections.emptyList());
+    }
+
+    /**
+     * Build the {@link Grok} of a pattern of the server_log pattern
+     * definitions, dropping some fields.
+     *
+     * @param pattern pattern name, like "WILDFLY_SERVERLOG"
+     * @param dropFields names of the fields to drop
+     * @return
+     * @throws IOException
+     */
+    static Grok grokOf(String pattern, List<String> dropFields) throws IOException {
+        return new GrokBuilder()
+                .pattern("%{" + pattern + "}")
+                .patternDefinitionsFromClasspath("/groktoolspatterns/server_log")
+                .namedOnly(true)
+                .dropFields(dropFields)
+                .build();
+    }
+
+    /**
+     * Read the lines of the example log matched by a pattern.
+     *
+     * @param pattern pattern name, like "WILDFLY_SERVERLOG"
+     * @return
+     * @throws IOException
+     */
+    static String[] linesOf(String pattern) throws IOException {
+        try (final BufferedReader br = new BufferedReader(new InputStreamReader(
+                ExampleLogs.class.getResourceAsStream(resourceOf(pattern)), StandardCharsets.UTF_8))) {
+            final List<String> lines = br.lines().collect(Collectors.toList());
+            return lines.toArray(new String[0]);
+        }
+    }
+
+    /**
+     * Match the lines of the example log of a pattern, keeping the matching
+     * lines only.
+     * <p>
+     * The fields are copied into a plain map, thus reading them costs no
+     * further matching.
+     *
+     * @param pattern pattern name, like "WILDFLY_SERVERLOG"
+     * @return
+     * @throws IOException
+     */
+    static GrokMatchResult[] matchResultsOf(String pattern) throws IOException {
+        final Grok grok = grokOf(pattern);
+        final GrokIt grokIt = new GrokIt();
+        final List<GrokMatchResult> grokResults = new ArrayList<>();
+        for (String line : linesOf(pattern)) {
+            final GrokMatchResult grokResult = grokIt.match(grok, line);
+            if (!grokResult.m.isEmpty()) {
+                grokResults.add(new GrokMatchResult(grokResult.subject, grokResult.start, grokResult.end,
+                        new LinkedHashMap<>(grokResult.m)));
+            }
+        }
+        return grokResults.toArray(new GrokMatchResult[0]);
+    }
+
+    static String resourceOf(String pattern) {
+        switch (pattern) {
+            case "WILDFLY_SERVERLOG":
+                return "/examples/server.log";
+            case "ACTIVEMQ_ACTIVEMQLOG":
+                return "/examples/activemq.log";
+            case "ELKSTACK_LOGSTASHLOG":
+                return "/examples/logstash-plain.log";
+            case "FLUME_FLUMELOG":
+                return "/examples/flume.log";
+            default:
+                throw new IllegalArgumentException("No example log of pattern " + pattern);
+        }
+    }
+
+    /**
+     * Writer discarding all output.
+     */
+    static class NullWriter extends Writer {
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
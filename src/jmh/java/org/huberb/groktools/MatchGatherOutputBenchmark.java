@@ -0,0 +1,84 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.io.IOException;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import org.huberb.groktools.GrokIt.GrokMatchResult;
+import org.huberb.groktools.MatchGatherOutput.Result;
+import org.huberb.groktools.MatchGatherOutput.Wrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measure gathering the lines of the example logs in multi lines mode, by
+ * {@link MatchGatherOutput#gatherMatch(int, java.lang.CharSequence, int, int, java.util.Map)}.
+ * <p>
+ * The lines are matched before measuring. Each invocation gathers the next
+ * line, and merges the non matching lines of a gathered result into the field
+ * "extra", like {@link GrokMain.InputLineProcessor.MatchingLineMode#multiLinesMode}.
+ *
+ * @author berni3
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MatchGatherOutputBenchmark {
+
+    @Param({"WILDFLY_SERVERLOG", "ACTIVEMQ_ACTIVEMQLOG", "ELKSTACK_LOGSTASHLOG", "FLUME_FLUMELOG"})
+    String pattern;
+
+    private String[] lines;
+    private GrokMatchResult[] grokResults;
+    private MatchGatherOutput matchGatherOutput;
+    private int index;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.lines = ExampleLogs.linesOf(this.pattern);
+        this.grokResults = new GrokMatchResult[this.lines.length];
+        final Grok grok = ExampleLogs.grokOf(this.pattern);
+        final GrokIt grokIt = new GrokIt();
+        for (int i = 0; i < this.lines.length; i++) {
+            this.grokResults[i] = grokIt.match(grok, this.lines[i]);
+        }
+        this.matchGatherOutput = new MatchGatherOutput();
+    }
+
+    @Benchmark
+    public Wrapper gatherMatch() {
+        final int i = this.index;
+        this.index = (this.index + 1) % this.lines.length;
+        final GrokMatchResult grokResult = this.grokResults[i];
+        final Optional<Result> resultOpt = this.matchGatherOutput.gatherMatch(
+                i + 1, this.lines[i], grokResult.start, grokResult.end, grokResult.m);
+        return resultOpt.isPresent() ? resultOpt.get().wrapperWithExtraToMap() : null;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+import org.huberb.groktools.GrokIt.GrokMatchResult;
+import org.huberb.groktools.OutputGrokResultFormatters.IOutputGrokResultFormatter;
+import org.huberb.groktools.OutputGrokResultFormatters.OutputMatchResultMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measure each {@link IOutputGrokResultFormatter} formatting the match results
+ * of the example logs.
+ * <p>
+ * The lines are matched before measuring. Each invocation formats the next
+ * match result, writing to a discarding writer.
+ *
+ * @author berni3
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class OutputGrokResultFormatterBenchmark {
+
+    @Param({"WILDFLY_SERVERLOG", "ACTIVEMQ_ACTIVEMQLOG", "ELKSTACK_LOGSTASHLOG", "FLUME_FLUMELOG"})
+    String pattern;
+    @Param({"asIs", "asCsv", "asCsvColumns", "asJson", "asJsonLines", "asColumnar"})
+    OutputMatchResultMode outputMatchResultMode;
+
+    private GrokMatchResult[] grokResults;
+    private IOutputGrokResultFormatter outputGrokResultFormatter;
+    private int index;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.grokResults = ExampleLogs.matchResultsOf(this.pattern);
+        // the columns of asCsvColumns are the fields captured by the pattern
+        this.outputGrokResultFormatter = OutputGrokResultFormatters.createOutputGrokResultConverter(
+                this.outputMatchResultMode, new PrintWriter(new ExampleLogs.NullWriter()), null, ExampleLogs.grokOf(this.pattern));
+        this.outputGrokResultFormatter.start();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        this.outputGrokResultFormatter.end();
+        this.outputGrokResultFormatter.close();
+    }
+
+    @Benchmark
+    public void output() {
+        final int i = this.index;
+        this.index = (this.index + 1) % this.grokResults.length;
+        this.outputGrokResultFormatter.output(i + 1, this.grokResults[i]);
+    }
+}
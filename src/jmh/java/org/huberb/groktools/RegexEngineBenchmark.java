@@ -0,0 +1,75 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.huberb.groktools.GrokIt.GrokMatchResult;
+import org.huberb.groktools.RegexEngines.RegexEngineMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compare the regex engines matching the lines of the example logs, by
+ * {@link GrokIt#match(io.krakens.grok.api.Grok, java.lang.CharSequence)}.
+ * <p>
+ * Each invocation matches the next line of a log, thus the score is the time
+ * per line.
+ *
+ * @author berni3
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RegexEngineBenchmark {
+
+    @Param({"WILDFLY_SERVERLOG", "ACTIVEMQ_ACTIVEMQLOG", "ELKSTACK_LOGSTASHLOG", "FLUME_FLUMELOG"})
+    String pattern;
+    @Param({"jdk", "linear"})
+    RegexEngineMode regexEngineMode;
+
+    private Grok grok;
+    private GrokIt grokIt;
+    private String[] lines;
+    private int index;
+
+    @Setup
+    public void setUp() throws IOException {
+        this.grok = ExampleLogs.grokOf(this.pattern);
+        this.grokIt = new GrokIt(new GrokIt.Options().regexEngine(this.regexEngineMode.engine()));
+        this.lines = ExampleLogs.linesOf(this.pattern);
+    }
+
+    @Benchmark
+    public GrokMatchResult match() {
+        final String line = this.lines[this.index];
+        this.index = (this.index + 1) % this.lines.length;
+        return this.grokIt.match(this.grok, line);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * An {@link InputStream} of gzip compressed data, inflated on its own thread.
+ * <p>
+ * The inflater thread fills large blocks of inflated bytes, the reading thread
+ * consumes them. Thus inflating, and processing the inflated lines run
+ * concurrently. The blocks are preallocated, and recycled.
+ *
+ * @author berni3
+ */
+class AsyncGzipInputStream extends InputStream {
+
+    static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+    static final int DEFAULT_BLOCK_COUNT = 4;
+    static final int GZIP_BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream compressed;
+    private final BlockingQueue<Block> freeBlocks;
+    private final BlockingQueue<Block> filledBlocks;
+    private final Thread inflaterThread;
+
+    private Block current;
+    private int pos;
+
+    /**
+     * Create an setup using default block size, and block count.
+     *
+     * @param compressed gzip compressed input
+     */
+    AsyncGzipInputStream(InputStream compressed) {
+        this(compressed, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCK_COUNT);
+    }
+
+    /**
+     * Create an setup, and start inflating.
+     *
+     * @param compressed gzip compressed input
+     * @param blockSize size of a block of inflated bytes
+     * @param blockCount number of blocks
+     */
+    AsyncGzipInputStream(InputStream compressed, int blockSize, int blockCount) {
+        new GrokBuilder.Validations(blockSize < 1)
+                .throwIllegalArgumentExceptionIf("Block size is less than 1");
+        new GrokBuilder.Validations(blockCount < 1)
+                .throwIllegalArgumentExceptionIf("Block count is less than 1");
+        this.compressed = compressed;
+        this.freeBlocks = new ArrayBlockingQueue<>(blockCount);
+        this.filledBlocks = new ArrayBlockingQueue<>(blockCount);
+        for (int i = 0; i < blockCount; i++) {
+            this.freeBlocks.add(new Block(blockSize));
+        }
+        this.inflaterThread = new Thread(this::inflate, "grokMain-inflater");
+        // an inflater blocked on stdin must not keep the jvm alive
+        this.inflaterThread.setDaemon(true);
+        this.inflaterThread.start();
+    }
+
+    /**
+     * Inflate compressed input into free blocks.
+     * <p>
+     * Running on the inflater thread.
+     */
+    void inflate() {
+        try {
+            Block block = null;
+            try (final GZIPInputStream gzis = new GZIPInputStream(this.compressed, GZIP_BUFFER_SIZE)) {
+                boolean last = false;
+                while (!last) {
+                    block = this.freeBlocks.take();
+                    block.length = readFully(gzis, block.bytes);
+                    last = block.length < block.bytes.length;
+                    block.last = last;
+                    this.filledBlocks.put(block);
+                    block = null;
+                }
+            } catch (IOException ex) {
+                if (block == null) {
+                    block = this.freeBlocks.take();
+                }
+                block.length = 0;
+                block.failure = ex;
+                block.last = true;
+                this.filledBlocks.put(block);
+            }
+        } catch (InterruptedException ex) {
+            // closed by the reading thread
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int readFully(InputStream is, byte[] bytes) throws IOException {
+        int length = 0;
+        for (int n; length < bytes.length && (n = is.read(bytes, length, bytes.length - length)) >= 0;) {
+            length += n;
+        }
+        return length;
+    }
+
+    /**
+     * Make {@link #current} a block with bytes to read.
+     *
+     * @return false if all bytes are read
+     */
+    private boolean nextBlock() throws IOException {
+        while (this.current == null || this.pos >= this.current.length) {
+            if (this.current != null) {
+                if (this.current.last) {
+                    return false;
+                }
+                this.current.clear();
+                this.freeBlocks.add(this.current);
+                this.current = null;
+            }
+            try {
+                this.current = this.filledBlocks.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for inflated bytes");
+            }
+            this.pos = 0;
+            if (this.current.failure != null) {
+                throw this.current.failure;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!nextBlock()) {
+            return -1;
+        }
+        return this.current.bytes[this.pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!nextBlock()) {
+            return -1;
+        }
+        final int n = Math.min(len, this.current.length - this.pos);
+        System.arraycopy(this.current.bytes, this.pos, b, off, n);
+        this.pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return this.current != null ? this.current.length - this.pos : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.inflaterThread.interrupt();
+        this.compressed.close();
+    }
+
+    /**
+     * A block of inflated bytes.
+     */
+    static class Block {
+
+        final byte[] bytes;
+        int length;
+        boolean last;
+        IOException failure;
+
+        Block(int blockSize) {
+            this.bytes = new byte[blockSize];
+        }
+
+        void clear() {
+            length = 0;
+            last = false;
+            failure = null;
+        }
+    }
+}
@@ -0,0 +1,578 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.huberb.groktools.GrokIt.GrokMatchResult;
+import org.huberb.groktools.OutputGrokResultFormatters.IOutputGrokResultFormatter;
+
+/**
+ * Write output by a writer thread, buffering it in memory.
+ * <p>
+ * The text written is gathered into blocks of a bounded buffer. A block is
+ * handed over to the writer thread, writing it to the target, thus matching
+ * threads do not wait for a slow terminal, or pipe, unless all blocks are
+ * handed over, and not yet written. A block is handed over if it is full, or
+ * if the {@link FlushPolicy} flushes the target. Flushing explicitly waits
+ * until the text written so far is written to the target.
+ * <p>
+ * A matching thread waiting for a free block releases the lock, thus the
+ * writer thread takes the lock only briefly, never waiting for a matching
+ * thread. The lock is a private object, as a {@link java.io.PrintWriter}
+ * writing to this writer holds the monitor of this writer while flushing, and
+ * closing it.
+ *
+ * @author berni3
+ */
+class AsyncOutputWriter extends Writer {
+
+    static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+    static final int MAX_BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * Decide when the target is flushed; a limit of 0 is not used.
+     */
+    static class FlushPolicy {
+
+        final long flushChars;
+        final long flushRecords;
+        final long flushMillis;
+
+        /**
+         * Create an setup.
+         *
+         * @param flushChars flush after writing this number of characters
+         * @param flushRecords flush after writing this number of records
+         * @param flushMillis flush text written this number of milliseconds
+         * ago, at the latest after twice the milliseconds
+         */
+        FlushPolicy(long flushChars, long flushRecords, long flushMillis) {
+            new GrokBuilder.Validations(flushChars < 0 || flushRecords < 0 || flushMillis < 0)
+                    .throwIllegalArgumentExceptionIf(String.format("Flush limits must not be negative, but are %d chars, %d records, %d millis",
+                            flushChars, flushRecords, flushMillis));
+            this.flushChars = flushChars;
+            this.flushRecords = flushRecords;
+            this.flushMillis = flushMillis;
+        }
+    }
+
+    /**
+     * Target of the text written by the writer thread.
+     */
+    static interface ITarget extends Closeable {
+
+        void write(char[] chars, int length) throws IOException;
+
+        void flush() throws IOException;
+    }
+
+    /**
+     * A block handed over to the writer thread.
+     */
+    private static class Block {
+
+        final char[] chars;
+        final int length;
+        final boolean flush;
+        final boolean last;
+
+        Block(char[] chars, int length, boolean flush, boolean last) {
+            this.chars = chars;
+            this.length = length;
+            this.flush = flush;
+            this.last = last;
+        }
+    }
+
+    private final ITarget target;
+    private final FlushPolicy flushPolicy;
+    private final int blockSize;
+    // guarded by lock
+    private final Deque<char[]> freeBlocks = new ArrayDeque<>();
+    private final BlockingQueue<Block> handedOverBlocks = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+    private final Object written = new Object();
+    // guarded by lock
+    private char[] current;
+    private int currentLength;
+    private long unflushedChars;
+    private long unflushedRecords;
+    private long handedOverCount;
+    private boolean closed;
+    // guarded by written
+    private long writtenCount;
+    private volatile IOException failure;
+
+    /**
+     * Create an setup, starting the writer thread.
+     *
+     * @param target
+     * @param bufferSize number of characters buffered at most
+     * @param flushPolicy
+     */
+    AsyncOutputWriter(ITarget target, int bufferSize, FlushPolicy flushPolicy) {
+        super(new Object());
+        new GrokBuilder.Validations(bufferSize < 2)
+                .throwIllegalArgumentExceptionIf("Output buffer size must be at least 2, but is " + bufferSize);
+        this.target = target;
+        this.flushPolicy = flushPolicy;
+        this.blockSize = Math.min(MAX_BLOCK_SIZE, bufferSize / 2);
+        final int blockCount = bufferSize / this.blockSize;
+        for (int i = 0; i < blockCount; i++) {
+            this.freeBlocks.add(new char[this.blockSize]);
+        }
+        this.writerThread = new Thread(this::writeBlocks, "grokMain-output-writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Create a target writing to a file, truncating, or appending to it.
+     *
+     * @param file
+     * @param append
+     * @return
+     * @throws IOException
+     */
+    static ITarget fileTarget(File file, boolean append) throws IOException {
+        final FileChannel fileChannel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING);
+        return new FileChannelTarget(fileChannel);
+    }
+
+    /**
+     * Create a target writing to a writer, the writer is flushed, but not
+     * closed.
+     *
+     * @param writer
+     * @return
+     */
+    static ITarget writerTarget(Writer writer) {
+        return new WriterTarget(writer);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException {
+        synchronized (this.lock) {
+            checkOpen();
+            int offset = off;
+            int remaining = len;
+            while (remaining > 0) {
+                if (this.current == null) {
+                    this.current = takeFreeBlock();
+                }
+                final int n = Math.min(remaining, this.blockSize - this.currentLength);
+                System.arraycopy(cbuf, offset, this.current, this.currentLength, n);
+                this.currentLength += n;
+                this.unflushedChars += n;
+                offset += n;
+                remaining -= n;
+                if (this.currentLength == this.blockSize) {
+                    handOver(isFlushDue(), false);
+                }
+            }
+            if (isFlushDue()) {
+                handOver(true, false);
+            }
+        }
+    }
+
+    @Override
+    public void write(String str, int off, int len) throws IOException {
+        synchronized (this.lock) {
+            checkOpen();
+            int offset = off;
+            int remaining = len;
+            while (remaining > 0) {
+                if (this.current == null) {
+                    this.current = takeFreeBlock();
+                }
+                final int n = Math.min(remaining, this.blockSize - this.currentLength);
+                str.getChars(offset, offset + n, this.current, this.currentLength);
+                this.currentLength += n;
+                this.unflushedChars += n;
+                offset += n;
+                remaining -= n;
+                if (this.currentLength == this.blockSize) {
+                    handOver(isFlushDue(), false);
+                }
+            }
+            if (isFlushDue()) {
+                handOver(true, false);
+            }
+        }
+    }
+
+    /**
+     * Count a record written, flushing if due.
+     */
+    void endRecord() {
+        synchronized (this.lock) {
+            if (this.closed) {
+                return;
+            }
+            this.unflushedRecords += 1;
+            if (isFlushDue()) {
+                handOver(true, false);
+            }
+        }
+    }
+
+    /**
+     * Write the text written so far to the target, and flush it, waiting
+     * until done.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void flush() throws IOException {
+        final long handedOver;
+        synchronized (this.lock) {
+            if (this.closed) {
+                checkFailure();
+                return;
+            }
+            handOver(true, false);
+            handedOver = this.handedOverCount;
+        }
+        awaitWritten(handedOver);
+        checkFailure();
+    }
+
+    /**
+     * Write the text written so far, and close the target.
+     * <p>
+     * Closing again throws a failure of writing again.
+     *
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this.lock) {
+            if (this.closed) {
+                checkFailure();
+                return;
+            }
+            this.closed = true;
+            handOver(true, true);
+        }
+        try {
+            this.writerThread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted closing the output");
+        } finally {
+            try {
+                this.target.close();
+            } catch (IOException ex) {
+                if (this.failure == null) {
+                    this.failure = ex;
+                }
+            }
+        }
+        checkFailure();
+    }
+
+    /**
+     * Wrap a formatter, counting the records output.
+     *
+     * @param outputGrokResultFormatter
+     * @return
+     */
+    IOutputGrokResultFormatter recordCountingFormatter(IOutputGrokResultFormatter outputGrokResultFormatter) {
+        return new RecordCountingFormatter(outputGrokResultFormatter);
+    }
+
+    private boolean isFlushDue() {
+        return (this.flushPolicy.flushChars > 0 && this.unflushedChars >= this.flushPolicy.flushChars)
+                || (this.flushPolicy.flushRecords > 0 && this.unflushedRecords >= this.flushPolicy.flushRecords);
+    }
+
+    /**
+     * Hand over the current block to the writer thread.
+     */
+    private void handOver(boolean flush, boolean last) {
+        if (this.current == null && !flush && !last) {
+            return;
+        }
+        this.handedOverBlocks.add(new Block(this.current, this.currentLength, flush, last));
+        this.handedOverCount += 1;
+        this.current = null;
+        this.currentLength = 0;
+        if (flush) {
+            this.unflushedChars = 0;
+            this.unflushedRecords = 0;
+        }
+    }
+
+    /**
+     * Take a free block, waiting with the lock released.
+     */
+    private char[] takeFreeBlock() throws IOException {
+        try {
+            while (this.freeBlocks.isEmpty()) {
+                this.lock.wait();
+            }
+            return this.freeBlocks.poll();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for the output buffer");
+        }
+    }
+
+    private void awaitWritten(long handedOver) throws IOException {
+        synchronized (this.written) {
+            try {
+                while (this.writtenCount < handedOver) {
+                    this.written.wait();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted flushing the output");
+            }
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        checkFailure();
+        if (this.closed) {
+            throw new IOException("Output is closed");
+        }
+    }
+
+    private void checkFailure() throws IOException {
+        final IOException ex = this.failure;
+        if (ex != null) {
+            throw new IOException("Writing the output failed", ex);
+        }
+    }
+
+    /**
+     * Write the blocks handed over, until the last one.
+     * <p>
+     * If no block is handed over in time, the text written is handed over by
+     * the writer thread itself. After a failure the blocks are dropped.
+     */
+    private void writeBlocks() {
+        try {
+            for (;;) {
+                final Block block = this.flushPolicy.flushMillis > 0
+                        ? this.handedOverBlocks.poll(this.flushPolicy.flushMillis, TimeUnit.MILLISECONDS)
+                        : this.handedOverBlocks.take();
+                if (block == null) {
+                    synchronized (this.lock) {
+                        if (!this.closed && this.unflushedChars > 0) {
+                            handOver(true, false);
+                        }
+                    }
+                    continue;
+                }
+                if (this.failure == null) {
+                    try {
+                        if (block.chars != null) {
+                            this.target.write(block.chars, block.length);
+                        }
+                        if (block.flush) {
+                            this.target.flush();
+                        }
+                    } catch (IOException | RuntimeException ex) {
+                        this.failure = ex instanceof IOException ? (IOException) ex : new IOException(ex);
+                    }
+                }
+                if (block.chars != null) {
+                    synchronized (this.lock) {
+                        this.freeBlocks.add(block.chars);
+                        this.lock.notifyAll();
+                    }
+                }
+                synchronized (this.written) {
+                    this.writtenCount += 1;
+                    this.written.notifyAll();
+                }
+                if (block.last) {
+                    return;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write to a file channel, encoding utf-8 into a direct buffer.
+     */
+    static class FileChannelTarget implements ITarget {
+
+        private final FileChannel fileChannel;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private final ByteBuffer byteBuffer = ByteBuffer.allocateDirect(4 * MAX_BLOCK_SIZE);
+        private char highSurrogate;
+
+        FileChannelTarget(FileChannel fileChannel) {
+            this.fileChannel = fileChannel;
+        }
+
+        @Override
+        public void write(char[] chars, int length) throws IOException {
+            int offset = 0;
+            while (this.highSurrogate != 0 && offset < length) {
+                final CharBuffer pair = CharBuffer.wrap(new char[]{this.highSurrogate, chars[offset]});
+                offset += 1;
+                encode(pair, false);
+                this.highSurrogate = pair.hasRemaining() ? pair.get() : 0;
+            }
+            final CharBuffer charBuffer = CharBuffer.wrap(chars, offset, length - offset);
+            encode(charBuffer, false);
+            // a surrogate pair split at the end of a block is encoded with the next block
+            if (charBuffer.hasRemaining()) {
+                this.highSurrogate = charBuffer.get();
+            }
+            writeBytes();
+        }
+
+        private void encode(CharBuffer charBuffer, boolean endOfInput) throws IOException {
+            while (this.encoder.encode(charBuffer, this.byteBuffer, endOfInput).isOverflow()) {
+                writeBytes();
+            }
+        }
+
+        private void writeBytes() throws IOException {
+            this.byteBuffer.flip();
+            while (this.byteBuffer.hasRemaining()) {
+                this.fileChannel.write(this.byteBuffer);
+            }
+            this.byteBuffer.clear();
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                if (this.highSurrogate != 0) {
+                    encode(CharBuffer.wrap(new char[]{this.highSurrogate}), true);
+                    this.encoder.flush(this.byteBuffer);
+                    writeBytes();
+                }
+            } finally {
+                this.fileChannel.close();
+            }
+        }
+    }
+
+    /**
+     * Write to a writer shared with others, e.g. stdout.
+     */
+    static class WriterTarget implements ITarget {
+
+        private final Writer writer;
+
+        WriterTarget(Writer writer) {
+            this.writer = writer;
+        }
+
+        @Override
+        public void write(char[] chars, int length) throws IOException {
+            this.writer.write(chars, 0, length);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            this.writer.flush();
+        }
+
+        /**
+         * Flush, leaving the shared writer open.
+         *
+         * @throws IOException
+         */
+        @Override
+        public void close() throws IOException {
+            this.writer.flush();
+        }
+    }
+
+    /**
+     * Count each record output, for the flush policy.
+     */
+    class RecordCountingFormatter implements IOutputGrokResultFormatter {
+
+        private final IOutputGrokResultFormatter outputGrokResultFormatter;
+
+        RecordCountingFormatter(IOutputGrokResultFormatter outputGrokResultFormatter) {
+            this.outputGrokResultFormatter = outputGrokResultFormatter;
+        }
+
+        @Override
+        public void start() {
+            this.outputGrokResultFormatter.start();
+        }
+
+        @Override
+        public void output(int readLineCount, GrokMatchResult grokResult) {
+            this.outputGrokResultFormatter.output(readLineCount, grokResult);
+            endRecord();
+        }
+
+        @Override
+        public void output(String file, int readLineCount, GrokMatchResult grokResult) {
+            this.outputGrokResultFormatter.output(file, readLineCount, grokResult);
+            endRecord();
+        }
+
+        @Override
+        public void end() {
+            this.outputGrokResultFormatter.end();
+        }
+
+        @Override
+        public void resume(long outputRecordCount) {
+            this.outputGrokResultFormatter.resume(outputRecordCount);
+        }
+
+        @Override
+        public void flush() {
+            this.outputGrokResultFormatter.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.outputGrokResultFormatter.close();
+        }
+    }
+}
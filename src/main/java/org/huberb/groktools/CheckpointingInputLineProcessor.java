@@ -0,0 +1,358 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+import org.huberb.groktools.GrokIt.GrokMatchResult;
+import org.huberb.groktools.GrokMain.InputLineProcessor;
+import org.huberb.groktools.InputLineSources.ILineSource;
+import org.huberb.groktools.InputLineSources.MappedFileLineSource;
+import org.huberb.groktools.MatchGatherOutput.Result;
+import org.huberb.groktools.MatchGatherOutput.Wrapper;
+import org.huberb.groktools.OutputGrokResultFormatters.IOutputGrokResultFormatter;
+
+/**
+ * Process lines of a file, persisting a {@link Checkpoint} periodically.
+ * <p>
+ * A later run of the same pattern on the same file resumes at the byte offset
+ * of the checkpoint. Records are held back until the next checkpoint, output,
+ * and flushed before the checkpoint is persisted.
+ * <p>
+ * A crash after flushing, but before persisting the checkpoint outputs the
+ * records flushed since the previous checkpoint again on resume. Output to a
+ * file is exactly once nevertheless: the checkpoint persists the length of the
+ * output file, and resuming truncates the output file to this length. Output
+ * to a stream, e.g. stdout, is at least once. The checkpoint file is deleted
+ * after all lines are processed.
+ *
+ * @author berni3
+ */
+class CheckpointingInputLineProcessor {
+
+    static final int DEFAULT_CHECKPOINT_INTERVAL_LINES = 100_000;
+
+    private final InputLineProcessor inputLineProcessor;
+    private final File checkpointFile;
+    private final int checkpointIntervalLines;
+    private final File outputFile;
+
+    /**
+     * Create an setup, outputting at least once.
+     *
+     * @param inputLineProcessor
+     * @param checkpointFile
+     * @param checkpointIntervalLines persist a checkpoint after reading this
+     * number of lines
+     */
+    CheckpointingInputLineProcessor(InputLineProcessor inputLineProcessor, File checkpointFile, int checkpointIntervalLines) {
+        this(inputLineProcessor, checkpointFile, checkpointIntervalLines, null);
+    }
+
+    /**
+     * Create an setup.
+     *
+     * @param inputLineProcessor
+     * @param checkpointFile
+     * @param checkpointIntervalLines persist a checkpoint after reading this
+     * number of lines
+     * @param outputFile file written by the output of inputLineProcessor,
+     * truncated on resume; or null for output at least once
+     */
+    CheckpointingInputLineProcessor(InputLineProcessor inputLineProcessor, File checkpointFile, int checkpointIntervalLines,
+            File outputFile) {
+        new GrokBuilder.Validations()
+                .isNull(inputLineProcessor)
+                .isNull(checkpointFile)
+                .throwIllegalArgumentExceptionIf("InputLineProcessor, or checkpoint file is null");
+        new GrokBuilder.Validations(checkpointIntervalLines < 1)
+                .throwIllegalArgumentExceptionIf("Checkpoint interval is less than 1");
+        this.inputLineProcessor = inputLineProcessor;
+        this.checkpointFile = checkpointFile;
+        this.checkpointIntervalLines = checkpointIntervalLines;
+        this.outputFile = outputFile;
+    }
+
+    /**
+     * Entry point for processing all lines of a file, resuming at the
+     * checkpoint if there is one.
+     *
+     * @param f
+     * @throws IOException
+     */
+    public void processFile(File f) throws IOException {
+        final String file = f.getAbsolutePath();
+        final String pattern = inputLineProcessor.multiPatternMatcher != null
+                ? String.join("\n", inputLineProcessor.multiPatternMatcher.patterns())
+                : inputLineProcessor.grok.getOriginalGrokPattern();
+        final String matchingLineMode = inputLineProcessor.matchingLineMode.name();
+        final Optional<Checkpoint> checkpointOpt = Checkpoint.read(checkpointFile);
+        if (checkpointOpt.isPresent()) {
+            final Checkpoint checkpoint = checkpointOpt.get();
+            new GrokBuilder.Validations(!checkpoint.file.equals(file)
+                    || !checkpoint.pattern.equals(pattern)
+                    || !checkpoint.matchingLineMode.equals(matchingLineMode)
+                    || checkpoint.offset > f.length()
+                    || (outputFile != null && checkpoint.outputLength > outputFile.length()))
+                    .throwIllegalArgumentExceptionIf(String.format("Checkpoint %s does not match file %s, pattern %s, matching line mode %s, and output file %s",
+                            checkpointFile, file, pattern, matchingLineMode, outputFile));
+        }
+        final IOutputGrokResultFormatter outputGrokResultConverter = inputLineProcessor.outputGrokResultConverter;
+        final HoldingBackFormatter holdingBackFormatter = new HoldingBackFormatter();
+        final InputLineProcessor holdingBackInputLineProcessor = inputLineProcessor
+                .withOutputGrokResultConverter(holdingBackFormatter);
+        final int readMaxLinesCount = inputLineProcessor.readMaxLinesCount;
+        final GrokIt grokIt = inputLineProcessor.createGrokIt();
+        try {
+            final MatchGatherOutput matchGatherOutput;
+            final Checkpoint checkpoint;
+            if (checkpointOpt.isPresent()) {
+                checkpoint = checkpointOpt.get();
+                matchGatherOutput = new MatchGatherOutput(checkpoint.pending);
+                truncateOutputFile(checkpoint.outputLength);
+                outputGrokResultConverter.resume(checkpoint.outputRecordCount);
+            } else {
+                checkpoint = new Checkpoint(file, pattern, matchingLineMode);
+                matchGatherOutput = new MatchGatherOutput();
+                outputGrokResultConverter.start();
+            }
+            //---
+            try (final FileChannel fc = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+                    final MappedFileLineSource lineSource = new MappedFileLineSource(fc, false,
+                            checkpoint.offset, -1L, MappedFileLineSource.DEFAULT_WINDOW_SIZE)) {
+                final ILineSource countingLineSource = inputLineProcessor.countingLineSource(lineSource);
+                int readLineCount = checkpoint.readLineCount;
+                for (CharSequence line; (line = countingLineSource.readLine()) != null;) {
+                    readLineCount += 1;
+                    if (readMaxLinesCount >= 0 && readLineCount > readMaxLinesCount) {
+                        break;
+                    }
+                    final GrokMatchResult grokResult = grokIt.match(inputLineProcessor.grok, line);
+                    holdingBackInputLineProcessor.processLine(readLineCount, line, grokResult, matchGatherOutput);
+                    if (readLineCount % checkpointIntervalLines == 0) {
+                        checkpoint.outputRecordCount += holdingBackFormatter.outputHeldBack(outputGrokResultConverter);
+                        checkpoint.outputLength = outputFile != null ? outputFile.length() : -1L;
+                        checkpoint.offset = lineSource.position();
+                        checkpoint.readLineCount = readLineCount;
+                        checkpoint.pending = matchGatherOutput.retrieveResult().map(Result::wrapper).orElse(null);
+                        checkpoint.write(checkpointFile);
+                    }
+                }
+                // retrieve last Optional<Result> still gathered, but
+                // not yet output
+                holdingBackInputLineProcessor.multiLineModeLast(
+                        readLineCount,
+                        matchGatherOutput);
+            }
+            holdingBackFormatter.outputHeldBack(outputGrokResultConverter);
+            outputGrokResultConverter.end();
+            outputGrokResultConverter.flush();
+            Files.deleteIfExists(checkpointFile.toPath());
+        } finally {
+            outputGrokResultConverter.close();
+        }
+    }
+
+    /**
+     * Drop the output written after the checkpoint, but before a crash.
+     *
+     * @param outputLength length of the output file at the checkpoint, or -1
+     * if unknown
+     * @throws IOException
+     */
+    private void truncateOutputFile(long outputLength) throws IOException {
+        if (outputFile == null || outputLength < 0L) {
+            return;
+        }
+        try (final FileChannel fc = FileChannel.open(outputFile.toPath(), StandardOpenOption.WRITE)) {
+            fc.truncate(outputLength);
+        }
+    }
+
+    /**
+     * Hold back records until the next checkpoint.
+     */
+    static class HoldingBackFormatter implements IOutputGrokResultFormatter {
+
+        private final List<Integer> readLineCounts = new ArrayList<>();
+        private final List<GrokMatchResult> grokResults = new ArrayList<>();
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void output(int readLineCount, GrokMatchResult grokResult) {
+            this.readLineCounts.add(readLineCount);
+            this.grokResults.add(grokResult);
+        }
+
+        /**
+         * Output, and flush all records held back.
+         *
+         * @param outputGrokResultConverter
+         * @return number of records output
+         */
+        int outputHeldBack(IOutputGrokResultFormatter outputGrokResultConverter) {
+            final int n = this.grokResults.size();
+            for (int i = 0; i < n; i++) {
+                outputGrokResultConverter.output(this.readLineCounts.get(i), this.grokResults.get(i));
+            }
+            outputGrokResultConverter.flush();
+            this.readLineCounts.clear();
+            this.grokResults.clear();
+            return n;
+        }
+
+        @Override
+        public void end() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * State of processing a file after a line.
+     * <p>
+     * Persisted as properties file. Writing a checkpoint writes a temporary
+     * file first, and moves it atomically to the checkpoint file.
+     */
+    static class Checkpoint {
+
+        private static final String PENDING_M = "pending.m.";
+
+        final String file;
+        final String pattern;
+        final String matchingLineMode;
+        long offset;
+        int readLineCount;
+        long outputRecordCount;
+        long outputLength = -1L;
+        Wrapper pending;
+
+        Checkpoint(String file, String pattern, String matchingLineMode) {
+            this.file = file;
+            this.pattern = pattern;
+            this.matchingLineMode = matchingLineMode;
+        }
+
+        /**
+         * Read a checkpoint.
+         *
+         * @param checkpointFile
+         * @return empty if the checkpoint file does not exist
+         * @throws IOException
+         */
+        static Optional<Checkpoint> read(File checkpointFile) throws IOException {
+            if (!checkpointFile.exists()) {
+                return Optional.empty();
+            }
+            final Properties props = new Properties();
+            try (final InputStream is = Files.newInputStream(checkpointFile.toPath())) {
+                props.load(is);
+            }
+            try {
+                final Checkpoint checkpoint = new Checkpoint(
+                        props.getProperty("file", ""),
+                        props.getProperty("pattern", ""),
+                        props.getProperty("matchingLineMode", ""));
+                checkpoint.offset = Long.parseLong(props.getProperty("offset"));
+                checkpoint.readLineCount = Integer.parseInt(props.getProperty("readLineCount"));
+                checkpoint.outputRecordCount = Long.parseLong(props.getProperty("outputRecordCount"));
+                checkpoint.outputLength = Long.parseLong(props.getProperty("outputLength", "-1"));
+                if (props.containsKey("pending.readLineCount")) {
+                    // keep the iteration order, a map copied from it iterates
+                    // in the same order as before the checkpoint
+                    final Map<String, Object> m = new LinkedHashMap<>();
+                    final String keys = props.getProperty("pending.keys", "");
+                    for (String key : keys.isEmpty() ? new String[0] : keys.split(",")) {
+                        m.put(key, props.getProperty(PENDING_M + key));
+                    }
+                    final Wrapper pending = new Wrapper(
+                            Integer.parseInt(props.getProperty("pending.readLineCount")),
+                            props.getProperty("pending.subject"),
+                            Integer.parseInt(props.getProperty("pending.start")),
+                            Integer.parseInt(props.getProperty("pending.end")),
+                            m);
+                    pending.extra.append(props.getProperty("pending.extra", ""));
+                    checkpoint.pending = pending;
+                }
+                return Optional.of(checkpoint);
+            } catch (NumberFormatException ex) {
+                throw new IOException("Cannot read checkpoint " + checkpointFile, ex);
+            }
+        }
+
+        /**
+         * Write this checkpoint atomically.
+         * <p>
+         * Captured values are written as strings, this is the same text as
+         * output by the {@link IOutputGrokResultFormatter}s.
+         *
+         * @param checkpointFile
+         * @throws IOException
+         */
+        void write(File checkpointFile) throws IOException {
+            final Properties props = new Properties();
+            props.setProperty("file", this.file);
+            props.setProperty("pattern", this.pattern);
+            props.setProperty("matchingLineMode", this.matchingLineMode);
+            props.setProperty("offset", String.valueOf(this.offset));
+            props.setProperty("readLineCount", String.valueOf(this.readLineCount));
+            props.setProperty("outputRecordCount", String.valueOf(this.outputRecordCount));
+            props.setProperty("outputLength", String.valueOf(this.outputLength));
+            if (this.pending != null) {
+                props.setProperty("pending.readLineCount", String.valueOf(this.pending.readLineCount));
+                props.setProperty("pending.subject", this.pending.subject);
+                props.setProperty("pending.start", String.valueOf(this.pending.start));
+                props.setProperty("pending.end", String.valueOf(this.pending.end));
+                props.setProperty("pending.extra", this.pending.extra.toString());
+                props.setProperty("pending.keys", String.join(",", this.pending.m.keySet()));
+                for (Map.Entry<String, Object> e : this.pending.m.entrySet()) {
+                    if (e.getValue() != null) {
+                        props.setProperty(PENDING_M + e.getKey(), String.valueOf(e.getValue()));
+                    }
+                }
+            }
+            final Path checkpointPath = checkpointFile.toPath().toAbsolutePath();
+            final Path tempPath = checkpointPath.resolveSibling(checkpointPath.getFileName() + ".tmp");
+            try (final OutputStream os = Files.newOutputStream(tempPath)) {
+                props.store(os, "grokMain checkpoint");
+            }
+            try {
+                Files.move(tempPath, checkpointPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tempPath, checkpointPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+}
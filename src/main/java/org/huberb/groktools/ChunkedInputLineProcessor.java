@@ -0,0 +1,275 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import org.huberb.groktools.GrokIt.GrokMatchResult;
+import org.huberb.groktools.GrokMain.InputLineProcessor;
+import org.huberb.groktools.GrokMain.InputLineProcessor.MatchingLineMode;
+import org.huberb.groktools.InputLineSources.ILineSource;
+import org.huberb.groktools.InputLineSources.MappedFileLineSource;
+
+/**
+ * Process lines of a single file using several threads.
+ * <p>
+ * The file is split into byte ranges, aligned to line starts. Each range is
+ * matched on a {@link ForkJoinPool}. The matched lines of the ranges are handed
+ * to the {@link InputLineProcessor} in the original line order, thus line
+ * numbers, and multi-line gathering are the same as processing the file
+ * sequentially.
+ *
+ * @author berni3
+ */
+class ChunkedInputLineProcessor {
+
+    static final long MIN_CHUNK_SIZE = 256L * 1024L;
+    static final long MAX_CHUNK_SIZE = 4L * 1024L * 1024L;
+
+    private final InputLineProcessor inputLineProcessor;
+    private final int threads;
+    private final long chunkSize;
+    /**
+     * The {@link GrokIt} of a pool thread, reused for all its chunks.
+     */
+    private final ThreadLocal<GrokIt> grokItOfThread;
+
+    /**
+     * Create an setup, chunk size is derived from the file size.
+     *
+     * @param inputLineProcessor
+     * @param threads
+     */
+    ChunkedInputLineProcessor(InputLineProcessor inputLineProcessor, int threads) {
+        this(inputLineProcessor, threads, -1L);
+    }
+
+    /**
+     * Create an setup.
+     *
+     * @param inputLineProcessor
+     * @param threads
+     * @param chunkSize size of a byte range, or -1 for deriving it from the
+     * file size
+     */
+    ChunkedInputLineProcessor(InputLineProcessor inputLineProcessor, int threads, long chunkSize) {
+        new GrokBuilder.Validations()
+                .isNull(inputLineProcessor)
+                .throwIllegalArgumentExceptionIf("InputLineProcessor is null");
+        new GrokBuilder.Validations(threads < 1)
+                .throwIllegalArgumentExceptionIf("Number of threads is less than 1");
+        this.inputLineProcessor = inputLineProcessor;
+        this.threads = threads;
+        this.chunkSize = chunkSize;
+        this.grokItOfThread = ThreadLocal.withInitial(inputLineProcessor::createGrokIt);
+    }
+
+    /**
+     * Entry point for processing all lines of a file.
+     *
+     * @param f
+     * @throws IOException
+     */
+    public void processFile(File f) throws IOException {
+        final ForkJoinPool pool = new ForkJoinPool(this.threads);
+        try (final FileChannel fc = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            final long size = fc.size();
+            final long effectiveChunkSize = this.chunkSize > 0
+                    ? this.chunkSize
+                    : Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, size / (this.threads * 8L)));
+            final int maxChunksInFlight = 2 * this.threads;
+            final int readMaxLinesCount = inputLineProcessor.readMaxLinesCount;
+            try {
+                final MatchGatherOutput matchGatherOutput = new MatchGatherOutput();
+                inputLineProcessor.outputGrokResultConverter.start();
+                //---
+                final Deque<Future<Chunk>> chunksInFlight = new ArrayDeque<>();
+                long nextChunkStart = 0L;
+                int readLineCount = 0;
+                boolean readMaxLinesCountReached = false;
+                while (!readMaxLinesCountReached && (nextChunkStart < size || !chunksInFlight.isEmpty())) {
+                    while (nextChunkStart < size && chunksInFlight.size() < maxChunksInFlight) {
+                        final long start = nextChunkStart;
+                        final long end = findLineStart(fc, start + effectiveChunkSize, size);
+                        chunksInFlight.addLast(pool.submit(() -> matchChunk(fc, start, end)));
+                        nextChunkStart = end;
+                    }
+                    final Chunk chunk = waitFor(chunksInFlight.removeFirst());
+                    for (MatchedLine matchedLine : chunk.matchedLines) {
+                        final int lineno = readLineCount + matchedLine.lineno;
+                        if (readMaxLinesCount >= 0 && lineno > readMaxLinesCount) {
+                            readMaxLinesCountReached = true;
+                            break;
+                        }
+                        inputLineProcessor.processLine(lineno, matchedLine.line, matchedLine.grokResult, matchGatherOutput);
+                    }
+                    readLineCount += chunk.lineCount;
+                    readMaxLinesCountReached = readMaxLinesCountReached
+                            || (readMaxLinesCount >= 0 && readLineCount > readMaxLinesCount);
+                }
+                chunksInFlight.forEach((future) -> future.cancel(true));
+                if (readMaxLinesCount >= 0 && readLineCount > readMaxLinesCount) {
+                    // the same line count as reading sequentially, and stopping
+                    // after readMaxLinesCount lines
+                    readLineCount = readMaxLinesCount + 1;
+                }
+                // retrieve last Optional<Result> still gathered, but
+                // not yet output
+                inputLineProcessor.multiLineModeLast(
+                        readLineCount,
+                        matchGatherOutput);
+                inputLineProcessor.outputGrokResultConverter.end();
+            } finally {
+                inputLineProcessor.outputGrokResultConverter.close();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Match all lines of byte range [start, end).
+     * <p>
+     * Running on a thread of the pool. In single-line mode only matching lines
+     * are kept.
+     */
+    Chunk matchChunk(FileChannel fc, long start, long end) throws IOException {
+        final boolean keepAllLines = inputLineProcessor.matchingLineMode == MatchingLineMode.multiLinesMode;
+        final GrokIt grokIt = this.grokItOfThread.get();
+        final Chunk chunk = new Chunk();
+        final int windowSize = (int) Math.min(MappedFileLineSource.DEFAULT_WINDOW_SIZE, Math.max(end - start, 16L));
+        try (final ILineSource lineSource = inputLineProcessor.countingLineSource(
+                new MappedFileLineSource(fc, false, start, end, windowSize))) {
+            for (CharSequence line; (line = lineSource.readLine()) != null;) {
+                chunk.lineCount += 1;
+                final GrokMatchResult grokResult = grokIt.match(inputLineProcessor.grok, line);
+                final boolean matching = grokResult.m != null && !grokResult.m.isEmpty();
+                if (matching) {
+                    // line is a view, keep a copy of it
+                    final String lineAsString = line.toString();
+                    final GrokMatchResult grokResultKept = new GrokMatchResult(
+                            lineAsString,
+                            grokResult.start,
+                            grokResult.end,
+                            grokResult.m);
+                    chunk.matchedLines.add(new MatchedLine(chunk.lineCount, lineAsString, grokResultKept));
+                } else if (keepAllLines) {
+                    chunk.matchedLines.add(new MatchedLine(chunk.lineCount, line.toString(), grokResult));
+                }
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * Find the start of the first line at, or after offset.
+     * <p>
+     * Lines end by "\n", "\r\n", or a lone "\r", the same as
+     * {@link MappedFileLineSource}.
+     *
+     * @return offset of a line start, or size
+     */
+    static long findLineStart(FileChannel fc, long offset, long size) throws IOException {
+        if (offset >= size) {
+            return size;
+        }
+        final ByteBuffer bb = ByteBuffer.allocate(8192);
+        // a line starts after a "\n" byte, or a "\r" byte not followed by "\n"
+        long position = offset - 1;
+        while (position < size) {
+            // cast to Buffer, keep byte code runnable on java 8
+            ((Buffer) bb).clear();
+            final int n = fc.read(bb, position);
+            if (n <= 0) {
+                break;
+            }
+            for (int i = 0; i < n; i++) {
+                final byte b = bb.get(i);
+                if (b == '\n') {
+                    return position + i + 1;
+                } else if (b == '\r') {
+                    final boolean followedByLineFeed = i + 1 < n
+                            ? bb.get(i + 1) == '\n'
+                            : isLineFeedAt(fc, position + i + 1);
+                    if (!followedByLineFeed) {
+                        return position + i + 1;
+                    }
+                }
+            }
+            position += n;
+        }
+        return size;
+    }
+
+    private static boolean isLineFeedAt(FileChannel fc, long position) throws IOException {
+        final ByteBuffer bb = ByteBuffer.allocate(1);
+        return fc.read(bb, position) == 1 && bb.get(0) == '\n';
+    }
+
+    private static Chunk waitFor(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while matching", ex);
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Failed matching", cause);
+        }
+    }
+
+    /**
+     * Lines kept of a byte range, and the number of lines of the byte range.
+     */
+    static class Chunk {
+
+        int lineCount;
+        final List<MatchedLine> matchedLines = new ArrayList<>();
+    }
+
+    /**
+     * A line, its line number relative to the start of the chunk, and its
+     * {@link GrokMatchResult}.
+     */
+    static class MatchedLine {
+
+        final int lineno;
+        final String line;
+        final GrokMatchResult grokResult;
+
+        MatchedLine(int lineno, String line, GrokMatchResult grokResult) {
+            this.lineno = lineno;
+            this.line = line;
+            this.grokResult = grokResult;
+        }
+    }
+}
@@ -0,0 +1,582 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encode, and decode match results as columnar row groups.
+ * <p>
+ * A row group holds the values of several records column by column. A
+ * column of repeated values is dictionary encoded, the line numbers are delta
+ * encoded. Row groups are appended, and read one by one: written to a stream
+ * each as a single line of base64 text, like the text output of the other
+ * modes; or written to a file as bytes, each following its length as 4 bytes
+ * big endian.
+ * <p>
+ * The binary row group is:
+ * <pre>
+ * magic "GRKC", version, row count, column count, and per column its name,
+ * encoding, compression, length of the encoded values, length of the stored
+ * values, and the stored values
+ * </pre>
+ * <p>
+ * Numbers are unsigned varints, strings are utf-8 bytes following their
+ * length. Each column is compressed on its own, and stored uncompressed if
+ * compressing does not shrink it. The column <code>lineno</code> is the first
+ * column, a reader skips the values of columns not read without decompressing,
+ * or decoding them.
+ *
+ * @author berni3
+ */
+public class ColumnarFormat {
+
+    public static final String LINENO_COLUMN = "lineno";
+    public static final String FILE_COLUMN = MultiFileInputLineProcessor.FILE_FIELD;
+
+    static final int MAGIC = 0x47524b43;
+    static final int VERSION = 2;
+
+    static final int ENCODING_DELTA = 0;
+    static final int ENCODING_PLAIN = 1;
+    static final int ENCODING_DICTIONARY = 2;
+
+    /**
+     * Compression of the columns of a row group.
+     */
+    public static enum ColumnarCompression {
+        none, deflate
+    }
+
+    private ColumnarFormat() {
+    }
+
+    /**
+     * The values of several records, column by column.
+     * <p>
+     * A missing value is null.
+     */
+    public static class RowGroup {
+
+        private final int rowCount;
+        private final int[] linenos;
+        private final Map<String, String[]> columns;
+
+        /**
+         * Create an setup.
+         *
+         * @param rowCount
+         * @param linenos the line numbers, at least rowCount
+         * @param columns the values of the columns, each at least rowCount,
+         * in column order
+         */
+        public RowGroup(int rowCount, int[] linenos, Map<String, String[]> columns) {
+            this.rowCount = rowCount;
+            this.linenos = linenos;
+            this.columns = columns;
+        }
+
+        public int rowCount() {
+            return this.rowCount;
+        }
+
+        public int[] linenos() {
+            return this.linenos;
+        }
+
+        /**
+         * Names of the columns, not including lineno.
+         *
+         * @return
+         */
+        public List<String> columnNames() {
+            return new ArrayList<>(this.columns.keySet());
+        }
+
+        /**
+         * Values of a column.
+         *
+         * @param name
+         * @return the values, or null if there is no such column
+         */
+        public String[] column(String name) {
+            return this.columns.get(name);
+        }
+    }
+
+    /**
+     * Encode a row group as base64 text.
+     *
+     * @param rowGroup
+     * @param compression
+     * @return
+     */
+    static String encode(RowGroup rowGroup, ColumnarCompression compression) {
+        return Base64.getEncoder().encodeToString(encodeBytes(rowGroup, compression));
+    }
+
+    /**
+     * Encode a row group as bytes.
+     *
+     * @param rowGroup
+     * @param compression
+     * @return
+     */
+    static byte[] encodeBytes(RowGroup rowGroup, ColumnarCompression compression) {
+        final int rowCount = rowGroup.rowCount();
+        final BytesOutput rowGroupBytes = new BytesOutput(1024);
+        rowGroupBytes.writeInt(MAGIC);
+        rowGroupBytes.write(VERSION);
+        rowGroupBytes.writeVarint(rowCount);
+        rowGroupBytes.writeVarint(rowGroup.columns.size() + 1);
+        final Deflater deflater = compression == ColumnarCompression.deflate ? new Deflater(Deflater.BEST_SPEED) : null;
+        try {
+            final BytesOutput values = new BytesOutput(1024);
+            final BytesOutput deflated = new BytesOutput(1024);
+            // lineno, delta encoded
+            int previous = 0;
+            for (int i = 0; i < rowCount; i++) {
+                values.writeVarint(zigZag(rowGroup.linenos[i] - previous));
+                previous = rowGroup.linenos[i];
+            }
+            rowGroupBytes.writeColumn(LINENO_COLUMN, ENCODING_DELTA, values, deflater, deflated);
+            for (Map.Entry<String, String[]> column : rowGroup.columns.entrySet()) {
+                values.reset();
+                final int encoding = encodeValues(column.getValue(), rowCount, values);
+                rowGroupBytes.writeColumn(column.getKey(), encoding, values, deflater, deflated);
+            }
+        } finally {
+            if (deflater != null) {
+                deflater.end();
+            }
+        }
+        return rowGroupBytes.toByteArray();
+    }
+
+    /**
+     * Encode the values of a column, dictionary encoded if at most half of
+     * the values are distinct.
+     *
+     * @return the encoding
+     */
+    private static int encodeValues(String[] column, int rowCount, BytesOutput values) {
+        final Map<String, Integer> dictionary = new LinkedHashMap<>();
+        for (int i = 0; i < rowCount && dictionary.size() <= rowCount / 2; i++) {
+            if (column[i] != null) {
+                dictionary.putIfAbsent(column[i], dictionary.size());
+            }
+        }
+        if (dictionary.size() <= rowCount / 2) {
+            values.writeVarint(dictionary.size());
+            for (String v : dictionary.keySet()) {
+                values.writeString(v);
+            }
+            // 0 is a missing value
+            for (int i = 0; i < rowCount; i++) {
+                values.writeVarint(column[i] != null ? dictionary.get(column[i]) + 1 : 0);
+            }
+            return ENCODING_DICTIONARY;
+        }
+        for (int i = 0; i < rowCount; i++) {
+            if (column[i] != null) {
+                final byte[] bytes = column[i].getBytes(StandardCharsets.UTF_8);
+                values.writeVarint(bytes.length + 1);
+                values.write(bytes, 0, bytes.length);
+            } else {
+                values.writeVarint(0);
+            }
+        }
+        return ENCODING_PLAIN;
+    }
+
+    /**
+     * Decode a row group encoded by
+     * {@link #encode(RowGroup, ColumnarCompression)}.
+     *
+     * @param text
+     * @param columns names of the columns to decode, or null for all columns
+     * @return
+     * @throws IOException if text is not a row group
+     */
+    static RowGroup decode(String text, Set<String> columns) throws IOException {
+        final byte[] rowGroupBytes;
+        try {
+            rowGroupBytes = Base64.getDecoder().decode(text.trim());
+        } catch (IllegalArgumentException ex) {
+            throw new IOException("Invalid columnar row group", ex);
+        }
+        return decode(rowGroupBytes, columns);
+    }
+
+    /**
+     * Decode a row group encoded by
+     * {@link #encodeBytes(RowGroup, ColumnarCompression)}.
+     *
+     * @param rowGroupBytes
+     * @param columns names of the columns to decode, or null for all columns
+     * @return
+     * @throws IOException if rowGroupBytes is not a row group
+     */
+    static RowGroup decode(byte[] rowGroupBytes, Set<String> columns) throws IOException {
+        final BytesInput body = new BytesInput(rowGroupBytes, 0, rowGroupBytes.length);
+        if (body.readInt() != MAGIC || body.read() != VERSION) {
+            throw new IOException("Invalid columnar row group, or version");
+        }
+        final int rowCount = body.readVarint();
+        final int columnCount = body.readVarint();
+        final int[] linenos = new int[rowCount];
+        final Map<String, String[]> values = new LinkedHashMap<>();
+        for (int c = 0; c < columnCount; c++) {
+            final String name = body.readString();
+            final int encoding = body.read();
+            final int compression = body.read();
+            final int length = body.readVarint();
+            final BytesInput storedValues = body.slice(body.readVarint());
+            if (encoding == ENCODING_DELTA) {
+                final BytesInput columnValues = decompress(compression, length, storedValues);
+                int lineno = 0;
+                for (int i = 0; i < rowCount; i++) {
+                    lineno += unZigZag(columnValues.readVarint());
+                    linenos[i] = lineno;
+                }
+            } else if (columns == null || columns.contains(name)) {
+                values.put(name, decodeValues(encoding, rowCount, decompress(compression, length, storedValues)));
+            }
+        }
+        return new RowGroup(rowCount, linenos, values);
+    }
+
+    /**
+     * Decompress the stored values of a column.
+     */
+    private static BytesInput decompress(int compression, int length, BytesInput storedValues) throws IOException {
+        if (compression == ColumnarCompression.none.ordinal()) {
+            return storedValues;
+        }
+        if (compression != ColumnarCompression.deflate.ordinal()) {
+            throw new IOException("Unknown compression of columnar values " + compression);
+        }
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(storedValues.bytes, storedValues.position, storedValues.end - storedValues.position);
+            final byte[] valuesBytes = new byte[length];
+            int inflatedLength = 0;
+            while (inflatedLength < length && !inflater.finished()) {
+                final int inflated = inflater.inflate(valuesBytes, inflatedLength, length - inflatedLength);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                inflatedLength += inflated;
+            }
+            if (inflatedLength != length) {
+                throw new IOException("Truncated columnar row group");
+            }
+            return new BytesInput(valuesBytes, 0, length);
+        } catch (DataFormatException ex) {
+            throw new IOException("Invalid compressed columnar row group", ex);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static String[] decodeValues(int encoding, int rowCount, BytesInput columnValues) throws IOException {
+        final String[] column = new String[rowCount];
+        if (encoding == ENCODING_DICTIONARY) {
+            final String[] dictionary = new String[columnValues.readVarint()];
+            for (int i = 0; i < dictionary.length; i++) {
+                dictionary[i] = columnValues.readString();
+            }
+            for (int i = 0; i < rowCount; i++) {
+                final int index = columnValues.readVarint();
+                column[i] = index > 0 ? dictionary[index - 1] : null;
+            }
+        } else if (encoding == ENCODING_PLAIN) {
+            for (int i = 0; i < rowCount; i++) {
+                final int length = columnValues.readVarint();
+                column[i] = length > 0 ? columnValues.readString(length - 1) : null;
+            }
+        } else {
+            throw new IOException("Unknown encoding of columnar values " + encoding);
+        }
+        return column;
+    }
+
+    static int zigZag(int v) {
+        return (v << 1) ^ (v >> 31);
+    }
+
+    static int unZigZag(int v) {
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Read the row groups of a columnar output, text, or bytes.
+     */
+    public static class Reader implements Closeable {
+
+        private final BufferedReader br;
+        private final DataInputStream dis;
+        private final Set<String> columns;
+
+        /**
+         * Create an setup, reading row groups of base64 text.
+         *
+         * @param br
+         * @param columns names of the columns to decode, or null for all
+         * columns
+         */
+        public Reader(BufferedReader br, Set<String> columns) {
+            this.br = br;
+            this.dis = null;
+            this.columns = columns != null ? Collections.unmodifiableSet(columns) : null;
+        }
+
+        /**
+         * Create an setup, reading row groups of bytes, e.g. of an output
+         * file.
+         *
+         * @param is
+         * @param columns names of the columns to decode, or null for all
+         * columns
+         */
+        public Reader(InputStream is, Set<String> columns) {
+            this.br = null;
+            this.dis = new DataInputStream(new BufferedInputStream(is));
+            this.columns = columns != null ? Collections.unmodifiableSet(columns) : null;
+        }
+
+        /**
+         * Read the next row group.
+         *
+         * @return the row group, or null at the end of the output
+         * @throws IOException
+         */
+        public RowGroup read() throws IOException {
+            if (this.dis != null) {
+                return readBytes();
+            }
+            for (String line; (line = this.br.readLine()) != null;) {
+                if (!line.trim().isEmpty()) {
+                    return decode(line, this.columns);
+                }
+            }
+            return null;
+        }
+
+        private RowGroup readBytes() throws IOException {
+            final int first = this.dis.read();
+            if (first < 0) {
+                return null;
+            }
+            final int length = (first << 24) | (this.dis.readUnsignedByte() << 16)
+                    | (this.dis.readUnsignedByte() << 8) | this.dis.readUnsignedByte();
+            if (length < 0) {
+                throw new IOException("Invalid length of columnar row group " + length);
+            }
+            final byte[] rowGroupBytes = new byte[length];
+            this.dis.readFully(rowGroupBytes);
+            return decode(rowGroupBytes, this.columns);
+        }
+
+        /**
+         * Read all remaining row groups into a single one.
+         *
+         * @return
+         * @throws IOException
+         */
+        public RowGroup readAll() throws IOException {
+            final List<RowGroup> rowGroups = new ArrayList<>();
+            int rowCount = 0;
+            for (RowGroup rowGroup; (rowGroup = read()) != null;) {
+                rowGroups.add(rowGroup);
+                rowCount += rowGroup.rowCount();
+            }
+            final int[] linenos = new int[rowCount];
+            final Map<String, String[]> values = new LinkedHashMap<>();
+            int offset = 0;
+            for (RowGroup rowGroup : rowGroups) {
+                System.arraycopy(rowGroup.linenos(), 0, linenos, offset, rowGroup.rowCount());
+                for (Map.Entry<String, String[]> column : rowGroup.columns.entrySet()) {
+                    final String[] allValues = values.computeIfAbsent(column.getKey(), (k) -> new String[linenos.length]);
+                    System.arraycopy(column.getValue(), 0, allValues, offset, rowGroup.rowCount());
+                }
+                offset += rowGroup.rowCount();
+            }
+            return new RowGroup(rowCount, linenos, values);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.dis != null) {
+                this.dis.close();
+            } else {
+                this.br.close();
+            }
+        }
+    }
+
+    /**
+     * A growing byte array, writing varints, and strings.
+     */
+    static class BytesOutput extends ByteArrayOutputStream {
+
+        BytesOutput(int size) {
+            super(size);
+        }
+
+        byte[] buffer() {
+            return this.buf;
+        }
+
+        void writeInt(int v) {
+            write(v >>> 24);
+            write(v >>> 16);
+            write(v >>> 8);
+            write(v);
+        }
+
+        void writeVarint(int v) {
+            while ((v & ~0x7f) != 0) {
+                write((v & 0x7f) | 0x80);
+                v >>>= 7;
+            }
+            write(v);
+        }
+
+        void writeString(String s) {
+            final byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        /**
+         * Write a column, deflating its values if it shrinks them.
+         *
+         * @param name
+         * @param encoding
+         * @param values the encoded values
+         * @param deflater deflater, or null for no compression
+         * @param deflated buffer of the deflated values
+         */
+        void writeColumn(String name, int encoding, BytesOutput values, Deflater deflater, BytesOutput deflated) {
+            writeString(name);
+            write(encoding);
+            if (deflater != null) {
+                deflated.reset();
+                deflater.reset();
+                deflater.setInput(values.buffer(), 0, values.size());
+                deflater.finish();
+                final byte[] chunk = new byte[1024];
+                while (!deflater.finished()) {
+                    final int length = deflater.deflate(chunk);
+                    deflated.write(chunk, 0, length);
+                }
+                if (deflated.size() < values.size()) {
+                    write(ColumnarCompression.deflate.ordinal());
+                    writeVarint(values.size());
+                    writeVarint(deflated.size());
+                    write(deflated.buffer(), 0, deflated.size());
+                    return;
+                }
+            }
+            write(ColumnarCompression.none.ordinal());
+            writeVarint(values.size());
+            writeVarint(values.size());
+            write(values.buffer(), 0, values.size());
+        }
+    }
+
+    /**
+     * Read varints, and strings of a byte array.
+     */
+    static class BytesInput {
+
+        private final byte[] bytes;
+        private final int end;
+        private int position;
+
+        BytesInput(byte[] bytes, int position, int end) {
+            this.bytes = bytes;
+            this.position = position;
+            this.end = end;
+        }
+
+        int position() {
+            return this.position;
+        }
+
+        int read() throws IOException {
+            if (this.position >= this.end) {
+                throw new IOException("Truncated columnar row group");
+            }
+            return this.bytes[this.position++] & 0xff;
+        }
+
+        int readInt() throws IOException {
+            return (read() << 24) | (read() << 16) | (read() << 8) | read();
+        }
+
+        int readVarint() throws IOException {
+            int v = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                final int b = read();
+                v |= (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+            throw new IOException("Invalid varint of columnar row group");
+        }
+
+        String readString() throws IOException {
+            return readString(readVarint());
+        }
+
+        String readString(int length) throws IOException {
+            final BytesInput slice = slice(length);
+            return new String(this.bytes, slice.position, length, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Skip some bytes, returning a reader of the skipped bytes.
+         */
+        BytesInput slice(int length) throws IOException {
+            if (length < 0 || length > this.end - this.position) {
+                throw new IOException("Truncated columnar row group");
+            }
+            final BytesInput slice = new BytesInput(this.bytes, this.position, this.position + length);
+            this.position += length;
+            return slice;
+        }
+    }
+}
@@ -15,18 +15,35 @@
  */
 package org.huberb.groktools;
 
+import io.krakens.grok.api.Converter;
 import io.krakens.grok.api.Grok;
 import io.krakens.grok.api.GrokCompiler;
+import io.krakens.grok.api.GrokUtils;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
+import java.util.ArrayDeque;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Builder for building a {@link Grok} instance.
@@ -35,6 +52,11 @@ import java.util.Map;
  */
 public class GrokBuilder {
 
+    /**
+     * Resource of the default patterns of {@link GrokCompiler}.
+     */
+    private static final String DEFAULT_PATTERNS_RESOURCE = "/patterns/patterns";
+
     private String pattern;
     private ZoneId defaultTimeZone = ZoneOffset.systemDefault();
     private boolean namedOnly = false;
@@ -43,6 +65,9 @@ public class GrokBuilder {
     private String patternNameAndDefinition;
     private String patternDefinitionsFromClasspath;
     private File patternDefinitionsFromFile;
+    private Set<String> dropFields = Collections.emptySet();
+    private File patternCacheDir;
+    private boolean lazyPatternDefinitions = false;
 
     /**
      * GrokBuilder shall use this pattern.
@@ -135,7 +160,135 @@ public class GrokBuilder {
         return this;
     }
 
+    /**
+     * Grok shall not capture these fields.
+     * <p>
+     * The groups of these fields are compiled as non-capturing groups.
+     *
+     * @param dropFields names of fields, like "UNWANTED"
+     * @return
+     */
+    public GrokBuilder dropFields(Collection<String> dropFields) {
+        new Validations()
+                .isNull(dropFields)
+                .throwIllegalArgumentExceptionIf("Grok fields to drop is null");
+        if (dropFields != null) {
+            this.dropFields = new LinkedHashSet<>(dropFields);
+        }
+        return this;
+    }
+
+    /**
+     * GrokBuilder shall cache compiled patterns in a directory.
+     *
+     * @param patternCacheDir directory of the cache, created if missing
+     * @return
+     * @see PatternCache
+     */
+    public GrokBuilder patternCacheDir(File patternCacheDir) {
+        new Validations()
+                .isNull(patternCacheDir)
+                .throwIllegalArgumentExceptionIf("Grok pattern cache directory is null");
+        if (patternCacheDir != null) {
+            this.patternCacheDir = patternCacheDir;
+        }
+        return this;
+    }
+
+    /**
+     * Grok shall register only the pattern definitions referenced by the
+     * pattern, directly or indirectly.
+     * <p>
+     * The pattern definitions are read as plain lines, and only the
+     * referenced ones are registered, and compiled.
+     * <p>
+     * {@link Grok#getPatterns()} returns only these definitions, thus
+     * {@link Grok#discover(java.lang.String)} knows only these, too.
+     *
+     * @param lazyPatternDefinitions
+     * @return
+     */
+    public GrokBuilder lazyPatternDefinitions(boolean lazyPatternDefinitions) {
+        this.lazyPatternDefinitions = lazyPatternDefinitions;
+        return this;
+    }
+
     public Grok build() throws IOException {
+        final Grok grok;
+        if (patternCacheDir != null) {
+            final PatternCache patternCache = new PatternCache(patternCacheDir);
+            final String cacheKey = cacheKey();
+            final Optional<Grok> cachedGrok = patternCache.read(cacheKey, defaultTimeZone);
+            if (cachedGrok.isPresent()) {
+                grok = cachedGrok.get();
+            } else {
+                grok = compile();
+                try {
+                    patternCache.write(cacheKey, grok);
+                } catch (IOException ex) {
+                    // not caching does not prevent matching
+                }
+            }
+        } else {
+            grok = compile();
+        }
+        if (dropFields.isEmpty()) {
+            return grok;
+        }
+        return demoteGroups(grok, dropFields, defaultTimeZone);
+    }
+
+    /**
+     * Key of the compiled pattern in a {@link PatternCache}.
+     * <p>
+     * Hash everything {@link #compile()} depends on, the pattern definitions
+     * are hashed by content in the order of registering them.
+     *
+     * @return
+     * @throws IOException
+     */
+    String cacheKey() throws IOException {
+        final PatternCache.KeyBuilder keyBuilder = new PatternCache.KeyBuilder()
+                .add(pattern)
+                .add(String.valueOf(namedOnly))
+                .add(String.valueOf(lazyPatternDefinitions))
+                .add(defaultTimeZone.getId());
+        keyBuilder.add(registerDefaultPatterns ? readClasspathResource(DEFAULT_PATTERNS_RESOURCE) : null);
+        keyBuilder.add(patternNameAndDefinition);
+        final Map<String, String> sortedPatternDefinitions = new TreeMap<>(patternDefinitions != null
+                ? patternDefinitions
+                : Collections.emptyMap());
+        keyBuilder.add(String.valueOf(sortedPatternDefinitions.size()));
+        sortedPatternDefinitions.forEach((name, definition) -> keyBuilder.add(name).add(definition));
+        keyBuilder.add(patternDefinitionsFromClasspath != null ? readClasspathResource(patternDefinitionsFromClasspath) : null);
+        keyBuilder.add(patternDefinitionsFromFile != null ? Files.readAllBytes(patternDefinitionsFromFile.toPath()) : null);
+        return keyBuilder.build();
+    }
+
+    /**
+     * Read a resource the same way as
+     * {@link GrokCompiler#registerPatternFromClasspath(java.lang.String)}.
+     */
+    private static byte[] readClasspathResource(String resource) throws IOException {
+        try (InputStream is = GrokCompiler.class.getResourceAsStream(resource)) {
+            if (is == null) {
+                return new byte[0];
+            }
+            final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            final byte[] buffer = new byte[8192];
+            for (int n; (n = is.read(buffer)) > 0;) {
+                baos.write(buffer, 0, n);
+            }
+            return baos.toByteArray();
+        }
+    }
+
+    private Grok compile() throws IOException {
+        if (lazyPatternDefinitions) {
+            final GrokCompiler lazyGrokCompiler = GrokCompiler.newInstance();
+            lazyGrokCompiler.register(referencedPatternDefinitions(pattern, readPatternDefinitions()));
+            return lazyGrokCompiler.compile(pattern, defaultTimeZone, namedOnly);
+        }
         //---        
         final GrokCompiler grokCompiler = GrokCompiler.newInstance();
         if (registerDefaultPatterns) {
@@ -157,11 +310,161 @@ public class GrokBuilder {
                 grokCompiler.register(reader);
             }
         }
-
         final Grok grok = grokCompiler.compile(pattern, defaultTimeZone, namedOnly);
         return grok;
     }
 
+    /**
+     * Read the pattern definitions of all sources, without registering them.
+     * <p>
+     * The sources are read in the order of {@link #compile()} registering
+     * them, a later definition of a name replaces an earlier one.
+     *
+     * @return the pattern definitions by name
+     * @throws IOException
+     */
+    private Map<String, String> readPatternDefinitions() throws IOException {
+        final Map<String, String> definitions = new HashMap<>();
+        if (registerDefaultPatterns) {
+            readPatternDefinitionsFromClasspath(DEFAULT_PATTERNS_RESOURCE, definitions);
+        }
+        if (patternNameAndDefinition != null && !patternNameAndDefinition.isEmpty()) {
+            readPatternDefinitions(new StringReader(this.patternNameAndDefinition), definitions);
+        }
+        if (patternDefinitions != null) {
+            patternDefinitions.forEach((name, definition) -> putPatternDefinition(name, definition, definitions));
+        }
+        if (patternDefinitionsFromClasspath != null) {
+            readPatternDefinitionsFromClasspath(patternDefinitionsFromClasspath, definitions);
+        }
+        if (patternDefinitionsFromFile != null) {
+            readPatternDefinitions(new FileReader(patternDefinitionsFromFile), definitions);
+        }
+        return definitions;
+    }
+
+    private static void readPatternDefinitionsFromClasspath(String resource, Map<String, String> definitions) throws IOException {
+        final InputStream is = GrokCompiler.class.getResourceAsStream(resource);
+        new Validations(is == null)
+                .throwIllegalArgumentExceptionIf("Grok resource of pattern definitions not found: " + resource);
+        readPatternDefinitions(new InputStreamReader(is, StandardCharsets.UTF_8), definitions);
+    }
+
+    /**
+     * Read the lines of pattern definitions like
+     * {@link GrokCompiler#register(java.io.Reader)}, closing the reader.
+     *
+     * @param reader
+     * @param definitions receiving the pattern definitions by name
+     * @throws IOException
+     */
+    static void readPatternDefinitions(Reader reader, Map<String, String> definitions) throws IOException {
+        try (BufferedReader br = new BufferedReader(reader)) {
+            for (String line; (line = br.readLine()) != null;) {
+                final Matcher m = PATTERN_DEFINITION_LINE.matcher(line);
+                if (m.matches()) {
+                    putPatternDefinition(m.group(1), m.group(2), definitions);
+                }
+            }
+        }
+    }
+
+    /**
+     * Put a pattern definition like
+     * {@link GrokCompiler#register(java.lang.String, java.lang.String)}.
+     */
+    private static void putPatternDefinition(String name, String definition, Map<String, String> definitions) {
+        final String trimmedName = name.trim();
+        final String trimmedDefinition = definition.trim();
+        if (!trimmedName.isEmpty() && !trimmedDefinition.isEmpty()) {
+            definitions.put(trimmedName, trimmedDefinition);
+        }
+    }
+
+    /**
+     * Compute the transitive closure of the pattern definitions referenced by
+     * a pattern.
+     * <p>
+     * References to undefined patterns are skipped, compiling the pattern
+     * reports them.
+     *
+     * @param pattern a grok pattern like "%{WILDFLY_SERVERLOG}"
+     * @param patternDefinitions all pattern definitions
+     * @return the referenced pattern definitions, sorted by name
+     */
+    static Map<String, String> referencedPatternDefinitions(String pattern, Map<String, String> patternDefinitions) {
+        final Map<String, String> referenced = new TreeMap<>();
+        final Deque<String> pending = new ArrayDeque<>();
+        pending.push(pattern);
+        while (!pending.isEmpty()) {
+            final Matcher m = GrokUtils.GROK_PATTERN.matcher(pending.pop());
+            while (m.find()) {
+                final String name = m.group("pattern");
+                final String definition = patternDefinitions.get(name);
+                if (definition != null && !referenced.containsKey(name)) {
+                    referenced.put(name, definition);
+                    pending.push(definition);
+                }
+                final String inlineDefinition = m.group("definition");
+                if (inlineDefinition != null) {
+                    pending.push(inlineDefinition);
+                }
+            }
+        }
+        return referenced;
+    }
+
+    /**
+     * A line of a pattern definition, like in {@link GrokCompiler}.
+     */
+    private static final Pattern PATTERN_DEFINITION_LINE = Pattern.compile("^([A-z0-9_]+)\\s+(.*)$");
+
+    /**
+     * A backreference by group number, not preceded by an escaping backslash.
+     */
+    private static final Pattern NUMBERED_BACKREFERENCE = Pattern.compile("(?<!\\\\)(?:\\\\\\\\)*\\\\[1-9]");
+
+    /**
+     * Rewrite the named groups of some fields of a compiled {@link Grok} into
+     * non-capturing groups.
+     * <p>
+     * The regex engine records fewer groups, and the map of captured values
+     * gets smaller. A group referenced by a backreference like \k&lt;name&gt; is
+     * kept, and no group is dropped if the regex has a numbered backreference
+     * like \1, as dropping a group renumbers the groups following it.
+     *
+     * @param grok
+     * @param dropFields names of the fields to drop
+     * @param zoneId
+     * @return a new {@link Grok}, or the given one if no group is dropped
+     */
+    static Grok demoteGroups(Grok grok, Set<String> dropFields, ZoneId zoneId) {
+        String namedRegex = grok.getNamedRegex();
+        if (NUMBERED_BACKREFERENCE.matcher(namedRegex).find()) {
+            return grok;
+        }
+        final Map<String, String> namedRegexCollection = new HashMap<>(grok.getNamedRegexCollection());
+        boolean demoted = false;
+        for (String groupName : grok.namedGroups) {
+            final String name = grok.getNamedRegexCollectionById(groupName);
+            final String key = name != null && !name.isEmpty() ? name : groupName;
+            if ((dropFields.contains(key) || dropFields.contains(Converter.extractKey(key)))
+                    && !namedRegex.contains("\\k<" + groupName + ">")) {
+                namedRegex = namedRegex.replace("(?<" + groupName + ">", "(?:");
+                namedRegexCollection.remove(groupName);
+                demoted = true;
+            }
+        }
+        if (!demoted) {
+            return grok;
+        }
+        return new Grok(grok.getOriginalGrokPattern(),
+                namedRegex,
+                namedRegexCollection,
+                grok.getPatterns(),
+                zoneId);
+    }
+
     static class Validations {
 
         boolean value;
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.io.IOException;
+import java.util.function.Supplier;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import org.huberb.groktools.GrokIt.GrokMatchResult;
+import org.huberb.groktools.OutputGrokResultFormatters.IOutputGrokResultFormatter;
+
+/**
+ * Emit JDK Flight Recorder events of matching, and formatting lines.
+ * <p>
+ * The events are recorded only if a recording enables them, e.g. by
+ * <code>-XX:StartFlightRecording</code>, or by jcmd. {@link GrokLineMatched},
+ * and {@link GrokRecordFormatted} are emitted per line, thus are disabled by
+ * default. {@link GrokSlowMatch} is enabled by default, and recorded only if
+ * matching a line exceeds its threshold.
+ * <p>
+ * The classes of the events are loaded only if an instance is created, thus
+ * matching without events runs on a jvm lacking the package
+ * <code>jdk.jfr</code>, too.
+ *
+ * @author berni3
+ */
+class GrokEvents {
+
+    static final String CATEGORY = "groktools";
+
+    /**
+     * Decide if the jvm provides JDK Flight Recorder.
+     *
+     * @return
+     */
+    static boolean isAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, GrokEvents.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Create an setup.
+     *
+     * @return
+     */
+    static GrokEvents create() {
+        new GrokBuilder.Validations(!isAvailable())
+                .throwIllegalArgumentExceptionIf("JDK Flight Recorder events need a jvm providing jdk.jfr");
+        return new GrokEvents();
+    }
+
+    private GrokEvents() {
+    }
+
+    /**
+     * Match a line, emitting the events of matching.
+     *
+     * @param grok
+     * @param line
+     * @param matching matching the line
+     * @return the result of matching
+     */
+    GrokMatchResult match(Grok grok, CharSequence line, Supplier<GrokMatchResult> matching) {
+        final GrokLineMatched lineMatched = new GrokLineMatched();
+        final GrokSlowMatch slowMatch = new GrokSlowMatch();
+        lineMatched.begin();
+        slowMatch.begin();
+        final GrokMatchResult grokResult = matching.get();
+        lineMatched.end();
+        slowMatch.end();
+        if (lineMatched.shouldCommit()) {
+            lineMatched.pattern = patternOf(grok, grokResult);
+            lineMatched.lineLength = line.length();
+            lineMatched.matched = !grokResult.m.isEmpty();
+            lineMatched.commit();
+        }
+        if (slowMatch.shouldCommit()) {
+            slowMatch.pattern = patternOf(grok, grokResult);
+            slowMatch.lineLength = line.length();
+            slowMatch.matched = !grokResult.m.isEmpty();
+            slowMatch.commit();
+        }
+        return grokResult;
+    }
+
+    /**
+     * Name of the pattern of a match.
+     * <p>
+     * If matching several patterns the name of the matching one, otherwise
+     * the grok pattern.
+     */
+    static String patternOf(Grok grok, GrokMatchResult grokResult) {
+        final Object pattern = grokResult.m.get(MultiPatternMatcher.PATTERN_FIELD);
+        return pattern instanceof String ? (String) pattern : grok.getOriginalGrokPattern();
+    }
+
+    /**
+     * Wrap a formatter, emitting an event per record output.
+     *
+     * @param outputGrokResultFormatter
+     * @return
+     */
+    IOutputGrokResultFormatter eventFormatter(IOutputGrokResultFormatter outputGrokResultFormatter) {
+        return new EventFormatter(outputGrokResultFormatter);
+    }
+
+    @Name("org.huberb.groktools.GrokLineMatched")
+    @Label("Grok Line Matched")
+    @Description("Matching a line by a grok pattern")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static class GrokLineMatched extends Event {
+
+        @Label("Pattern")
+        String pattern;
+        @Label("Line Length")
+        int lineLength;
+        @Label("Matched")
+        boolean matched;
+    }
+
+    @Name("org.huberb.groktools.GrokSlowMatch")
+    @Label("Grok Slow Match")
+    @Description("Matching a line by a grok pattern, exceeding the threshold")
+    @Category(CATEGORY)
+    @Threshold("10 ms")
+    @StackTrace(false)
+    static class GrokSlowMatch extends Event {
+
+        @Label("Pattern")
+        String pattern;
+        @Label("Line Length")
+        int lineLength;
+        @Label("Matched")
+        boolean matched;
+    }
+
+    @Name("org.huberb.groktools.GrokRecordFormatted")
+    @Label("Grok Record Formatted")
+    @Description("Formatting, and writing a match result")
+    @Category(CATEGORY)
+    @Enabled(false)
+    @StackTrace(false)
+    static class GrokRecordFormatted extends Event {
+
+        @Label("Line Number")
+        int lineno;
+        @Label("Field Count")
+        int fieldCount;
+    }
+
+    /**
+     * Emit a {@link GrokRecordFormatted} per record output.
+     */
+    static class EventFormatter implements IOutputGrokResultFormatter {
+
+        private final IOutputGrokResultFormatter outputGrokResultFormatter;
+
+        EventFormatter(IOutputGrokResultFormatter outputGrokResultFormatter) {
+            this.outputGrokResultFormatter = outputGrokResultFormatter;
+        }
+
+        @Override
+        public void start() {
+            this.outputGrokResultFormatter.start();
+        }
+
+        @Override
+        public void output(int readLineCount, GrokMatchResult grokResult) {
+            final GrokRecordFormatted recordFormatted = new GrokRecordFormatted();
+            recordFormatted.begin();
+            this.outputGrokResultFormatter.output(readLineCount, grokResult);
+            commit(recordFormatted, readLineCount, grokResult);
+        }
+
+        @Override
+        public void output(String file, int readLineCount, GrokMatchResult grokResult) {
+            final GrokRecordFormatted recordFormatted = new GrokRecordFormatted();
+            recordFormatted.begin();
+            this.outputGrokResultFormatter.output(file, readLineCount, grokResult);
+            commit(recordFormatted, readLineCount, grokResult);
+        }
+
+        private static void commit(GrokRecordFormatted recordFormatted, int readLineCount, GrokMatchResult grokResult) {
+            recordFormatted.end();
+            if (recordFormatted.shouldCommit()) {
+                recordFormatted.lineno = readLineCount;
+                recordFormatted.fieldCount = grokResult.m != null ? grokResult.m.size() : 0;
+                recordFormatted.commit();
+            }
+        }
+
+        @Override
+        public void end() {
+            this.outputGrokResultFormatter.end();
+        }
+
+        @Override
+        public void resume(long outputRecordCount) {
+            this.outputGrokResultFormatter.resume(outputRecordCount);
+        }
+
+        @Override
+        public void flush() {
+            this.outputGrokResultFormatter.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.outputGrokResultFormatter.close();
+        }
+    }
+}
@@ -18,8 +18,16 @@ package org.huberb.groktools;
 import io.krakens.grok.api.Grok;
 import io.krakens.grok.api.GrokCompiler;
 import io.krakens.grok.api.Match;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.Objects;
+import org.huberb.groktools.MatchTimeout.DeadlineCharSequence;
+import org.huberb.groktools.MatchTimeout.MatchTimeoutException;
+import org.huberb.groktools.RegexEngines.IRegexEngine;
+import org.huberb.groktools.RegexEngines.RegexEngineMode;
+import org.huberb.groktools.RunStatistics.LatencyHistogram;
 
 /**
  * Mediator for setting up {@link GrokCompiler}, and {@link Grok}.
@@ -28,21 +36,246 @@ import java.util.Objects;
  */
 class GrokIt {
 
+    /**
+     * Result of a non matching line, like {@link Match#EMPTY}.
+     */
+    static final GrokMatchResult NO_MATCH = new GrokMatchResult("", 0, 0, Collections.emptyMap());
+
+    private final LiteralPrefilter literalPrefilter;
+    private final MultiPatternMatcher multiPatternMatcher;
+    private final MultiPatternMatcher.Ordering ordering;
+    private final Set<String> fields;
+    private final MatchTimeout matchTimeout;
+    private final IRegexEngine regexEngine;
+    private final RunStatistics runStatistics;
+    private final LatencyHistogram matchLatency;
+    private final GrokEvents grokEvents;
+    private GrokMatcher grokMatcher;
+
     public GrokIt() {
+        this(new Options());
+    }
+
+    /**
+     * Create an setup.
+     * <p>
+     * Using a {@link MultiPatternMatcher} the {@link Grok} passed to
+     * {@link #match(io.krakens.grok.api.Grok, java.lang.CharSequence)} is
+     * ignored. The adapted order of trying the patterns is kept by this
+     * instance, thus an instance shall be used by a single thread only.
+     *
+     * @param options options of matching
+     */
+    public GrokIt(Options options) {
+        new GrokBuilder.Validations()
+                .isNull(options)
+                .throwIllegalArgumentExceptionIf("Options are null");
+        this.runStatistics = options.runStatistics;
+        this.matchLatency = options.runStatistics != null ? options.runStatistics.newMatchLatency() : null;
+        this.grokEvents = options.grokEvents;
+        this.literalPrefilter = options.literalPrefilter;
+        this.multiPatternMatcher = options.multiPatternMatcher;
+        this.fields = options.fields;
+        this.matchTimeout = options.matchTimeout;
+        this.regexEngine = options.regexEngine != null ? options.regexEngine : RegexEngineMode.jdk.engine();
+        this.ordering = this.multiPatternMatcher != null ? this.multiPatternMatcher.createOrdering(this.fields, this.regexEngine) : null;
+    }
+
+    /**
+     * Options of matching lines by a {@link GrokIt}, all unset by default.
+     * <p>
+     * The same options may be used by several {@link GrokIt}, one per thread,
+     * thus options shall not be modified once used.
+     */
+    public static class Options {
+
+        private LiteralPrefilter literalPrefilter;
+        private MultiPatternMatcher multiPatternMatcher;
+        private Set<String> fields;
+        private MatchTimeout matchTimeout;
+        private IRegexEngine regexEngine;
+        private RunStatistics runStatistics;
+        private GrokEvents grokEvents;
+
+        /**
+         * Reject lines by a {@link LiteralPrefilter} before matching.
+         *
+         * @param literalPrefilter prefilter, or null for matching all lines
+         * @return
+         */
+        public Options literalPrefilter(LiteralPrefilter literalPrefilter) {
+            this.literalPrefilter = literalPrefilter;
+            return this;
+        }
+
+        /**
+         * Match several patterns by a {@link MultiPatternMatcher}.
+         *
+         * @param multiPatternMatcher matcher of several patterns, or null for
+         * matching a single pattern
+         * @return
+         */
+        public Options multiPatternMatcher(MultiPatternMatcher multiPatternMatcher) {
+            this.multiPatternMatcher = multiPatternMatcher;
+            return this;
+        }
+
+        /**
+         * Capture only some fields.
+         *
+         * @param fields fields to capture, or null for all fields
+         * @return
+         */
+        public Options fields(Set<String> fields) {
+            this.fields = fields;
+            return this;
+        }
+
+        /**
+         * Abort the match of a line by a {@link MatchTimeout}.
+         *
+         * @param matchTimeout timeout of matching a line, or null for no
+         * timeout
+         * @return
+         */
+        public Options matchTimeout(MatchTimeout matchTimeout) {
+            this.matchTimeout = matchTimeout;
+            return this;
+        }
+
+        /**
+         * Match by a regex engine.
+         * <p>
+         * A {@link Grok} not supported by {@link GrokMatcher} is matched by
+         * {@link Grok#match(java.lang.CharSequence)}, whatever the engine.
+         *
+         * @param regexEngine engine matching the regex of a grok, or null for
+         * {@link RegexEngineMode#jdk}
+         * @return
+         */
+        public Options regexEngine(IRegexEngine regexEngine) {
+            this.regexEngine = regexEngine;
+            return this;
+        }
+
+        /**
+         * Record the latency of matching each line.
+         *
+         * @param runStatistics statistics of the run, or null for no
+         * statistics
+         * @return
+         */
+        public Options runStatistics(RunStatistics runStatistics) {
+            this.runStatistics = runStatistics;
+            return this;
+        }
+
+        /**
+         * Emit JDK Flight Recorder events of matching each line.
+         *
+         * @param grokEvents emitter of events, or null for no events
+         * @return
+         */
+        public Options grokEvents(GrokEvents grokEvents) {
+            this.grokEvents = grokEvents;
+            return this;
+        }
+
+        LiteralPrefilter literalPrefilter() {
+            return this.literalPrefilter;
+        }
+
+        MultiPatternMatcher multiPatternMatcher() {
+            return this.multiPatternMatcher;
+        }
+
+        Set<String> fields() {
+            return this.fields;
+        }
+
+        RunStatistics runStatistics() {
+            return this.runStatistics;
+        }
     }
 
     /**
      * Match a line.
+     * <p>
+     * A line exceeding the {@link MatchTimeout} is treated as non matching.
      *
      * @param grok
      * @param line
      * @return GrokMatchResult
      */
-    public GrokMatchResult match(Grok grok, String line) {
+    public GrokMatchResult match(Grok grok, CharSequence line) {
         Objects.requireNonNull(grok, "Grok is null");
         Objects.requireNonNull(line, "Line is null");
+        if (this.grokEvents == null) {
+            return matchRecorded(grok, line);
+        }
+        return this.grokEvents.match(grok, line, () -> matchRecorded(grok, line));
+    }
+
+    private GrokMatchResult matchRecorded(Grok grok, CharSequence line) {
+        if (this.runStatistics == null) {
+            return matchWithTimeout(grok, line);
+        }
+        final long t0 = System.nanoTime();
+        final GrokMatchResult grokResult = matchWithTimeout(grok, line);
+        this.runStatistics.recordMatch(this.matchLatency, !grokResult.m.isEmpty(), System.nanoTime() - t0);
+        return grokResult;
+    }
+
+    private GrokMatchResult matchWithTimeout(Grok grok, CharSequence line) {
+        if (this.matchTimeout == null) {
+            return matchLine(grok, line);
+        }
+        final DeadlineCharSequence deadlineLine = this.matchTimeout.deadline(line);
+        try {
+            final GrokMatchResult grokResult = matchLine(grok, deadlineLine);
+            if (grokResult.subject != deadlineLine) {
+                return grokResult;
+            }
+            return new GrokMatchResult(line, grokResult.start, grokResult.end, grokResult.m);
+        } catch (MatchTimeoutException ex) {
+            this.matchTimeout.timedOut(line);
+            return NO_MATCH;
+        } finally {
+            deadlineLine.disarm();
+        }
+    }
+
+    private GrokMatchResult matchLine(Grok grok, CharSequence line) {
+        if (this.multiPatternMatcher != null) {
+            return this.multiPatternMatcher.match(this.ordering, line);
+        }
+        if (this.literalPrefilter != null) {
+            if (!this.literalPrefilter.mayMatch(line)) {
+                // the same as matching a non matching line
+                return NO_MATCH;
+            }
+            final GrokMatchResult grokResult = matchRegex(grok, line);
+            if (grokResult.m.isEmpty()) {
+                this.literalPrefilter.countPassedNotMatched();
+            }
+            return grokResult;
+        }
+        return matchRegex(grok, line);
+    }
+
+    private GrokMatchResult matchRegex(Grok grok, CharSequence line) {
+        if (GrokMatcher.isSupported(grok)) {
+            final GrokMatcher grokMatcher = grokMatcher(grok);
+            if (!grokMatcher.find(line)) {
+                return NO_MATCH;
+            }
+            return new GrokMatchResult(
+                    line,
+                    grokMatcher.start(), grokMatcher.end(),
+                    grokMatcher.capture(line));
+        }
         final Match match = grok.match(line);
-        final Map<String, Object> mc = match.capture();
+        final Map<String, Object> mc = project(match.capture());
         //Map<String, Object> cf = match.captureFlattened();
         final GrokMatchResult grokResult = new GrokMatchResult(
                 match.getSubject(),
@@ -51,6 +284,29 @@ class GrokIt {
         return grokResult;
     }
 
+    private Map<String, Object> project(Map<String, Object> mc) {
+        if (this.fields == null || mc.isEmpty()) {
+            return mc;
+        }
+        final Map<String, Object> m = new HashMap<>();
+        for (Map.Entry<String, Object> e : mc.entrySet()) {
+            if (this.fields.contains(e.getKey())) {
+                m.put(e.getKey(), e.getValue());
+            }
+        }
+        return m;
+    }
+
+    /**
+     * Reuse the {@link GrokMatcher} of the last matched {@link Grok}.
+     */
+    private GrokMatcher grokMatcher(Grok grok) {
+        if (this.grokMatcher == null || this.grokMatcher.grok() != grok) {
+            this.grokMatcher = new GrokMatcher(grok, this.fields, this.regexEngine);
+        }
+        return this.grokMatcher;
+    }
+
     /**
      * Retrieve pattern definitions.
      *
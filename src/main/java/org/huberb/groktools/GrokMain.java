@@ -16,30 +16,54 @@
 package org.huberb.groktools;
 
 import io.krakens.grok.api.Grok;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Reader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import javax.management.JMException;
+import org.huberb.groktools.ColumnarFormat.ColumnarCompression;
 import org.huberb.groktools.GrokIt.GrokMatchResult;
 import org.huberb.groktools.GrokMain.Executors.ExecuteDiscover;
 import org.huberb.groktools.GrokMain.Executors.ExecuteMatching;
 import org.huberb.groktools.GrokMain.Executors.ExecuteShowPatterndefinitions;
 import org.huberb.groktools.GrokMain.InputLineProcessor.MatchingLineMode;
+import org.huberb.groktools.InputLineSources.BufferedReaderLineSource;
+import org.huberb.groktools.InputLineSources.FollowingFileLineSource;
+import org.huberb.groktools.InputLineSources.ILineSource;
+import org.huberb.groktools.InputLineSources.InputMode;
+import org.huberb.groktools.InputLineSources.MappedFileLineSource;
 import org.huberb.groktools.MatchGatherOutput.Result;
 import org.huberb.groktools.MatchGatherOutput.Wrapper;
 import org.huberb.groktools.OutputGrokResultFormatters.IOutputGrokResultFormatter;
+import org.huberb.groktools.OutputGrokResultFormatters.OutputGrokResultFormatterAsColumnar;
+import org.huberb.groktools.OutputGrokResultFormatters.OutputGrokResultFormatterAsCsv;
+import org.huberb.groktools.OutputGrokResultFormatters.OutputGrokResultFormatterAsCsvColumns;
 import org.huberb.groktools.OutputGrokResultFormatters.OutputMatchResultMode;
+import org.huberb.groktools.RegexEngines.LinearRegexEngine;
+import org.huberb.groktools.RegexEngines.RegexEngineMode;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Model.CommandSpec;
@@ -74,16 +98,91 @@ public class GrokMain implements Callable<Integer> {
     private SystemErrOutPrinter systemErrOutPrinter;
 
     @Option(names = {"-f", "--file"},
-            description = "read from file, if not specified read from stdin")
-    private File inputFile;
+            arity = "1..*",
+            description = "read from files, or glob patterns, if not specified read from stdin")
+    private List<String> inputFiles;
+    @Option(names = {"--input-mode"},
+            defaultValue = "reader",
+            description = "read input lines; valid values: \"${COMPLETION-CANDIDATES}\"; "
+            + "mmap maps the file into memory, and is used only if reading from file")
+    private InputMode inputMode;
+    @Option(names = {"--threads"},
+            defaultValue = "1",
+            description = "match lines of a file, or of several files using this number of threads; "
+            + "a single gzip file is matched by a single thread")
+    private int threads = 1;
+    @Option(names = {"--pipelined"},
+            description = "read, match, and output lines by separate threads; "
+            + "not combined with several threads, or several files")
+    private boolean pipelined;
+    @Option(names = {"--pipeline-batch-size"},
+            defaultValue = "1024",
+            description = "number of lines of a batch passed between pipelined threads")
+    private int pipelineBatchSize = PipelinedInputLineProcessor.DEFAULT_BATCH_SIZE;
+    @Option(names = {"--pipeline-queue-depth"},
+            defaultValue = "4",
+            description = "number of batches passed between pipelined threads")
+    private int pipelineQueueDepth = PipelinedInputLineProcessor.DEFAULT_QUEUE_DEPTH;
+    @Option(names = {"--follow"},
+            description = "follow a file like \"tail -F\", match lines appended to the file until stopped")
+    private boolean follow;
+    @Option(names = {"--follow-poll-millis"},
+            defaultValue = "250",
+            description = "milliseconds to wait before polling a followed file again")
+    private long followPollMillis = FollowingFileLineSource.DEFAULT_POLL_MILLIS;
+    @Option(names = {"--checkpoint-file"},
+            description = "persist the progress of matching a file, and resume from it; "
+            + "output to --output-file is exactly once, output to stdout at least once; "
+            + "not combined with --follow, --threads, --pipelined, or --input-mode=mmap")
+    private File checkpointFile;
+    @Option(names = {"--checkpoint-interval-lines"},
+            defaultValue = "100000",
+            description = "persist the progress after reading this number of lines")
+    private int checkpointIntervalLines = CheckpointingInputLineProcessor.DEFAULT_CHECKPOINT_INTERVAL_LINES;
     @Option(names = {"--read-max-lines-count"},
             defaultValue = "-1",
             description = "read maximum number lines")
     private int readMaxLinesCount = -1;
 
     @Option(names = {"-p", "--match-pattern"},
-            description = "grok pattern")
-    private String matchPattern;
+            arity = "1..*",
+            description = "grok patterns; several patterns are tried in the order of their hit counts, "
+            + "the name of the matching pattern is output as field \"pattern\"")
+    private List<String> matchPatterns;
+    @Option(names = {"--prefilter"},
+            description = "reject lines not containing the literals every match must contain, "
+            + "before matching; print prefilter statistics to stderr")
+    private boolean prefilter;
+    @Option(names = {"--match-timeout-micros"},
+            defaultValue = "0",
+            description = "abort matching a line after this number of microseconds, "
+            + "and treat it as non matching; 0 for no timeout")
+    private long matchTimeoutMicros;
+    @Option(names = {"--match-timeout-file"},
+            description = "write the lines aborted by the match timeout to this file")
+    private File matchTimeoutFile;
+    @Option(names = {"--regex-engine"},
+            defaultValue = "jdk",
+            description = "match the regex of a pattern; valid values: \"${COMPLETION-CANDIDATES}\"; "
+            + "linear matches in time linear to the line length, "
+            + "falling back to jdk for regex constructs like backreferences, and atomic groups matching in several ways")
+    private RegexEngineMode regexEngineMode;
+    @Option(names = {"--stats"},
+            description = "print run statistics to stderr: lines read, and matched, lines/s, MB/s, "
+            + "match latency percentiles, lines timed out, and the time per stage read, match, and format")
+    private boolean stats;
+    @Option(names = {"--stats-interval-seconds"},
+            defaultValue = "0",
+            description = "print a progress line to stderr every this number of seconds, if printing run statistics; "
+            + "0 for no progress lines")
+    private long statsIntervalSeconds;
+    @Option(names = {"--jmx"},
+            description = "expose the live counters of the run as MBean " + RunStatistics.OBJECT_NAME)
+    private boolean jmx;
+    @Option(names = {"--jfr-events"},
+            description = "emit JDK Flight Recorder events of matching, and formatting lines, "
+            + "if enabled by a recording")
+    private boolean jfrEvents;
 
     @Option(names = "--no-register-default-patterns",
             negatable = true,
@@ -95,9 +194,25 @@ public class GrokMain implements Callable<Integer> {
             description = "Provide only named matches. True by default.")
     private boolean namedOnly = true;
 
+    @Option(names = {"--drop-fields"},
+            split = ",",
+            defaultValue = "UNWANTED",
+            description = "compile the groups of these comma separated fields as non-capturing groups")
+    private List<String> dropFields;
+
     @Option(names = {"--pattern-definitions-file"},
             description = "read pattern definition from a file")
     private File patternDefinitionsFile;
+
+    @Option(names = {"--pattern-cache-dir"},
+            description = "cache compiled patterns in this directory, "
+            + "skipping the expansion of pattern definitions on later runs")
+    private File patternCacheDir;
+
+    @Option(names = {"--lazy-pattern-definitions"},
+            description = "register only the pattern definitions referenced by the patterns; "
+            + "not used for discovering")
+    private boolean lazyPatternDefinitions;
     @Option(names = {"--pattern-definitions-classpath"},
             description = "read pattern definition from classpath")
     private String patternDefinitionsClasspath;
@@ -125,6 +240,50 @@ public class GrokMain implements Callable<Integer> {
             description = "output match results; valid values: \"${COMPLETION-CANDIDATES}\"")
     private OutputMatchResultMode outputMatchResultMode;
 
+    @Option(names = {"--columnar-row-group-size"},
+            defaultValue = "4096",
+            description = "number of records of a row group of output mode asColumnar")
+    private int columnarRowGroupSize = OutputGrokResultFormatterAsColumnar.DEFAULT_ROW_GROUP_SIZE;
+
+    @Option(names = {"--columnar-compression"},
+            defaultValue = "deflate",
+            description = "compression of the row groups of output mode asColumnar; valid values: \"${COMPLETION-CANDIDATES}\"")
+    private ColumnarCompression columnarCompression = ColumnarCompression.deflate;
+
+    @Option(names = {"--output-file"},
+            description = "write the output to this file by an output writer thread; "
+            + "row groups of output mode asColumnar as bytes")
+    private File outputFile;
+
+    @Option(names = {"--async-output"},
+            description = "write the output to stdout by an output writer thread")
+    private boolean asyncOutput;
+
+    @Option(names = {"--output-buffer-size"},
+            defaultValue = "1048576",
+            description = "number of characters buffered for the output writer thread")
+    private int outputBufferSize = AsyncOutputWriter.DEFAULT_BUFFER_SIZE;
+
+    @Option(names = {"--output-flush-chars"},
+            defaultValue = "0",
+            description = "flush the output after this number of characters, 0 flushes only full buffer blocks")
+    private long outputFlushChars;
+
+    @Option(names = {"--output-flush-records"},
+            defaultValue = "0",
+            description = "flush the output after this number of records, 0 disables it")
+    private long outputFlushRecords;
+
+    @Option(names = {"--output-flush-millis"},
+            defaultValue = "1000",
+            description = "flush the output after this number of milliseconds, 0 disables it")
+    private long outputFlushMillis = 1000L;
+
+    @Option(names = {"--fields"},
+            split = ",",
+            description = "extract, and output only these comma separated fields, in this order")
+    private List<String> fields;
+
     /**
      * Picocli entry point.
      *
@@ -143,9 +302,11 @@ public class GrokMain implements Callable<Integer> {
             // setup Grok using a GrokBuilder
             final GrokBuilder grokBuilder = new GrokBuilder()
                     .registerDefaultPatterns(registerDefaultPatterns)
-                    .namedOnly(namedOnly);
-            if (this.matchPattern != null) {
-                grokBuilder.pattern(this.matchPattern);
+                    .namedOnly(namedOnly)
+                    .dropFields(dropFields);
+            final List<String> matchPatterns = Optional.ofNullable(this.matchPatterns).orElse(Collections.emptyList());
+            if (!matchPatterns.isEmpty()) {
+                grokBuilder.pattern(matchPatterns.get(0));
             } else {
                 // Hack: GrokCompiler wants a pattern anyway
                 grokBuilder.pattern(".*");
@@ -175,15 +336,24 @@ public class GrokMain implements Callable<Integer> {
                 );
                 grokBuilder.patternDefinitionsFromFile(patternDefinitionsFile);
             }
+            if (patternCacheDir != null) {
+                grokBuilder.patternCacheDir(patternCacheDir);
+            }
+            // discovering tries all pattern definitions
+            final boolean discover = this.discoverInputLine != null && this.discoverInputLine.length() > 0;
+            grokBuilder.lazyPatternDefinitions(lazyPatternDefinitions && !discover);
             //---
             // execute commands
             final Grok grok = grokBuilder.build();
             if (showPatternDefinitions) {
                 new ExecuteShowPatterndefinitions(this).execute(grok);
-            } else if (this.discoverInputLine != null && this.discoverInputLine.length() > 0) {
+            } else if (discover) {
                 new ExecuteDiscover(this).execute(grok);
             } else {
-                new ExecuteMatching(this).execute(grok);
+                final MultiPatternMatcher multiPatternMatcher = matchPatterns.size() > 1
+                        ? createMultiPatternMatcher(grokBuilder, matchPatterns)
+                        : null;
+                new ExecuteMatching(this, multiPatternMatcher).execute(grok);
             }
             return 0;
         } finally {
@@ -192,6 +362,18 @@ public class GrokMain implements Callable<Integer> {
         }
     }
 
+    /**
+     * Create a {@link MultiPatternMatcher}, compiling each pattern by the
+     * given {@link GrokBuilder}.
+     */
+    static MultiPatternMatcher createMultiPatternMatcher(GrokBuilder grokBuilder, List<String> matchPatterns) throws IOException {
+        final List<Grok> groks = new ArrayList<>();
+        for (String matchPattern : matchPatterns) {
+            groks.add(grokBuilder.pattern(matchPattern).build());
+        }
+        return new MultiPatternMatcher(matchPatterns, groks);
+    }
+
     static class Executors {
 
         static interface Executor {
@@ -235,11 +417,13 @@ public class GrokMain implements Callable<Integer> {
                         + "namedRegexCollection: %s%n"
                         + "originalGrokPattern: %s%n"
                         + "patterns: %s%n"
+                        + "patterns size: %d%n"
                         + "savedPattern: %s%n",
                         namedRegex,
                         f.apply(namedRegexCollection),
                         originalGrokPattern,
                         f.apply(patternsMap),
+                        patternsMap.size(),
                         savedPattern
                 );
                 grokMain.systemErrOutPrinter.printOut(formatted);
@@ -251,10 +435,26 @@ public class GrokMain implements Callable<Integer> {
          */
         static class ExecuteMatching implements Executor {
 
+            static final long STOP_FOLLOWING_TIMEOUT_MILLIS = 5000L;
+
             private final GrokMain grokMain;
+            private final MultiPatternMatcher multiPatternMatcher;
+            private OutputStream columnarOutputStream;
 
             ExecuteMatching(GrokMain grokMain) {
+                this(grokMain, null);
+            }
+
+            /**
+             * Create an setup.
+             *
+             * @param grokMain
+             * @param multiPatternMatcher matcher of several patterns, or null
+             * for matching a single pattern
+             */
+            ExecuteMatching(GrokMain grokMain, MultiPatternMatcher multiPatternMatcher) {
                 this.grokMain = grokMain;
+                this.multiPatternMatcher = multiPatternMatcher;
             }
 
             /**
@@ -264,22 +464,419 @@ public class GrokMain implements Callable<Integer> {
              * @throws IOException
              */
             public void execute(Grok grok) throws IOException {
-                final GrokIt grokIt = new GrokIt();
+                final List<String> fields = grokMain.fields;
+                if (fields != null) {
+                    validateFields(grok, fields);
+                }
+                if (grokMain.regexEngineMode == RegexEngineMode.linear) {
+                    reportRegexEngineFallbacks(grok);
+                }
+                if (grokMain.outputMatchResultMode == OutputMatchResultMode.asColumnar && grokMain.outputFile != null) {
+                    // row groups are written as bytes, not as base64 text; pw is for flushing only
+                    try (final OutputStream os = createColumnarOutputStream();
+                            final PrintWriter pw = new PrintWriter(new OutputStreamWriter(os, StandardCharsets.UTF_8))) {
+                        this.columnarOutputStream = os;
+                        execute(grok, pw, fields, null);
+                    } finally {
+                        this.columnarOutputStream = null;
+                    }
+                    return;
+                }
+                try (final AsyncOutputWriter asyncOutputWriter = createAsyncOutputWriter()) {
+                    final PrintWriter pw = asyncOutputWriter != null
+                            ? new PrintWriter(asyncOutputWriter)
+                            : grokMain.spec.commandLine().getOut();
+                    execute(grok, pw, fields, asyncOutputWriter);
+                }
+            }
 
-                try (final Reader logReader = new ReaderFactory(grokMain.inputFile).createUtf8Reader();
-                        final BufferedReader br = new BufferedReader(logReader)) {
-                    //---
-                    final PrintWriter pw = grokMain.spec.commandLine().getOut();
-                    final IOutputGrokResultFormatter outputGrokResultConverter
-                            = OutputGrokResultFormatters.createOutputGrokResultConverter(grokMain.outputMatchResultMode, pw);
+            /**
+             * Open the output file of the row groups of
+             * {@link OutputMatchResultMode#asColumnar}.
+             *
+             * @return
+             * @throws IOException
+             */
+            OutputStream createColumnarOutputStream() throws IOException {
+                // resuming from a checkpoint continues the output of the previous run
+                final boolean append = grokMain.checkpointFile != null && grokMain.checkpointFile.exists();
+                return new BufferedOutputStream(Files.newOutputStream(grokMain.outputFile.toPath(),
+                        StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE,
+                        append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING),
+                        1 << 16);
+            }
+
+            /**
+             * Create the output writer thread, if enabled.
+             *
+             * @return the output writer, or null
+             * @throws IOException
+             */
+            AsyncOutputWriter createAsyncOutputWriter() throws IOException {
+                if (grokMain.outputFile == null && !grokMain.asyncOutput) {
+                    return null;
+                }
+                final AsyncOutputWriter.FlushPolicy flushPolicy = new AsyncOutputWriter.FlushPolicy(
+                        grokMain.outputFlushChars,
+                        grokMain.outputFlushRecords,
+                        grokMain.outputFlushMillis);
+                final AsyncOutputWriter.ITarget target;
+                if (grokMain.outputFile != null) {
+                    // resuming from a checkpoint continues the output of the previous run
+                    final boolean append = grokMain.checkpointFile != null && grokMain.checkpointFile.exists();
+                    target = AsyncOutputWriter.fileTarget(grokMain.outputFile, append);
+                } else {
+                    target = AsyncOutputWriter.writerTarget(grokMain.spec.commandLine().getOut());
+                }
+                return new AsyncOutputWriter(target, grokMain.outputBufferSize, flushPolicy);
+            }
+
+            /**
+             * Match lines, writing the output to pw.
+             *
+             * @param grok
+             * @param pw
+             * @param fields
+             * @param asyncOutputWriter the output writer thread of pw, or null
+             * @throws IOException
+             */
+            void execute(Grok grok, PrintWriter pw, List<String> fields, AsyncOutputWriter asyncOutputWriter) throws IOException {
+                final RunStatistics runStatistics = createRunStatistics();
+                final GrokEvents grokEvents = grokMain.jfrEvents ? GrokEvents.create() : null;
+                IOutputGrokResultFormatter outputGrokResultConverter = createOutputGrokResultConverter(grok, pw, fields);
+                if (asyncOutputWriter != null) {
+                    outputGrokResultConverter = asyncOutputWriter.recordCountingFormatter(outputGrokResultConverter);
+                }
+                if (grokEvents != null) {
+                    outputGrokResultConverter = grokEvents.eventFormatter(outputGrokResultConverter);
+                }
+                if (runStatistics != null) {
+                    outputGrokResultConverter = runStatistics.timingFormatter(outputGrokResultConverter);
+                }
+                // several patterns are prefiltered by the multi pattern matcher anyway
+                final LiteralPrefilter literalPrefilter = grokMain.prefilter && multiPatternMatcher == null
+                        ? LiteralPrefilter.of(grok)
+                        : null;
+                try (final MatchTimeout matchTimeout = createMatchTimeout()) {
+                    if (runStatistics != null && matchTimeout != null) {
+                        runStatistics.registerMatchTimeout(matchTimeout);
+                    }
+                    try {
+                        final GrokIt.Options grokItOptions = new GrokIt.Options()
+                                .literalPrefilter(literalPrefilter)
+                                .multiPatternMatcher(multiPatternMatcher)
+                                .fields(fieldsToExtract())
+                                .matchTimeout(matchTimeout)
+                                .regexEngine(grokMain.regexEngineMode.engine())
+                                .runStatistics(runStatistics)
+                                .grokEvents(grokEvents);
+                        execute(grok, pw, outputGrokResultConverter, grokItOptions);
+                    } finally {
+                        if (runStatistics != null) {
+                            runStatistics.close();
+                        }
+                    }
+                }
+                if (runStatistics != null && grokMain.stats) {
+                    grokMain.systemErrOutPrinter.printErr(runStatistics.formatStatistics());
+                }
+                if (literalPrefilter != null) {
+                    grokMain.systemErrOutPrinter.printErr(literalPrefilter.formatStatistics());
+                }
+                if (multiPatternMatcher != null) {
+                    grokMain.systemErrOutPrinter.printErr(multiPatternMatcher.formatStatistics());
+                }
+            }
+
+            /**
+             * Report the patterns not matched in linear time.
+             *
+             * @param grok
+             */
+            void reportRegexEngineFallbacks(Grok grok) {
+                final List<Grok> groks = multiPatternMatcher != null
+                        ? multiPatternMatcher.groks()
+                        : Collections.singletonList(grok);
+                for (Grok g : groks) {
+                    if (!GrokMatcher.isSupported(g) || !LinearRegexEngine.isLinear(g.getNamedRegex())) {
+                        grokMain.systemErrOutPrinter.printErr(String.format(
+                                "regex engine linear falls back to jdk for pattern %s%n", g.getOriginalGrokPattern()));
+                    }
+                }
+            }
+
+            /**
+             * Create the formatter of the match results.
+             * <p>
+             * The columns of {@link OutputMatchResultMode#asCsvColumns} are the
+             * fields to extract, or the fields captured by the patterns. The
+             * columns of {@link OutputMatchResultMode#asCsv} are the fields
+             * captured by the patterns too if several patterns are matched, as
+             * the records of the patterns differ in their keys. The
+             * row groups of {@link OutputMatchResultMode#asColumnar} are set up
+             * by options, and written as bytes to the output file if any.
+             *
+             * @param grok
+             * @param pw
+             * @param fields
+             * @return
+             */
+            IOutputGrokResultFormatter createOutputGrokResultConverter(Grok grok, PrintWriter pw, List<String> fields) {
+                if (grokMain.outputMatchResultMode == OutputMatchResultMode.asCsvColumns) {
+                    final List<String> inputFiles = Optional.ofNullable(grokMain.inputFiles).orElse(Collections.emptyList());
+                    return new OutputGrokResultFormatterAsCsvColumns(pw,
+                            fields != null ? fields : columnsOf(grok),
+                            isMultipleFiles(inputFiles));
+                }
+                if (grokMain.outputMatchResultMode == OutputMatchResultMode.asCsv && fields == null && multiPatternMatcher != null) {
+                    return new OutputGrokResultFormatterAsCsv(pw, columnsOf(grok));
+                }
+                if (grokMain.outputMatchResultMode == OutputMatchResultMode.asColumnar && this.columnarOutputStream != null) {
+                    return new OutputGrokResultFormatterAsColumnar(this.columnarOutputStream, fields,
+                            grokMain.columnarRowGroupSize,
+                            grokMain.columnarCompression);
+                }
+                if (grokMain.outputMatchResultMode == OutputMatchResultMode.asColumnar) {
+                    return new OutputGrokResultFormatterAsColumnar(pw, fields,
+                            grokMain.columnarRowGroupSize,
+                            grokMain.columnarCompression);
+                }
+                return OutputGrokResultFormatters.createOutputGrokResultConverter(grokMain.outputMatchResultMode, pw, fields);
+            }
+
+            /**
+             * Columns of all fields.
+             * <p>
+             * The fields captured by the patterns in the order of their
+             * groups, followed by the fields added by matching.
+             *
+             * @param grok
+             * @return
+             */
+            List<String> columnsOf(Grok grok) {
+                final List<Grok> groks = multiPatternMatcher != null
+                        ? multiPatternMatcher.groks()
+                        : Collections.singletonList(grok);
+                final Set<String> columns = new LinkedHashSet<>();
+                for (Grok g : groks) {
+                    columns.addAll(GrokMatcher.captureKeys(g));
+                }
+                if (multiPatternMatcher != null) {
+                    columns.add(MultiPatternMatcher.PATTERN_FIELD);
+                }
+                if (grokMain.matchingLineMode == MatchingLineMode.multiLinesMode) {
+                    columns.add(InputLineProcessor.EXTRA_FIELD);
+                }
+                return new ArrayList<>(columns);
+            }
+
+            /**
+             * Decide if several files are matched, each record tagged by its
+             * file.
+             *
+             * @param inputFiles
+             * @return
+             */
+            static boolean isMultipleFiles(List<String> inputFiles) {
+                return inputFiles.size() > 1
+                        || inputFiles.stream().anyMatch(MultiFileInputLineProcessor::isGlob);
+            }
+
+            /**
+             * Validate the fields to extract.
+             * <p>
+             * Each field must be captured by some pattern, or be one of the
+             * fields added by matching. Each pattern must capture some of the
+             * fields.
+             *
+             * @param grok
+             * @param fields
+             */
+            void validateFields(Grok grok, List<String> fields) {
+                final List<Grok> groks = multiPatternMatcher != null
+                        ? multiPatternMatcher.groks()
+                        : Collections.singletonList(grok);
+                final Set<String> knownFields = new LinkedHashSet<>();
+                knownFields.add(InputLineProcessor.EXTRA_FIELD);
+                if (multiPatternMatcher != null) {
+                    knownFields.add(MultiPatternMatcher.PATTERN_FIELD);
+                }
+                for (Grok g : groks) {
+                    final Set<String> captureKeys = GrokMatcher.captureKeys(g);
+                    new GrokBuilder.Validations(fields.stream().noneMatch(captureKeys::contains))
+                            .throwIllegalArgumentExceptionIf(String.format("Pattern %s captures none of the fields %s, but %s",
+                                    g.getOriginalGrokPattern(), fields, captureKeys));
+                    knownFields.addAll(captureKeys);
+                }
+                for (String field : fields) {
+                    new GrokBuilder.Validations(!knownFields.contains(field))
+                            .throwIllegalArgumentExceptionIf(String.format("Unknown field %s, known fields %s", field, knownFields));
+                }
+            }
+
+            /**
+             * Fields to extract.
+             *
+             * @return the fields, or null for all fields
+             */
+            private Set<String> fieldsToExtract() {
+                return grokMain.fields != null ? new LinkedHashSet<>(grokMain.fields) : null;
+            }
 
-                    final InputLineProcessor inputLineProcessor = new InputLineProcessor(
-                            grok,
-                            grokMain.matchingLineMode,
-                            outputGrokResultConverter,
-                            grokMain.readMaxLinesCount
-                    );
-                    inputLineProcessor.processLines(br);
+            /**
+             * Create the {@link MatchTimeout}.
+             *
+             * @return the timeout, or null for no timeout
+             * @throws IOException
+             */
+            MatchTimeout createMatchTimeout() throws IOException {
+                if (grokMain.matchTimeoutMicros <= 0) {
+                    return null;
+                }
+                final PrintWriter timedOutLinesWriter = grokMain.matchTimeoutFile != null
+                        ? new PrintWriter(Files.newBufferedWriter(grokMain.matchTimeoutFile.toPath(), StandardCharsets.UTF_8))
+                        : null;
+                return new MatchTimeout(grokMain.matchTimeoutMicros, timedOutLinesWriter);
+            }
+
+            /**
+             * Create the {@link RunStatistics}, start printing progress lines,
+             * and register the MBean.
+             *
+             * @return the statistics, or null for no statistics
+             * @throws IOException
+             */
+            RunStatistics createRunStatistics() throws IOException {
+                new GrokBuilder.Validations(grokMain.statsIntervalSeconds < 0)
+                        .throwIllegalArgumentExceptionIf("Stats interval seconds must not be negative");
+                if (!grokMain.stats && !grokMain.jmx) {
+                    return null;
+                }
+                final RunStatistics runStatistics = new RunStatistics(grokMain.matchingLineMode);
+                if (grokMain.jmx) {
+                    try {
+                        runStatistics.registerMXBean();
+                    } catch (JMException ex) {
+                        throw new IOException("Cannot register MBean " + RunStatistics.OBJECT_NAME, ex);
+                    }
+                }
+                if (grokMain.stats && grokMain.statsIntervalSeconds > 0) {
+                    runStatistics.startProgress(grokMain.statsIntervalSeconds, (progress) -> {
+                        grokMain.systemErrOutPrinter.printErr(progress);
+                        grokMain.systemErrOutPrinter.flushErr();
+                    });
+                }
+                return runStatistics;
+            }
+
+            private InputLineProcessor createInputLineProcessor(Grok grok,
+                    IOutputGrokResultFormatter outputGrokResultConverter,
+                    GrokIt.Options grokItOptions) {
+                return new InputLineProcessor(
+                        grok,
+                        grokMain.matchingLineMode,
+                        outputGrokResultConverter,
+                        grokMain.readMaxLinesCount,
+                        grokItOptions
+                );
+            }
+
+            void execute(Grok grok,
+                    PrintWriter pw,
+                    IOutputGrokResultFormatter outputGrokResultConverter,
+                    GrokIt.Options grokItOptions) throws IOException {
+                final List<String> inputFiles = Optional.ofNullable(grokMain.inputFiles).orElse(Collections.emptyList());
+                if (grokMain.checkpointFile != null) {
+                    new GrokBuilder.Validations(grokMain.follow
+                            || grokMain.threads > 1
+                            || grokMain.pipelined
+                            || grokMain.inputMode != InputMode.reader
+                            || inputFiles.size() != 1
+                            || MultiFileInputLineProcessor.isGlob(inputFiles.get(0))
+                            || new ReaderFactory(new File(inputFiles.get(0))).isGzipFile())
+                            .throwIllegalArgumentExceptionIf("Checkpointing needs a single uncompressed file, read sequentially "
+                                    + "by input mode reader, and no following, several threads, or pipelining");
+                    final InputLineProcessor inputLineProcessor = createInputLineProcessor(grok, outputGrokResultConverter, grokItOptions);
+                    new CheckpointingInputLineProcessor(inputLineProcessor, grokMain.checkpointFile, grokMain.checkpointIntervalLines, grokMain.outputFile)
+                            .processFile(new File(inputFiles.get(0)));
+                    return;
+                }
+                new GrokBuilder.Validations(grokMain.pipelined && (grokMain.threads > 1 || isMultipleFiles(inputFiles)))
+                        .throwIllegalArgumentExceptionIf("Pipelining needs a single matching thread, and a single file");
+                if (grokMain.follow) {
+                    new GrokBuilder.Validations(inputFiles.size() != 1 || MultiFileInputLineProcessor.isGlob(inputFiles.get(0)))
+                            .throwIllegalArgumentExceptionIf("Following needs a single file");
+                    follow(grok, new File(inputFiles.get(0)), outputGrokResultConverter, grokItOptions, pw);
+                    return;
+                }
+                if (isMultipleFiles(inputFiles)) {
+                    final List<File> files = MultiFileInputLineProcessor.expandFileNames(inputFiles);
+                    final InputLineProcessor inputLineProcessor = createInputLineProcessor(grok, outputGrokResultConverter, grokItOptions);
+                    new MultiFileInputLineProcessor(inputLineProcessor, grokMain.inputMode, grokMain.threads)
+                            .processFiles(files);
+                    return;
+                }
+                final File inputFile = inputFiles.isEmpty() ? null : new File(inputFiles.get(0));
+                final InputLineProcessor inputLineProcessor = createInputLineProcessor(grok, outputGrokResultConverter, grokItOptions);
+                if (grokMain.threads > 1 && inputFile != null && !new ReaderFactory(inputFile).isGzipFile()) {
+                    new ChunkedInputLineProcessor(inputLineProcessor, grokMain.threads)
+                            .processFile(inputFile);
+                } else if (grokMain.pipelined) {
+                    final PipelinedInputLineProcessor pipelinedInputLineProcessor = new PipelinedInputLineProcessor(
+                            inputLineProcessor,
+                            grokMain.pipelineBatchSize,
+                            grokMain.pipelineQueueDepth);
+                    try (final ILineSource lineSource = new ReaderFactory(inputFile).createLineSource(grokMain.inputMode)) {
+                        pipelinedInputLineProcessor.processLines(lineSource);
+                    }
+                    grokMain.systemErrOutPrinter.printErr(pipelinedInputLineProcessor.formatStatistics());
+                } else {
+                    try (final ILineSource lineSource = new ReaderFactory(inputFile).createLineSource(grokMain.inputMode)) {
+                        inputLineProcessor.processLines(lineSource);
+                    }
+                }
+            }
+
+            /**
+             * Match lines appended to a file, until the jvm shuts down.
+             * <p>
+             * The shutdown hook stops following, and waits for outputting the
+             * lines still gathered in multi-line mode.
+             */
+            void follow(Grok grok,
+                    File inputFile,
+                    IOutputGrokResultFormatter outputGrokResultConverter,
+                    GrokIt.Options grokItOptions,
+                    PrintWriter pw) throws IOException {
+                final InputLineProcessor inputLineProcessor = createInputLineProcessor(grok, outputGrokResultConverter, grokItOptions);
+                final CountDownLatch processed = new CountDownLatch(1);
+                try (final FollowingFileLineSource lineSource = new ReaderFactory(inputFile)
+                        .createFollowingLineSource(grokMain.followPollMillis, pw::flush)) {
+                    final Thread shutdownHook = new Thread(() -> {
+                        lineSource.stop();
+                        try {
+                            processed.await(STOP_FOLLOWING_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                        } catch (InterruptedException ex) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }, "grokMain-stop-following");
+                    Runtime.getRuntime().addShutdownHook(shutdownHook);
+                    try {
+                        inputLineProcessor.processLines(lineSource);
+                    } finally {
+                        pw.flush();
+                        processed.countDown();
+                        removeShutdownHook(shutdownHook);
+                    }
+                }
+            }
+
+            private static void removeShutdownHook(Thread shutdownHook) {
+                try {
+                    Runtime.getRuntime().removeShutdownHook(shutdownHook);
+                } catch (IllegalStateException ex) {
+                    // jvm is shutting down already
                 }
             }
         }
@@ -317,7 +914,8 @@ public class GrokMain implements Callable<Integer> {
      * Factory for creating a {@link Reader}.
      *
      * <p>
-     * Use this reader for reading TGF data.
+     * Use this reader for reading TGF data. Gzip compressed input is inflated
+     * by an {@link AsyncGzipInputStream}.
      */
     static class ReaderFactory {
 
@@ -327,18 +925,91 @@ public class GrokMain implements Callable<Integer> {
             this.f = f;
         }
 
-        Reader createUtf8Reader() throws FileNotFoundException {
-            final Reader r;
+        static final int INPUT_BUFFER_SIZE = 64 * 1024;
+
+        Reader createUtf8Reader() throws IOException {
+            final InputStream is;
             if (f != null) {
-                final FileInputStream fis = new FileInputStream(this.f);
-                final InputStreamReader isr = new InputStreamReader(fis, StandardCharsets.UTF_8);
-                r = isr;
+                is = new FileInputStream(this.f);
+            } else {
+                is = System.in;
+            }
+            final BufferedInputStream bis = new BufferedInputStream(is, INPUT_BUFFER_SIZE);
+            final InputStream decompressed;
+            if (hasGzipMagic(bis) || (f != null && f.getName().endsWith(".gz"))) {
+                decompressed = new AsyncGzipInputStream(bis);
             } else {
-                final InputStream is = new java.io.BufferedInputStream(System.in);
-                final InputStreamReader isr = new InputStreamReader(is, StandardCharsets.UTF_8);
-                r = isr;
+                decompressed = bis;
+            }
+            return new InputStreamReader(decompressed, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Create a {@link FollowingFileLineSource}, reading lines appended to
+         * the file.
+         *
+         * @param pollMillis
+         * @param onIdle
+         * @return
+         * @throws IOException
+         */
+        FollowingFileLineSource createFollowingLineSource(long pollMillis, Runnable onIdle) throws IOException {
+            new GrokBuilder.Validations()
+                    .isNull(f)
+                    .throwIllegalArgumentExceptionIf("Following needs a file");
+            return new FollowingFileLineSource(f, pollMillis, onIdle);
+        }
+
+        /**
+         * Decide if the file is gzip compressed, by its extension or by its
+         * magic bytes.
+         *
+         * @return false if reading from stdin
+         * @throws IOException
+         */
+        boolean isGzipFile() throws IOException {
+            if (f == null) {
+                return false;
+            }
+            if (f.getName().endsWith(".gz")) {
+                return true;
+            }
+            try (final BufferedInputStream bis = new BufferedInputStream(new FileInputStream(f), 2)) {
+                return hasGzipMagic(bis);
+            }
+        }
+
+        /**
+         * Peek the gzip magic bytes 0x1f 0x8b, without consuming them.
+         */
+        static boolean hasGzipMagic(BufferedInputStream bis) throws IOException {
+            bis.mark(2);
+            try {
+                return bis.read() == 0x1f && bis.read() == 0x8b;
+            } finally {
+                bis.reset();
             }
-            return r;
+        }
+
+        /**
+         * Create an {@link ILineSource} depending on the given
+         * {@link InputMode}-value.
+         * <p>
+         * Reading from stdin, or reading a gzip compressed file always uses
+         * {@link InputMode#reader}.
+         *
+         * @param inputMode
+         * @return
+         * @throws IOException
+         */
+        ILineSource createLineSource(InputMode inputMode) throws IOException {
+            final ILineSource lineSource;
+            if (inputMode == InputMode.mmap && f != null && !isGzipFile()) {
+                lineSource = new MappedFileLineSource(f);
+            } else {
+                lineSource = new BufferedReaderLineSource(new BufferedReader(createUtf8Reader(), INPUT_BUFFER_SIZE));
+            }
+            return lineSource;
         }
     }
 
@@ -362,6 +1033,10 @@ public class GrokMain implements Callable<Integer> {
             pw.print(str);
         }
 
+        void flushErr() {
+            this.pwErr.flush();
+        }
+
         void printOut(String str) {
             final PrintWriter pw = this.pwOut;
             pw.print(str);
@@ -381,11 +1056,21 @@ public class GrokMain implements Callable<Integer> {
             multiLinesMode
         }
 
+        /**
+         * Name of the field holding the non-matched lines in
+         * {@link MatchingLineMode#multiLinesMode}.
+         */
+        static final String EXTRA_FIELD = "extra";
+
         final Grok grok;
         final MatchingLineMode matchingLineMode;
         final IOutputGrokResultFormatter outputGrokResultConverter;
 
         final int readMaxLinesCount;
+        final GrokIt.Options grokItOptions;
+        final MultiPatternMatcher multiPatternMatcher;
+        final Set<String> fields;
+        final RunStatistics runStatistics;
 
         /**
          * Create an setup.
@@ -400,17 +1085,85 @@ public class GrokMain implements Callable<Integer> {
                 MatchingLineMode matchingLineMode,
                 IOutputGrokResultFormatter outputGrokResultConverter,
                 int readMaxLinesCount) {
+            this(grok, matchingLineMode, outputGrokResultConverter, readMaxLinesCount, new GrokIt.Options());
+        }
+
+        /**
+         * Create an setup.
+         *
+         * @param grok
+         * @param matchingLineMode
+         * @param outputGrokResultConverter
+         * @param readMaxLinesCount
+         * @param grokItOptions options of matching lines, its fields are the
+         * fields to capture, and to output
+         */
+        public InputLineProcessor(
+                Grok grok,
+                MatchingLineMode matchingLineMode,
+                IOutputGrokResultFormatter outputGrokResultConverter,
+                int readMaxLinesCount,
+                GrokIt.Options grokItOptions) {
+            new GrokBuilder.Validations()
+                    .isNull(grokItOptions)
+                    .throwIllegalArgumentExceptionIf("GrokIt options are null");
             this.grok = grok;
             this.matchingLineMode = matchingLineMode;
             this.outputGrokResultConverter = outputGrokResultConverter;
             this.readMaxLinesCount = readMaxLinesCount;
+            this.grokItOptions = grokItOptions;
+            this.multiPatternMatcher = grokItOptions.multiPatternMatcher();
+            this.fields = grokItOptions.fields();
+            this.runStatistics = grokItOptions.runStatistics();
+        }
+
+        /**
+         * Create a copy of this setup, outputting to another formatter.
+         *
+         * @param outputGrokResultConverter
+         * @return
+         */
+        InputLineProcessor withOutputGrokResultConverter(IOutputGrokResultFormatter outputGrokResultConverter) {
+            return new InputLineProcessor(grok,
+                    matchingLineMode,
+                    outputGrokResultConverter,
+                    readMaxLinesCount,
+                    grokItOptions);
+        }
+
+        /**
+         * Create a {@link GrokIt} for matching lines by a single thread.
+         *
+         * @return
+         */
+        GrokIt createGrokIt() {
+            return new GrokIt(grokItOptions);
+        }
+
+        /**
+         * Wrap a line source counting the lines read, if collecting
+         * {@link RunStatistics}.
+         *
+         * @param lineSource
+         * @return
+         */
+        ILineSource countingLineSource(ILineSource lineSource) {
+            return runStatistics != null ? runStatistics.countingLineSource(lineSource) : lineSource;
         }
 
         /**
          * Entry point for processing all lines from a {@link BufferedReader}.
          */
         public void processLines(final BufferedReader br) throws IOException {
-            final GrokIt grokIt = new GrokIt();
+            processLines(new BufferedReaderLineSource(br));
+        }
+
+        /**
+         * Entry point for processing all lines from a {@link ILineSource}.
+         */
+        public void processLines(final ILineSource lineSource) throws IOException {
+            final GrokIt grokIt = createGrokIt();
+            final ILineSource countingLineSource = countingLineSource(lineSource);
 
             // context: grokIt, matchingLineMode, outputGrokResultConverter, br
             try {
@@ -419,22 +1172,14 @@ public class GrokMain implements Callable<Integer> {
                 outputGrokResultConverter.start();
                 //---
                 int readLineCount = 0;
-                for (String line; (line = br.readLine()) != null;) {
+                for (CharSequence line; (line = countingLineSource.readLine()) != null;) {
                     readLineCount += 1;
                     if (readMaxLinesCount >= 0 && readLineCount > readMaxLinesCount) {
                         break;
                     }
                     final GrokMatchResult grokResult = grokIt.match(grok, line);
                     //---
-                    if (matchingLineMode == MatchingLineMode.singleLineMode) {
-                        singleLineMode(readLineCount, grokResult);
-                    } else if (matchingLineMode == MatchingLineMode.multiLinesMode) {
-                        multiLinesMode(line,
-                                readLineCount,
-                                matchGatherOutput,
-                                grokResult
-                        );
-                    }
+                    processLine(readLineCount, line, grokResult, matchGatherOutput);
                 }
                 // retrieve last Optional<Result> still gathered, but
                 // not yet output
@@ -447,6 +1192,29 @@ public class GrokMain implements Callable<Integer> {
             }
         }
 
+        /**
+         * Process a matched line depending on {@link #matchingLineMode}.
+         *
+         * @param readLineCount
+         * @param line
+         * @param grokResult
+         * @param matchGatherOutput
+         */
+        void processLine(int readLineCount,
+                CharSequence line,
+                GrokMatchResult grokResult,
+                MatchGatherOutput matchGatherOutput) {
+            if (matchingLineMode == MatchingLineMode.singleLineMode) {
+                singleLineMode(readLineCount, grokResult);
+            } else if (matchingLineMode == MatchingLineMode.multiLinesMode) {
+                multiLinesMode(line,
+                        readLineCount,
+                        matchGatherOutput,
+                        grokResult
+                );
+            }
+        }
+
         /**
          * process only matched lines, ignore non matched lines (
          * {@link MatchingLineMode#singleLineMode} ).
@@ -468,7 +1236,7 @@ public class GrokMain implements Callable<Integer> {
          * as map-entry "extra" {@link MatchingLineMode#multiLinesMode} ).
          *
          */
-        void multiLinesMode(String line,
+        void multiLinesMode(CharSequence line,
                 int readLineCount,
                 MatchGatherOutput matchGatherOutput,
                 GrokMatchResult grokResult
@@ -480,7 +1248,7 @@ public class GrokMain implements Callable<Integer> {
                     grokResult.end,
                     grokResult.m);
             if (resultOpt.isPresent()) {
-                Wrapper w = resultOpt.get().wrapperWithExtraToMap();
+                Wrapper w = wrapperOfResult(resultOpt.get());
                 int readLineCount2 = w.readLineCount;
                 GrokMatchResult grokResult2 = new GrokMatchResult(
                         w.subject,
@@ -492,6 +1260,17 @@ public class GrokMain implements Callable<Integer> {
             }
         }
 
+        /**
+         * Add the non-matched lines as field "extra", unless other fields are
+         * asked for.
+         */
+        Wrapper wrapperOfResult(Result result) {
+            if (fields != null && !fields.contains(EXTRA_FIELD)) {
+                return result.wrapper();
+            }
+            return result.wrapperWithExtraToMap();
+        }
+
         /**
          * Tail end processing of {@link MatchingLineMode#multiLinesMode}
          * processing.
@@ -504,7 +1283,7 @@ public class GrokMain implements Callable<Integer> {
             // not yet output
             final Optional<Result> resultOpt = matchGatherOutput.retrieveResult();
             if (resultOpt.isPresent()) {
-                Wrapper w = resultOpt.get().wrapperWithExtraToMap();
+                Wrapper w = wrapperOfResult(resultOpt.get());
                 GrokMatchResult grokResult2 = new GrokMatchResult(
                         w.subject,
                         w.start,
@@ -0,0 +1,836 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Converter;
+import io.krakens.grok.api.Grok;
+import io.krakens.grok.api.Match;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.huberb.groktools.RegexEngines.IRegexEngine;
+import org.huberb.groktools.RegexEngines.IRegexMatcher;
+import org.huberb.groktools.RegexEngines.JdkRegexEngine;
+
+/**
+ * Reusable matcher of a {@link Grok}, allocating little per line.
+ * <p>
+ * A single {@link IRegexMatcher} is reused for each line. The offsets of the
+ * match, and of the captured groups are written into a preallocated array
+ * indexed by field slot. The values of a match are provided by a
+ * {@link CapturedValues} map, creating the captured strings only when the map
+ * is read, e.g. by a formatter.
+ * <p>
+ * The captured values are the same as {@link Match#capture()}. Type
+ * conversions like "%{INT:count:int}" are applied when capturing, storing the
+ * converted numbers in a primitive array, see {@link ITypedValues}. Patterns
+ * using datetime conversions are not supported, see
+ * {@link #isSupported(io.krakens.grok.api.Grok)}; these are matched by
+ * {@link Match#capture()}, keeping their values boxed.
+ * <p>
+ * Not thread-safe, use an instance per thread.
+ *
+ * @author berni3
+ */
+class GrokMatcher {
+
+    private final Grok grok;
+    private final Slots slots;
+    private final IRegexMatcher regexMatcher;
+    private final int[] offsets;
+
+    /**
+     * Create an setup.
+     *
+     * @param grok
+     */
+    GrokMatcher(Grok grok) {
+        this(grok, null);
+    }
+
+    /**
+     * Create an setup, capturing only some fields.
+     * <p>
+     * The offsets of groups of other fields are not even read.
+     *
+     * @param grok
+     * @param fields fields to capture, or null for all fields
+     */
+    GrokMatcher(Grok grok, Set<String> fields) {
+        this(grok, fields, new JdkRegexEngine());
+    }
+
+    /**
+     * Create an setup, matching by a regex engine.
+     *
+     * @param grok
+     * @param fields fields to capture, or null for all fields
+     * @param regexEngine engine compiling the named regex of the grok
+     */
+    GrokMatcher(Grok grok, Set<String> fields, IRegexEngine regexEngine) {
+        new GrokBuilder.Validations(!isSupported(grok))
+                .throwIllegalArgumentExceptionIf("Grok using datetime conversions is not supported");
+        this.grok = grok;
+        this.slots = new Slots(grok, fields);
+        this.regexMatcher = regexEngine.compile(grok.getNamedRegex(), this.slots.groupNames);
+        this.offsets = new int[2 + 2 * this.slots.size()];
+    }
+
+    /**
+     * Decide if a {@link Grok} can be matched by a {@link GrokMatcher}.
+     *
+     * @param grok
+     * @return false if the grok pattern uses datetime conversions
+     */
+    static boolean isSupported(Grok grok) {
+        return grok.groupTypes.values().stream()
+                .allMatch((type) -> ValueType.of(type) != null);
+    }
+
+    /**
+     * Keys of the fields captured by a {@link Grok}, like the keys of
+     * {@link Match#capture()}.
+     *
+     * @param grok
+     * @return
+     */
+    static Set<String> captureKeys(Grok grok) {
+        final Set<String> captureKeys = new LinkedHashSet<>();
+        for (String groupName : grok.namedGroups) {
+            final String key = key(grok, groupName);
+            if (!"UNWANTED".equals(key)) {
+                captureKeys.add(grok.converters.containsKey(key) ? Converter.extractKey(key) : key);
+            }
+        }
+        return captureKeys;
+    }
+
+    private static String key(Grok grok, String groupName) {
+        final String name = grok.getNamedRegexCollectionById(groupName);
+        return name != null && !name.isEmpty() ? name : groupName;
+    }
+
+    Grok grok() {
+        return this.grok;
+    }
+
+    /**
+     * Find the next match in a line, like {@link Grok#match(java.lang.CharSequence)
+     * }.
+     *
+     * @param line
+     * @return true if the line matches
+     */
+    boolean find(CharSequence line) {
+        if (isBlank(line)) {
+            // Grok#match does not match blank lines
+            return false;
+        }
+        return this.regexMatcher.find(line, this.offsets);
+    }
+
+    int start() {
+        return this.offsets[0];
+    }
+
+    int end() {
+        return this.offsets[1];
+    }
+
+    /**
+     * Captured values of the last match.
+     *
+     * @param subject the line passed to {@link #find(java.lang.CharSequence)}
+     * @return a map independent of further matching
+     */
+    CapturedValues capture(CharSequence subject) {
+        final String subjectString = subject.toString();
+        final int[] offsetsCopy = Arrays.copyOfRange(this.offsets, 2, this.offsets.length);
+        if (!this.slots.typed) {
+            return new CapturedValues(this.slots, subjectString, offsetsCopy, null, null);
+        }
+        final long[] numbers = new long[this.slots.size()];
+        final boolean[] converted = new boolean[this.slots.size()];
+        for (int i = 0; i < this.slots.size(); i++) {
+            final ValueType type = this.slots.types[i];
+            final int groupStart = offsetsCopy[2 * i];
+            if (type != ValueType.STRING && groupStart >= 0) {
+                try {
+                    numbers[i] = type.parse(subjectString, groupStart, offsetsCopy[2 * i + 1]);
+                    converted[i] = true;
+                } catch (NumberFormatException ex) {
+                    // value is captured as string, along with a failure entry
+                }
+            }
+        }
+        return new CapturedValues(this.slots, subjectString, offsetsCopy, numbers, converted);
+    }
+
+    private static boolean isBlank(CharSequence cs) {
+        for (int i = 0; i < cs.length(); i++) {
+            if (!Character.isWhitespace(cs.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Field slots of a {@link Grok}, in the order of its named groups.
+     * <p>
+     * Groups named "UNWANTED", and groups of fields not asked for are skipped.
+     */
+    static class Slots {
+
+        final String[] groupNames;
+        final String[] keys;
+        /**
+         * Keys including the type conversion, like "count:int", used by
+         * {@link Match#capture()} for unmatched groups.
+         */
+        final String[] rawKeys;
+        final ValueType[] types;
+        final boolean typed;
+        /**
+         * Slot of each key captured by a single group.
+         */
+        private final Map<String, Integer> slotByKey;
+
+        Slots(Grok grok, Set<String> fields) {
+            final List<String> groupNamesTmp = new ArrayList<>();
+            final List<String> keysTmp = new ArrayList<>();
+            final List<String> rawKeysTmp = new ArrayList<>();
+            final List<ValueType> typesTmp = new ArrayList<>();
+            for (String groupName : grok.namedGroups) {
+                final String rawKey = key(grok, groupName);
+                if ("UNWANTED".equals(rawKey)) {
+                    continue;
+                }
+                String key = rawKey;
+                ValueType type = ValueType.STRING;
+                if (grok.converters.containsKey(rawKey)) {
+                    key = Converter.extractKey(rawKey);
+                    type = ValueType.of(grok.groupTypes.get(key));
+                }
+                if (fields == null || fields.contains(key)) {
+                    groupNamesTmp.add(groupName);
+                    keysTmp.add(key);
+                    rawKeysTmp.add(rawKey);
+                    typesTmp.add(type);
+                }
+            }
+            this.groupNames = groupNamesTmp.toArray(new String[0]);
+            this.keys = keysTmp.toArray(new String[0]);
+            this.rawKeys = rawKeysTmp.toArray(new String[0]);
+            this.types = typesTmp.toArray(new ValueType[0]);
+            this.typed = typesTmp.stream().anyMatch((type) -> type != ValueType.STRING);
+            this.slotByKey = new HashMap<>();
+            for (int i = 0; i < this.keys.length; i++) {
+                // -1 marks keys captured by several groups
+                this.slotByKey.merge(this.keys[i], i, (slot1, slot2) -> -1);
+            }
+        }
+
+        int size() {
+            return this.keys.length;
+        }
+
+        /**
+         * Slot of a key.
+         *
+         * @param key
+         * @return the slot, or -1 if no single group captures the key
+         */
+        int slotOf(Object key) {
+            final Integer slot = this.slotByKey.get(key);
+            return slot != null ? slot : -1;
+        }
+    }
+
+    /**
+     * Types of converted values, supporting the grok type conversions except
+     * datetime.
+     * <p>
+     * Integral values, and booleans are stored as long, floating point values
+     * as bits of a double.
+     */
+    enum ValueType {
+        STRING, BOOLEAN, BYTE, SHORT, INT, LONG, FLOAT, DOUBLE;
+
+        /**
+         * Map a grok type conversion.
+         *
+         * @param type
+         * @return the value type, or null if not supported
+         */
+        static ValueType of(Converter.Type type) {
+            if (type == null) {
+                return STRING;
+            }
+            switch (type) {
+                case BOOLEAN:
+                    return BOOLEAN;
+                case BYTE:
+                    return BYTE;
+                case SHORT:
+                    return SHORT;
+                case INT:
+                    return INT;
+                case LONG:
+                    return LONG;
+                case FLOAT:
+                    return FLOAT;
+                case DOUBLE:
+                    return DOUBLE;
+                case STRING:
+                    return STRING;
+                default:
+                    return null;
+            }
+        }
+
+        boolean isFloatingPoint() {
+            return this == FLOAT || this == DOUBLE;
+        }
+
+        /**
+         * Convert a part of a line, like the grok converter does.
+         *
+         * @param s
+         * @param start
+         * @param end
+         * @return the value stored as long
+         * @throws NumberFormatException if the value is not convertible
+         */
+        long parse(String s, int start, int end) {
+            switch (this) {
+                case BOOLEAN:
+                    return end - start == 4 && s.regionMatches(true, start, "true", 0, 4) ? 1L : 0L;
+                case BYTE:
+                    return parseLong(s, start, end, Byte.MIN_VALUE, Byte.MAX_VALUE);
+                case SHORT:
+                    return parseLong(s, start, end, Short.MIN_VALUE, Short.MAX_VALUE);
+                case INT:
+                    return parseLong(s, start, end, Integer.MIN_VALUE, Integer.MAX_VALUE);
+                case LONG:
+                    return parseLong(s, start, end, Long.MIN_VALUE, Long.MAX_VALUE);
+                case FLOAT:
+                    return Double.doubleToRawLongBits(Float.parseFloat(s.substring(start, end)));
+                case DOUBLE:
+                    return Double.doubleToRawLongBits(Double.parseDouble(s.substring(start, end)));
+                default:
+                    throw new NumberFormatException("Not a number type " + this);
+            }
+        }
+
+        /**
+         * Box a value stored as long, like the grok converter returns it.
+         *
+         * @param number
+         * @return
+         */
+        Object box(long number) {
+            switch (this) {
+                case BOOLEAN:
+                    return number != 0L;
+                case BYTE:
+                    return (byte) number;
+                case SHORT:
+                    return (short) number;
+                case INT:
+                    return (int) number;
+                case LONG:
+                    return number;
+                case FLOAT:
+                    return (float) Double.longBitsToDouble(number);
+                case DOUBLE:
+                    return Double.longBitsToDouble(number);
+                default:
+                    throw new IllegalStateException("Not a number type " + this);
+            }
+        }
+
+        /**
+         * Append a value stored as long, formatted like
+         * {@link String#valueOf(java.lang.Object)} of the boxed value.
+         *
+         * @param sb
+         * @param number
+         */
+        void append(StringBuilder sb, long number) {
+            switch (this) {
+                case BOOLEAN:
+                    sb.append(number != 0L);
+                    break;
+                case FLOAT:
+                    sb.append((float) Double.longBitsToDouble(number));
+                    break;
+                case DOUBLE:
+                    sb.append(Double.longBitsToDouble(number));
+                    break;
+                default:
+                    sb.append(number);
+                    break;
+            }
+        }
+
+        /**
+         * Convert a value using the JDK conversion of the grok converter,
+         * throwing its exception if not convertible.
+         *
+         * @param value
+         * @return
+         */
+        Object convert(String value) {
+            switch (this) {
+                case BOOLEAN:
+                    return Boolean.valueOf(value);
+                case BYTE:
+                    return Byte.valueOf(value);
+                case SHORT:
+                    return Short.valueOf(value);
+                case INT:
+                    return Integer.valueOf(value);
+                case LONG:
+                    return Long.valueOf(value);
+                case FLOAT:
+                    return Float.valueOf(value);
+                case DOUBLE:
+                    return Double.valueOf(value);
+                default:
+                    return value;
+            }
+        }
+
+        /**
+         * Parse a decimal number like {@link Long#parseLong(java.lang.String)},
+         * without creating a string.
+         */
+        static long parseLong(CharSequence cs, int start, int end, long min, long max) {
+            if (start >= end) {
+                throw new NumberFormatException("Empty number");
+            }
+            int i = start;
+            boolean negative = false;
+            long limit = -Long.MAX_VALUE;
+            final char first = cs.charAt(i);
+            if (first < '0') {
+                if (first == '-') {
+                    negative = true;
+                    limit = Long.MIN_VALUE;
+                } else if (first != '+') {
+                    throw new NumberFormatException("Invalid number");
+                }
+                i += 1;
+                if (i == end) {
+                    throw new NumberFormatException("Invalid number");
+                }
+            }
+            final long multmin = limit / 10;
+            long result = 0L;
+            for (; i < end; i++) {
+                final int digit = Character.digit(cs.charAt(i), 10);
+                if (digit < 0 || result < multmin) {
+                    throw new NumberFormatException("Invalid number");
+                }
+                result *= 10;
+                if (result < limit + digit) {
+                    throw new NumberFormatException("Invalid number");
+                }
+                result -= digit;
+            }
+            final long value = negative ? result : -result;
+            if (value < min || value > max) {
+                throw new NumberFormatException("Value out of range");
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Read converted values of fields without boxing.
+     */
+    interface ITypedValues {
+
+        /**
+         * Type of the converted value of a field.
+         *
+         * @param key
+         * @return the type, or null if the field has no single converted value
+         */
+        ValueType valueType(String key);
+
+        /**
+         * Converted value of an integral, or boolean field.
+         *
+         * @param key
+         * @return the value, 1 for true, 0 for false
+         */
+        long longValue(String key);
+
+        /**
+         * Converted value of a numeric field.
+         *
+         * @param key
+         * @return
+         */
+        double doubleValue(String key);
+
+        /**
+         * Append the converted value of a field, formatted like the boxed
+         * value.
+         *
+         * @param sb
+         * @param key
+         * @return false if the field has no single converted value, and
+         * nothing is appended
+         */
+        boolean appendValue(StringBuilder sb, String key);
+    }
+
+    /**
+     * A read-only map materialized on first read.
+     * <p>
+     * {@link #isEmpty()} may be answered without materializing.
+     */
+    abstract static class LazyMap extends AbstractMap<String, Object> {
+
+        private Map<String, Object> materialized;
+
+        /**
+         * Create the map.
+         *
+         * @return
+         */
+        abstract Map<String, Object> materialize();
+
+        Map<String, Object> materialized() {
+            if (this.materialized == null) {
+                this.materialized = materialize();
+            }
+            return this.materialized;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return materialized().entrySet();
+        }
+
+        @Override
+        public Object get(Object key) {
+            return materialized().get(key);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return materialized().containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return materialized().size();
+        }
+
+        @Override
+        public String toString() {
+            return materialized().toString();
+        }
+    }
+
+    /**
+     * Create a copy of a map having an additional entry, like
+     * <code>new HashMap&lt;&gt;(m).put(key, value)</code>.
+     * <p>
+     * The copy is made when the returned map is read, thus the map shall not
+     * be modified anymore.
+     *
+     * @param m
+     * @param key
+     * @param value
+     * @return
+     */
+    static Map<String, Object> withEntry(Map<String, Object> m, String key, Object value) {
+        return new WithEntry(m, key, value);
+    }
+
+    /**
+     * A map having an additional entry, see
+     * {@link #withEntry(java.util.Map, java.lang.String, java.lang.Object)}.
+     * <p>
+     * Single values are read from the underlying map without copying it.
+     */
+    static class WithEntry extends LazyMap implements ITypedValues {
+
+        private final Map<String, Object> m;
+        private final String key;
+        private final Object value;
+
+        WithEntry(Map<String, Object> m, String key, Object value) {
+            this.m = m;
+            this.key = key;
+            this.value = value;
+        }
+
+        @Override
+        Map<String, Object> materialize() {
+            final Map<String, Object> copy = new HashMap<>(this.m);
+            copy.put(this.key, this.value);
+            return copy;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return false;
+        }
+
+        @Override
+        public Object get(Object k) {
+            return this.key.equals(k) ? this.value : this.m.get(k);
+        }
+
+        @Override
+        public boolean containsKey(Object k) {
+            return this.key.equals(k) || this.m.containsKey(k);
+        }
+
+        private ITypedValues typedValues(String k) {
+            return !this.key.equals(k) && this.m instanceof ITypedValues ? (ITypedValues) this.m : null;
+        }
+
+        @Override
+        public ValueType valueType(String k) {
+            final ITypedValues typedValues = typedValues(k);
+            return typedValues != null ? typedValues.valueType(k) : null;
+        }
+
+        @Override
+        public long longValue(String k) {
+            return typedValues(k).longValue(k);
+        }
+
+        @Override
+        public double doubleValue(String k) {
+            return typedValues(k).doubleValue(k);
+        }
+
+        @Override
+        public boolean appendValue(StringBuilder sb, String k) {
+            final ITypedValues typedValues = typedValues(k);
+            return typedValues != null && typedValues.appendValue(sb, k);
+        }
+    }
+
+    /**
+     * Captured values of a match, created from the group offsets, and the
+     * converted numbers.
+     * <p>
+     * A value of a field captured by a single group is read without creating
+     * the whole map.
+     */
+    static class CapturedValues extends LazyMap implements ITypedValues {
+
+        private final Slots slots;
+        private final String subject;
+        private final int[] offsets;
+        private final long[] numbers;
+        private final boolean[] converted;
+
+        /**
+         * Create an setup.
+         *
+         * @param slots
+         * @param subject
+         * @param offsets start, and end offset per slot
+         * @param numbers converted value per slot, or null if no slot is typed
+         * @param converted true per slot having a converted value, or null if
+         * no slot is typed
+         */
+        CapturedValues(Slots slots, String subject, int[] offsets, long[] numbers, boolean[] converted) {
+            this.slots = slots;
+            this.subject = subject;
+            this.offsets = offsets;
+            this.numbers = numbers;
+            this.converted = converted;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            // unmatched groups are captured as null values
+            return this.slots.size() == 0;
+        }
+
+        @Override
+        public Object get(Object key) {
+            final int slot = this.slots.slotOf(key);
+            if (slot < 0 || isFailed(slot)) {
+                return super.get(key);
+            }
+            // null, if an unmatched group is captured by its raw key
+            return value(slot);
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            final int slot = this.slots.slotOf(key);
+            if (slot >= 0 && !isCapturedByRawKey(slot)) {
+                return true;
+            }
+            return super.containsKey(key);
+        }
+
+        /**
+         * An unmatched group having a type conversion is captured by its raw
+         * key, like {@link Match#capture()} does.
+         */
+        private boolean isCapturedByRawKey(int slot) {
+            return this.offsets[2 * slot] < 0 && !this.slots.rawKeys[slot].equals(this.slots.keys[slot]);
+        }
+
+        private boolean isConverted(int slot) {
+            return this.converted != null && this.converted[slot];
+        }
+
+        private boolean isFailed(int slot) {
+            return this.slots.types[slot] != ValueType.STRING
+                    && this.offsets[2 * slot] >= 0
+                    && !isConverted(slot);
+        }
+
+        private String rawValue(int slot) {
+            final int groupStart = this.offsets[2 * slot];
+            return groupStart >= 0 ? this.subject.substring(groupStart, this.offsets[2 * slot + 1]) : null;
+        }
+
+        /**
+         * Value of a slot, the same as {@link Match#capture()}, unless the
+         * conversion failed.
+         */
+        private Object value(int slot) {
+            if (isConverted(slot)) {
+                return this.slots.types[slot].box(this.numbers[slot]);
+            }
+            final String rawValue = rawValue(slot);
+            return rawValue != null ? cleanString(rawValue) : null;
+        }
+
+        private int convertedSlotOf(String key) {
+            final int slot = this.slots.slotOf(key);
+            return slot >= 0 && isConverted(slot) ? slot : -1;
+        }
+
+        @Override
+        public ValueType valueType(String key) {
+            final int slot = convertedSlotOf(key);
+            return slot >= 0 ? this.slots.types[slot] : null;
+        }
+
+        @Override
+        public long longValue(String key) {
+            final int slot = convertedSlotOf(key);
+            new GrokBuilder.Validations(slot < 0 || this.slots.types[slot].isFloatingPoint())
+                    .throwIllegalArgumentExceptionIf("No integral value of field " + key);
+            return this.numbers[slot];
+        }
+
+        @Override
+        public double doubleValue(String key) {
+            final int slot = convertedSlotOf(key);
+            new GrokBuilder.Validations(slot < 0 || this.slots.types[slot] == ValueType.BOOLEAN)
+                    .throwIllegalArgumentExceptionIf("No numeric value of field " + key);
+            final ValueType type = this.slots.types[slot];
+            return type.isFloatingPoint()
+                    ? Double.longBitsToDouble(this.numbers[slot])
+                    : this.numbers[slot];
+        }
+
+        @Override
+        public boolean appendValue(StringBuilder sb, String key) {
+            final int slot = convertedSlotOf(key);
+            if (slot < 0) {
+                return false;
+            }
+            this.slots.types[slot].append(sb, this.numbers[slot]);
+            return true;
+        }
+
+        /**
+         * Create the map the same way as {@link Match#capture()}.
+         */
+        @Override
+        Map<String, Object> materialize() {
+            final Map<String, Object> m = new HashMap<>();
+            for (int i = 0; i < this.slots.size(); i++) {
+                final String key = isCapturedByRawKey(i) ? this.slots.rawKeys[i] : this.slots.keys[i];
+                final Object value;
+                if (isFailed(i)) {
+                    final String rawValue = rawValue(i);
+                    try {
+                        this.slots.types[i].convert(rawValue);
+                    } catch (NumberFormatException ex) {
+                        m.put(key + "_grokfailure", ex.toString());
+                    }
+                    value = cleanString(rawValue);
+                } else {
+                    value = value(i);
+                }
+                if (m.containsKey(key)) {
+                    final Object existing = m.get(key);
+                    if (existing instanceof List) {
+                        @SuppressWarnings("unchecked")
+                        final List<Object> values = (List<Object>) existing;
+                        values.add(value);
+                    } else {
+                        final List<Object> values = new ArrayList<>();
+                        values.add(existing);
+                        values.add(value);
+                        m.put(key, values);
+                    }
+                } else {
+                    m.put(key, value);
+                }
+            }
+            return m;
+        }
+
+        /**
+         * Remove enclosing quotes, like {@link Match} does.
+         */
+        static String cleanString(String value) {
+            if (value.isEmpty()) {
+                return value;
+            }
+            final char first = value.charAt(0);
+            final char last = value.charAt(value.length() - 1);
+            if (first == last && (first == '"' || first == '\'')) {
+                if (value.length() <= 2) {
+                    return "";
+                }
+                for (int i = 1; i < value.length() - 1; i++) {
+                    if (value.charAt(i) == first) {
+                        return value;
+                    }
+                }
+                return value.substring(1, value.length() - 1);
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import java.util.Map;
+
+/**
+ * Live counters of a run, exposed by the platform MBean server as
+ * {@value RunStatistics#OBJECT_NAME}.
+ *
+ * @author berni3
+ */
+public interface IRunStatisticsMXBean {
+
+    long getLinesRead();
+
+    long getLinesMatched();
+
+    long getLinesSkipped();
+
+    long getLinesFoldedIntoExtra();
+
+    long getLinesTimedOut();
+
+    long getRecordsOutput();
+
+    double getMatchLatencyP50Micros();
+
+    double getMatchLatencyP99Micros();
+
+    double getMatchLatencyMaxMicros();
+
+    /**
+     * Depths of the queues between threads, by queue name.
+     *
+     * @return
+     */
+    Map<String, Integer> getQueueDepths();
+}
@@ -0,0 +1,492 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+
+/**
+ * Define various sources of input lines.
+ * <p>
+ * A line source hands out one line after another as {@link CharSequence}. The
+ * returned {@link CharSequence} may be a view which is only valid until the
+ * next call of {@link ILineSource#readLine()}. Call
+ * {@link CharSequence#toString()} for keeping a line.
+ *
+ * @author berni3
+ */
+public class InputLineSources {
+
+    /**
+     * Define implementation template for a line source.
+     */
+    public static interface ILineSource extends AutoCloseable {
+
+        /**
+         * Read next line, without any line terminator.
+         *
+         * @return the next line, or null if end of input is reached
+         * @throws IOException
+         */
+        CharSequence readLine() throws IOException;
+
+        @Override
+        void close() throws IOException;
+    }
+
+    /**
+     * Describe how input is read.
+     */
+    public static enum InputMode {
+        reader, mmap
+    }
+
+    /**
+     * Provide lines from a {@link BufferedReader}.
+     */
+    static class BufferedReaderLineSource implements ILineSource {
+
+        private final BufferedReader br;
+
+        BufferedReaderLineSource(BufferedReader br) {
+            this.br = br;
+        }
+
+        @Override
+        public CharSequence readLine() throws IOException {
+            return this.br.readLine();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.br.close();
+        }
+    }
+
+    /**
+     * Provide lines from a memory mapped file.
+     * <p>
+     * The file is mapped in windows of {@link #DEFAULT_WINDOW_SIZE} bytes. Line
+     * terminators are searched at the byte level, the same way as
+     * {@link BufferedReader#readLine()} does: "\n", "\r", or "\r\n". Lines
+     * consisting only of US-ASCII bytes are handed out as a view on the mapped
+     * bytes, other lines are decoded as UTF-8 into a reused
+     * {@link CharBuffer}.
+     */
+    static class MappedFileLineSource implements ILineSource {
+
+        static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+        private static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE - 8;
+
+        private final FileChannel fc;
+        private final boolean closeChannel;
+        private final long endOffset;
+        private int windowSize;
+
+        private ByteBuffer window;
+        private long windowStart;
+        private int pos;
+
+        private final AsciiLineView asciiLineView = new AsciiLineView();
+        private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        private CharBuffer decodedLine = CharBuffer.allocate(1024);
+
+        /**
+         * Map the whole file.
+         *
+         * @param f
+         * @throws IOException
+         */
+        MappedFileLineSource(File f) throws IOException {
+            this(FileChannel.open(f.toPath(), StandardOpenOption.READ), true, 0L, -1L, DEFAULT_WINDOW_SIZE);
+        }
+
+        /**
+         * Map the byte range [startOffset, endOffset) of a file channel.
+         *
+         * @param fc
+         * @param closeChannel close the channel when closing this line source
+         * @param startOffset first byte of first line
+         * @param endOffset end of the range, or -1 for the end of the file
+         * @param windowSize size of a mapped window
+         * @throws IOException
+         */
+        MappedFileLineSource(FileChannel fc, boolean closeChannel, long startOffset, long endOffset, int windowSize) throws IOException {
+            this.fc = fc;
+            this.closeChannel = closeChannel;
+            this.endOffset = endOffset >= 0 ? Math.min(endOffset, fc.size()) : fc.size();
+            this.windowSize = Math.max(16, windowSize);
+            map(startOffset);
+        }
+
+        /**
+         * Offset of the first byte not yet handed out as line.
+         *
+         * @return byte offset in the file
+         */
+        long position() {
+            return this.windowStart + this.pos;
+        }
+
+        @Override
+        public CharSequence readLine() throws IOException {
+            for (;;) {
+                final int limit = this.window.limit();
+                if (this.pos >= limit && this.windowStart + limit >= this.endOffset) {
+                    return null;
+                }
+                boolean ascii = true;
+                int i = this.pos;
+                for (; i < limit; i++) {
+                    final byte b = this.window.get(i);
+                    if (b == '\n' || b == '\r') {
+                        break;
+                    }
+                    if (b < 0) {
+                        ascii = false;
+                    }
+                }
+                final boolean lastWindow = this.windowStart + limit >= this.endOffset;
+                if (i < limit) {
+                    final int next;
+                    if (this.window.get(i) == '\r') {
+                        if (i + 1 < limit) {
+                            next = this.window.get(i + 1) == '\n' ? i + 2 : i + 1;
+                        } else if (lastWindow) {
+                            next = i + 1;
+                        } else {
+                            // "\r" is last byte of window, peek next window
+                            remapAtLineStart();
+                            continue;
+                        }
+                    } else {
+                        next = i + 1;
+                    }
+                    return line(this.pos, i, ascii, next);
+                } else if (lastWindow) {
+                    return line(this.pos, limit, ascii, limit);
+                } else {
+                    remapAtLineStart();
+                }
+            }
+        }
+
+        private CharSequence line(int lineStart, int lineEnd, boolean ascii, int next) {
+            final CharSequence line;
+            if (ascii) {
+                line = this.asciiLineView.reset(this.window, lineStart, lineEnd - lineStart);
+            } else {
+                line = decode(lineStart, lineEnd);
+            }
+            this.pos = next;
+            return line;
+        }
+
+        private CharSequence decode(int lineStart, int lineEnd) {
+            final ByteBuffer bb = this.window.duplicate();
+            // cast to Buffer, keep byte code runnable on java 8
+            ((Buffer) bb).limit(lineEnd);
+            ((Buffer) bb).position(lineStart);
+            final int lineLength = lineEnd - lineStart;
+            if (this.decodedLine.capacity() < lineLength) {
+                this.decodedLine = CharBuffer.allocate(Math.max(lineLength, 2 * this.decodedLine.capacity()));
+            }
+            ((Buffer) this.decodedLine).clear();
+            this.decoder.reset();
+            final CoderResult cr = this.decoder.decode(bb, this.decodedLine, true);
+            if (!cr.isUnderflow()) {
+                // UTF-8 never decodes to more chars than bytes
+                throw new IllegalStateException("Cannot decode line " + cr);
+            }
+            this.decoder.flush(this.decodedLine);
+            ((Buffer) this.decodedLine).flip();
+            return this.decodedLine;
+        }
+
+        private void remapAtLineStart() throws IOException {
+            if (this.pos == 0) {
+                // line is longer than a window
+                this.windowSize = (int) Math.min(MAX_WINDOW_SIZE, 2L * this.windowSize);
+            }
+            map(this.windowStart + this.pos);
+        }
+
+        private void map(long offset) throws IOException {
+            final long size = Math.min(this.windowSize, this.endOffset - offset);
+            this.window = this.fc.map(FileChannel.MapMode.READ_ONLY, offset, Math.max(0L, size));
+            this.windowStart = offset;
+            this.pos = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.window = null;
+            if (this.closeChannel) {
+                this.fc.close();
+            }
+        }
+    }
+
+    /**
+     * Provide lines appended to a file, like "tail -F".
+     * <p>
+     * Waiting for more lines polls the file. A line is handed out only when
+     * its line terminator is written, a partially written line is held back.
+     * Rotation, the file name refers to a new file, and truncation, the file
+     * is shorter than the read position, restart reading the file from its
+     * start.
+     * <p>
+     * {@link #readLine()} returns null only after {@link #stop()} is called.
+     */
+    public static class FollowingFileLineSource implements ILineSource {
+
+        static final long DEFAULT_POLL_MILLIS = 250L;
+        static final int BUFFER_SIZE = 64 * 1024;
+
+        private final Path path;
+        private final long pollMillis;
+        private final Runnable onIdle;
+        private final ByteBuffer bb;
+        private volatile boolean stopped;
+
+        private FileChannel fc;
+        private Object fileIdentity;
+        private long readPosition;
+        private byte[] lineBytes = new byte[256];
+        private int lineLength;
+
+        /**
+         * Create an setup, start reading at the end of the file.
+         *
+         * @param f
+         * @param pollMillis waiting time before polling the file again
+         * @param onIdle called once, before waiting for more lines
+         * @throws IOException
+         */
+        public FollowingFileLineSource(File f, long pollMillis, Runnable onIdle) throws IOException {
+            this(f, -1L, pollMillis, onIdle);
+        }
+
+        /**
+         * Create an setup.
+         *
+         * @param f
+         * @param startPosition start reading at this offset, or -1 for the
+         * end of the file
+         * @param pollMillis waiting time before polling the file again
+         * @param onIdle called once, before waiting for more lines
+         * @throws IOException
+         */
+        public FollowingFileLineSource(File f, long startPosition, long pollMillis, Runnable onIdle) throws IOException {
+            this.path = f.toPath();
+            this.pollMillis = pollMillis;
+            this.onIdle = onIdle;
+            this.bb = ByteBuffer.allocate(BUFFER_SIZE);
+            // cast to Buffer, keep byte code runnable on java 8
+            ((Buffer) this.bb).flip();
+            this.fc = FileChannel.open(this.path, StandardOpenOption.READ);
+            this.fileIdentity = fileIdentity(Files.readAttributes(this.path, BasicFileAttributes.class));
+            final long size = this.fc.size();
+            this.readPosition = startPosition < 0 ? size : Math.min(startPosition, size);
+        }
+
+        /**
+         * Stop following, {@link #readLine()} returns null.
+         * <p>
+         * May be called by any thread.
+         */
+        public void stop() {
+            this.stopped = true;
+        }
+
+        /**
+         * Offset of the start of the next line not handed out yet.
+         *
+         * @return
+         */
+        public long position() {
+            return this.readPosition - this.bb.remaining() - this.lineLength;
+        }
+
+        @Override
+        public CharSequence readLine() throws IOException {
+            boolean idle = false;
+            for (;;) {
+                while (this.bb.hasRemaining()) {
+                    final byte b = this.bb.get();
+                    if (b == '\n') {
+                        return takeLine();
+                    }
+                    appendToLine(b);
+                }
+                if (this.stopped) {
+                    return null;
+                }
+                final FillResult fillResult = fill();
+                if (fillResult == FillResult.rotated && this.lineLength > 0) {
+                    // last line of the rotated file has no line terminator
+                    return takeLine();
+                } else if (fillResult == FillResult.nothing) {
+                    if (!idle) {
+                        idle = true;
+                        this.onIdle.run();
+                    }
+                    sleep();
+                }
+            }
+        }
+
+        private enum FillResult {
+            filled, rotated, truncated, nothing
+        }
+
+        private FillResult fill() throws IOException {
+            // cast to Buffer, keep byte code runnable on java 8
+            ((Buffer) this.bb).clear();
+            final int n = this.fc.read(this.bb, this.readPosition);
+            ((Buffer) this.bb).flip();
+            if (n > 0) {
+                this.readPosition += n;
+                return FillResult.filled;
+            }
+            if (this.fc.size() < this.readPosition) {
+                this.readPosition = 0L;
+                this.lineLength = 0;
+                return FillResult.truncated;
+            }
+            if (!Files.exists(this.path)) {
+                // rotated, but the new file is not created yet
+                return FillResult.nothing;
+            }
+            final Object currentFileIdentity = fileIdentity(Files.readAttributes(this.path, BasicFileAttributes.class));
+            if (this.fileIdentity.equals(currentFileIdentity)) {
+                return FillResult.nothing;
+            }
+            if (this.fc.size() > this.readPosition) {
+                // rotated file was written after reading it, read it first
+                return FillResult.filled;
+            }
+            final FileChannel newFc = FileChannel.open(this.path, StandardOpenOption.READ);
+            this.fc.close();
+            this.fc = newFc;
+            this.fileIdentity = currentFileIdentity;
+            this.readPosition = 0L;
+            return FillResult.rotated;
+        }
+
+        private static Object fileIdentity(BasicFileAttributes attrs) {
+            // fileKey is null on some platforms, fall back to creation time
+            return attrs.fileKey() != null ? attrs.fileKey() : attrs.creationTime();
+        }
+
+        private void sleep() {
+            try {
+                Thread.sleep(this.pollMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                this.stopped = true;
+            }
+        }
+
+        private void appendToLine(byte b) {
+            if (this.lineLength == this.lineBytes.length) {
+                this.lineBytes = Arrays.copyOf(this.lineBytes, this.lineBytes.length * 2);
+            }
+            this.lineBytes[this.lineLength++] = b;
+        }
+
+        private String takeLine() {
+            int length = this.lineLength;
+            if (length > 0 && this.lineBytes[length - 1] == '\r') {
+                length -= 1;
+            }
+            this.lineLength = 0;
+            return new String(this.lineBytes, 0, length, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.fc.close();
+        }
+    }
+
+    /**
+     * A {@link CharSequence} view on US-ASCII bytes of a {@link ByteBuffer}.
+     */
+    static class AsciiLineView implements CharSequence {
+
+        private ByteBuffer bb;
+        private int offset;
+        private int length;
+
+        AsciiLineView reset(ByteBuffer bb, int offset, int length) {
+            this.bb = bb;
+            this.offset = offset;
+            this.length = length;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return this.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= this.length) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + this.length);
+            }
+            return (char) this.bb.get(this.offset + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return substring(0, this.length);
+        }
+
+        private String substring(int start, int end) {
+            if (start < 0 || end > this.length || start > end) {
+                throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + this.length);
+            }
+            final char[] chars = new char[end - start];
+            for (int i = 0; i < chars.length; i++) {
+                chars[i] = (char) this.bb.get(this.offset + start + i);
+            }
+            return new String(chars);
+        }
+    }
+}
@@ -16,8 +16,11 @@
 package org.huberb.groktools;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Map;
+import java.util.function.UnaryOperator;
+import org.huberb.groktools.GrokMatcher.ITypedValues;
 
 /**
  * A builder, and converter mapping a {@link  HashMap} to list of keys, and
@@ -27,6 +30,15 @@ class ListKeysAndValuesBuilder {
 
     private final List<String> keys = new ArrayList<>();
     private final List<String> values = new ArrayList<>();
+    /**
+     * Indices of the converted values, read from {@link #typedValuesMap}
+     * instead of {@link #values}.
+     */
+    private final BitSet typedIndices = new BitSet();
+    /**
+     * Map of the keys having converted values.
+     */
+    private Map<String, Object> typedValuesMap;
 
     /**
      * Add a key, and its value.
@@ -50,8 +62,16 @@ class ListKeysAndValuesBuilder {
      */
     ListKeysAndValuesBuilder addKeys(List<String> keysAllowed, Map<String, Object> m) {
         keys.addAll(keysAllowed);
+        final ITypedValues typedValues = m instanceof ITypedValues ? (ITypedValues) m : null;
         // peek only keys from map m
         for (String k : keysAllowed) {
+            if (typedValues != null && typedValues.valueType(k) != null) {
+                // converted value is appended by appendValue, or converted by values
+                this.typedValuesMap = m;
+                this.typedIndices.set(values.size());
+                values.add("");
+                continue;
+            }
             final Object o = m.getOrDefault(k, "");
             final String v = convertObjectToString(o);
             values.add(v);
@@ -59,6 +79,27 @@ class ListKeysAndValuesBuilder {
         return this;
     }
 
+    /**
+     * Append a value, a converted number is appended without creating a
+     * string.
+     *
+     * @param sb
+     * @param i index of the value
+     * @param escape escaping a string value
+     */
+    void appendValue(StringBuilder sb, int i, UnaryOperator<String> escape) {
+        if (this.typedIndices.get(i) && ((ITypedValues) this.typedValuesMap).appendValue(sb, keys.get(i))) {
+            return;
+        }
+        sb.append(escape.apply(value(i)));
+    }
+
+    private String value(int i) {
+        return this.typedIndices.get(i)
+                ? convertObjectToString(this.typedValuesMap.get(this.keys.get(i)))
+                : this.values.get(i);
+    }
+
     /**
      * Return added keys
      *
@@ -74,6 +115,10 @@ class ListKeysAndValuesBuilder {
      * @return
      */
     List<String> values() {
+        for (int i = this.typedIndices.nextSetBit(0); i >= 0; i = this.typedIndices.nextSetBit(i + 1)) {
+            this.values.set(i, value(i));
+        }
+        this.typedIndices.clear();
         return this.values;
     }
 
@@ -0,0 +1,497 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Reject lines not containing literals, every match of a regex must contain.
+ * <p>
+ * The literals are extracted from the expanded regex of a {@link Grok} by
+ * {@link RequiredLiteralsAnalyzer}. A line lacking any of these literals
+ * cannot match, thus the regex is not invoked for it. Lines passing the
+ * prefilter are not guaranteed to match.
+ *
+ * @author berni3
+ */
+class LiteralPrefilter {
+
+    /**
+     * Check at most this number of literals, the longest ones.
+     */
+    static final int MAX_LITERALS = 3;
+
+    private final List<String> literals;
+
+    private final LongAdder checkedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder passedNotMatchedCount = new LongAdder();
+
+    /**
+     * Create an setup.
+     *
+     * @param literals every literal must be contained in a line
+     */
+    LiteralPrefilter(List<String> literals) {
+        this.literals = Collections.unmodifiableList(new ArrayList<>(literals));
+    }
+
+    /**
+     * Create a prefilter from the expanded regex of a {@link Grok}.
+     *
+     * @param grok
+     * @return
+     */
+    static LiteralPrefilter of(Grok grok) {
+        return of(grok.getNamedRegex());
+    }
+
+    /**
+     * Create a prefilter from a regex.
+     *
+     * @param regex
+     * @return
+     */
+    static LiteralPrefilter of(String regex) {
+        final Set<String> required = new RequiredLiteralsAnalyzer(regex).analyze();
+        return new LiteralPrefilter(selectLiterals(required));
+    }
+
+    /**
+     * Select the longest literals, skipping literals contained in a longer
+     * literal.
+     */
+    static List<String> selectLiterals(Set<String> required) {
+        final List<String> sortedByLength = required.stream()
+                .filter((literal) -> !literal.isEmpty())
+                .sorted(Comparator.comparingInt(String::length).reversed().thenComparing(Comparator.naturalOrder()))
+                .collect(Collectors.toList());
+        final List<String> selected = new ArrayList<>();
+        for (String literal : sortedByLength) {
+            if (selected.size() >= MAX_LITERALS) {
+                break;
+            }
+            if (selected.stream().noneMatch((longer) -> longer.contains(literal))) {
+                selected.add(literal);
+            }
+        }
+        return selected;
+    }
+
+    List<String> literals() {
+        return this.literals;
+    }
+
+    /**
+     * Decide if a line may match.
+     *
+     * @param line
+     * @return false if the line cannot match
+     */
+    boolean mayMatch(CharSequence line) {
+        this.checkedCount.increment();
+        for (int i = 0; i < this.literals.size(); i++) {
+            if (!contains(line, this.literals.get(i))) {
+                this.rejectedCount.increment();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Count a line passing the prefilter, but not matching the regex.
+     */
+    void countPassedNotMatched() {
+        this.passedNotMatchedCount.increment();
+    }
+
+    static boolean contains(CharSequence s, String literal) {
+        if (s instanceof String) {
+            return ((String) s).contains(literal);
+        }
+        final int n = literal.length();
+        final char first = literal.charAt(0);
+        for (int i = 0, max = s.length() - n; i <= max; i++) {
+            if (s.charAt(i) == first) {
+                int j = 1;
+                while (j < n && s.charAt(i + j) == literal.charAt(j)) {
+                    j++;
+                }
+                if (j == n) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    long checkedCount() {
+        return this.checkedCount.sum();
+    }
+
+    long rejectedCount() {
+        return this.rejectedCount.sum();
+    }
+
+    long passedNotMatchedCount() {
+        return this.passedNotMatchedCount.sum();
+    }
+
+    /**
+     * Format literals, and counters.
+     *
+     * @return
+     */
+    String formatStatistics() {
+        final long checked = checkedCount();
+        final long rejected = rejectedCount();
+        final long passed = checked - rejected;
+        final long passedNotMatched = passedNotMatchedCount();
+        return String.format("prefilter statistics%n"
+                + "literals: %s%n"
+                + "lines checked: %d%n"
+                + "lines rejected: %d (%.1f %%)%n"
+                + "lines passed: %d (%.1f %%), not matching the regex: %d%n",
+                this.literals.stream().map((literal) -> "\"" + literal + "\"").collect(Collectors.toList()),
+                checked,
+                rejected, percent(rejected, checked),
+                passed, percent(passed, checked), passedNotMatched);
+    }
+
+    private static double percent(long n, long total) {
+        return total > 0 ? 100.0d * n / total : 0.0d;
+    }
+
+    /**
+     * Extract literals, every match of a regex must contain.
+     * <p>
+     * The analysis is conservative. A literal is required if it is part of a
+     * sequence, which is not optional, and not inside an alternation. For an
+     * alternation only literals required by all alternatives are required.
+     * Constructs not understood, like inline flags changing the case
+     * sensitivity, yield no literals at all.
+     */
+    static class RequiredLiteralsAnalyzer {
+
+        private final String regex;
+        private int pos;
+
+        RequiredLiteralsAnalyzer(String regex) {
+            this.regex = regex;
+        }
+
+        /**
+         * Analyze the regex.
+         *
+         * @return the required literals, maybe empty
+         */
+        Set<String> analyze() {
+            try {
+                this.pos = 0;
+                final Set<String> required = alternation();
+                if (this.pos < this.regex.length()) {
+                    throw new UnsupportedRegexException("unbalanced ')' at " + this.pos);
+                }
+                return required;
+            } catch (UnsupportedRegexException | IndexOutOfBoundsException | NumberFormatException ex) {
+                return Collections.emptySet();
+            }
+        }
+
+        private Set<String> alternation() {
+            Set<String> required = sequence();
+            while (peekIs('|')) {
+                this.pos++;
+                final Set<String> requiredOfAlternative = sequence();
+                required = new LinkedHashSet<>(required);
+                required.retainAll(requiredOfAlternative);
+            }
+            return required;
+        }
+
+        private Set<String> sequence() {
+            final Set<String> required = new LinkedHashSet<>();
+            final StringBuilder run = new StringBuilder();
+            while (this.pos < this.regex.length() && !peekIs('|') && !peekIs(')')) {
+                final Atom atom = atom();
+                final int min = quantifierMin();
+                if (min == 0) {
+                    // optional atom
+                    flush(run, required);
+                } else if (atom.literal >= 0) {
+                    run.append((char) atom.literal);
+                    if (min > 1) {
+                        // "a+": the run continues by an unknown number of "a"
+                        flush(run, required);
+                    }
+                } else {
+                    flush(run, required);
+                    required.addAll(atom.required);
+                }
+            }
+            flush(run, required);
+            return required;
+        }
+
+        private static void flush(StringBuilder run, Set<String> required) {
+            if (run.length() > 0) {
+                required.add(run.toString());
+                run.setLength(0);
+            }
+        }
+
+        /**
+         * Parse an optional quantifier following an atom.
+         *
+         * @return 0 if the atom is optional, 1 if the atom occurs exactly
+         * once, 2 if the atom occurs at least once
+         */
+        private int quantifierMin() {
+            if (this.pos >= this.regex.length()) {
+                return 1;
+            }
+            final char c = this.regex.charAt(this.pos);
+            final int min;
+            if (c == '?' || c == '*') {
+                this.pos++;
+                min = 0;
+            } else if (c == '+') {
+                this.pos++;
+                min = 2;
+            } else if (c == '{') {
+                final int close = this.regex.indexOf('}', this.pos);
+                if (close < 0) {
+                    throw new UnsupportedRegexException("unbalanced '{' at " + this.pos);
+                }
+                final String bounds = this.regex.substring(this.pos + 1, close);
+                final int comma = bounds.indexOf(',');
+                final int lower = Integer.parseInt(comma >= 0 ? bounds.substring(0, comma) : bounds);
+                final boolean exactlyOne = lower == 1 && (comma < 0 || bounds.substring(comma + 1).equals("1"));
+                this.pos = close + 1;
+                min = lower == 0 ? 0 : (exactlyOne ? 1 : 2);
+            } else {
+                return 1;
+            }
+            // lazy, or possessive quantifier
+            if (peekIs('?') || peekIs('+')) {
+                this.pos++;
+            }
+            return min;
+        }
+
+        private Atom atom() {
+            final char c = this.regex.charAt(this.pos++);
+            switch (c) {
+                case '(':
+                    return group();
+                case '[':
+                    characterClass();
+                    return Atom.NONE;
+                case '.':
+                case '^':
+                case '$':
+                    return Atom.NONE;
+                case '\\':
+                    return escape();
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw new UnsupportedRegexException("dangling quantifier at " + (this.pos - 1));
+                default:
+                    return Atom.literal(c);
+            }
+        }
+
+        private Atom group() {
+            boolean lookaround = false;
+            if (peekIs('?')) {
+                this.pos++;
+                final char c = this.regex.charAt(this.pos);
+                if (c == ':' || c == '>') {
+                    this.pos++;
+                } else if (c == '=' || c == '!') {
+                    this.pos++;
+                    lookaround = true;
+                } else if (c == '<' && (this.regex.charAt(this.pos + 1) == '=' || this.regex.charAt(this.pos + 1) == '!')) {
+                    this.pos += 2;
+                    lookaround = true;
+                } else if (c == '<') {
+                    final int close = this.regex.indexOf('>', this.pos);
+                    if (close < 0) {
+                        throw new UnsupportedRegexException("unbalanced group name at " + this.pos);
+                    }
+                    this.pos = close + 1;
+                } else {
+                    // inline flags, like "(?i)"
+                    throw new UnsupportedRegexException("inline flags at " + this.pos);
+                }
+            }
+            final Set<String> required = alternation();
+            if (!peekIs(')')) {
+                throw new UnsupportedRegexException("unbalanced '(' at " + this.pos);
+            }
+            this.pos++;
+            return lookaround ? Atom.NONE : Atom.group(required);
+        }
+
+        private void characterClass() {
+            // skip up to the matching ']', nested classes included
+            int depth = 1;
+            if (peekIs('^')) {
+                this.pos++;
+            }
+            if (peekIs(']')) {
+                this.pos++;
+            }
+            while (depth > 0) {
+                final char c = this.regex.charAt(this.pos++);
+                if (c == '\\') {
+                    this.pos++;
+                } else if (c == '[') {
+                    depth++;
+                } else if (c == ']') {
+                    depth--;
+                }
+            }
+        }
+
+        private Atom escape() {
+            final char c = this.regex.charAt(this.pos++);
+            switch (c) {
+                case 't':
+                    return Atom.literal('\t');
+                case 'n':
+                    return Atom.literal('\n');
+                case 'r':
+                    return Atom.literal('\r');
+                case 'f':
+                    return Atom.literal('\f');
+                case 'a':
+                    return Atom.literal('\u0007');
+                case 'e':
+                    return Atom.literal('\u001b');
+                case 'x':
+                    if (peekIs('{')) {
+                        throw new UnsupportedRegexException("\\x{...} at " + this.pos);
+                    }
+                    this.pos += 2;
+                    return Atom.literal(Integer.parseInt(this.regex.substring(this.pos - 2, this.pos), 16));
+                case 'u':
+                    this.pos += 4;
+                    return Atom.literal(Integer.parseInt(this.regex.substring(this.pos - 4, this.pos), 16));
+                case 'd':
+                case 'D':
+                case 'w':
+                case 'W':
+                case 's':
+                case 'S':
+                case 'h':
+                case 'H':
+                case 'v':
+                case 'V':
+                case 'R':
+                case 'X':
+                case 'b':
+                case 'B':
+                case 'A':
+                case 'z':
+                case 'Z':
+                case 'G':
+                    return Atom.NONE;
+                case 'p':
+                case 'P':
+                    if (peekIs('{')) {
+                        this.pos = this.regex.indexOf('}', this.pos) + 1;
+                        if (this.pos == 0) {
+                            throw new UnsupportedRegexException("unbalanced \\p{ at " + this.pos);
+                        }
+                    } else {
+                        this.pos++;
+                    }
+                    return Atom.NONE;
+                case 'k':
+                    this.pos = this.regex.indexOf('>', this.pos) + 1;
+                    if (this.pos == 0) {
+                        throw new UnsupportedRegexException("unbalanced \\k< at " + this.pos);
+                    }
+                    return Atom.NONE;
+                default:
+                    if (c >= '1' && c <= '9') {
+                        // back reference
+                        while (this.pos < this.regex.length() && Character.isDigit(this.regex.charAt(this.pos))) {
+                            this.pos++;
+                        }
+                        return Atom.NONE;
+                    }
+                    if (Character.isLetterOrDigit(c)) {
+                        throw new UnsupportedRegexException("escape \\" + c + " at " + this.pos);
+                    }
+                    return Atom.literal(c);
+            }
+        }
+
+        private boolean peekIs(char c) {
+            return this.pos < this.regex.length() && this.regex.charAt(this.pos) == c;
+        }
+
+        /**
+         * A single literal character, or a sub regex and its required
+         * literals.
+         */
+        static class Atom {
+
+            static final Atom NONE = new Atom(-1, Collections.emptySet());
+
+            final int literal;
+            final Set<String> required;
+
+            Atom(int literal, Set<String> required) {
+                this.literal = literal;
+                this.required = required;
+            }
+
+            static Atom literal(int c) {
+                return new Atom(c, Collections.emptySet());
+            }
+
+            static Atom group(Set<String> required) {
+                return new Atom(-1, required);
+            }
+        }
+
+        /**
+         * Signal a regex construct not supported by the analysis.
+         */
+        static class UnsupportedRegexException extends RuntimeException {
+
+            private static final long serialVersionUID = 1L;
+
+            UnsupportedRegexException(String message) {
+                super(message);
+            }
+        }
+    }
+}
@@ -15,9 +15,9 @@
  */
 package org.huberb.groktools;
 
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
+import org.huberb.groktools.GrokMain.InputLineProcessor;
 
 /**
  * Implementation for processing multi-line matching.
@@ -36,6 +36,16 @@ public class MatchGatherOutput {
         this.wrapperStored = null;
     }
 
+    /**
+     * Continue gathering from a stored {@link Wrapper}, for example restored
+     * from a checkpoint.
+     *
+     * @param wrapperStored
+     */
+    MatchGatherOutput(Wrapper wrapperStored) {
+        this.wrapperStored = wrapperStored;
+    }
+
     /**
      * Process current match.
      *
@@ -48,14 +58,15 @@ public class MatchGatherOutput {
      */
     public Optional<Result> gatherMatch(
             int readLineCount,
-            String subject, int start, int end, Map<String, Object> captureMap) {
+            CharSequence subject, int start, int end, Map<String, Object> captureMap) {
         final Optional<Result> resultOptional;
-        final Wrapper w = new Wrapper(readLineCount, subject, start, end, captureMap);
-        if (w.isHoldingAMatch()) {
+        if (Wrapper.isHoldingAMatch(subject, start, end, captureMap)) {
             // return wrapperStored
             resultOptional = createResultOptional();
 
-            // store w as new wrapperStored
+            // store w as new wrapperStored,
+            // subject may be a view, thus keep a copy of it
+            final Wrapper w = new Wrapper(readLineCount, subject.toString(), start, end, captureMap);
             this.wrapperStored = w;
         } else if (wrapperStored != null && wrapperStored.isHoldingAMatch()) {
             // return wrappedStore + extra
@@ -124,9 +135,22 @@ public class MatchGatherOutput {
          * @return
          */
         boolean isHoldingAMatch() {
+            return isHoldingAMatch(this.subject, this.start, this.end, this.m);
+        }
+
+        /**
+         * Decide if fields of a possible match, represent a match.
+         *
+         * @param subject
+         * @param start
+         * @param end
+         * @param m
+         * @return
+         */
+        static boolean isHoldingAMatch(CharSequence subject, int start, int end, Map<String, Object> m) {
             boolean isHoldingAMatch = true;
             isHoldingAMatch = isHoldingAMatch && subject != null;
-            isHoldingAMatch = isHoldingAMatch && !subject.isEmpty();
+            isHoldingAMatch = isHoldingAMatch && subject.length() > 0;
             // 0 <= start
             // start <= end
             // 0 <= end
@@ -139,14 +163,14 @@ public class MatchGatherOutput {
             return isHoldingAMatch;
         }
 
-        void appendExtra(String s) {
+        void appendExtra(CharSequence s) {
             extra.append(s).append("\n");
         }
 
     }
 
     /**
-     * Data value of {@link MatchGatherOutput#gatherMatch(int, java.lang.String, int, int, java.util.Map) ,
+     * Data value of {@link MatchGatherOutput#gatherMatch(int, java.lang.CharSequence, int, int, java.util.Map) ,
      * and {@link MatchGatherOutput#retrieveResult()}.
      * <p>
      * Result "extends" data values already stored in {@link Wrapper}.
@@ -173,9 +197,8 @@ public class MatchGatherOutput {
         }
 
         Map<String, Object> extraToMap() {
-            final Map<String, Object> wmMerged = new HashMap<>(this.w.m);
-            wmMerged.put("extra", this.w.extra.toString());
-            return wmMerged;
+            // merged when read, e.g. by a formatter
+            return GrokMatcher.withEntry(this.w.m, InputLineProcessor.EXTRA_FIELD, this.w.extra.toString());
         }
     }
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import java.io.Closeable;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Abort matching a line exceeding a time limit.
+ * <p>
+ * {@link java.util.regex.Matcher} can not be interrupted. A line is passed to
+ * the regex wrapped by a {@link DeadlineCharSequence}, checking the deadline
+ * while the regex reads the characters of the line. Catastrophic backtracking
+ * reads the characters over and over, thus it is aborted soon after the
+ * deadline.
+ * <p>
+ * An instance is shared by all matching threads. Aborted lines are counted,
+ * reported by the {@link RunStatistics}, and written to an optional side file.
+ *
+ * @author berni3
+ */
+class MatchTimeout implements Closeable {
+
+    private final long timeoutNanos;
+    private final PrintWriter timedOutLinesWriter;
+    private final LongAdder timedOutCount = new LongAdder();
+
+    /**
+     * Create an setup.
+     *
+     * @param timeoutMicros maximum microseconds of matching a line
+     * @param timedOutLinesWriter writer of the aborted lines, or null
+     */
+    MatchTimeout(long timeoutMicros, PrintWriter timedOutLinesWriter) {
+        new GrokBuilder.Validations(timeoutMicros <= 0)
+                .throwIllegalArgumentExceptionIf("Match timeout must be positive");
+        this.timeoutNanos = TimeUnit.MICROSECONDS.toNanos(timeoutMicros);
+        this.timedOutLinesWriter = timedOutLinesWriter;
+    }
+
+    /**
+     * Wrap a line, starting its deadline.
+     *
+     * @param line
+     * @return
+     */
+    DeadlineCharSequence deadline(CharSequence line) {
+        return new DeadlineCharSequence(line, System.nanoTime() + this.timeoutNanos);
+    }
+
+    /**
+     * Count an aborted line, and write it to the side file.
+     *
+     * @param line
+     */
+    void timedOut(CharSequence line) {
+        this.timedOutCount.increment();
+        if (this.timedOutLinesWriter != null) {
+            synchronized (this.timedOutLinesWriter) {
+                this.timedOutLinesWriter.println(line);
+            }
+        }
+    }
+
+    long timedOutCount() {
+        return this.timedOutCount.sum();
+    }
+
+    long timeoutMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(this.timeoutNanos);
+    }
+
+    @Override
+    public void close() {
+        if (this.timedOutLinesWriter != null) {
+            this.timedOutLinesWriter.close();
+        }
+    }
+
+    /**
+     * Thrown reading a {@link DeadlineCharSequence} after its deadline.
+     */
+    static class MatchTimeoutException extends RuntimeException {
+
+        private static final long serialVersionUID = 20210301L;
+
+        MatchTimeoutException() {
+            super("Match timeout", null, false, false);
+        }
+    }
+
+    /**
+     * A line checking its deadline while being read.
+     * <p>
+     * The clock is read every {@link #CHECK_INTERVAL} reads of a character
+     * only. Sub sequences, and the string of the line are not checked, they
+     * are read for capturing the matched groups. Not thread-safe.
+     */
+    static class DeadlineCharSequence implements CharSequence {
+
+        static final int CHECK_INTERVAL = 1024;
+
+        private final CharSequence line;
+        private final long deadlineNanos;
+        private int reads;
+        private boolean armed = true;
+
+        DeadlineCharSequence(CharSequence line, long deadlineNanos) {
+            this.line = line;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /**
+         * Stop checking the deadline, e.g. after matching.
+         */
+        void disarm() {
+            this.armed = false;
+        }
+
+        @Override
+        public int length() {
+            return this.line.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (this.armed && ++this.reads >= CHECK_INTERVAL) {
+                this.reads = 0;
+                if (System.nanoTime() - this.deadlineNanos > 0) {
+                    throw new MatchTimeoutException();
+                }
+            }
+            return this.line.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return this.line.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return this.line.toString();
+        }
+    }
+}
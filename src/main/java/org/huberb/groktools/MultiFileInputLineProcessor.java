@@ -0,0 +1,225 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.huberb.groktools.GrokMain.InputLineProcessor;
+import org.huberb.groktools.GrokMain.ReaderFactory;
+import org.huberb.groktools.InputLineSources.ILineSource;
+import org.huberb.groktools.InputLineSources.InputMode;
+import org.huberb.groktools.OutputGrokResultFormatters.IOutputGrokResultFormatter;
+import org.huberb.groktools.OutputGrokResultFormatters.OutputGrokResultFormatterOfFile;
+
+/**
+ * Process lines of several files using a pool of worker threads.
+ * <p>
+ * Each file is processed by a single worker thread. All records are output to
+ * a single {@link IOutputGrokResultFormatter}, tagged by the file name as field
+ * {@link #FILE_FIELD}, thus a pattern must not capture a field of this name.
+ * Records of a file keep their order, records of different files may
+ * interleave.
+ *
+ * @author berni3
+ */
+class MultiFileInputLineProcessor {
+
+    /**
+     * Name of the field holding the name of the file of a record.
+     */
+    static final String FILE_FIELD = "file";
+
+    private final InputLineProcessor inputLineProcessor;
+    private final InputMode inputMode;
+    private final int workers;
+
+    /**
+     * Create an setup.
+     *
+     * @param inputLineProcessor setup of processing a file, its formatter is
+     * the single formatter of all files, its maximum number of lines is read
+     * per file
+     * @param inputMode
+     * @param workers number of worker threads
+     */
+    MultiFileInputLineProcessor(InputLineProcessor inputLineProcessor,
+            InputMode inputMode,
+            int workers) {
+        new GrokBuilder.Validations()
+                .isNull(inputLineProcessor)
+                .throwIllegalArgumentExceptionIf("InputLineProcessor is null");
+        new GrokBuilder.Validations(workers < 1)
+                .throwIllegalArgumentExceptionIf("Number of workers is less than 1");
+        final List<Grok> groks = inputLineProcessor.multiPatternMatcher != null
+                ? inputLineProcessor.multiPatternMatcher.groks()
+                : Collections.singletonList(inputLineProcessor.grok);
+        for (Grok grok : groks) {
+            new GrokBuilder.Validations(GrokMatcher.captureKeys(grok).contains(FILE_FIELD))
+                    .throwIllegalArgumentExceptionIf(String.format("Pattern %s captures field %s, being the name of the file of several files",
+                            grok.getOriginalGrokPattern(), FILE_FIELD));
+        }
+        this.inputLineProcessor = inputLineProcessor;
+        this.inputMode = inputMode;
+        this.workers = workers;
+    }
+
+    /**
+     * Entry point for processing all lines of all files.
+     *
+     * @param files
+     * @throws IOException
+     */
+    public void processFiles(List<File> files) throws IOException {
+        final IOutputGrokResultFormatter outputGrokResultConverter = inputLineProcessor.outputGrokResultConverter;
+        final ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, Math.min(workers, files.size())));
+        try {
+            outputGrokResultConverter.start();
+            final List<Future<Void>> futures = new ArrayList<>();
+            for (File file : files) {
+                futures.add(executorService.submit(() -> {
+                    processFile(file);
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                waitFor(future);
+            }
+            outputGrokResultConverter.end();
+        } finally {
+            executorService.shutdownNow();
+            outputGrokResultConverter.close();
+        }
+    }
+
+    /**
+     * Process all lines of a file.
+     * <p>
+     * Running on a worker thread.
+     */
+    void processFile(File file) throws IOException {
+        final InputLineProcessor inputLineProcessorOfFile = inputLineProcessor.withOutputGrokResultConverter(
+                new OutputGrokResultFormatterOfFile(file.getPath(), inputLineProcessor.outputGrokResultConverter));
+        try (final ILineSource lineSource = new ReaderFactory(file).createLineSource(inputMode)) {
+            inputLineProcessorOfFile.processLines(lineSource);
+        }
+    }
+
+    private static void waitFor(Future<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing files", ex);
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Failed processing files", cause);
+        }
+    }
+
+    /**
+     * Decide if a file name is a glob pattern.
+     *
+     * @param fileName
+     * @return
+     */
+    static boolean isGlob(String fileName) {
+        return fileName.indexOf('*') >= 0
+                || fileName.indexOf('?') >= 0
+                || fileName.indexOf('[') >= 0
+                || fileName.indexOf('{') >= 0;
+    }
+
+    /**
+     * Expand file names, and glob patterns to a list of files.
+     * <p>
+     * The files matching a glob pattern are sorted by their path. A glob
+     * pattern matching no file is an error.
+     *
+     * @param fileNames
+     * @return
+     * @throws IOException
+     */
+    static List<File> expandFileNames(List<String> fileNames) throws IOException {
+        final List<File> files = new ArrayList<>();
+        for (String fileName : fileNames) {
+            if (isGlob(fileName)) {
+                final List<File> matchingFiles = expandGlob(fileName);
+                new GrokBuilder.Validations(matchingFiles.isEmpty())
+                        .throwIllegalArgumentExceptionIf("No file matches " + fileName);
+                files.addAll(matchingFiles);
+            } else {
+                files.add(new File(fileName));
+            }
+        }
+        return files;
+    }
+
+    private static List<File> expandGlob(String glob) throws IOException {
+        // walk from the longest directory prefix without any glob character
+        final String normalizedGlob = glob.replace(File.separatorChar, '/');
+        int baseDirEnd = -1;
+        for (int i = 0; i < normalizedGlob.length() && "*?[{".indexOf(normalizedGlob.charAt(i)) < 0; i++) {
+            if (normalizedGlob.charAt(i) == '/') {
+                baseDirEnd = i;
+            }
+        }
+        final Path baseDir;
+        if (baseDirEnd < 0) {
+            baseDir = Paths.get(".");
+        } else if (baseDirEnd == 0) {
+            baseDir = Paths.get("/");
+        } else {
+            baseDir = Paths.get(normalizedGlob.substring(0, baseDirEnd));
+        }
+        if (!Files.isDirectory(baseDir)) {
+            return new ArrayList<>();
+        }
+        final boolean relativeToCurrentDir = baseDirEnd < 0;
+        final String relativeGlob = normalizedGlob.substring(baseDirEnd + 1);
+        final PathMatcher pathMatcher = FileSystems.getDefault().getPathMatcher("glob:" + relativeGlob);
+        final int maxDepth = relativeGlob.contains("**")
+                ? Integer.MAX_VALUE
+                : relativeGlob.split("/").length;
+        try (final Stream<Path> paths = Files.walk(baseDir, maxDepth)) {
+            return paths
+                    .filter(Files::isRegularFile)
+                    .filter((path) -> pathMatcher.matches(baseDir.relativize(path)))
+                    .sorted()
+                    .map((path) -> relativeToCurrentDir ? baseDir.relativize(path).toFile() : path.toFile())
+                    .collect(Collectors.toList());
+        }
+    }
+}
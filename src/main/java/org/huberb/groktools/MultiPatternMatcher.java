@@ -0,0 +1,262 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.huberb.groktools.GrokIt.GrokMatchResult;
+import org.huberb.groktools.RegexEngines.IRegexEngine;
+
+/**
+ * Match a line against several grok patterns in one pass.
+ * <p>
+ * The patterns are tried in an order adapting to the observed hit counts, the
+ * pattern matching most lines is tried first. A pattern is skipped without
+ * invoking its regex if the line lacks a literal every match of the pattern
+ * must contain, see {@link LiteralPrefilter}. The name of the first matching
+ * pattern is added to the captured values as field {@link #PATTERN_FIELD}, a
+ * pattern must not capture a field of this name.
+ * <p>
+ * An instance is shared by all matching threads, the adapted order is kept
+ * per thread by an {@link Ordering}.
+ *
+ * @author berni3
+ */
+class MultiPatternMatcher {
+
+    /**
+     * Name of the field holding the name of the matching pattern.
+     */
+    static final String PATTERN_FIELD = "pattern";
+
+    private static final Pattern SINGLE_PATTERN_NAME = Pattern.compile("^%\\{(\\w+)(?::[^}]*)?\\}$");
+
+    private final List<String> patterns;
+    private final List<String> patternNames;
+    private final List<Grok> groks;
+    private final List<LiteralPrefilter> literalPrefilters;
+    private final LongAdder[] hitCounts;
+    private final LongAdder noMatchCount = new LongAdder();
+
+    /**
+     * Create an setup.
+     *
+     * @param patterns grok patterns, in the initial order of trying them
+     * @param groks a compiled {@link Grok} per pattern
+     */
+    MultiPatternMatcher(List<String> patterns, List<Grok> groks) {
+        new GrokBuilder.Validations()
+                .isCollectionNullSafeEmpty(patterns)
+                .isNull(groks)
+                .throwIllegalArgumentExceptionIf("Patterns are empty");
+        new GrokBuilder.Validations(patterns.size() != groks.size())
+                .throwIllegalArgumentExceptionIf("Number of patterns, and number of groks differ");
+        final List<String> patternNamesTmp = new ArrayList<>();
+        final List<LiteralPrefilter> literalPrefiltersTmp = new ArrayList<>();
+        this.hitCounts = new LongAdder[patterns.size()];
+        for (int i = 0; i < patterns.size(); i++) {
+            new GrokBuilder.Validations(GrokMatcher.captureKeys(groks.get(i)).contains(PATTERN_FIELD))
+                    .throwIllegalArgumentExceptionIf(String.format("Pattern %s captures field %s, being the name of the matching pattern",
+                            patterns.get(i), PATTERN_FIELD));
+            patternNamesTmp.add(patternName(patterns.get(i)));
+            literalPrefiltersTmp.add(LiteralPrefilter.of(groks.get(i)));
+            this.hitCounts[i] = new LongAdder();
+        }
+        this.patterns = Collections.unmodifiableList(new ArrayList<>(patterns));
+        this.patternNames = Collections.unmodifiableList(patternNamesTmp);
+        this.groks = Collections.unmodifiableList(new ArrayList<>(groks));
+        this.literalPrefilters = Collections.unmodifiableList(literalPrefiltersTmp);
+    }
+
+    /**
+     * Name of a pattern, emitted as field {@link #PATTERN_FIELD}.
+     *
+     * @param pattern
+     * @return the name of the referenced pattern if the pattern consists of a
+     * single reference like "%{WILDFLY_SERVERLOG}", else the pattern itself
+     */
+    static String patternName(String pattern) {
+        final Matcher m = SINGLE_PATTERN_NAME.matcher(pattern.trim());
+        return m.matches() ? m.group(1) : pattern;
+    }
+
+    List<String> patterns() {
+        return this.patterns;
+    }
+
+    List<String> patternNames() {
+        return this.patternNames;
+    }
+
+    List<Grok> groks() {
+        return this.groks;
+    }
+
+    /**
+     * Create the order of trying the patterns, for a single thread.
+     *
+     * @return
+     */
+    Ordering createOrdering() {
+        return createOrdering(null);
+    }
+
+    /**
+     * Create the order of trying the patterns, for a single thread, capturing
+     * only some fields.
+     *
+     * @param fields fields to capture, or null for all fields
+     * @return
+     */
+    Ordering createOrdering(Set<String> fields) {
+        return createOrdering(fields, null);
+    }
+
+    /**
+     * Create the order of trying the patterns, for a single thread, capturing
+     * only some fields, and matching by a regex engine.
+     *
+     * @param fields fields to capture, or null for all fields
+     * @param regexEngine engine matching the regex of a grok, or null for the
+     * default engine
+     * @return
+     */
+    Ordering createOrdering(Set<String> fields, IRegexEngine regexEngine) {
+        return new Ordering(this.groks.size(), fields, regexEngine);
+    }
+
+    /**
+     * Match a line, trying the patterns in the given order.
+     *
+     * @param ordering order of the calling thread, updated on a hit
+     * @param line
+     * @return result of the first matching pattern, or an empty result
+     */
+    GrokMatchResult match(Ordering ordering, CharSequence line) {
+        for (int i = 0; i < ordering.order.length; i++) {
+            final int patternIndex = ordering.order[i];
+            final LiteralPrefilter literalPrefilter = this.literalPrefilters.get(patternIndex);
+            if (!literalPrefilter.mayMatch(line)) {
+                continue;
+            }
+            final Grok grok = this.groks.get(patternIndex);
+            final GrokMatchResult grokResult = ordering.grokIt(patternIndex).match(grok, line);
+            if (grokResult.m.isEmpty()) {
+                literalPrefilter.countPassedNotMatched();
+                continue;
+            }
+            ordering.hit(i);
+            this.hitCounts[patternIndex].increment();
+            if (ordering.fields != null && !ordering.fields.contains(PATTERN_FIELD)) {
+                return grokResult;
+            }
+            return new GrokMatchResult(
+                    grokResult.subject,
+                    grokResult.start, grokResult.end,
+                    GrokMatcher.withEntry(grokResult.m, PATTERN_FIELD, this.patternNames.get(patternIndex)));
+        }
+        this.noMatchCount.increment();
+        return GrokIt.NO_MATCH;
+    }
+
+    long hitCount(int patternIndex) {
+        return this.hitCounts[patternIndex].sum();
+    }
+
+    long noMatchCount() {
+        return this.noMatchCount.sum();
+    }
+
+    /**
+     * Format hit counts, and skipped regex invocations per pattern.
+     *
+     * @return
+     */
+    String formatStatistics() {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format("multi pattern statistics%n"));
+        for (int i = 0; i < this.patternNames.size(); i++) {
+            final LiteralPrefilter literalPrefilter = this.literalPrefilters.get(i);
+            sb.append(String.format("pattern %s: lines matched: %d, tried: %d, skipped by literals %s: %d%n",
+                    this.patternNames.get(i),
+                    hitCount(i),
+                    literalPrefilter.checkedCount() - literalPrefilter.rejectedCount(),
+                    literalPrefilter.literals(),
+                    literalPrefilter.rejectedCount()));
+        }
+        sb.append(String.format("lines not matched: %d%n", noMatchCount()));
+        return sb.toString();
+    }
+
+    /**
+     * Order of trying the patterns, adapted by hit counts, and the matchers of
+     * the patterns.
+     * <p>
+     * A pattern is moved ahead of its predecessor as soon as it has more hits,
+     * keeping the order sorted by descending hit counts. Not thread-safe.
+     */
+    static class Ordering {
+
+        final int[] order;
+        final long[] hits;
+        final Set<String> fields;
+        private final IRegexEngine regexEngine;
+        private final GrokIt[] grokIts;
+
+        Ordering(int n) {
+            this(n, null, null);
+        }
+
+        Ordering(int n, Set<String> fields, IRegexEngine regexEngine) {
+            this.fields = fields;
+            this.regexEngine = regexEngine;
+            this.order = new int[n];
+            this.hits = new long[n];
+            this.grokIts = new GrokIt[n];
+            for (int i = 0; i < n; i++) {
+                this.order[i] = i;
+            }
+        }
+
+        /**
+         * A {@link GrokIt} per pattern, reusing its matcher.
+         */
+        GrokIt grokIt(int patternIndex) {
+            if (this.grokIts[patternIndex] == null) {
+                this.grokIts[patternIndex] = new GrokIt(new GrokIt.Options().fields(this.fields).regexEngine(this.regexEngine));
+            }
+            return this.grokIts[patternIndex];
+        }
+
+        void hit(int position) {
+            this.hits[position] += 1;
+            for (int i = position; i > 0 && this.hits[i] > this.hits[i - 1]; i--) {
+                final int o = this.order[i];
+                this.order[i] = this.order[i - 1];
+                this.order[i - 1] = o;
+                final long h = this.hits[i];
+                this.hits[i] = this.hits[i - 1];
+                this.hits[i - 1] = h;
+            }
+        }
+    }
+}
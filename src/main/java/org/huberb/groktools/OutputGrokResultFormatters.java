@@ -15,11 +15,25 @@
  */
 package org.huberb.groktools;
 
+import io.krakens.grok.api.Grok;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
+import org.huberb.groktools.ColumnarFormat.ColumnarCompression;
+import org.huberb.groktools.ColumnarFormat.RowGroup;
 import org.huberb.groktools.GrokIt.GrokMatchResult;
+import org.huberb.groktools.GrokMatcher.ITypedValues;
 
 /**
  * Define various output formatter for {@link GrokMatchResult}.
@@ -37,19 +51,67 @@ public class OutputGrokResultFormatters {
 
         void output(int readLineCount, GrokMatchResult grokResult);
 
+        /**
+         * Output a {@link GrokMatchResult} of a line read from a file.
+         *
+         * @param file name of the file, or null if no file name shall be
+         * output
+         * @param readLineCount
+         * @param grokResult
+         */
+        default void output(String file, int readLineCount, GrokMatchResult grokResult) {
+            output(readLineCount, grokResult);
+        }
+
         void end();
 
+        /**
+         * Continue the output of an earlier, interrupted run, instead of
+         * {@link #start()}.
+         *
+         * @param outputRecordCount number of records output by the earlier
+         * run
+         */
+        default void resume(long outputRecordCount) {
+        }
+
+        /**
+         * Flush records output so far.
+         */
+        default void flush() {
+        }
+
         @Override
         void close() throws IOException;
     }
 
+    /**
+     * Keys of a record to output.
+     *
+     * @param grokResult
+     * @param fields fixed keys, or null
+     * @return the fixed keys, or the keys of the record sorted by name
+     */
+    static List<String> sortedKeysOrFields(GrokMatchResult grokResult, List<String> fields) {
+        if (fields != null) {
+            return fields;
+        }
+        return grokResult.m.keySet().stream()
+                .sorted()
+                .collect(Collectors.toList());
+    }
+
     public static enum OutputMatchResultMode {
-        asIs, asCsv, asJson
+        asIs, asCsv, asCsvColumns, asJson, asJsonLines, asColumnar
     }
 
     /**
      * Create an {@link IOutputGrokResultFormatter} depending on the given
      * {@link OutputMatchResultMode}-value.
+     * <p>
+     * The columns of {@link OutputMatchResultMode#asCsvColumns} are unknown,
+     * use {@link #createOutputGrokResultConverter(OutputMatchResultMode, PrintWriter, List, Grok)}
+     * instead.
      *
      * @param outputMatchResultMode
      * @param pw
@@ -58,19 +120,100 @@ public class OutputGrokResultFormatters {
     public static IOutputGrokResultFormatter createOutputGrokResultConverter(
             OutputMatchResultMode outputMatchResultMode,
             PrintWriter pw) {
+        return createOutputGrokResultConverter(outputMatchResultMode, pw, null);
+    }
+
+    /**
+     * Create an {@link IOutputGrokResultFormatter} depending on the given
+     * {@link OutputMatchResultMode}-value, outputting only some fields.
+     *
+     * @param outputMatchResultMode
+     * @param pw
+     * @param fields fields to output in this order, or null for all fields;
+     * not null for {@link OutputMatchResultMode#asCsvColumns}
+     * @return
+     */
+    public static IOutputGrokResultFormatter createOutputGrokResultConverter(
+            OutputMatchResultMode outputMatchResultMode,
+            PrintWriter pw,
+            List<String> fields) {
+        return createOutputGrokResultConverter(outputMatchResultMode, pw, fields, null);
+    }
+
+    /**
+     * Create an {@link IOutputGrokResultFormatter} depending on the given
+     * {@link OutputMatchResultMode}-value, outputting only some fields, or
+     * the fields captured by a grok.
+     *
+     * @param outputMatchResultMode
+     * @param pw
+     * @param fields fields to output in this order, or null for all fields
+     * @param grok grok matching the records, its captured fields are the
+     * columns of {@link OutputMatchResultMode#asCsvColumns} if fields is null;
+     * or null
+     * @return
+     */
+    public static IOutputGrokResultFormatter createOutputGrokResultConverter(
+            OutputMatchResultMode outputMatchResultMode,
+            PrintWriter pw,
+            List<String> fields,
+            Grok grok) {
+        new GrokBuilder.Validations(outputMatchResultMode == OutputMatchResultMode.asCsvColumns && fields == null && grok == null)
+                .throwIllegalArgumentExceptionIf("Columns of output mode asCsvColumns are unknown, set the fields, or the grok");
         final IOutputGrokResultFormatter outputGrokResultConverter;
         if (outputMatchResultMode == OutputMatchResultMode.asIs) {
             outputGrokResultConverter = new OutputGrokResultFormatterAsIs(pw);
         } else if (outputMatchResultMode == OutputMatchResultMode.asCsv) {
-            outputGrokResultConverter = new OutputGrokResultFormatterAsCsv(pw);
+            outputGrokResultConverter = new OutputGrokResultFormatterAsCsv(pw, fields);
+        } else if (outputMatchResultMode == OutputMatchResultMode.asCsvColumns) {
+            outputGrokResultConverter = new OutputGrokResultFormatterAsCsvColumns(pw,
+                    fields != null ? fields : new ArrayList<>(GrokMatcher.captureKeys(grok)), false);
         } else if (outputMatchResultMode == OutputMatchResultMode.asJson) {
-            outputGrokResultConverter = new OutputGrokResultFormatterAsJson(pw);
+            outputGrokResultConverter = new OutputGrokResultFormatterAsJson(pw, fields);
+        } else if (outputMatchResultMode == OutputMatchResultMode.asJsonLines) {
+            outputGrokResultConverter = new OutputGrokResultFormatterAsJsonLines(pw, fields);
+        } else if (outputMatchResultMode == OutputMatchResultMode.asColumnar) {
+            outputGrokResultConverter = new OutputGrokResultFormatterAsColumnar(pw, fields,
+                    OutputGrokResultFormatterAsColumnar.DEFAULT_ROW_GROUP_SIZE, ColumnarCompression.deflate);
         } else {
             outputGrokResultConverter = new OutputGrokResultFormatterAsIs(pw);
         }
         return outputGrokResultConverter;
     }
 
+    /**
+     * A record formatted into a reusable buffer, and written at once.
+     */
+    static class RecordBuffer {
+
+        private final StringBuilder sb = new StringBuilder(256);
+        private char[] chars = new char[256];
+
+        /**
+         * Start formatting a record.
+         *
+         * @return the emptied buffer
+         */
+        StringBuilder clear() {
+            this.sb.setLength(0);
+            return this.sb;
+        }
+
+        /**
+         * Write the record formatted so far.
+         *
+         * @param pw
+         */
+        void writeTo(PrintWriter pw) {
+            final int length = this.sb.length();
+            if (this.chars.length < length) {
+                this.chars = new char[Math.max(length, 2 * this.chars.length)];
+            }
+            this.sb.getChars(0, length, this.chars, 0);
+            pw.write(this.chars, 0, length);
+        }
+    }
+
     /**
      * Output {@link GrokMatchResult} as plain text.
      */
@@ -94,13 +237,35 @@ public class OutputGrokResultFormatters {
          */
         @Override
         public void output(int readLineCount, GrokMatchResult grokResult) {
-            printFormat("%d %s%n", readLineCount, grokResult);
+            output(null, readLineCount, grokResult);
+        }
+
+        /**
+         * Output just file name, line-number, and
+         * {@link GrokMatchResult#toString()}.
+         *
+         * @param file
+         * @param readLineCount
+         * @param grokResult
+         */
+        @Override
+        public void output(String file, int readLineCount, GrokMatchResult grokResult) {
+            if (file != null) {
+                printFormat("%s %d %s%n", file, readLineCount, grokResult);
+            } else {
+                printFormat("%d %s%n", readLineCount, grokResult);
+            }
         }
 
         @Override
         public void end() {
         }
 
+        @Override
+        public void flush() {
+            this.pwOut.flush();
+        }
+
         @Override
         public void close() {
             if (this.pwOut != null) {
@@ -121,9 +286,24 @@ public class OutputGrokResultFormatters {
     static class OutputGrokResultFormatterAsCsv implements IOutputGrokResultFormatter {
 
         private final PrintWriter pwOut;
+        private final List<String> fields;
+        private boolean headerPrinted;
 
         public OutputGrokResultFormatterAsCsv(PrintWriter pwOut) {
+            this(pwOut, null);
+        }
+
+        /**
+         * Create an setup.
+         *
+         * @param pwOut
+         * @param fields the columns following lineno, and file, or null for
+         * all keys of the first record sorted by name
+         */
+        public OutputGrokResultFormatterAsCsv(PrintWriter pwOut, List<String> fields) {
             this.pwOut = pwOut;
+            this.fields = fields;
+            this.headerPrinted = false;
         }
 
         @Override
@@ -138,14 +318,29 @@ public class OutputGrokResultFormatters {
          */
         @Override
         public void output(int readLineCount, GrokMatchResult grokResult) {
-            final List<String> keysSortedList = grokResult.m.keySet().stream()
-                    .sorted()
-                    .collect(Collectors.toList());
+            output(null, readLineCount, grokResult);
+        }
+
+        /**
+         * Output {@link GrokMatchResult} as csv, the header is printed before
+         * the first record.
+         *
+         * @param file
+         * @param readLineCount
+         * @param grokResult
+         */
+        @Override
+        public void output(String file, int readLineCount, GrokMatchResult grokResult) {
+            final List<String> keysSortedList = sortedKeysOrFields(grokResult, this.fields);
 
             final ListKeysAndValuesBuilder listKeysAndValuesBuilder = new ListKeysAndValuesBuilder()
-                    .addKeyValue("lineno", String.valueOf(readLineCount))
-                    .addKeys(keysSortedList, grokResult.m);
-            if (readLineCount == 1) {
+                    .addKeyValue("lineno", String.valueOf(readLineCount));
+            if (file != null) {
+                listKeysAndValuesBuilder.addKeyValue(MultiFileInputLineProcessor.FILE_FIELD, file);
+            }
+            listKeysAndValuesBuilder.addKeys(keysSortedList, grokResult.m);
+            if (!headerPrinted) {
+                headerPrinted = true;
                 final StringBuilder sb = new StringBuilder();
                 for (int i = 0; i < listKeysAndValuesBuilder.keys().size(); i++) {
                     if (i > 0) {
@@ -158,12 +353,13 @@ public class OutputGrokResultFormatters {
             }
             {
                 final StringBuilder sb = new StringBuilder();
-                for (int i = 0; i < listKeysAndValuesBuilder.values().size(); i++) {
+                for (int i = 0; i < listKeysAndValuesBuilder.keys().size(); i++) {
                     if (i > 0) {
                         sb.append(",");
                     }
-                    final String v = listKeysAndValuesBuilder.values().get(i);
-                    sb.append(String.format("\"%s\"", escapeCsv(v)));
+                    sb.append('"');
+                    listKeysAndValuesBuilder.appendValue(sb, i, this::escapeCsv);
+                    sb.append('"');
                 }
                 this.println(sb.toString());
             }
@@ -173,6 +369,21 @@ public class OutputGrokResultFormatters {
         public void end() {
         }
 
+        /**
+         * The header was printed by the earlier run, if it output any record.
+         *
+         * @param outputRecordCount
+         */
+        @Override
+        public void resume(long outputRecordCount) {
+            this.headerPrinted = outputRecordCount > 0;
+        }
+
+        @Override
+        public void flush() {
+            this.pwOut.flush();
+        }
+
         @Override
         public void close() {
             if (this.pwOut != null) {
@@ -192,15 +403,195 @@ public class OutputGrokResultFormatters {
 
     }
 
+    /**
+     * Output {@link GrokMatchResult} as csv text having fixed columns.
+     * <p>
+     * The columns are known before the first record, e.g. the fields captured
+     * by the pattern, thus the header is printed at start, even if the first
+     * line does not match. Keys of a record not being a column are not
+     * output. A record is formatted into a reusable buffer, a field is quoted
+     * only if it contains a comma, a quote, or a line break.
+     */
+    static class OutputGrokResultFormatterAsCsvColumns implements IOutputGrokResultFormatter {
+
+        private final PrintWriter pwOut;
+        private final RecordBuffer recordBuffer = new RecordBuffer();
+        private final List<String> columns;
+        private final boolean fileColumn;
+        private boolean headerPrinted;
+
+        /**
+         * Create an setup.
+         *
+         * @param pwOut
+         * @param columns the columns following lineno, and file
+         * @param fileColumn output the column file following lineno
+         */
+        public OutputGrokResultFormatterAsCsvColumns(PrintWriter pwOut, List<String> columns, boolean fileColumn) {
+            new GrokBuilder.Validations(columns == null)
+                    .throwIllegalArgumentExceptionIf("Columns of output mode asCsvColumns are null");
+            this.pwOut = pwOut;
+            this.columns = columns;
+            this.fileColumn = fileColumn;
+            this.headerPrinted = false;
+        }
+
+        /**
+         * Print the header.
+         */
+        @Override
+        public void start() {
+            if (!this.headerPrinted) {
+                printHeader();
+            }
+        }
+
+        /**
+         * Output {@link GrokMatchResult} as csv.
+         *
+         * @param readLineCount
+         * @param grokResult
+         */
+        @Override
+        public void output(int readLineCount, GrokMatchResult grokResult) {
+            output(null, readLineCount, grokResult);
+        }
+
+        /**
+         * Output {@link GrokMatchResult} as csv.
+         *
+         * @param file
+         * @param readLineCount
+         * @param grokResult
+         */
+        @Override
+        public void output(String file, int readLineCount, GrokMatchResult grokResult) {
+            if (!this.headerPrinted) {
+                printHeader();
+            }
+            final StringBuilder sb = this.recordBuffer.clear();
+            sb.append(readLineCount);
+            if (this.fileColumn) {
+                sb.append(',');
+                appendCsv(sb, file != null ? file : "");
+            }
+            final Map<String, Object> m = grokResult.m;
+            final ITypedValues typedValues = m instanceof ITypedValues ? (ITypedValues) m : null;
+            for (String k : this.columns) {
+                sb.append(',');
+                // a converted number, or boolean needs no quoting
+                if (typedValues == null || typedValues.valueType(k) == null || !typedValues.appendValue(sb, k)) {
+                    final Object v = m.get(k);
+                    if (v instanceof CharSequence) {
+                        appendCsv(sb, (CharSequence) v);
+                    } else if (v != null) {
+                        appendCsv(sb, String.valueOf(v));
+                    }
+                }
+            }
+            sb.append(System.lineSeparator());
+            this.recordBuffer.writeTo(this.pwOut);
+        }
+
+        private void printHeader() {
+            this.headerPrinted = true;
+            final StringBuilder sb = this.recordBuffer.clear();
+            sb.append("lineno");
+            if (this.fileColumn) {
+                sb.append(',').append(MultiFileInputLineProcessor.FILE_FIELD);
+            }
+            for (String k : this.columns) {
+                sb.append(',');
+                appendCsv(sb, k);
+            }
+            sb.append(System.lineSeparator());
+            this.recordBuffer.writeTo(this.pwOut);
+        }
+
+        /**
+         * Append a field, quoted only if it contains a comma, a quote, or a
+         * line break.
+         *
+         * @param sb
+         * @param s
+         */
+        static void appendCsv(StringBuilder sb, CharSequence s) {
+            final int length = s.length();
+            int i = 0;
+            while (i < length && !needsQuoting(s.charAt(i))) {
+                i += 1;
+            }
+            if (i == length) {
+                sb.append(s);
+                return;
+            }
+            sb.append('"');
+            int start = 0;
+            for (; i < length; i++) {
+                if (s.charAt(i) == '"') {
+                    sb.append(s, start, i + 1).append('"');
+                    start = i + 1;
+                }
+            }
+            sb.append(s, start, length).append('"');
+        }
+
+        private static boolean needsQuoting(char c) {
+            return c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+
+        @Override
+        public void end() {
+        }
+
+        /**
+         * The header was printed by the earlier run, at its start if the
+         * columns are known, otherwise if it output any record.
+         *
+         * @param outputRecordCount
+         */
+        @Override
+        public void resume(long outputRecordCount) {
+            this.headerPrinted = this.columns != null || outputRecordCount > 0;
+        }
+
+        @Override
+        public void flush() {
+            this.pwOut.flush();
+        }
+
+        @Override
+        public void close() {
+            if (this.pwOut != null) {
+                this.pwOut.close();
+            }
+        }
+    }
+
     /**
      * Output {@link GrokMatchResult} as json text.
      */
     static class OutputGrokResultFormatterAsJson implements IOutputGrokResultFormatter {
 
         private final PrintWriter pwOut;
+        private final List<String> fields;
+        private boolean entryPrinted;
 
         public OutputGrokResultFormatterAsJson(PrintWriter pwOut) {
+            this(pwOut, null);
+        }
+
+        /**
+         * Create an setup.
+         *
+         * @param pwOut
+         * @param fields the keys following lineno, and file, or null for all
+         * keys of a record sorted by name
+         */
+        public OutputGrokResultFormatterAsJson(PrintWriter pwOut, List<String> fields) {
             this.pwOut = pwOut;
+            this.fields = fields;
+            this.entryPrinted = false;
         }
 
         @Override
@@ -218,23 +609,40 @@ public class OutputGrokResultFormatters {
          */
         @Override
         public void output(int readLineCount, GrokMatchResult grokResult) {
-            final List<String> keysSortedList = grokResult.m.keySet().stream().sorted().collect(Collectors.toList());
+            output(null, readLineCount, grokResult);
+        }
+
+        /**
+         * Output {@link GrokMatchResult} as json.
+         *
+         * @param file
+         * @param readLineCount
+         * @param grokResult
+         */
+        @Override
+        public void output(String file, int readLineCount, GrokMatchResult grokResult) {
+            final List<String> keysSortedList = sortedKeysOrFields(grokResult, this.fields);
             final ListKeysAndValuesBuilder listKeysAndValuesBuilder = new ListKeysAndValuesBuilder()
-                    .addKeyValue("lineno", String.valueOf(readLineCount))
-                    .addKeys(keysSortedList, grokResult.m);
+                    .addKeyValue("lineno", String.valueOf(readLineCount));
+            if (file != null) {
+                listKeysAndValuesBuilder.addKeyValue(MultiFileInputLineProcessor.FILE_FIELD, file);
+            }
+            listKeysAndValuesBuilder.addKeys(keysSortedList, grokResult.m);
 
             final StringBuilder sb = new StringBuilder();
-            if (readLineCount > 1) {
+            if (entryPrinted) {
                 sb.append(String.format(",%n"));
             }
+            entryPrinted = true;
             sb.append(String.format("\"entry\": {%n"));
             for (int i = 0; i < listKeysAndValuesBuilder.keys().size(); i++) {
                 if (i > 0) {
                     sb.append(String.format(",%n"));
                 }
                 final String k = listKeysAndValuesBuilder.keys().get(i);
-                final String v = listKeysAndValuesBuilder.values().get(i);
-                sb.append(String.format("\"%s\": \"%s\"", k, escapeJson(v)));
+                sb.append(String.format("\"%s\": \"", k));
+                listKeysAndValuesBuilder.appendValue(sb, i, this::escapeJson);
+                sb.append('"');
             }
             sb.append(String.format("%n}"));
             this.print(sb.toString());
@@ -247,6 +655,22 @@ public class OutputGrokResultFormatters {
             this.print(sb.toString());
         }
 
+        /**
+         * The opening bracket was printed by the earlier run, continue after
+         * its last entry.
+         *
+         * @param outputRecordCount
+         */
+        @Override
+        public void resume(long outputRecordCount) {
+            this.entryPrinted = outputRecordCount > 0;
+        }
+
+        @Override
+        public void flush() {
+            this.pwOut.flush();
+        }
+
         @Override
         public void close() {
             if (this.pwOut != null) {
@@ -270,4 +694,421 @@ public class OutputGrokResultFormatters {
         }
     }
 
+    /**
+     * Output {@link GrokMatchResult} as json lines, a json object per line.
+     * <p>
+     * The keys, and values are the same as of
+     * {@link OutputGrokResultFormatterAsJson}, all values are json strings. A
+     * record is formatted into a reusable buffer, escaping each value in a
+     * single pass, and written at once; there is no enclosing array, thus the
+     * output is streamed record by record.
+     */
+    static class OutputGrokResultFormatterAsJsonLines implements IOutputGrokResultFormatter {
+
+        private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+        private final PrintWriter pwOut;
+        private final List<String> fields;
+        private final RecordBuffer recordBuffer = new RecordBuffer();
+        /**
+         * Keys of the last record, and the keys sorted by name.
+         */
+        private Set<String> lastKeys = Collections.emptySet();
+        private List<String> lastSortedKeys = Collections.emptyList();
+
+        public OutputGrokResultFormatterAsJsonLines(PrintWriter pwOut) {
+            this(pwOut, null);
+        }
+
+        /**
+         * Create an setup.
+         *
+         * @param pwOut
+         * @param fields the keys following lineno, and file, or null for all
+         * keys of a record sorted by name
+         */
+        public OutputGrokResultFormatterAsJsonLines(PrintWriter pwOut, List<String> fields) {
+            this.pwOut = pwOut;
+            this.fields = fields;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        /**
+         * Output {@link GrokMatchResult} as json line.
+         *
+         * @param readLineCount
+         * @param grokResult
+         */
+        @Override
+        public void output(int readLineCount, GrokMatchResult grokResult) {
+            output(null, readLineCount, grokResult);
+        }
+
+        /**
+         * Output {@link GrokMatchResult} as json line.
+         *
+         * @param file
+         * @param readLineCount
+         * @param grokResult
+         */
+        @Override
+        public void output(String file, int readLineCount, GrokMatchResult grokResult) {
+            final StringBuilder sb = this.recordBuffer.clear();
+            sb.append("{\"lineno\":\"").append(readLineCount).append('"');
+            if (file != null) {
+                sb.append(",\"file\":\"");
+                appendEscapedJson(sb, file);
+                sb.append('"');
+            }
+            final Map<String, Object> m = grokResult.m;
+            final ITypedValues typedValues = m instanceof ITypedValues ? (ITypedValues) m : null;
+            for (String k : keysOf(m)) {
+                sb.append(",\"");
+                appendEscapedJson(sb, k);
+                sb.append("\":\"");
+                if (typedValues == null || typedValues.valueType(k) == null || !typedValues.appendValue(sb, k)) {
+                    final Object v = m.get(k);
+                    if (v instanceof CharSequence) {
+                        appendEscapedJson(sb, (CharSequence) v);
+                    } else if (v != null) {
+                        appendEscapedJson(sb, String.valueOf(v));
+                    }
+                }
+                sb.append('"');
+            }
+            sb.append('}').append(System.lineSeparator());
+            this.recordBuffer.writeTo(this.pwOut);
+        }
+
+        /**
+         * Keys of a record following lineno, and file.
+         * <p>
+         * The records of a pattern have the same keys, thus the keys sorted
+         * by name are reused, while the keys do not change.
+         */
+        List<String> keysOf(Map<String, Object> m) {
+            if (this.fields != null) {
+                return this.fields;
+            }
+            final Set<String> keys = m.keySet();
+            if (keys.size() != this.lastKeys.size() || !this.lastKeys.containsAll(keys)) {
+                this.lastKeys = new HashSet<>(keys);
+                final List<String> sortedKeys = new ArrayList<>(keys);
+                Collections.sort(sortedKeys);
+                this.lastSortedKeys = sortedKeys;
+            }
+            return this.lastSortedKeys;
+        }
+
+        /**
+         * Append a string escaped as content of a json string.
+         * <p>
+         * Quote, backslash, and control characters are escaped, a surrogate not
+         * being part of a pair is escaped as unicode escape. Runs of other
+         * characters are appended at once.
+         *
+         * @param sb
+         * @param s
+         */
+        static void appendEscapedJson(StringBuilder sb, CharSequence s) {
+            final int length = s.length();
+            int start = 0;
+            for (int i = 0; i < length; i++) {
+                final char c = s.charAt(i);
+                if (c >= 0x20 && c != '"' && c != '\\' && !Character.isSurrogate(c)) {
+                    continue;
+                }
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    i += 1;
+                    continue;
+                }
+                sb.append(s, start, i);
+                switch (c) {
+                    case '"':
+                        sb.append("\\\"");
+                        break;
+                    case '\\':
+                        sb.append("\\\\");
+                        break;
+                    case '\n':
+                        sb.append("\\n");
+                        break;
+                    case '\r':
+                        sb.append("\\r");
+                        break;
+                    case '\t':
+                        sb.append("\\t");
+                        break;
+                    case '\b':
+                        sb.append("\\b");
+                        break;
+                    case '\f':
+                        sb.append("\\f");
+                        break;
+                    default:
+                        sb.append("\\u")
+                                .append(HEX_DIGITS[(c >> 12) & 0xf])
+                                .append(HEX_DIGITS[(c >> 8) & 0xf])
+                                .append(HEX_DIGITS[(c >> 4) & 0xf])
+                                .append(HEX_DIGITS[c & 0xf]);
+                        break;
+                }
+                start = i + 1;
+            }
+            sb.append(s, start, length);
+        }
+
+        @Override
+        public void end() {
+        }
+
+        @Override
+        public void flush() {
+            this.pwOut.flush();
+        }
+
+        @Override
+        public void close() {
+            if (this.pwOut != null) {
+                this.pwOut.close();
+            }
+        }
+    }
+
+    /**
+     * Output {@link GrokMatchResult} as columnar row groups.
+     * <p>
+     * The records are gathered into row groups of a fixed number of records,
+     * each encoded by {@link ColumnarFormat}: written as a single line of
+     * base64 text to a print writer, or as length prefixed bytes to an output
+     * stream. The columns of a row group are lineno, file if any record has a
+     * file, and the fields, or all keys of its records sorted by name.
+     * <p>
+     * Flushing writes the records gathered so far as a shorter row group, as
+     * flushed records must be output, e.g. before persisting a checkpoint.
+     * Thus a checkpoint interval of many row groups keeps the row groups
+     * full. Flushing the print writer, or output stream only, e.g. following
+     * an idle file, leaves the records gathered in the current row group.
+     */
+    static class OutputGrokResultFormatterAsColumnar implements IOutputGrokResultFormatter {
+
+        static final int DEFAULT_ROW_GROUP_SIZE = 4096;
+
+        private final PrintWriter pwOut;
+        private final DataOutputStream dataOut;
+        private final List<String> fields;
+        private final int rowGroupSize;
+        private final ColumnarCompression compression;
+        private final StringBuilder typedValue = new StringBuilder();
+        private final int[] linenos;
+        private Map<String, String[]> columns = new HashMap<>();
+        private int rowCount;
+
+        public OutputGrokResultFormatterAsColumnar(PrintWriter pwOut) {
+            this(pwOut, null, DEFAULT_ROW_GROUP_SIZE, ColumnarCompression.deflate);
+        }
+
+        /**
+         * Create an setup.
+         *
+         * @param pwOut
+         * @param fields the columns following lineno, and file, or null for
+         * all keys of the records of a row group sorted by name
+         * @param rowGroupSize number of records of a row group
+         * @param compression
+         */
+        public OutputGrokResultFormatterAsColumnar(PrintWriter pwOut, List<String> fields, int rowGroupSize, ColumnarCompression compression) {
+            this(pwOut, null, fields, rowGroupSize, compression);
+        }
+
+        /**
+         * Create an setup, writing the row groups as bytes.
+         *
+         * @param out
+         * @param fields the columns following lineno, and file, or null for
+         * all keys of the records of a row group sorted by name
+         * @param rowGroupSize number of records of a row group
+         * @param compression
+         */
+        public OutputGrokResultFormatterAsColumnar(OutputStream out, List<String> fields, int rowGroupSize, ColumnarCompression compression) {
+            this(null, new DataOutputStream(out), fields, rowGroupSize, compression);
+        }
+
+        private OutputGrokResultFormatterAsColumnar(PrintWriter pwOut, DataOutputStream dataOut, List<String> fields, int rowGroupSize, ColumnarCompression compression) {
+            new GrokBuilder.Validations(rowGroupSize <= 0)
+                    .throwIllegalArgumentExceptionIf("Row group size must be positive, but is " + rowGroupSize);
+            this.pwOut = pwOut;
+            this.dataOut = dataOut;
+            this.fields = fields;
+            this.rowGroupSize = rowGroupSize;
+            this.compression = compression;
+            this.linenos = new int[rowGroupSize];
+        }
+
+        @Override
+        public void start() {
+        }
+
+        /**
+         * Gather {@link GrokMatchResult} into the current row group.
+         *
+         * @param readLineCount
+         * @param grokResult
+         */
+        @Override
+        public void output(int readLineCount, GrokMatchResult grokResult) {
+            output(null, readLineCount, grokResult);
+        }
+
+        /**
+         * Gather {@link GrokMatchResult} into the current row group, writing
+         * the row group if it is full.
+         *
+         * @param file
+         * @param readLineCount
+         * @param grokResult
+         */
+        @Override
+        public void output(String file, int readLineCount, GrokMatchResult grokResult) {
+            final int row = this.rowCount;
+            this.linenos[row] = readLineCount;
+            if (file != null) {
+                column(ColumnarFormat.FILE_COLUMN)[row] = file;
+            }
+            final Map<String, Object> m = grokResult.m;
+            final ITypedValues typedValues = m instanceof ITypedValues ? (ITypedValues) m : null;
+            for (String k : this.fields != null ? this.fields : m.keySet()) {
+                final String v;
+                if (typedValues != null && typedValues.valueType(k) != null) {
+                    this.typedValue.setLength(0);
+                    typedValues.appendValue(this.typedValue, k);
+                    v = this.typedValue.toString();
+                } else {
+                    final Object o = m.get(k);
+                    v = o != null ? o.toString() : null;
+                }
+                if (v != null) {
+                    column(k)[row] = v;
+                }
+            }
+            this.rowCount += 1;
+            if (this.rowCount == this.rowGroupSize) {
+                writeRowGroup();
+            }
+        }
+
+        private String[] column(String k) {
+            return this.columns.computeIfAbsent(k, (key) -> new String[this.rowGroupSize]);
+        }
+
+        /**
+         * Write the records gathered so far as a row group.
+         */
+        private void writeRowGroup() {
+            if (this.rowCount == 0) {
+                return;
+            }
+            final Map<String, String[]> orderedColumns = new LinkedHashMap<>();
+            final String[] fileColumn = this.columns.remove(ColumnarFormat.FILE_COLUMN);
+            if (fileColumn != null) {
+                orderedColumns.put(ColumnarFormat.FILE_COLUMN, fileColumn);
+            }
+            final List<String> keys = new ArrayList<>(this.fields != null ? this.fields : this.columns.keySet());
+            if (this.fields == null) {
+                Collections.sort(keys);
+            }
+            for (String k : keys) {
+                orderedColumns.put(k, this.columns.getOrDefault(k, new String[this.rowCount]));
+            }
+            final RowGroup rowGroup = new RowGroup(this.rowCount, this.linenos, orderedColumns);
+            if (this.dataOut != null) {
+                final byte[] rowGroupBytes = ColumnarFormat.encodeBytes(rowGroup, this.compression);
+                try {
+                    this.dataOut.writeInt(rowGroupBytes.length);
+                    this.dataOut.write(rowGroupBytes);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            } else {
+                this.pwOut.write(ColumnarFormat.encode(rowGroup, this.compression));
+                this.pwOut.write(System.lineSeparator());
+            }
+            this.columns = new HashMap<>();
+            this.rowCount = 0;
+        }
+
+        /**
+         * Write the last row group.
+         */
+        @Override
+        public void end() {
+            writeRowGroup();
+        }
+
+        @Override
+        public void flush() {
+            writeRowGroup();
+            if (this.dataOut != null) {
+                try {
+                    this.dataOut.flush();
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+            } else {
+                this.pwOut.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (this.dataOut != null) {
+                this.dataOut.close();
+            } else if (this.pwOut != null) {
+                this.pwOut.close();
+            }
+        }
+    }
+
+    /**
+     * Output {@link GrokMatchResult} of a single file to a formatter shared by
+     * several files.
+     * <p>
+     * Records of the file are tagged by the file name. Records are output
+     * synchronized on the shared formatter, thus several files may be processed
+     * concurrently. Starting, ending, and closing the shared formatter is left
+     * to the owner of the shared formatter.
+     */
+    static class OutputGrokResultFormatterOfFile implements IOutputGrokResultFormatter {
+
+        private final String file;
+        private final IOutputGrokResultFormatter sharedOutputGrokResultFormatter;
+
+        public OutputGrokResultFormatterOfFile(String file, IOutputGrokResultFormatter sharedOutputGrokResultFormatter) {
+            this.file = file;
+            this.sharedOutputGrokResultFormatter = sharedOutputGrokResultFormatter;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void output(int readLineCount, GrokMatchResult grokResult) {
+            synchronized (this.sharedOutputGrokResultFormatter) {
+                this.sharedOutputGrokResultFormatter.output(this.file, readLineCount, grokResult);
+            }
+        }
+
+        @Override
+        public void end() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
 }
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZoneId;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Properties;
+
+/**
+ * On-disk cache of compiled {@link Grok} patterns.
+ * <p>
+ * A cache entry stores the expanded named regex, the names of its groups, and
+ * the pattern definitions. Reading an entry skips registering, and expanding
+ * the pattern definitions, only the regex is compiled.
+ * <p>
+ * Entries are keyed by a hash of everything the compiled pattern depends on,
+ * see {@link KeyBuilder}. Changing a pattern definitions file changes the key,
+ * thus a stale entry is never read.
+ *
+ * @author berni3
+ */
+class PatternCache {
+
+    private static final String NAMED_REGEX = "namedRegex";
+    private static final String ORIGINAL_GROK_PATTERN = "originalGrokPattern";
+    private static final String NAMED_REGEX_COLLECTION = "namedRegexCollection.";
+    private static final String PATTERN_DEFINITION = "patternDefinition.";
+
+    private final File cacheDir;
+
+    /**
+     * Create an setup.
+     *
+     * @param cacheDir directory of the cache entries, created if missing
+     */
+    PatternCache(File cacheDir) {
+        new GrokBuilder.Validations()
+                .isNull(cacheDir)
+                .throwIllegalArgumentExceptionIf("Pattern cache directory is null");
+        this.cacheDir = cacheDir;
+    }
+
+    File entryFile(String key) {
+        return new File(this.cacheDir, "grok-" + key + ".properties");
+    }
+
+    /**
+     * Read a cached {@link Grok}.
+     *
+     * @param key
+     * @param zoneId time zone of datetime conversions
+     * @return empty if there is no readable entry of the key
+     */
+    Optional<Grok> read(String key, ZoneId zoneId) {
+        final File entryFile = entryFile(key);
+        if (!entryFile.exists()) {
+            return Optional.empty();
+        }
+        final Properties props = new Properties();
+        try (final InputStream is = Files.newInputStream(entryFile.toPath())) {
+            props.load(is);
+        } catch (IOException | IllegalArgumentException ex) {
+            // unreadable entry, it is overwritten after compiling
+            return Optional.empty();
+        }
+        final String namedRegex = props.getProperty(NAMED_REGEX);
+        final String originalGrokPattern = props.getProperty(ORIGINAL_GROK_PATTERN);
+        if (namedRegex == null || originalGrokPattern == null) {
+            return Optional.empty();
+        }
+        final Map<String, String> namedRegexCollection = new HashMap<>();
+        final Map<String, String> patternDefinitions = new HashMap<>();
+        for (String name : props.stringPropertyNames()) {
+            if (name.startsWith(NAMED_REGEX_COLLECTION)) {
+                namedRegexCollection.put(name.substring(NAMED_REGEX_COLLECTION.length()), props.getProperty(name));
+            } else if (name.startsWith(PATTERN_DEFINITION)) {
+                patternDefinitions.put(name.substring(PATTERN_DEFINITION.length()), props.getProperty(name));
+            }
+        }
+        return Optional.of(new Grok(originalGrokPattern, namedRegex, namedRegexCollection, patternDefinitions, zoneId));
+    }
+
+    /**
+     * Write a compiled {@link Grok} atomically.
+     *
+     * @param key
+     * @param grok
+     * @throws IOException
+     */
+    void write(String key, Grok grok) throws IOException {
+        final Properties props = new Properties();
+        props.setProperty(ORIGINAL_GROK_PATTERN, grok.getOriginalGrokPattern());
+        props.setProperty(NAMED_REGEX, grok.getNamedRegex());
+        for (Map.Entry<String, String> e : grok.getNamedRegexCollection().entrySet()) {
+            props.setProperty(NAMED_REGEX_COLLECTION + e.getKey(), e.getValue());
+        }
+        for (Map.Entry<String, String> e : grok.getPatterns().entrySet()) {
+            props.setProperty(PATTERN_DEFINITION + e.getKey(), e.getValue());
+        }
+        Files.createDirectories(this.cacheDir.toPath());
+        final Path entryPath = entryFile(key).toPath().toAbsolutePath();
+        final Path tempPath = Files.createTempFile(entryPath.getParent(), entryPath.getFileName().toString(), ".tmp");
+        try {
+            try (final OutputStream os = Files.newOutputStream(tempPath)) {
+                props.store(os, "grokMain pattern cache");
+            }
+            try {
+                Files.move(tempPath, entryPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tempPath, entryPath, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * Build the key of a cache entry, a SHA-256 hash of the given parts.
+     * <p>
+     * Each part is hashed with its length, thus the key of different parts
+     * differs even if their concatenation is equal.
+     */
+    static class KeyBuilder {
+
+        private final MessageDigest messageDigest;
+
+        KeyBuilder() {
+            try {
+                this.messageDigest = MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException("SHA-256 is not available", ex);
+            }
+        }
+
+        KeyBuilder add(String part) {
+            return add(part != null ? part.getBytes(StandardCharsets.UTF_8) : null);
+        }
+
+        KeyBuilder add(byte[] part) {
+            final int length = part != null ? part.length : -1;
+            this.messageDigest.update(new byte[]{
+                (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length});
+            if (part != null) {
+                this.messageDigest.update(part);
+            }
+            return this;
+        }
+
+        String build() {
+            final StringBuilder sb = new StringBuilder();
+            for (byte b : this.messageDigest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        }
+    }
+}
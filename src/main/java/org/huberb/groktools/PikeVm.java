@@ -0,0 +1,1231 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import org.huberb.groktools.RegexEngines.IRegexMatcher;
+
+/**
+ * Compiled regex, matched by simulating its NFA in a Pike VM.
+ * <p>
+ * All alternatives of the regex are followed in parallel, stepping once over a
+ * line. Matching takes time linear to the length of the line, and the size of
+ * the regex, whatever the line. The threads are kept in the order the
+ * backtracking {@link java.util.regex.Matcher} tries the alternatives, thus
+ * the match, and the offsets of the groups are the same as of
+ * {@link java.util.regex.Matcher#find()}.
+ * <p>
+ * Supported is the subset of the java regex syntax used by grok patterns:
+ * literals, character classes, the predefined classes "\d", "\w", "\s", and
+ * their negations, ".", the anchors "^", "$", "\b", "\B", "\A", "\z", "\Z",
+ * groups, greedy, and lazy quantifiers, and alternation. Atomic groups are
+ * supported if they match in a single way only, like "(?>\d\d)". Lookarounds
+ * are supported if they check a fixed sequence of characters, like
+ * "(?<![0-9])". Compiling a regex using other constructs, like backreferences,
+ * possessive quantifiers, flags, or repetitions of a body matching empty, like
+ * "(a?)*", throws an {@link UnsupportedRegexException}.
+ * <p>
+ * Lines containing surrogate characters are matched by a fallback matcher.
+ *
+ * @author berni3
+ */
+class PikeVm {
+
+    /**
+     * Maximum number of instructions, e.g. limiting the expansion of counted
+     * repetitions.
+     */
+    static final int MAX_PROGRAM_SIZE = 5000;
+
+    private static final int CHAR = 0;
+    private static final int CLASS = 1;
+    private static final int SPLIT = 2;
+    private static final int JMP = 3;
+    private static final int SAVE = 4;
+    private static final int ASSERT = 5;
+    private static final int MATCH = 6;
+    private static final int LOOK = 7;
+
+    private static final int BEGIN_INPUT = 0;
+    private static final int END_INPUT = 1;
+    private static final int END_LINE = 2;
+    private static final int WORD_BOUNDARY = 3;
+    private static final int NOT_WORD_BOUNDARY = 4;
+
+    /**
+     * Word characters of "\b" are letters, and digits, up to JDK 18, else the
+     * characters of "\w".
+     */
+    private static final boolean UNICODE_WORD_BOUNDARY = Pattern.compile("\\b").matcher("\u00e9").find();
+
+    private final int[] ops;
+    private final int[] xs;
+    private final int[] ys;
+    private final CharClass[] classes;
+    private final Look[] looks;
+    private final int slotCount;
+    private final int minLength;
+    private final CharClass firstChars;
+
+    private PikeVm(ProgramBuilder programBuilder, int slotCount, int minLength) {
+        this.ops = Arrays.copyOf(programBuilder.ops, programBuilder.size);
+        this.xs = Arrays.copyOf(programBuilder.xs, programBuilder.size);
+        this.ys = Arrays.copyOf(programBuilder.ys, programBuilder.size);
+        this.classes = Arrays.copyOf(programBuilder.classes, programBuilder.size);
+        this.looks = Arrays.copyOf(programBuilder.looks, programBuilder.size);
+        this.slotCount = slotCount;
+        this.minLength = minLength;
+        this.firstChars = minLength > 0 ? firstChars(0, new boolean[this.ops.length]) : null;
+    }
+
+    /**
+     * Collect the characters consumed first by the threads starting at an
+     * instruction, a superset if assertions hold.
+     *
+     * @return the characters, or null if the program may match empty
+     */
+    private CharClass firstChars(int pc, boolean[] visited) {
+        if (visited[pc]) {
+            return CharClass.of();
+        }
+        visited[pc] = true;
+        switch (this.ops[pc]) {
+            case CHAR:
+                return CharClass.of(this.xs[pc], this.xs[pc]);
+            case CLASS:
+                return this.classes[pc];
+            case JMP:
+                return firstChars(this.xs[pc], visited);
+            case SPLIT: {
+                final CharClass x = firstChars(this.xs[pc], visited);
+                final CharClass y = firstChars(this.ys[pc], visited);
+                return x != null && y != null ? x.union(y) : null;
+            }
+            case MATCH:
+                return null;
+            default:
+                return firstChars(pc + 1, visited);
+        }
+    }
+
+    /**
+     * Compile a regex.
+     *
+     * @param regex
+     * @param groupNames names of the groups whose offsets are captured
+     * @return
+     * @throws UnsupportedRegexException if the regex uses unsupported
+     * constructs
+     */
+    static PikeVm compile(String regex, String[] groupNames) {
+        final Node node = new Parser(regex, Arrays.asList(groupNames)).parse();
+        final ProgramBuilder programBuilder = new ProgramBuilder();
+        node.emit(programBuilder);
+        programBuilder.emit(MATCH, 0, 0);
+        return new PikeVm(programBuilder, 2 + 2 * groupNames.length, node.minLength());
+    }
+
+    int size() {
+        return this.ops.length;
+    }
+
+    /**
+     * Create a matcher, used by a single thread.
+     *
+     * @param fallbackSupplier supplies the matcher of lines containing
+     * surrogate characters
+     * @return
+     */
+    IRegexMatcher matcher(Supplier<IRegexMatcher> fallbackSupplier) {
+        return new PikeVmMatcher(this, fallbackSupplier);
+    }
+
+    /**
+     * Thrown compiling a regex using constructs not supported by
+     * {@link PikeVm}.
+     */
+    static class UnsupportedRegexException extends IllegalArgumentException {
+
+        private static final long serialVersionUID = 20210301L;
+
+        UnsupportedRegexException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Matcher of a {@link PikeVm}, not thread-safe.
+     */
+    static class PikeVmMatcher implements IRegexMatcher {
+
+        private final PikeVm vm;
+        private final Supplier<IRegexMatcher> fallbackSupplier;
+        private IRegexMatcher fallback;
+        private ThreadList clist;
+        private ThreadList nlist;
+        private final int[] slots;
+        private final int[] matchSlots;
+
+        PikeVmMatcher(PikeVm vm, Supplier<IRegexMatcher> fallbackSupplier) {
+            this.vm = vm;
+            this.fallbackSupplier = fallbackSupplier;
+            this.clist = new ThreadList(vm.size(), vm.slotCount);
+            this.nlist = new ThreadList(vm.size(), vm.slotCount);
+            this.slots = new int[vm.slotCount];
+            this.matchSlots = new int[vm.slotCount];
+        }
+
+        @Override
+        public boolean find(CharSequence line, int[] offsets) {
+            final int length = line.length();
+            for (int i = 0; i < length; i++) {
+                if (Character.isSurrogate(line.charAt(i))) {
+                    if (this.fallback == null) {
+                        this.fallback = this.fallbackSupplier.get();
+                    }
+                    return this.fallback.find(line, offsets);
+                }
+            }
+            // no match can start after the guard, like java.util.regex
+            final int guard = length - this.vm.minLength;
+            final int slotCount = this.vm.slotCount;
+            boolean matched = false;
+            this.clist.clear();
+            for (int i = 0; i <= length; i++) {
+                if (this.clist.runSize == 0) {
+                    // forget the instructions visited by threads died at assertions
+                    this.clist.clear();
+                    if (!matched && this.vm.firstChars != null) {
+                        // skip the characters not starting a match
+                        while (i <= guard && !this.vm.firstChars.matches(line.charAt(i))) {
+                            i += 1;
+                        }
+                        if (i > guard) {
+                            break;
+                        }
+                    }
+                }
+                if (!matched && i <= guard
+                        && (this.vm.firstChars == null || this.vm.firstChars.matches(line.charAt(i)))) {
+                    // a thread starting here has the lowest priority
+                    Arrays.fill(this.slots, -1);
+                    this.slots[0] = i;
+                    addThread(this.clist, 0, i, line, length);
+                }
+                if (this.clist.runSize == 0) {
+                    if (matched || i >= guard) {
+                        break;
+                    }
+                    continue;
+                }
+                this.nlist.clear();
+                final char c = i < length ? line.charAt(i) : 0;
+                for (int k = 0; k < this.clist.runSize; k++) {
+                    final int pc = this.clist.runPcs[k];
+                    final int op = this.vm.ops[pc];
+                    if (op == MATCH) {
+                        System.arraycopy(this.clist.slots, k * slotCount, this.matchSlots, 0, slotCount);
+                        this.matchSlots[1] = i;
+                        matched = true;
+                        // cut the threads of lower priority
+                        break;
+                    }
+                    if (i < length
+                            && ((op == CHAR && c == this.vm.xs[pc]) || (op == CLASS && this.vm.classes[pc].matches(c)))) {
+                        System.arraycopy(this.clist.slots, k * slotCount, this.slots, 0, slotCount);
+                        addThread(this.nlist, pc + 1, i + 1, line, length);
+                    }
+                }
+                final ThreadList tmp = this.clist;
+                this.clist = this.nlist;
+                this.nlist = tmp;
+            }
+            if (!matched) {
+                return false;
+            }
+            System.arraycopy(this.matchSlots, 0, offsets, 0, slotCount);
+            return true;
+        }
+
+        /**
+         * Add a thread, following the instructions not consuming a character.
+         * <p>
+         * The slots of the thread are passed in {@link #slots}, and restored
+         * before returning.
+         */
+        private void addThread(ThreadList list, int pc, int pos, CharSequence line, int length) {
+            if (list.contains(pc)) {
+                // reached by a thread of higher priority already
+                return;
+            }
+            list.add(pc);
+            switch (this.vm.ops[pc]) {
+                case JMP:
+                    addThread(list, this.vm.xs[pc], pos, line, length);
+                    break;
+                case SPLIT:
+                    addThread(list, this.vm.xs[pc], pos, line, length);
+                    addThread(list, this.vm.ys[pc], pos, line, length);
+                    break;
+                case SAVE: {
+                    final int slot = this.vm.xs[pc];
+                    final int saved = this.slots[slot];
+                    this.slots[slot] = pos;
+                    addThread(list, pc + 1, pos, line, length);
+                    this.slots[slot] = saved;
+                    break;
+                }
+                case ASSERT:
+                    if (holds(this.vm.xs[pc], line, pos, length)) {
+                        addThread(list, pc + 1, pos, line, length);
+                    }
+                    break;
+                case LOOK:
+                    if (this.vm.looks[pc].holds(line, pos, length)) {
+                        addThread(list, pc + 1, pos, line, length);
+                    }
+                    break;
+                default: {
+                    // consuming a character, or matching
+                    final int index = list.addRun(pc);
+                    System.arraycopy(this.slots, 0, list.slots, index * this.vm.slotCount, this.vm.slotCount);
+                    break;
+                }
+            }
+        }
+
+        static boolean holds(int assertion, CharSequence line, int i, int length) {
+            switch (assertion) {
+                case BEGIN_INPUT:
+                    return i == 0;
+                case END_INPUT:
+                    return i == length;
+                case END_LINE:
+                    return isEndOfLine(line, i, length);
+                case WORD_BOUNDARY:
+                    return isWordBoundary(line, i, length);
+                case NOT_WORD_BOUNDARY:
+                    return !isWordBoundary(line, i, length);
+                default:
+                    throw new IllegalStateException("Unknown assertion " + assertion);
+            }
+        }
+
+        /**
+         * Decide "$" like java.util.regex without MULTILINE, matching at the
+         * end, or before a final line terminator.
+         */
+        static boolean isEndOfLine(CharSequence line, int i, int length) {
+            if (i < length - 2) {
+                return false;
+            }
+            if (i == length - 2) {
+                return line.charAt(i) == '\r' && line.charAt(i + 1) == '\n';
+            }
+            if (i < length) {
+                final char c = line.charAt(i);
+                if (c == '\n') {
+                    return !(i > 0 && line.charAt(i - 1) == '\r');
+                }
+                return c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+            }
+            return true;
+        }
+
+        static boolean isWordBoundary(CharSequence line, int i, int length) {
+            final boolean left = i > 0
+                    && (isWord(line.charAt(i - 1)) || (isNonSpacingMark(line.charAt(i - 1)) && hasBaseCharacter(line, i - 1)));
+            final boolean right = i < length
+                    && (isWord(line.charAt(i)) || (isNonSpacingMark(line.charAt(i)) && hasBaseCharacter(line, i)));
+            return left ^ right;
+        }
+
+        private static boolean isWord(char c) {
+            if (UNICODE_WORD_BOUNDARY) {
+                return c == '_' || Character.isLetterOrDigit(c);
+            }
+            return c == '_' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+        }
+
+        private static boolean isNonSpacingMark(char c) {
+            return Character.getType(c) == Character.NON_SPACING_MARK;
+        }
+
+        private static boolean hasBaseCharacter(CharSequence line, int i) {
+            for (int x = i; x >= 0; x--) {
+                final char c = line.charAt(x);
+                if (Character.isLetterOrDigit(c)) {
+                    return true;
+                }
+                if (!isNonSpacingMark(c)) {
+                    return false;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Threads of a step, ordered by priority.
+     * <p>
+     * The instructions visited adding the threads are kept as sparse set of
+     * program counters, see <a href="https://research.swtch.com/sparse">sparse</a>.
+     * The threads consuming a character, or matching are kept with their
+     * slots.
+     */
+    static class ThreadList {
+
+        final int[] sparse;
+        final int[] dense;
+        int size;
+        final int[] runPcs;
+        final int[] slots;
+        int runSize;
+
+        ThreadList(int programSize, int slotCount) {
+            this.sparse = new int[programSize];
+            this.dense = new int[programSize];
+            this.runPcs = new int[programSize];
+            this.slots = new int[programSize * slotCount];
+        }
+
+        void clear() {
+            this.size = 0;
+            this.runSize = 0;
+        }
+
+        boolean contains(int pc) {
+            final int index = this.sparse[pc];
+            return index < this.size && this.dense[index] == pc;
+        }
+
+        void add(int pc) {
+            this.sparse[pc] = this.size;
+            this.dense[this.size] = pc;
+            this.size += 1;
+        }
+
+        int addRun(int pc) {
+            this.runPcs[this.runSize] = pc;
+            return this.runSize++;
+        }
+    }
+
+    /**
+     * Set of characters, as sorted disjoint ranges.
+     */
+    static class CharClass {
+
+        static final CharClass DIGIT = of('0', '9');
+        static final CharClass WORD = of('a', 'z', 'A', 'Z', '_', '_', '0', '9');
+        static final CharClass SPACE = of(' ', ' ', '\t', '\n', '\u000B', '\u000B', '\f', '\r');
+        static final CharClass DOT = of('\n', '\n', '\r', '\r', '\u0085', '\u0085', '\u2028', '\u2029').complement();
+
+        private final int[] ranges;
+        private final long ascii0;
+        private final long ascii1;
+
+        private CharClass(int[] ranges) {
+            this.ranges = ranges;
+            long a0 = 0L;
+            long a1 = 0L;
+            for (int c = 0; c < 128; c++) {
+                if (matchesRange(c)) {
+                    if (c < 64) {
+                        a0 |= 1L << c;
+                    } else {
+                        a1 |= 1L << (c - 64);
+                    }
+                }
+            }
+            this.ascii0 = a0;
+            this.ascii1 = a1;
+        }
+
+        /**
+         * Create a class of ranges.
+         *
+         * @param bounds pairs of first, and last character of a range
+         * @return
+         */
+        static CharClass of(int... bounds) {
+            final int n = bounds.length / 2;
+            final int[][] pairs = new int[n][];
+            for (int i = 0; i < n; i++) {
+                pairs[i] = new int[]{bounds[2 * i], bounds[2 * i + 1]};
+            }
+            Arrays.sort(pairs, (p1, p2) -> Integer.compare(p1[0], p2[0]));
+            final int[] merged = new int[2 * n];
+            int size = 0;
+            for (int[] pair : pairs) {
+                if (size > 0 && pair[0] <= merged[size - 1] + 1) {
+                    merged[size - 1] = Math.max(merged[size - 1], pair[1]);
+                } else {
+                    merged[size++] = pair[0];
+                    merged[size++] = pair[1];
+                }
+            }
+            return new CharClass(Arrays.copyOf(merged, size));
+        }
+
+        CharClass union(CharClass other) {
+            final int[] bounds = Arrays.copyOf(this.ranges, this.ranges.length + other.ranges.length);
+            System.arraycopy(other.ranges, 0, bounds, this.ranges.length, other.ranges.length);
+            return of(bounds);
+        }
+
+        CharClass complement() {
+            final int[] bounds = new int[this.ranges.length + 2];
+            int size = 0;
+            int next = 0;
+            for (int i = 0; i < this.ranges.length; i += 2) {
+                if (this.ranges[i] > next) {
+                    bounds[size++] = next;
+                    bounds[size++] = this.ranges[i] - 1;
+                }
+                next = this.ranges[i + 1] + 1;
+            }
+            if (next <= Character.MAX_VALUE) {
+                bounds[size++] = next;
+                bounds[size++] = Character.MAX_VALUE;
+            }
+            return new CharClass(Arrays.copyOf(bounds, size));
+        }
+
+        boolean matches(char c) {
+            if (c < 64) {
+                return (this.ascii0 & (1L << c)) != 0;
+            }
+            if (c < 128) {
+                return (this.ascii1 & (1L << (c - 64))) != 0;
+            }
+            return matchesRange(c);
+        }
+
+        private boolean matchesRange(int c) {
+            int low = 0;
+            int high = this.ranges.length / 2 - 1;
+            while (low <= high) {
+                final int mid = (low + high) >>> 1;
+                if (c < this.ranges[2 * mid]) {
+                    high = mid - 1;
+                } else if (c > this.ranges[2 * mid + 1]) {
+                    low = mid + 1;
+                } else {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Lookaround checking a fixed sequence of characters, ahead of, or behind
+     * a position.
+     */
+    static class Look {
+
+        final CharClass[] sequence;
+        final boolean ahead;
+        final boolean negate;
+
+        Look(CharClass[] sequence, boolean ahead, boolean negate) {
+            this.sequence = sequence;
+            this.ahead = ahead;
+            this.negate = negate;
+        }
+
+        boolean holds(CharSequence line, int i, int length) {
+            final int start = this.ahead ? i : i - this.sequence.length;
+            boolean matches = start >= 0 && start + this.sequence.length <= length;
+            for (int k = 0; matches && k < this.sequence.length; k++) {
+                matches = this.sequence[k].matches(line.charAt(start + k));
+            }
+            return matches != this.negate;
+        }
+    }
+
+    /**
+     * Instructions of a program, under construction.
+     */
+    static class ProgramBuilder {
+
+        int[] ops = new int[64];
+        int[] xs = new int[64];
+        int[] ys = new int[64];
+        CharClass[] classes = new CharClass[64];
+        Look[] looks = new Look[64];
+        int size;
+
+        int emit(int op, int x, int y) {
+            if (this.size >= MAX_PROGRAM_SIZE) {
+                throw new UnsupportedRegexException("Program exceeds " + MAX_PROGRAM_SIZE + " instructions");
+            }
+            if (this.size == this.ops.length) {
+                final int capacity = 2 * this.size;
+                this.ops = Arrays.copyOf(this.ops, capacity);
+                this.xs = Arrays.copyOf(this.xs, capacity);
+                this.ys = Arrays.copyOf(this.ys, capacity);
+                this.classes = Arrays.copyOf(this.classes, capacity);
+                this.looks = Arrays.copyOf(this.looks, capacity);
+            }
+            this.ops[this.size] = op;
+            this.xs[this.size] = x;
+            this.ys[this.size] = y;
+            return this.size++;
+        }
+    }
+
+    /**
+     * Node of a parsed regex.
+     */
+    abstract static class Node {
+
+        abstract void emit(ProgramBuilder p);
+
+        abstract int minLength();
+
+        /**
+         * Decide if the node matches in a single way only, thus an atomic
+         * group of it behaves like a non-capturing group.
+         */
+        abstract boolean isDeterministic();
+    }
+
+    static class CharNode extends Node {
+
+        final char c;
+
+        CharNode(char c) {
+            this.c = c;
+        }
+
+        @Override
+        void emit(ProgramBuilder p) {
+            p.emit(CHAR, this.c, 0);
+        }
+
+        @Override
+        int minLength() {
+            return 1;
+        }
+
+        @Override
+        boolean isDeterministic() {
+            return true;
+        }
+    }
+
+    static class ClassNode extends Node {
+
+        final CharClass charClass;
+
+        ClassNode(CharClass charClass) {
+            this.charClass = charClass;
+        }
+
+        @Override
+        void emit(ProgramBuilder p) {
+            final int pc = p.emit(CLASS, 0, 0);
+            p.classes[pc] = this.charClass;
+        }
+
+        @Override
+        int minLength() {
+            return 1;
+        }
+
+        @Override
+        boolean isDeterministic() {
+            return true;
+        }
+    }
+
+    static class AssertNode extends Node {
+
+        final int assertion;
+
+        AssertNode(int assertion) {
+            this.assertion = assertion;
+        }
+
+        @Override
+        void emit(ProgramBuilder p) {
+            p.emit(ASSERT, this.assertion, 0);
+        }
+
+        @Override
+        int minLength() {
+            return 0;
+        }
+
+        @Override
+        boolean isDeterministic() {
+            return true;
+        }
+    }
+
+    static class LookNode extends Node {
+
+        final Look look;
+
+        LookNode(Look look) {
+            this.look = look;
+        }
+
+        @Override
+        void emit(ProgramBuilder p) {
+            final int pc = p.emit(LOOK, 0, 0);
+            p.looks[pc] = this.look;
+        }
+
+        @Override
+        int minLength() {
+            return 0;
+        }
+
+        @Override
+        boolean isDeterministic() {
+            return true;
+        }
+    }
+
+    /**
+     * Group, saving its offsets into a slot, or -1 if not captured.
+     */
+    static class GroupNode extends Node {
+
+        final Node body;
+        final int slot;
+
+        GroupNode(Node body, int slot) {
+            this.body = body;
+            this.slot = slot;
+        }
+
+        @Override
+        void emit(ProgramBuilder p) {
+            if (this.slot >= 0) {
+                p.emit(SAVE, 2 * this.slot, 0);
+            }
+            this.body.emit(p);
+            if (this.slot >= 0) {
+                p.emit(SAVE, 2 * this.slot + 1, 0);
+            }
+        }
+
+        @Override
+        int minLength() {
+            return this.body.minLength();
+        }
+
+        @Override
+        boolean isDeterministic() {
+            return this.body.isDeterministic();
+        }
+    }
+
+    static class ConcatNode extends Node {
+
+        final List<Node> nodes;
+
+        ConcatNode(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        void emit(ProgramBuilder p) {
+            for (Node node : this.nodes) {
+                node.emit(p);
+            }
+        }
+
+        @Override
+        int minLength() {
+            int minLength = 0;
+            for (Node node : this.nodes) {
+                minLength += node.minLength();
+            }
+            return minLength;
+        }
+
+        @Override
+        boolean isDeterministic() {
+            return this.nodes.stream().allMatch(Node::isDeterministic);
+        }
+    }
+
+    static class AlternationNode extends Node {
+
+        final List<Node> alternatives;
+
+        AlternationNode(List<Node> alternatives) {
+            this.alternatives = alternatives;
+        }
+
+        @Override
+        void emit(ProgramBuilder p) {
+            final List<Integer> jumps = new ArrayList<>();
+            for (int i = 0; i < this.alternatives.size() - 1; i++) {
+                final int split = p.emit(SPLIT, p.size + 1, -1);
+                this.alternatives.get(i).emit(p);
+                jumps.add(p.emit(JMP, -1, 0));
+                p.ys[split] = p.size;
+            }
+            this.alternatives.get(this.alternatives.size() - 1).emit(p);
+            for (int jump : jumps) {
+                p.xs[jump] = p.size;
+            }
+        }
+
+        @Override
+        int minLength() {
+            return this.alternatives.stream().mapToInt(Node::minLength).min().orElse(0);
+        }
+
+        @Override
+        boolean isDeterministic() {
+            return false;
+        }
+    }
+
+    /**
+     * Repetition of a node, unbounded if max is -1.
+     */
+    static class RepeatNode extends Node {
+
+        final Node body;
+        final int min;
+        final int max;
+        final boolean greedy;
+
+        RepeatNode(Node body, int min, int max, boolean greedy) {
+            this.body = body;
+            this.min = min;
+            this.max = max;
+            this.greedy = greedy;
+        }
+
+        @Override
+        void emit(ProgramBuilder p) {
+            if (this.max != 1 && this.body.minLength() == 0) {
+                // java.util.regex ends a loop after an iteration matching empty,
+                // keeping its groups, which the pruning of threads can not follow
+                throw new UnsupportedRegexException("Repetition of a body matching empty");
+            }
+            for (int i = 0; i < this.min; i++) {
+                this.body.emit(p);
+            }
+            if (this.max == -1) {
+                final int split = p.emit(SPLIT, -1, -1);
+                this.body.emit(p);
+                p.emit(JMP, split, 0);
+                setTargets(p, split, split + 1, p.size);
+            } else {
+                // nested optional bodies, skipping to the end
+                final List<Integer> splits = new ArrayList<>();
+                for (int i = this.min; i < this.max; i++) {
+                    splits.add(p.emit(SPLIT, -1, -1));
+                    this.body.emit(p);
+                }
+                for (int split : splits) {
+                    setTargets(p, split, split + 1, p.size);
+                }
+            }
+        }
+
+        private void setTargets(ProgramBuilder p, int split, int repeat, int skip) {
+            p.xs[split] = this.greedy ? repeat : skip;
+            p.ys[split] = this.greedy ? skip : repeat;
+        }
+
+        @Override
+        int minLength() {
+            return (int) Math.min((long) this.min * this.body.minLength(), Integer.MAX_VALUE / 2);
+        }
+
+        @Override
+        boolean isDeterministic() {
+            return this.min == this.max && this.body.isDeterministic();
+        }
+    }
+
+    /**
+     * Recursive descent parser of the supported regex syntax.
+     */
+    static class Parser {
+
+        private final String regex;
+        private final List<String> groupNames;
+        private int index;
+
+        Parser(String regex, List<String> groupNames) {
+            this.regex = regex;
+            this.groupNames = groupNames;
+        }
+
+        Node parse() {
+            final Node node = parseAlternation();
+            if (this.index < this.regex.length()) {
+                throw unsupported("Unbalanced parenthesis");
+            }
+            return node;
+        }
+
+        private Node parseAlternation() {
+            final List<Node> alternatives = new ArrayList<>();
+            alternatives.add(parseConcatenation());
+            while (peek('|')) {
+                this.index += 1;
+                alternatives.add(parseConcatenation());
+            }
+            return alternatives.size() == 1 ? alternatives.get(0) : new AlternationNode(alternatives);
+        }
+
+        private Node parseConcatenation() {
+            final List<Node> nodes = new ArrayList<>();
+            while (this.index < this.regex.length() && !peek('|') && !peek(')')) {
+                nodes.add(parseRepetition());
+            }
+            return nodes.size() == 1 ? nodes.get(0) : new ConcatNode(nodes);
+        }
+
+        private Node parseRepetition() {
+            final Node atom = parseAtom();
+            if (this.index >= this.regex.length()) {
+                return atom;
+            }
+            final int min;
+            final int max;
+            switch (this.regex.charAt(this.index)) {
+                case '*':
+                    min = 0;
+                    max = -1;
+                    break;
+                case '+':
+                    min = 1;
+                    max = -1;
+                    break;
+                case '?':
+                    min = 0;
+                    max = 1;
+                    break;
+                case '{': {
+                    final int close = this.regex.indexOf('}', this.index);
+                    if (close < 0) {
+                        throw unsupported("Unclosed repetition");
+                    }
+                    final String bounds = this.regex.substring(this.index + 1, close);
+                    final int comma = bounds.indexOf(',');
+                    try {
+                        min = Integer.parseInt(comma < 0 ? bounds : bounds.substring(0, comma));
+                        max = comma < 0 ? min
+                                : comma == bounds.length() - 1 ? -1
+                                        : Integer.parseInt(bounds.substring(comma + 1));
+                    } catch (NumberFormatException ex) {
+                        throw unsupported("Illegal repetition");
+                    }
+                    if (min < 0 || (max != -1 && max < min)) {
+                        throw unsupported("Illegal repetition");
+                    }
+                    this.index = close;
+                    break;
+                }
+                default:
+                    return atom;
+            }
+            this.index += 1;
+            boolean greedy = true;
+            if (peek('?')) {
+                greedy = false;
+                this.index += 1;
+            } else if (peek('+')) {
+                throw unsupported("Possessive quantifier");
+            }
+            if (this.index < this.regex.length() && "*+?{".indexOf(this.regex.charAt(this.index)) >= 0) {
+                throw unsupported("Repeated quantifier");
+            }
+            return new RepeatNode(atom, min, max, greedy);
+        }
+
+        private Node parseAtom() {
+            final char c = this.regex.charAt(this.index++);
+            switch (c) {
+                case '(':
+                    return parseGroup();
+                case '[':
+                    return new ClassNode(parseClass());
+                case '.':
+                    return new ClassNode(CharClass.DOT);
+                case '^':
+                    return new AssertNode(BEGIN_INPUT);
+                case '$':
+                    return new AssertNode(END_LINE);
+                case '\\':
+                    return parseEscape();
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw unsupported("Dangling meta character " + c);
+                default:
+                    return new CharNode(literal(c));
+            }
+        }
+
+        private Node parseGroup() {
+            int slot = -1;
+            boolean atomic = false;
+            if (peek('?')) {
+                this.index += 1;
+                if (peek(':')) {
+                    this.index += 1;
+                } else if (peek('>')) {
+                    this.index += 1;
+                    atomic = true;
+                } else if (peek('<') && this.index + 1 < this.regex.length()
+                        && Character.isLetter(this.regex.charAt(this.index + 1))) {
+                    final int close = this.regex.indexOf('>', this.index);
+                    if (close < 0) {
+                        throw unsupported("Unclosed group name");
+                    }
+                    final int groupIndex = this.groupNames.indexOf(this.regex.substring(this.index + 1, close));
+                    slot = groupIndex >= 0 ? 1 + groupIndex : -1;
+                    this.index = close + 1;
+                } else if (peek('=') || peek('!')) {
+                    return parseLook(true);
+                } else if (peek('<') && this.index + 1 < this.regex.length()
+                        && (this.regex.charAt(this.index + 1) == '=' || this.regex.charAt(this.index + 1) == '!')) {
+                    this.index += 1;
+                    return parseLook(false);
+                } else {
+                    throw unsupported("Flags");
+                }
+            }
+            // groups not asked for are not captured
+            final Node body = parseAlternation();
+            if (!peek(')')) {
+                throw unsupported("Unclosed group");
+            }
+            this.index += 1;
+            if (atomic && !body.isDeterministic()) {
+                throw unsupported("Atomic group matching in several ways");
+            }
+            return new GroupNode(body, slot);
+        }
+
+        /**
+         * Parse a lookaround of a sequence of characters, or classes.
+         */
+        private Node parseLook(boolean ahead) {
+            final boolean negate = next() == '!';
+            final Node body = parseAlternation();
+            if (!peek(')')) {
+                throw unsupported("Unclosed group");
+            }
+            this.index += 1;
+            final List<Node> nodes = body instanceof ConcatNode
+                    ? ((ConcatNode) body).nodes
+                    : Collections.singletonList(body);
+            final CharClass[] sequence = new CharClass[nodes.size()];
+            for (int i = 0; i < sequence.length; i++) {
+                final Node node = nodes.get(i);
+                if (node instanceof CharNode) {
+                    sequence[i] = CharClass.of(((CharNode) node).c, ((CharNode) node).c);
+                } else if (node instanceof ClassNode) {
+                    sequence[i] = ((ClassNode) node).charClass;
+                } else {
+                    throw unsupported("Lookaround of other than a sequence of characters");
+                }
+            }
+            return new LookNode(new Look(sequence, ahead, negate));
+        }
+
+        private Node parseEscape() {
+            final char c = next();
+            switch (c) {
+                case 'd':
+                    return new ClassNode(CharClass.DIGIT);
+                case 'D':
+                    return new ClassNode(CharClass.DIGIT.complement());
+                case 'w':
+                    return new ClassNode(CharClass.WORD);
+                case 'W':
+                    return new ClassNode(CharClass.WORD.complement());
+                case 's':
+                    return new ClassNode(CharClass.SPACE);
+                case 'S':
+                    return new ClassNode(CharClass.SPACE.complement());
+                case 'b':
+                    return new AssertNode(WORD_BOUNDARY);
+                case 'B':
+                    return new AssertNode(NOT_WORD_BOUNDARY);
+                case 'A':
+                    return new AssertNode(BEGIN_INPUT);
+                case 'z':
+                    return new AssertNode(END_INPUT);
+                case 'Z':
+                    return new AssertNode(END_LINE);
+                default:
+                    return new CharNode(escapedChar(c));
+            }
+        }
+
+        private CharClass parseClass() {
+            boolean negate = false;
+            if (peek('^')) {
+                negate = true;
+                this.index += 1;
+            }
+            if (peek(']')) {
+                throw unsupported("Closing bracket first in class");
+            }
+            final List<Integer> bounds = new ArrayList<>();
+            CharClass charClass = CharClass.of();
+            for (;;) {
+                final char c = next();
+                if (c == ']') {
+                    break;
+                }
+                if (c == '[' || (c == '&' && peek('&'))) {
+                    throw unsupported("Nested class, or class intersection");
+                }
+                final char low;
+                if (c == '\\') {
+                    final char e = next();
+                    final CharClass predefined = predefinedClass(e);
+                    if (predefined != null) {
+                        charClass = charClass.union(predefined);
+                        continue;
+                    }
+                    low = escapedChar(e);
+                } else {
+                    low = literal(c);
+                }
+                char high = low;
+                if (peek('-') && this.index + 1 < this.regex.length() && this.regex.charAt(this.index + 1) != ']') {
+                    this.index += 1;
+                    final char h = next();
+                    if (h == '[') {
+                        throw unsupported("Nested class");
+                    }
+                    if (h == '\\') {
+                        final char e = next();
+                        if (predefinedClass(e) != null) {
+                            throw unsupported("Range to a predefined class");
+                        }
+                        high = escapedChar(e);
+                    } else {
+                        high = literal(h);
+                    }
+                    if (high < low) {
+                        throw unsupported("Illegal character range");
+                    }
+                }
+                bounds.add((int) low);
+                bounds.add((int) high);
+            }
+            final CharClass ranges = CharClass.of(bounds.stream().mapToInt(Integer::intValue).toArray());
+            final CharClass union = charClass.union(ranges);
+            return negate ? union.complement() : union;
+        }
+
+        private static CharClass predefinedClass(char c) {
+            switch (c) {
+                case 'd':
+                    return CharClass.DIGIT;
+                case 'D':
+                    return CharClass.DIGIT.complement();
+                case 'w':
+                    return CharClass.WORD;
+                case 'W':
+                    return CharClass.WORD.complement();
+                case 's':
+                    return CharClass.SPACE;
+                case 'S':
+                    return CharClass.SPACE.complement();
+                default:
+                    return null;
+            }
+        }
+
+        private char escapedChar(char c) {
+            switch (c) {
+                case 't':
+                    return '\t';
+                case 'n':
+                    return '\n';
+                case 'r':
+                    return '\r';
+                case 'f':
+                    return '\f';
+                case 'a':
+                    return '\u0007';
+                case 'e':
+                    return '\u001B';
+                case 'x':
+                    return literal(hex(2));
+                case 'u':
+                    return literal(hex(4));
+                default:
+                    if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')) {
+                        throw unsupported("Escape \\" + c);
+                    }
+                    return literal(c);
+            }
+        }
+
+        private char hex(int digits) {
+            if (this.index + digits > this.regex.length()) {
+                throw unsupported("Illegal hexadecimal escape");
+            }
+            final String hex = this.regex.substring(this.index, this.index + digits);
+            this.index += digits;
+            try {
+                return (char) Integer.parseInt(hex, 16);
+            } catch (NumberFormatException ex) {
+                throw unsupported("Illegal hexadecimal escape");
+            }
+        }
+
+        private char literal(char c) {
+            if (Character.isSurrogate(c)) {
+                throw unsupported("Surrogate character");
+            }
+            return c;
+        }
+
+        private char next() {
+            if (this.index >= this.regex.length()) {
+                throw unsupported("Unexpected end");
+            }
+            return this.regex.charAt(this.index++);
+        }
+
+        private boolean peek(char c) {
+            return this.index < this.regex.length() && this.regex.charAt(this.index) == c;
+        }
+
+        private UnsupportedRegexException unsupported(String message) {
+            return new UnsupportedRegexException(String.format("%s at index %d of %s", message, this.index, this.regex));
+        }
+    }
+}
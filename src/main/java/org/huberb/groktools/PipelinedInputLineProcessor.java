@@ -0,0 +1,399 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.huberb.groktools.GrokIt.GrokMatchResult;
+import org.huberb.groktools.GrokMain.InputLineProcessor;
+import org.huberb.groktools.InputLineSources.ILineSource;
+import org.huberb.groktools.OutputGrokResultFormatters.IOutputGrokResultFormatter;
+
+/**
+ * Process lines in three pipelined stages.
+ * <p>
+ * A reader thread reads lines into {@link LineBatch}es, the calling thread
+ * matches the lines of a batch, and a writer thread outputs the records of a
+ * batch. The batches are preallocated, and circulate through bounded queues:
+ * free, read, matched, and back to free. Thus a stalling input does not stall
+ * matching, and vice versa, as long as there are batches to work on.
+ * <p>
+ * Line numbers, multi-line gathering, and output are the same as processing
+ * the lines sequentially.
+ *
+ * @author berni3
+ */
+class PipelinedInputLineProcessor {
+
+    static final int DEFAULT_BATCH_SIZE = 1024;
+    static final int DEFAULT_QUEUE_DEPTH = 4;
+
+    /**
+     * Names of the queues of batches read, and matched, exposed by
+     * {@link RunStatistics}.
+     */
+    static final String READ_QUEUE = "pipeline.read";
+    static final String MATCHED_QUEUE = "pipeline.matched";
+
+    private final InputLineProcessor inputLineProcessor;
+    private final int batchSize;
+    private final int queueDepth;
+
+    final StageCounters readerCounters = new StageCounters("reader");
+    final StageCounters matcherCounters = new StageCounters("matcher");
+    final StageCounters writerCounters = new StageCounters("writer");
+
+    /**
+     * Create an setup.
+     *
+     * @param inputLineProcessor
+     * @param batchSize number of lines of a batch
+     * @param queueDepth number of batches
+     */
+    PipelinedInputLineProcessor(InputLineProcessor inputLineProcessor, int batchSize, int queueDepth) {
+        new GrokBuilder.Validations()
+                .isNull(inputLineProcessor)
+                .throwIllegalArgumentExceptionIf("InputLineProcessor is null");
+        new GrokBuilder.Validations(batchSize < 1)
+                .throwIllegalArgumentExceptionIf("Batch size is less than 1");
+        new GrokBuilder.Validations(queueDepth < 1)
+                .throwIllegalArgumentExceptionIf("Queue depth is less than 1");
+        this.inputLineProcessor = inputLineProcessor;
+        this.batchSize = batchSize;
+        this.queueDepth = queueDepth;
+    }
+
+    /**
+     * Entry point for processing all lines from a {@link ILineSource}.
+     *
+     * @param lineSource
+     * @throws IOException
+     */
+    public void processLines(final ILineSource lineSource) throws IOException {
+        final BlockingQueue<LineBatch> freeBatches = new ArrayBlockingQueue<>(queueDepth);
+        final BlockingQueue<LineBatch> readBatches = new ArrayBlockingQueue<>(queueDepth);
+        final BlockingQueue<LineBatch> matchedBatches = new ArrayBlockingQueue<>(queueDepth);
+        for (int i = 0; i < queueDepth; i++) {
+            freeBatches.add(new LineBatch(batchSize));
+        }
+        final IOutputGrokResultFormatter outputGrokResultConverter = inputLineProcessor.outputGrokResultConverter;
+        final ExecutorService executorService = Executors.newFixedThreadPool(2, (r) -> {
+            final Thread t = new Thread(r, "grokMain-pipeline");
+            // a reader blocked on stdin must not keep the jvm alive
+            t.setDaemon(true);
+            return t;
+        });
+        final RunStatistics runStatistics = inputLineProcessor.runStatistics;
+        if (runStatistics != null) {
+            runStatistics.registerQueue(READ_QUEUE, readBatches::size);
+            runStatistics.registerQueue(MATCHED_QUEUE, matchedBatches::size);
+        }
+        try {
+            outputGrokResultConverter.start();
+            final Future<Void> readerFuture = executorService.submit(() -> {
+                read(inputLineProcessor.countingLineSource(lineSource), freeBatches, readBatches);
+                return null;
+            });
+            final Future<Void> writerFuture = executorService.submit(() -> {
+                write(matchedBatches, freeBatches);
+                return null;
+            });
+            match(readBatches, matchedBatches);
+            waitFor(writerFuture);
+            waitFor(readerFuture);
+            outputGrokResultConverter.end();
+        } finally {
+            executorService.shutdownNow();
+            if (runStatistics != null) {
+                runStatistics.unregisterQueue(READ_QUEUE);
+                runStatistics.unregisterQueue(MATCHED_QUEUE);
+            }
+            outputGrokResultConverter.close();
+        }
+    }
+
+    /**
+     * Reader stage, reading lines into free batches.
+     * <p>
+     * Running on the reader thread.
+     */
+    void read(ILineSource lineSource,
+            BlockingQueue<LineBatch> freeBatches,
+            BlockingQueue<LineBatch> readBatches) throws InterruptedException {
+        final int readMaxLinesCount = inputLineProcessor.readMaxLinesCount;
+        int readLineCount = 0;
+        boolean last = false;
+        while (!last) {
+            long t0 = System.nanoTime();
+            final LineBatch batch = freeBatches.take();
+            long t1 = System.nanoTime();
+            readerCounters.waitNanos += t1 - t0;
+
+            batch.firstLineno = readLineCount + 1;
+            try {
+                CharSequence line = null;
+                while (batch.lineCount < batch.lines.length
+                        && (line = lineSource.readLine()) != null) {
+                    readLineCount += 1;
+                    if (readMaxLinesCount >= 0 && readLineCount > readMaxLinesCount) {
+                        break;
+                    }
+                    // line may be a view, keep a copy of it
+                    batch.lines[batch.lineCount++] = line.toString();
+                }
+                last = line == null
+                        || (readMaxLinesCount >= 0 && readLineCount > readMaxLinesCount);
+            } catch (IOException | RuntimeException ex) {
+                batch.failure = ex;
+                last = true;
+            }
+            batch.last = last;
+            batch.readLineCount = readLineCount;
+            long t2 = System.nanoTime();
+            readerCounters.busyNanos += t2 - t1;
+            readerCounters.batches += 1;
+
+            readBatches.put(batch);
+            readerCounters.waitNanos += System.nanoTime() - t2;
+        }
+    }
+
+    /**
+     * Matcher stage, matching the lines of read batches.
+     * <p>
+     * Running on the calling thread.
+     */
+    void match(BlockingQueue<LineBatch> readBatches,
+            BlockingQueue<LineBatch> matchedBatches) throws IOException {
+        final GrokIt grokIt = inputLineProcessor.createGrokIt();
+        final BatchCollectingFormatter batchCollectingFormatter = new BatchCollectingFormatter();
+        final InputLineProcessor matchingInputLineProcessor = inputLineProcessor
+                .withOutputGrokResultConverter(batchCollectingFormatter);
+        final MatchGatherOutput matchGatherOutput = new MatchGatherOutput();
+        try {
+            boolean last = false;
+            while (!last) {
+                long t0 = System.nanoTime();
+                final LineBatch batch = readBatches.take();
+                long t1 = System.nanoTime();
+                matcherCounters.waitNanos += t1 - t0;
+
+                last = batch.last;
+                if (batch.failure != null) {
+                    // keep the writer running until it has seen the last batch
+                    matchedBatches.put(batch);
+                    final Exception failure = batch.failure;
+                    if (failure instanceof IOException) {
+                        throw (IOException) failure;
+                    }
+                    throw (RuntimeException) failure;
+                }
+                batchCollectingFormatter.batch = batch;
+                for (int i = 0; i < batch.lineCount; i++) {
+                    final String line = batch.lines[i];
+                    final GrokMatchResult grokResult = grokIt.match(inputLineProcessor.grok, line);
+                    matchingInputLineProcessor.processLine(batch.firstLineno + i, line, grokResult, matchGatherOutput);
+                }
+                if (last) {
+                    // retrieve last Optional<Result> still gathered, but
+                    // not yet output
+                    matchingInputLineProcessor.multiLineModeLast(batch.readLineCount, matchGatherOutput);
+                }
+                long t2 = System.nanoTime();
+                matcherCounters.busyNanos += t2 - t1;
+                matcherCounters.batches += 1;
+
+                matchedBatches.put(batch);
+                matcherCounters.waitNanos += System.nanoTime() - t2;
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while matching", ex);
+        }
+    }
+
+    /**
+     * Writer stage, output the records of matched batches, and recycling the
+     * batches.
+     * <p>
+     * Running on the writer thread. A failing output does not stop recycling
+     * batches, otherwise reader, and matcher would wait forever.
+     */
+    void write(BlockingQueue<LineBatch> matchedBatches,
+            BlockingQueue<LineBatch> freeBatches) throws InterruptedException {
+        final IOutputGrokResultFormatter outputGrokResultConverter = inputLineProcessor.outputGrokResultConverter;
+        RuntimeException failure = null;
+        boolean last = false;
+        while (!last) {
+            long t0 = System.nanoTime();
+            final LineBatch batch = matchedBatches.take();
+            long t1 = System.nanoTime();
+            writerCounters.waitNanos += t1 - t0;
+
+            last = batch.last;
+            try {
+                for (int i = 0; failure == null && i < batch.recordCount; i++) {
+                    outputGrokResultConverter.output(batch.recordLinenos[i], batch.recordResults[i]);
+                }
+            } catch (RuntimeException ex) {
+                failure = ex;
+            }
+            batch.clear();
+            long t2 = System.nanoTime();
+            writerCounters.busyNanos += t2 - t1;
+            writerCounters.batches += 1;
+
+            freeBatches.put(batch);
+            writerCounters.waitNanos += System.nanoTime() - t2;
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Format the counters of all stages.
+     * <p>
+     * The stage with the highest busy ratio is the bottleneck of the
+     * pipeline.
+     *
+     * @return
+     */
+    String formatStatistics() {
+        return String.format("pipeline statistics%n%s%s%s",
+                readerCounters.format(),
+                matcherCounters.format(),
+                writerCounters.format());
+    }
+
+    private static void waitFor(Future<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing lines", ex);
+        } catch (ExecutionException ex) {
+            final Throwable cause = ex.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Failed processing lines", cause);
+        }
+    }
+
+    /**
+     * Collect the output of matching into the current {@link LineBatch}.
+     */
+    static class BatchCollectingFormatter implements IOutputGrokResultFormatter {
+
+        LineBatch batch;
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void output(int readLineCount, GrokMatchResult grokResult) {
+            batch.recordLinenos[batch.recordCount] = readLineCount;
+            batch.recordResults[batch.recordCount] = grokResult;
+            batch.recordCount += 1;
+        }
+
+        @Override
+        public void end() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * A batch of lines, and the records matched from these lines.
+     * <p>
+     * Each line yields at most one record, the last batch may yield one more
+     * record in multi-line mode.
+     */
+    static class LineBatch {
+
+        final String[] lines;
+        int lineCount;
+        int firstLineno;
+        int readLineCount;
+        boolean last;
+        Exception failure;
+
+        final int[] recordLinenos;
+        final GrokMatchResult[] recordResults;
+        int recordCount;
+
+        LineBatch(int batchSize) {
+            this.lines = new String[batchSize];
+            this.recordLinenos = new int[batchSize + 1];
+            this.recordResults = new GrokMatchResult[batchSize + 1];
+        }
+
+        void clear() {
+            Arrays.fill(lines, 0, lineCount, null);
+            Arrays.fill(recordResults, 0, recordCount, null);
+            lineCount = 0;
+            recordCount = 0;
+            firstLineno = 0;
+            readLineCount = 0;
+            last = false;
+            failure = null;
+        }
+    }
+
+    /**
+     * Time spent working, and waiting for batches of a single stage.
+     * <p>
+     * Updated by the thread of the stage only.
+     */
+    static class StageCounters {
+
+        final String name;
+        long busyNanos;
+        long waitNanos;
+        long batches;
+
+        StageCounters(String name) {
+            this.name = name;
+        }
+
+        double busyRatio() {
+            final long total = busyNanos + waitNanos;
+            return total > 0 ? (double) busyNanos / total : 0.0d;
+        }
+
+        String format() {
+            return String.format("%-8s batches: %d, busy: %d ms, waiting: %d ms, busy ratio: %.1f %%%n",
+                    name,
+                    batches,
+                    busyNanos / 1_000_000L,
+                    waitNanos / 1_000_000L,
+                    busyRatio() * 100.0d);
+        }
+    }
+}
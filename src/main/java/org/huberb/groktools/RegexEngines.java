@@ -0,0 +1,230 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.huberb.groktools.PikeVm.UnsupportedRegexException;
+
+/**
+ * Define the regex engines matching the expanded regex of a grok pattern.
+ * <p>
+ * An engine compiles the named regex of a {@link io.krakens.grok.api.Grok},
+ * and provides the offsets of the groups of the fields, see
+ * {@link GrokMatcher}.
+ *
+ * @author berni3
+ */
+public class RegexEngines {
+
+    /**
+     * Define implementation template for a regex engine.
+     */
+    public static interface IRegexEngine {
+
+        /**
+         * Compile a regex.
+         *
+         * @param regex the expanded regex of a grok pattern
+         * @param groupNames names of the groups whose offsets are captured
+         * @return a matcher, used by a single thread
+         */
+        IRegexMatcher compile(String regex, String[] groupNames);
+    }
+
+    /**
+     * Define implementation template for matching a compiled regex.
+     */
+    public static interface IRegexMatcher {
+
+        /**
+         * Find the first match in a line, like {@link Matcher#find()}.
+         * <p>
+         * The offsets are written as start, and end of the match, followed by
+         * start, and end of each group, in the order of the group names. A
+         * group not taking part in the match has offsets -1.
+         *
+         * @param line
+         * @param offsets receives 2 + 2 * number of group names offsets
+         * @return true if the line matches
+         */
+        boolean find(CharSequence line, int[] offsets);
+    }
+
+    /**
+     * Describe the regex engine.
+     */
+    public static enum RegexEngineMode {
+        jdk, linear;
+
+        IRegexEngine engine() {
+            return this == linear ? new LinearRegexEngine() : new JdkRegexEngine();
+        }
+    }
+
+    /**
+     * Match by {@link java.util.regex}, backtracking.
+     */
+    static class JdkRegexEngine implements IRegexEngine {
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * The group names are resolved to group numbers once, thus a match
+         * reads the offsets of a group by its number, not looking up its name.
+         * A regex whose groups are not numbered by
+         * {@link #groupNumbers(java.lang.String, java.lang.String[], int)},
+         * like a regex using comments, looks up the group names on each
+         * match.
+         */
+        @Override
+        public IRegexMatcher compile(String regex, String[] groupNames) {
+            final Matcher matcher = Pattern.compile(regex).matcher("");
+            final int[] groupNumbers = groupNumbers(regex, groupNames, matcher.groupCount());
+            if (groupNumbers == null) {
+                final String[] groupNamesCopy = groupNames.clone();
+                return (line, offsets) -> {
+                    matcher.reset(line);
+                    if (!matcher.find()) {
+                        return false;
+                    }
+                    offsets[0] = matcher.start();
+                    offsets[1] = matcher.end();
+                    for (int i = 0; i < groupNamesCopy.length; i++) {
+                        offsets[2 + 2 * i] = matcher.start(groupNamesCopy[i]);
+                        offsets[3 + 2 * i] = matcher.end(groupNamesCopy[i]);
+                    }
+                    return true;
+                };
+            }
+            return (line, offsets) -> {
+                matcher.reset(line);
+                if (!matcher.find()) {
+                    return false;
+                }
+                offsets[0] = matcher.start();
+                offsets[1] = matcher.end();
+                for (int i = 0; i < groupNumbers.length; i++) {
+                    offsets[2 + 2 * i] = matcher.start(groupNumbers[i]);
+                    offsets[3 + 2 * i] = matcher.end(groupNumbers[i]);
+                }
+                return true;
+            };
+        }
+
+        /**
+         * Resolve the numbers of named groups of a regex, like
+         * {@code Pattern#namedGroups()} of java 20.
+         * <p>
+         * Groups are numbered by their opening parenthesis, skipping escaped
+         * characters, quotations, character classes, and non-capturing groups.
+         *
+         * @param regex
+         * @param groupNames
+         * @param groupCount number of capturing groups of the compiled regex
+         * @return numbers of the groups in the order of the group names, or
+         * null if the numbering does not agree with the compiled regex
+         */
+        static int[] groupNumbers(String regex, String[] groupNames, int groupCount) {
+            final List<String> names = Arrays.asList(groupNames);
+            final int[] groupNumbers = new int[groupNames.length];
+            Arrays.fill(groupNumbers, -1);
+            final int length = regex.length();
+            int groupNumber = 0;
+            int classDepth = 0;
+            for (int i = 0; i < length; i++) {
+                final char c = regex.charAt(i);
+                if (c == '\\') {
+                    if (i + 1 < length && regex.charAt(i + 1) == 'Q') {
+                        final int quoteEnd = regex.indexOf("\\E", i + 2);
+                        i = quoteEnd < 0 ? length : quoteEnd + 1;
+                    } else {
+                        i++;
+                    }
+                } else if (c == '[') {
+                    classDepth++;
+                    // a ']' following '[', or '[^' is a literal
+                    if (i + 1 < length && regex.charAt(i + 1) == '^') {
+                        i++;
+                    }
+                    if (i + 1 < length && regex.charAt(i + 1) == ']') {
+                        i++;
+                    }
+                } else if (c == ']' && classDepth > 0) {
+                    classDepth--;
+                } else if (c == '(' && classDepth == 0) {
+                    if (!regex.startsWith("?", i + 1)) {
+                        groupNumber++;
+                    } else if (regex.startsWith("?<", i + 1) && i + 3 < length && Character.isLetter(regex.charAt(i + 3))) {
+                        groupNumber++;
+                        final int nameEnd = regex.indexOf('>', i + 3);
+                        final int index = nameEnd < 0 ? -1 : names.indexOf(regex.substring(i + 3, nameEnd));
+                        if (index >= 0) {
+                            groupNumbers[index] = groupNumber;
+                        }
+                    }
+                }
+            }
+            if (groupNumber != groupCount) {
+                return null;
+            }
+            for (int n : groupNumbers) {
+                if (n < 0) {
+                    return null;
+                }
+            }
+            return groupNumbers;
+        }
+    }
+
+    /**
+     * Match by a {@link PikeVm}, in time linear to the length of a line.
+     * <p>
+     * A regex using constructs not supported by {@link PikeVm}, like
+     * backreferences, or atomic groups matching in several ways, falls back to
+     * {@link JdkRegexEngine}.
+     */
+    static class LinearRegexEngine implements IRegexEngine {
+
+        private final JdkRegexEngine jdkRegexEngine = new JdkRegexEngine();
+
+        @Override
+        public IRegexMatcher compile(String regex, String[] groupNames) {
+            try {
+                return PikeVm.compile(regex, groupNames).matcher(() -> this.jdkRegexEngine.compile(regex, groupNames));
+            } catch (UnsupportedRegexException ex) {
+                return this.jdkRegexEngine.compile(regex, groupNames);
+            }
+        }
+
+        /**
+         * Decide if a regex is matched in linear time.
+         *
+         * @param regex
+         * @return false if the regex falls back to {@link JdkRegexEngine}
+         */
+        static boolean isLinear(String regex) {
+            try {
+                PikeVm.compile(regex, new String[0]);
+                return true;
+            } catch (UnsupportedRegexException ex) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,589 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.huberb.groktools.GrokIt.GrokMatchResult;
+import org.huberb.groktools.GrokMain.InputLineProcessor.MatchingLineMode;
+import org.huberb.groktools.InputLineSources.ILineSource;
+import org.huberb.groktools.OutputGrokResultFormatters.IOutputGrokResultFormatter;
+
+/**
+ * Count the lines of a run, and the time spent per stage.
+ * <p>
+ * Reading is measured by a {@link CountingLineSource}, including decoding the
+ * bytes into characters. Matching is measured by {@link GrokIt}, recording the
+ * latency of each line in a {@link LatencyHistogram}. Formatting is measured
+ * by a {@link TimingFormatter}, including writing to the output. Lines aborted
+ * by a {@link MatchTimeout} are counted, if registered.
+ * <p>
+ * An instance is shared by all threads. Counters are {@link LongAdder}s, thus
+ * the threads do not contend updating them. Each {@link GrokIt}, thus each
+ * matching thread, records into a histogram of its own, the histograms are
+ * merged on reading. Stage times are summed over all threads.
+ * <p>
+ * The live counters, and the depths of the queues between threads are exposed
+ * by the platform MBean server, if registered by {@link #registerMXBean()}.
+ *
+ * @author berni3
+ */
+class RunStatistics implements IRunStatisticsMXBean, Closeable {
+
+    static final String OBJECT_NAME = "org.huberb.groktools:type=RunStatistics";
+
+    private final MatchingLineMode matchingLineMode;
+    private final long startNanos;
+
+    private final LongAdder readLineCount = new LongAdder();
+    private final LongAdder readCharCount = new LongAdder();
+    private final LongAdder readNanos = new LongAdder();
+    private final LongAdder matchedLineCount = new LongAdder();
+    private final LongAdder notMatchedLineCount = new LongAdder();
+    private final LongAdder matchNanos = new LongAdder();
+    private final Queue<LatencyHistogram> matchLatencies = new ConcurrentLinkedQueue<>();
+    private final LongAdder outputRecordCount = new LongAdder();
+    private final LongAdder formatNanos = new LongAdder();
+
+    private final Map<String, IntSupplier> queueDepths = new ConcurrentHashMap<>();
+
+    private volatile MatchTimeout matchTimeout;
+    private ScheduledExecutorService progressExecutorService;
+    private ObjectName objectName;
+
+    /**
+     * Create an setup, starting the clock of the run.
+     *
+     * @param matchingLineMode mode deciding if non matching lines are skipped,
+     * or folded into the field "extra"
+     */
+    RunStatistics(MatchingLineMode matchingLineMode) {
+        this.matchingLineMode = matchingLineMode;
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Wrap a line source, counting the lines read, and the time reading them.
+     *
+     * @param lineSource
+     * @return
+     */
+    ILineSource countingLineSource(ILineSource lineSource) {
+        return new CountingLineSource(lineSource, this);
+    }
+
+    /**
+     * Wrap a formatter, counting the records output, and the time formatting
+     * them.
+     *
+     * @param outputGrokResultFormatter
+     * @return
+     */
+    IOutputGrokResultFormatter timingFormatter(IOutputGrokResultFormatter outputGrokResultFormatter) {
+        return new TimingFormatter(outputGrokResultFormatter, this);
+    }
+
+    /**
+     * Create a histogram of match latencies, recorded by a single thread, and
+     * merged by {@link #matchLatency()}.
+     *
+     * @return
+     */
+    LatencyHistogram newMatchLatency() {
+        final LatencyHistogram latencyHistogram = new LatencyHistogram();
+        this.matchLatencies.add(latencyHistogram);
+        return latencyHistogram;
+    }
+
+    /**
+     * Record matching a line.
+     *
+     * @param matchLatency histogram of the recording thread, created by
+     * {@link #newMatchLatency()}
+     * @param matched
+     * @param nanos time matching the line
+     */
+    void recordMatch(LatencyHistogram matchLatency, boolean matched, long nanos) {
+        if (matched) {
+            this.matchedLineCount.increment();
+        } else {
+            this.notMatchedLineCount.increment();
+        }
+        this.matchNanos.add(nanos);
+        matchLatency.record(nanos);
+    }
+
+    /**
+     * Register the match timeout, counting the lines it aborts.
+     *
+     * @param matchTimeout
+     */
+    void registerMatchTimeout(MatchTimeout matchTimeout) {
+        this.matchTimeout = matchTimeout;
+    }
+
+    /**
+     * Register a queue, exposing its depth.
+     *
+     * @param name
+     * @param queueDepth
+     */
+    void registerQueue(String name, IntSupplier queueDepth) {
+        this.queueDepths.put(name, queueDepth);
+    }
+
+    void unregisterQueue(String name) {
+        this.queueDepths.remove(name);
+    }
+
+    long readLineCount() {
+        return this.readLineCount.sum();
+    }
+
+    long matchedLineCount() {
+        return this.matchedLineCount.sum();
+    }
+
+    long notMatchedLineCount() {
+        return this.notMatchedLineCount.sum();
+    }
+
+    long outputRecordCount() {
+        return this.outputRecordCount.sum();
+    }
+
+    long timedOutLineCount() {
+        final MatchTimeout mt = this.matchTimeout;
+        return mt != null ? mt.timedOutCount() : 0L;
+    }
+
+    /**
+     * Merge the match latencies recorded by all threads so far.
+     *
+     * @return
+     */
+    LatencyHistogram matchLatency() {
+        final LatencyHistogram merged = new LatencyHistogram();
+        this.matchLatencies.forEach(merged::add);
+        return merged;
+    }
+
+    @Override
+    public long getLinesRead() {
+        return readLineCount();
+    }
+
+    @Override
+    public long getLinesMatched() {
+        return matchedLineCount();
+    }
+
+    @Override
+    public long getLinesSkipped() {
+        return this.matchingLineMode == MatchingLineMode.multiLinesMode ? 0L : notMatchedLineCount();
+    }
+
+    @Override
+    public long getLinesFoldedIntoExtra() {
+        return this.matchingLineMode == MatchingLineMode.multiLinesMode ? notMatchedLineCount() : 0L;
+    }
+
+    @Override
+    public long getLinesTimedOut() {
+        return timedOutLineCount();
+    }
+
+    @Override
+    public long getRecordsOutput() {
+        return outputRecordCount();
+    }
+
+    @Override
+    public double getMatchLatencyP50Micros() {
+        return micros(matchLatency().quantile(0.5d));
+    }
+
+    @Override
+    public double getMatchLatencyP99Micros() {
+        return micros(matchLatency().quantile(0.99d));
+    }
+
+    @Override
+    public double getMatchLatencyMaxMicros() {
+        return micros(matchLatency().max());
+    }
+
+    @Override
+    public Map<String, Integer> getQueueDepths() {
+        final Map<String, Integer> m = new TreeMap<>();
+        this.queueDepths.forEach((name, queueDepth) -> m.put(name, queueDepth.getAsInt()));
+        return m;
+    }
+
+    /**
+     * Register this instance by the platform MBean server, until closed.
+     * <p>
+     * An instance registered by an earlier run is replaced.
+     *
+     * @throws JMException
+     */
+    void registerMXBean() throws JMException {
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(OBJECT_NAME);
+        if (mBeanServer.isRegistered(name)) {
+            mBeanServer.unregisterMBean(name);
+        }
+        mBeanServer.registerMBean(this, name);
+        this.objectName = name;
+    }
+
+    /**
+     * Print a progress line periodically, until closed.
+     *
+     * @param intervalSeconds
+     * @param progressPrinter
+     */
+    void startProgress(long intervalSeconds, Consumer<String> progressPrinter) {
+        new GrokBuilder.Validations(intervalSeconds <= 0)
+                .throwIllegalArgumentExceptionIf("Progress interval must be positive");
+        this.progressExecutorService = Executors.newSingleThreadScheduledExecutor((r) -> {
+            final Thread t = new Thread(r, "grokMain-progress");
+            t.setDaemon(true);
+            return t;
+        });
+        this.progressExecutorService.scheduleAtFixedRate(() -> progressPrinter.accept(formatProgress()),
+                intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Format a single line of the progress so far.
+     *
+     * @return
+     */
+    String formatProgress() {
+        final double elapsedSeconds = elapsedSeconds();
+        final long lines = readLineCount();
+        return String.format("progress: %.0f s, lines read: %d, matched: %d, %.0f lines/s, %.2f MB/s%n",
+                elapsedSeconds, lines, matchedLineCount(),
+                perSecond(lines, elapsedSeconds),
+                perSecond(megaBytes(), elapsedSeconds));
+    }
+
+    /**
+     * Format the line counts, the throughput, the match latency, the lines
+     * timed out, and the time per stage.
+     *
+     * @return
+     */
+    String formatStatistics() {
+        final double elapsedSeconds = elapsedSeconds();
+        final long lines = readLineCount();
+        final long matched = matchedLineCount();
+        final long notMatched = notMatchedLineCount();
+        final long read = this.readNanos.sum();
+        final long match = this.matchNanos.sum();
+        final long format = this.formatNanos.sum();
+        final long stages = read + match + format;
+        final LatencyHistogram latency = matchLatency();
+        final MatchTimeout mt = this.matchTimeout;
+        final String timedOut = mt != null
+                ? String.format("lines timed out after %d micros: %d%n", mt.timeoutMicros(), mt.timedOutCount())
+                : "";
+        return String.format("run statistics%n"
+                + "lines read: %d, matched: %d, not matching skipped: %d, not matching folded into extra: %d%n"
+                + "records output: %d%n"
+                + "elapsed: %.3f s, %.0f lines/s, %.2f MB/s%n"
+                + "match ratio: %.1f %%%n"
+                + "match latency micros p50: %.1f, p99: %.1f, max: %.1f%n"
+                + "%s"
+                + "stage read: %.3f s (%.1f %%), match: %.3f s (%.1f %%), format: %.3f s (%.1f %%)%n",
+                lines, matched, getLinesSkipped(), getLinesFoldedIntoExtra(),
+                outputRecordCount(),
+                elapsedSeconds, perSecond(lines, elapsedSeconds), perSecond(megaBytes(), elapsedSeconds),
+                percent(matched, matched + notMatched),
+                micros(latency.quantile(0.5d)),
+                micros(latency.quantile(0.99d)),
+                micros(latency.max()),
+                timedOut,
+                seconds(read), percent(read, stages),
+                seconds(match), percent(match, stages),
+                seconds(format), percent(format, stages));
+    }
+
+    /**
+     * Megabytes read, approximated by the characters of the lines, and a line
+     * terminator each; exact for ASCII logs.
+     */
+    private double megaBytes() {
+        return (this.readCharCount.sum() + readLineCount()) / (1024.0d * 1024.0d);
+    }
+
+    private double elapsedSeconds() {
+        return seconds(System.nanoTime() - this.startNanos);
+    }
+
+    private static double seconds(long nanos) {
+        return nanos / 1_000_000_000.0d;
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1_000.0d;
+    }
+
+    private static double perSecond(double n, double seconds) {
+        return seconds > 0.0d ? n / seconds : 0.0d;
+    }
+
+    private static double percent(long n, long total) {
+        return total > 0 ? 100.0d * n / total : 0.0d;
+    }
+
+    @Override
+    public void close() {
+        if (this.progressExecutorService != null) {
+            this.progressExecutorService.shutdownNow();
+        }
+        if (this.objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+            } catch (JMException ex) {
+                // unregistered by a later run already
+            }
+            this.objectName = null;
+        }
+    }
+
+    /**
+     * Histogram of latencies in nanoseconds, with buckets of logarithmic
+     * width.
+     * <p>
+     * Each power of two is split into {@link #SUB_BUCKETS} buckets, thus a
+     * quantile is reported with a relative error of 12.5 % at most. Recording
+     * increments a single bucket, no allocation, no lock, and no compare and
+     * set.
+     * <p>
+     * Recorded by a single thread; read, and merged by any thread. A reader
+     * may miss the latest latencies, but never sees a torn count.
+     */
+    static class LatencyHistogram {
+
+        static final int SUB_BUCKET_BITS = 3;
+        static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(bucketIndex(Long.MAX_VALUE) + 1);
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+
+        /**
+         * Record a latency, by the single recording thread.
+         *
+         * @param nanos negative values are recorded as 0
+         */
+        void record(long nanos) {
+            final long value = Math.max(0L, nanos);
+            final int index = bucketIndex(value);
+            this.buckets.lazySet(index, this.buckets.get(index) + 1L);
+            this.count.lazySet(this.count.get() + 1L);
+            if (value > this.max.get()) {
+                this.max.lazySet(value);
+            }
+        }
+
+        /**
+         * Add the latencies of another histogram, by the recording thread of
+         * this one.
+         *
+         * @param other
+         */
+        void add(LatencyHistogram other) {
+            for (int i = 0; i < this.buckets.length(); i++) {
+                final long n = other.buckets.get(i);
+                if (n != 0L) {
+                    this.buckets.lazySet(i, this.buckets.get(i) + n);
+                }
+            }
+            this.count.lazySet(this.count.get() + other.count());
+            this.max.lazySet(Math.max(this.max.get(), other.max()));
+        }
+
+        long count() {
+            return this.count.get();
+        }
+
+        long max() {
+            return this.max.get();
+        }
+
+        /**
+         * Estimate a quantile by the upper bound of its bucket.
+         *
+         * @param q quantile in [0, 1]
+         * @return the latency, or 0 if nothing is recorded
+         */
+        long quantile(double q) {
+            final long total = count();
+            if (total == 0L) {
+                return 0L;
+            }
+            final long rank = Math.max(1L, (long) Math.ceil(q * total));
+            long cumulated = 0L;
+            for (int i = 0; i < this.buckets.length(); i++) {
+                cumulated += this.buckets.get(i);
+                if (cumulated >= rank) {
+                    return Math.min(bucketUpperBound(i), max());
+                }
+            }
+            return max();
+        }
+
+        /**
+         * Index of the bucket of a non negative value.
+         * <p>
+         * Values less than {@link #SUB_BUCKETS} have a bucket each. Larger
+         * values are bucketed by their highest bit, and the
+         * {@link #SUB_BUCKET_BITS} bits below it.
+         */
+        static int bucketIndex(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            final int highestBit = 63 - Long.numberOfLeadingZeros(value);
+            final int shift = highestBit - SUB_BUCKET_BITS;
+            final int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+            return (shift + 1) * SUB_BUCKETS + subBucket;
+        }
+
+        /**
+         * Largest value of a bucket.
+         */
+        static long bucketUpperBound(int index) {
+            if (index < SUB_BUCKETS) {
+                return index;
+            }
+            final int shift = index / SUB_BUCKETS - 1;
+            final long subBucket = index % SUB_BUCKETS;
+            final long lowerBound = (SUB_BUCKETS + subBucket) << shift;
+            return lowerBound + (1L << shift) - 1L;
+        }
+    }
+
+    /**
+     * Count the lines, and the characters read from a line source, and the
+     * time reading them.
+     */
+    static class CountingLineSource implements ILineSource {
+
+        private final ILineSource lineSource;
+        private final RunStatistics runStatistics;
+
+        CountingLineSource(ILineSource lineSource, RunStatistics runStatistics) {
+            this.lineSource = lineSource;
+            this.runStatistics = runStatistics;
+        }
+
+        @Override
+        public CharSequence readLine() throws IOException {
+            final long t0 = System.nanoTime();
+            final CharSequence line = this.lineSource.readLine();
+            this.runStatistics.readNanos.add(System.nanoTime() - t0);
+            if (line != null) {
+                this.runStatistics.readLineCount.increment();
+                this.runStatistics.readCharCount.add(line.length());
+            }
+            return line;
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.lineSource.close();
+        }
+    }
+
+    /**
+     * Count the records output by a formatter, and the time formatting them.
+     */
+    static class TimingFormatter implements IOutputGrokResultFormatter {
+
+        private final IOutputGrokResultFormatter outputGrokResultFormatter;
+        private final RunStatistics runStatistics;
+
+        TimingFormatter(IOutputGrokResultFormatter outputGrokResultFormatter, RunStatistics runStatistics) {
+            this.outputGrokResultFormatter = outputGrokResultFormatter;
+            this.runStatistics = runStatistics;
+        }
+
+        @Override
+        public void start() {
+            this.outputGrokResultFormatter.start();
+        }
+
+        @Override
+        public void output(int readLineCount, GrokMatchResult grokResult) {
+            final long t0 = System.nanoTime();
+            this.outputGrokResultFormatter.output(readLineCount, grokResult);
+            recordOutput(t0);
+        }
+
+        @Override
+        public void output(String file, int readLineCount, GrokMatchResult grokResult) {
+            final long t0 = System.nanoTime();
+            this.outputGrokResultFormatter.output(file, readLineCount, grokResult);
+            recordOutput(t0);
+        }
+
+        private void recordOutput(long t0) {
+            this.runStatistics.formatNanos.add(System.nanoTime() - t0);
+            this.runStatistics.outputRecordCount.increment();
+        }
+
+        @Override
+        public void end() {
+            this.outputGrokResultFormatter.end();
+        }
+
+        @Override
+        public void resume(long outputRecordCount) {
+            this.outputGrokResultFormatter.resume(outputRecordCount);
+        }
+
+        @Override
+        public void flush() {
+            this.outputGrokResultFormatter.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.outputGrokResultFormatter.close();
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+import org.huberb.groktools.GrokMain.InputLineProcessor.MatchingLineMode;
+import org.huberb.groktools.InputLineSources.InputMode;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+/**
+ *
+ * @author berni3
+ */
+public class AsyncGzipInputStreamTest {
+
+    @TempDir
+    Path tempDir;
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "1, 1",
+        "7, 2",
+        "4096, 4",
+        "1048576, 4"
+    })
+    public void testRead_sameBytesAsGzipInputStream(int blockSize, int blockCount) throws IOException {
+        final byte[] expected = Files.readAllBytes(Paths.get("src/main/resources/examples/server.log"));
+        // two gzip members concatenated, as "cat a.gz b.gz" does
+        final byte[] compressed = concat(gzip(expected), gzip(expected));
+
+        try (final InputStream is = new AsyncGzipInputStream(new ByteArrayInputStream(compressed), blockSize, blockCount)) {
+            assertArrayEquals(concat(expected, expected), readAll(is));
+            assertEquals(-1, is.read());
+        }
+    }
+
+    @Test
+    public void testRead_empty() throws IOException {
+        try (final InputStream is = new AsyncGzipInputStream(new ByteArrayInputStream(gzip(new byte[0])), 16, 2)) {
+            assertEquals(-1, is.read());
+        }
+    }
+
+    @Test
+    public void testRead_corrupted() throws IOException {
+        final byte[] compressed = gzip(Files.readAllBytes(Paths.get("src/main/resources/examples/server.log")));
+        final byte[] truncated = Arrays.copyOf(compressed, compressed.length / 2);
+        try (final InputStream is = new AsyncGzipInputStream(new ByteArrayInputStream(truncated), 1024, 2)) {
+            assertThrows(IOException.class, () -> readAll(is));
+        }
+        try (final InputStream is = new AsyncGzipInputStream(new ByteArrayInputStream("not gzip".getBytes()), 1024, 2)) {
+            assertThrows(IOException.class, () -> readAll(is));
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "server.log.gz, singleLineMode",
+        "server.log.gz, multiLinesMode",
+        "server.log.1,  singleLineMode"
+    })
+    public void testReaderFactory_sameOutputAsPlain(String gzipFilename, MatchingLineMode matchingLineMode) throws IOException {
+        final Grok grok = new GrokBuilder()
+                .namedOnly(true)
+                .patternDefinitionsFromClasspath("/groktoolspatterns/server_log")
+                .pattern("%{WILDFLY_SERVERLOG}")
+                .build();
+        final File plain = new File("src/main/resources/examples/server.log");
+        final File gzipped = tempDir.resolve(gzipFilename).toFile();
+        Files.write(gzipped.toPath(), gzip(Files.readAllBytes(plain.toPath())));
+
+        final GrokMain.ReaderFactory readerFactory = new GrokMain.ReaderFactory(gzipped);
+        assertTrue(readerFactory.isGzipFile());
+        assertFalse(new GrokMain.ReaderFactory(plain).isGzipFile());
+
+        final String expected = InputLineSourcesTest.processLines(grok, matchingLineMode,
+                new GrokMain.ReaderFactory(plain).createLineSource(InputMode.reader));
+        assertFalse(expected.isEmpty());
+        for (InputMode inputMode : InputMode.values()) {
+            final String output = InputLineSourcesTest.processLines(grok, matchingLineMode,
+                    readerFactory.createLineSource(inputMode));
+            assertEquals(expected, output, inputMode.toString());
+        }
+    }
+
+    static byte[] gzip(byte[] bytes) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (final OutputStream os = new GZIPOutputStream(baos)) {
+            os.write(bytes);
+        }
+        return baos.toByteArray();
+    }
+
+    static byte[] concat(byte[] a, byte[] b) {
+        final byte[] ab = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, ab, a.length, b.length);
+        return ab;
+    }
+
+    static byte[] readAll(InputStream is) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1000];
+        for (int n; (n = is.read(buffer)) >= 0;) {
+            baos.write(buffer, 0, n);
+        }
+        return baos.toByteArray();
+    }
+}
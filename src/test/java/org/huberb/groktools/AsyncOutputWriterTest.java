@@ -0,0 +1,252 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.huberb.groktools.AsyncOutputWriter.FlushPolicy;
+import org.huberb.groktools.AsyncOutputWriter.ITarget;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ *
+ * @author berni3
+ */
+public class AsyncOutputWriterTest {
+
+    /**
+     * Gather the text written, passing the text of each flush to a queue.
+     */
+    static class FlushRecordingTarget implements ITarget {
+
+        final StringBuilder written = new StringBuilder();
+        final BlockingQueue<String> flushed = new LinkedBlockingQueue<>();
+        int flushedLength;
+
+        @Override
+        public void write(char[] chars, int length) {
+            this.written.append(chars, 0, length);
+        }
+
+        @Override
+        public void flush() {
+            this.flushed.add(this.written.substring(this.flushedLength));
+            this.flushedLength = this.written.length();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        String pollFlushed() throws InterruptedException {
+            return this.flushed.poll(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 3, 8, 1024})
+    public void testWrite_keepsOrder(int bufferSize) throws IOException {
+        final StringWriter sw = new StringWriter();
+        final StringBuilder expected = new StringBuilder();
+        try (final AsyncOutputWriter instance = new AsyncOutputWriter(AsyncOutputWriter.writerTarget(sw), bufferSize, new FlushPolicy(0, 0, 0))) {
+            for (int i = 0; i < 1000; i++) {
+                final String s = "line " + i + "\n";
+                instance.write(s);
+                instance.write(s.toCharArray(), 0, s.length());
+                expected.append(s).append(s);
+            }
+        }
+        assertEquals(expected.toString(), sw.toString());
+    }
+
+    @Test
+    public void testFlush_waitsUntilWritten() throws IOException {
+        final StringWriter sw = new StringWriter();
+        try (final AsyncOutputWriter instance = new AsyncOutputWriter(AsyncOutputWriter.writerTarget(sw), 1024, new FlushPolicy(0, 0, 0))) {
+            instance.write("abc");
+            instance.flush();
+            assertEquals("abc", sw.toString());
+            instance.flush();
+            instance.write("def");
+            instance.flush();
+            assertEquals("abcdef", sw.toString());
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        // flushChars, flushRecords
+        "3, 0",
+        "0, 2"
+    })
+    public void testFlushPolicy_charsAndRecords(long flushChars, long flushRecords) throws IOException, InterruptedException {
+        final FlushRecordingTarget target = new FlushRecordingTarget();
+        try (final AsyncOutputWriter instance = new AsyncOutputWriter(target, 1024, new FlushPolicy(flushChars, flushRecords, 0))) {
+            instance.write("a\n");
+            instance.endRecord();
+            instance.write("b\n");
+            instance.endRecord();
+            assertEquals("a\nb\n", target.pollFlushed());
+            instance.write("c");
+        }
+        assertAll(
+                () -> assertEquals("c", target.pollFlushed()),
+                () -> assertNull(target.flushed.poll())
+        );
+    }
+
+    @Test
+    public void testFlushPolicy_millis() throws IOException, InterruptedException {
+        final FlushRecordingTarget target = new FlushRecordingTarget();
+        try (final AsyncOutputWriter instance = new AsyncOutputWriter(target, 1024, new FlushPolicy(0, 0, 10))) {
+            instance.write("a");
+            assertEquals("a", target.pollFlushed());
+            instance.write("b");
+            assertEquals("b", target.pollFlushed());
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 4, 64})
+    public void testFlushPolicy_millisWithFullBuffer(int bufferSize) {
+        final StringWriter sw = new StringWriter();
+        final StringBuilder expected = new StringBuilder();
+        assertTimeoutPreemptively(Duration.ofSeconds(30), () -> {
+            // the writer thread flushing in time must not wait for a matching thread waiting for a free block,
+            // nor for a print writer flushing, or closing
+            final AsyncOutputWriter instance = new AsyncOutputWriter(AsyncOutputWriter.writerTarget(sw), bufferSize, new FlushPolicy(0, 0, 1));
+            try (final PrintWriter pw = new PrintWriter(instance)) {
+                for (int i = 0; i < 20000; i++) {
+                    final String s = "line " + i + "\n";
+                    pw.write(s);
+                    instance.endRecord();
+                    if (i % 1000 == 0) {
+                        pw.flush();
+                    }
+                    expected.append(s);
+                }
+            }
+            instance.close();
+        });
+        assertEquals(expected.toString(), sw.toString());
+    }
+
+    @Test
+    public void testWrite_blocksIfBufferIsFull() throws Exception {
+        final CountDownLatch writing = new CountDownLatch(1);
+        final CountDownLatch released = new CountDownLatch(1);
+        final FlushRecordingTarget target = new FlushRecordingTarget() {
+            @Override
+            public void write(char[] chars, int length) {
+                writing.countDown();
+                try {
+                    released.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                super.write(chars, length);
+            }
+        };
+        try (final AsyncOutputWriter instance = new AsyncOutputWriter(target, 8, new FlushPolicy(0, 0, 0))) {
+            // 2 blocks of 4 chars: one being written, one handed over, and no free one
+            final CompletableFuture<Void> written = CompletableFuture.runAsync(() -> {
+                try {
+                    instance.write("0123456789ab");
+                } catch (IOException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            });
+            assertTrue(writing.await(10, TimeUnit.SECONDS));
+            assertThrows(TimeoutException.class, () -> written.get(200, TimeUnit.MILLISECONDS));
+            released.countDown();
+            written.get(10, TimeUnit.SECONDS);
+        }
+        assertEquals("0123456789ab", target.written.toString());
+    }
+
+    @Test
+    public void testWrite_failureOfTarget() throws IOException {
+        final ITarget target = new FlushRecordingTarget() {
+            @Override
+            public void write(char[] chars, int length) {
+                throw new IllegalStateException("broken pipe");
+            }
+        };
+        final AsyncOutputWriter instance = new AsyncOutputWriter(target, 1024, new FlushPolicy(0, 0, 0));
+        instance.write("abc");
+        assertAll(
+                () -> assertThrows(IOException.class, () -> instance.flush()),
+                () -> assertThrows(IOException.class, () -> instance.write("def")),
+                () -> assertThrows(IOException.class, () -> instance.close()),
+                () -> assertThrows(IOException.class, () -> instance.close())
+        );
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {2, 3, 5, 1024})
+    public void testFileTarget(int bufferSize, @TempDir File tempDir) throws IOException {
+        final File file = new File(tempDir, "output.txt");
+        // surrogate pairs split at the end of a block
+        final String s = "abc😀 ä 😀😀\n";
+        try (final AsyncOutputWriter instance = new AsyncOutputWriter(AsyncOutputWriter.fileTarget(file, false), bufferSize, new FlushPolicy(0, 0, 0))) {
+            for (int i = 0; i < 100; i++) {
+                instance.write(s);
+            }
+        }
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            expected.append(s);
+        }
+        assertEquals(expected.toString(), new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+
+        try (final AsyncOutputWriter instance = new AsyncOutputWriter(AsyncOutputWriter.fileTarget(file, true), bufferSize, new FlushPolicy(0, 0, 0))) {
+            instance.write("appended");
+        }
+        assertTrue(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).endsWith(s + "appended"));
+    }
+
+    @Test
+    public void testInvalidSetup() {
+        final ITarget target = new FlushRecordingTarget();
+        assertAll(
+                () -> assertThrows(IllegalArgumentException.class, () -> new AsyncOutputWriter(target, 1, new FlushPolicy(0, 0, 0))),
+                () -> assertThrows(IllegalArgumentException.class, () -> new FlushPolicy(-1, 0, 0)),
+                () -> assertThrows(IllegalArgumentException.class, () -> new FlushPolicy(0, -1, 0)),
+                () -> assertThrows(IllegalArgumentException.class, () -> new FlushPolicy(0, 0, -1))
+        );
+    }
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import org.huberb.groktools.CheckpointingInputLineProcessor.Checkpoint;
+import org.huberb.groktools.GrokIt.GrokMatchResult;
+import org.huberb.groktools.GrokMain.InputLineProcessor;
+import org.huberb.groktools.GrokMain.InputLineProcessor.MatchingLineMode;
+import org.huberb.groktools.MatchGatherOutput.Wrapper;
+import org.huberb.groktools.OutputGrokResultFormatters.IOutputGrokResultFormatter;
+import org.huberb.groktools.OutputGrokResultFormatters.OutputMatchResultMode;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+/**
+ *
+ * @author berni3
+ */
+public class CheckpointingInputLineProcessorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/server.log,         singleLineMode, 1",
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/server.log,         singleLineMode, 5",
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/server.log,         multiLinesMode, 1",
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/server.log,         multiLinesMode, 5",
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/server.log,         multiLinesMode, 20",
+        "%{ACTIVEMQ_ACTIVEMQLOG}, src/main/resources/examples/activemq.log,       multiLinesMode, 3",
+        "%{ELKSTACK_LOGSTASHLOG}, src/main/resources/examples/logstash-plain.log, multiLinesMode, 3",
+        "%{FLUME_FLUMELOG},       src/main/resources/examples/flume.log,          multiLinesMode, 3"
+    })
+    public void testProcessFile_resumeAfterCrash(String pattern,
+            String filename,
+            MatchingLineMode matchingLineMode,
+            int crashAtFlush) throws IOException {
+        final Grok grok = new GrokBuilder()
+                .namedOnly(true)
+                .patternDefinitionsFromClasspath("/groktoolspatterns/server_log")
+                .pattern(pattern)
+                .build();
+        final File f = new File(filename);
+        final File checkpointFile = tempDir.resolve("checkpoint.properties").toFile();
+        for (OutputMatchResultMode outputMatchResultMode : OutputMatchResultMode.values()) {
+            final String expected;
+            try (final StringWriter sw = new StringWriter();
+                    final PrintWriter pw = new PrintWriter(sw)) {
+                new CheckpointingInputLineProcessor(
+                        createInputLineProcessor(grok, matchingLineMode,
+                                OutputGrokResultFormatters.createOutputGrokResultConverter(outputMatchResultMode, pw, null, grok)),
+                        checkpointFile, 10).processFile(f);
+                expected = sw.toString();
+            }
+            assertFalse(expected.isEmpty());
+            assertFalse(checkpointFile.exists());
+
+            // crash, output not flushed before the crash is lost
+            final StringWriter swCrashed = new StringWriter();
+            final CrashingFormatter crashingFormatter = new CrashingFormatter(outputMatchResultMode, grok, swCrashed, crashAtFlush);
+            assertThrows(IllegalStateException.class, () -> new CheckpointingInputLineProcessor(
+                    createInputLineProcessor(grok, matchingLineMode, crashingFormatter),
+                    checkpointFile, 10).processFile(f));
+            // no checkpoint before the first flush, resume starts over
+            assertEquals(crashAtFlush > 1, checkpointFile.exists());
+            final String crashedOutput = swCrashed.toString().substring(0, crashingFormatter.flushedLength);
+
+            // resume
+            try (final StringWriter sw = new StringWriter();
+                    final PrintWriter pw = new PrintWriter(sw)) {
+                new CheckpointingInputLineProcessor(
+                        createInputLineProcessor(grok, matchingLineMode,
+                                OutputGrokResultFormatters.createOutputGrokResultConverter(outputMatchResultMode, pw, null, grok)),
+                        checkpointFile, 10).processFile(f);
+                assertEquals(expected, crashedOutput + sw.toString(), outputMatchResultMode.toString());
+            }
+            assertFalse(checkpointFile.exists());
+        }
+    }
+
+    @Test
+    public void testProcessFile_resumeTruncatesOutputFile() throws IOException {
+        final Grok grok = new GrokBuilder()
+                .namedOnly(true)
+                .patternDefinitionsFromClasspath("/groktoolspatterns/server_log")
+                .pattern("%{WILDFLY_SERVERLOG}")
+                .build();
+        final File f = new File("src/main/resources/examples/server.log");
+        final File checkpointFile = tempDir.resolve("checkpoint.properties").toFile();
+        final Path outputPath = tempDir.resolve("output.csv");
+        try (final PrintWriter pw = new PrintWriter(Files.newBufferedWriter(outputPath, StandardCharsets.UTF_8))) {
+            new CheckpointingInputLineProcessor(
+                    createInputLineProcessor(grok, MatchingLineMode.singleLineMode,
+                            OutputGrokResultFormatters.createOutputGrokResultConverter(OutputMatchResultMode.asCsv, pw)),
+                    checkpointFile, 10, outputPath.toFile()).processFile(f);
+        }
+        final List<String> expected = Files.readAllLines(outputPath, StandardCharsets.UTF_8);
+
+        try (final PrintWriter pw = new PrintWriter(Files.newBufferedWriter(outputPath, StandardCharsets.UTF_8))) {
+            final CrashingFormatter crashingFormatter = new CrashingFormatter(
+                    OutputGrokResultFormatters.createOutputGrokResultConverter(OutputMatchResultMode.asCsv, pw), 3);
+            assertThrows(IllegalStateException.class, () -> new CheckpointingInputLineProcessor(
+                    createInputLineProcessor(grok, MatchingLineMode.singleLineMode, crashingFormatter),
+                    checkpointFile, 10, outputPath.toFile()).processFile(f));
+        }
+        assertTrue(checkpointFile.exists());
+        // records flushed after the checkpoint, but before the crash
+        Files.write(outputPath, Arrays.asList("\"flushed\",\"after\",\"checkpoint\""), StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        try (final PrintWriter pw = new PrintWriter(Files.newBufferedWriter(outputPath, StandardCharsets.UTF_8, StandardOpenOption.APPEND))) {
+            new CheckpointingInputLineProcessor(
+                    createInputLineProcessor(grok, MatchingLineMode.singleLineMode,
+                            OutputGrokResultFormatters.createOutputGrokResultConverter(OutputMatchResultMode.asCsv, pw)),
+                    checkpointFile, 10, outputPath.toFile()).processFile(f);
+        }
+        assertAll(
+                () -> assertEquals(expected, Files.readAllLines(outputPath, StandardCharsets.UTF_8)),
+                () -> assertFalse(checkpointFile.exists())
+        );
+    }
+
+    @Test
+    public void testProcessFile_checkpointOfOtherPattern() throws IOException {
+        final File f = new File("src/main/resources/examples/server.log");
+        final File checkpointFile = tempDir.resolve("checkpoint.properties").toFile();
+        new Checkpoint(f.getAbsolutePath(), "%{GREEDYDATA:line}", MatchingLineMode.singleLineMode.name())
+                .write(checkpointFile);
+        final Grok grok = new GrokBuilder()
+                .namedOnly(true)
+                .pattern("%{WORD:word}")
+                .build();
+        final StringWriter sw = new StringWriter();
+        final CheckpointingInputLineProcessor checkpointingInputLineProcessor = new CheckpointingInputLineProcessor(
+                createInputLineProcessor(grok, MatchingLineMode.singleLineMode,
+                        OutputGrokResultFormatters.createOutputGrokResultConverter(OutputMatchResultMode.asCsv, new PrintWriter(sw))),
+                checkpointFile, 10);
+        assertThrows(IllegalArgumentException.class, () -> checkpointingInputLineProcessor.processFile(f));
+    }
+
+    @Test
+    public void testCheckpoint_writeRead() throws IOException {
+        final File checkpointFile = tempDir.resolve("checkpoint.properties").toFile();
+        assertFalse(Checkpoint.read(checkpointFile).isPresent());
+
+        final Checkpoint checkpoint = new Checkpoint("/var/log/server.log", "%{WILDFLY_SERVERLOG}", "multiLinesMode");
+        checkpoint.offset = 4711L;
+        checkpoint.readLineCount = 42;
+        checkpoint.outputRecordCount = 17L;
+        checkpoint.outputLength = 1234L;
+        final Map<String, Object> m = new HashMap<>();
+        m.put("level", "ERROR");
+        m.put("message", "a \"quoted\" message = with: special characters äöü");
+        m.put("thread", null);
+        checkpoint.pending = new Wrapper(40, "subject line", 0, 12, m);
+        checkpoint.pending.appendExtra("\tat org.huberb.Foo.bar(Foo.java:1)");
+        checkpoint.write(checkpointFile);
+
+        final Optional<Checkpoint> readCheckpointOpt = Checkpoint.read(checkpointFile);
+        assertTrue(readCheckpointOpt.isPresent());
+        final Checkpoint readCheckpoint = readCheckpointOpt.get();
+        assertAll(
+                () -> assertEquals("/var/log/server.log", readCheckpoint.file),
+                () -> assertEquals("%{WILDFLY_SERVERLOG}", readCheckpoint.pattern),
+                () -> assertEquals("multiLinesMode", readCheckpoint.matchingLineMode),
+                () -> assertEquals(4711L, readCheckpoint.offset),
+                () -> assertEquals(42, readCheckpoint.readLineCount),
+                () -> assertEquals(17L, readCheckpoint.outputRecordCount),
+                () -> assertEquals(1234L, readCheckpoint.outputLength),
+                () -> assertEquals(40, readCheckpoint.pending.readLineCount),
+                () -> assertEquals("subject line", readCheckpoint.pending.subject),
+                () -> assertEquals(0, readCheckpoint.pending.start),
+                () -> assertEquals(12, readCheckpoint.pending.end),
+                () -> assertEquals(m, readCheckpoint.pending.m),
+                () -> assertEquals("\tat org.huberb.Foo.bar(Foo.java:1)\n", readCheckpoint.pending.extra.toString())
+        );
+
+        checkpoint.pending = null;
+        checkpoint.write(checkpointFile);
+        assertNull(Checkpoint.read(checkpointFile).get().pending);
+    }
+
+    InputLineProcessor createInputLineProcessor(Grok grok,
+            MatchingLineMode matchingLineMode,
+            IOutputGrokResultFormatter outputGrokResultConverter) {
+        return new InputLineProcessor(
+                grok,
+                matchingLineMode,
+                outputGrokResultConverter,
+                -1);
+    }
+
+    /**
+     * Formatter crashing at a given flush.
+     * <p>
+     * Output after the last successful flush is considered as lost.
+     */
+    static class CrashingFormatter implements IOutputGrokResultFormatter {
+
+        private final StringWriter sw;
+        private final IOutputGrokResultFormatter delegate;
+        private final int crashAtFlush;
+        private int flushCount;
+        int flushedLength;
+
+        CrashingFormatter(OutputMatchResultMode outputMatchResultMode, Grok grok, StringWriter sw, int crashAtFlush) {
+            this.sw = sw;
+            this.delegate = OutputGrokResultFormatters.createOutputGrokResultConverter(outputMatchResultMode, new PrintWriter(sw), null, grok);
+            this.crashAtFlush = crashAtFlush;
+        }
+
+        CrashingFormatter(IOutputGrokResultFormatter delegate, int crashAtFlush) {
+            this.sw = null;
+            this.delegate = delegate;
+            this.crashAtFlush = crashAtFlush;
+        }
+
+        @Override
+        public void start() {
+            this.delegate.start();
+        }
+
+        @Override
+        public void output(int readLineCount, GrokMatchResult grokResult) {
+            this.delegate.output(readLineCount, grokResult);
+        }
+
+        @Override
+        public void end() {
+            this.delegate.end();
+        }
+
+        @Override
+        public void flush() {
+            this.flushCount += 1;
+            if (this.flushCount == this.crashAtFlush) {
+                throw new IllegalStateException("crash at flush " + this.flushCount);
+            }
+            this.delegate.flush();
+            if (this.sw != null) {
+                this.flushedLength = this.sw.getBuffer().length();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.delegate.close();
+        }
+    }
+}
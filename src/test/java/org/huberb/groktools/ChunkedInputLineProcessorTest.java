@@ -0,0 +1,182 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.huberb.groktools.GrokMain.InputLineProcessor;
+import org.huberb.groktools.GrokMain.InputLineProcessor.MatchingLineMode;
+import org.huberb.groktools.OutputGrokResultFormatters.IOutputGrokResultFormatter;
+import org.huberb.groktools.OutputGrokResultFormatters.OutputMatchResultMode;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ *
+ * @author berni3
+ */
+public class ChunkedInputLineProcessorTest {
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "%{ACTIVEMQ_ACTIVEMQLOG}, src/main/resources/examples/activemq.log,       singleLineMode, -1",
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/server.log,         singleLineMode, -1",
+        "%{ELKSTACK_LOGSTASHLOG}, src/main/resources/examples/logstash-plain.log, singleLineMode, -1",
+        "%{FLUME_FLUMELOG},       src/main/resources/examples/flume.log,          singleLineMode, -1",
+        "%{ACTIVEMQ_ACTIVEMQLOG}, src/main/resources/examples/activemq.log,       multiLinesMode, -1",
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/server.log,         multiLinesMode, -1",
+        "%{ELKSTACK_LOGSTASHLOG}, src/main/resources/examples/logstash-plain.log, multiLinesMode, -1",
+        "%{FLUME_FLUMELOG},       src/main/resources/examples/flume.log,          multiLinesMode, -1",
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/server.log,         singleLineMode, 100",
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/server.log,         multiLinesMode, 100",
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/server.log,         multiLinesMode, 1"
+    })
+    public void testProcessFile_sameOutputAsSequential(String pattern,
+            String filename,
+            MatchingLineMode matchingLineMode,
+            int readMaxLinesCount) throws IOException {
+        final Grok grok = new GrokBuilder()
+                .namedOnly(true)
+                .patternDefinitionsFromClasspath("/groktoolspatterns/server_log")
+                .pattern(pattern)
+                .build();
+        final File f = new File(filename);
+        for (OutputMatchResultMode outputMatchResultMode : OutputMatchResultMode.values()) {
+            final String expected;
+            try (final StringWriter sw = new StringWriter();
+                    final PrintWriter pw = new PrintWriter(sw)) {
+                final InputLineProcessor inputLineProcessor = createInputLineProcessor(grok, matchingLineMode, outputMatchResultMode, pw, readMaxLinesCount);
+                inputLineProcessor.processLines(new GrokMain.ReaderFactory(f).createLineSource(InputLineSources.InputMode.reader));
+                expected = sw.toString();
+            }
+            assertFalse(expected.isEmpty());
+            for (long chunkSize : new long[]{1L, 100L, 4096L, -1L}) {
+                try (final StringWriter sw = new StringWriter();
+                        final PrintWriter pw = new PrintWriter(sw)) {
+                    final InputLineProcessor inputLineProcessor = createInputLineProcessor(grok, matchingLineMode, outputMatchResultMode, pw, readMaxLinesCount);
+                    new ChunkedInputLineProcessor(inputLineProcessor, 4, chunkSize).processFile(f);
+                    assertEquals(expected, sw.toString(), "chunkSize " + chunkSize + ", " + outputMatchResultMode);
+                }
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"\n", "\r\n", "\r"})
+    public void testProcessFile_lineEndings(String lineEnding, @TempDir Path tempDir) throws IOException {
+        final Grok grok = new GrokBuilder()
+                .namedOnly(true)
+                .pattern("%{WORD:word} %{INT:count}")
+                .build();
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            sb.append(i % 3 == 0 ? "not matching" : "line " + i).append(lineEnding);
+        }
+        final File f = tempDir.resolve("lines.log").toFile();
+        Files.write(f.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+        final String expected;
+        try (final StringWriter sw = new StringWriter();
+                final PrintWriter pw = new PrintWriter(sw)) {
+            final InputLineProcessor inputLineProcessor = createInputLineProcessor(grok, MatchingLineMode.singleLineMode, OutputMatchResultMode.asCsv, pw, -1);
+            inputLineProcessor.processLines(new GrokMain.ReaderFactory(f).createLineSource(InputLineSources.InputMode.reader));
+            expected = sw.toString();
+        }
+        for (long chunkSize : new long[]{1L, 7L, 100L}) {
+            try (final StringWriter sw = new StringWriter();
+                    final PrintWriter pw = new PrintWriter(sw)) {
+                final InputLineProcessor inputLineProcessor = createInputLineProcessor(grok, MatchingLineMode.singleLineMode, OutputMatchResultMode.asCsv, pw, -1);
+                new ChunkedInputLineProcessor(inputLineProcessor, 4, chunkSize).processFile(f);
+                assertEquals(expected, sw.toString(), "chunkSize " + chunkSize);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "'a\nb\n',     1, 2",
+        "'a\r\nb\r\n', 1, 3",
+        "'a\r\nb\r\n', 2, 3",
+        "'a\rb\r',     1, 2",
+        "'a\rb\r',     2, 2",
+        "'ab\r',        1, 3",
+        "'a\nb\n',     4, 4"
+    })
+    public void testFindLineStart(String content, long offset, long expected, @TempDir Path tempDir) throws IOException {
+        final Path p = tempDir.resolve("lines.log");
+        Files.write(p, content.getBytes(StandardCharsets.UTF_8));
+        try (final FileChannel fc = FileChannel.open(p, StandardOpenOption.READ)) {
+            assertEquals(expected, ChunkedInputLineProcessor.findLineStart(fc, offset, fc.size()));
+        }
+    }
+
+    @Test
+    public void testProcessFile_grokItPerThread() throws IOException {
+        final Grok grok = new GrokBuilder()
+                .namedOnly(true)
+                .patternDefinitionsFromClasspath("/groktoolspatterns/server_log")
+                .pattern("%{WILDFLY_SERVERLOG}")
+                .build();
+        final AtomicInteger grokItCount = new AtomicInteger();
+        try (final StringWriter sw = new StringWriter();
+                final PrintWriter pw = new PrintWriter(sw)) {
+            final IOutputGrokResultFormatter outputGrokResultConverter
+                    = OutputGrokResultFormatters.createOutputGrokResultConverter(OutputMatchResultMode.asCsv, pw, null, grok);
+            final InputLineProcessor inputLineProcessor = new InputLineProcessor(
+                    grok,
+                    MatchingLineMode.singleLineMode,
+                    outputGrokResultConverter,
+                    -1) {
+                @Override
+                GrokIt createGrokIt() {
+                    grokItCount.incrementAndGet();
+                    return super.createGrokIt();
+                }
+            };
+            // many chunks of 100 bytes, matched by 4 threads
+            new ChunkedInputLineProcessor(inputLineProcessor, 4, 100L).processFile(new File("src/main/resources/examples/server.log"));
+        }
+        assertTrue(grokItCount.get() >= 1 && grokItCount.get() <= 4, "GrokIt count " + grokItCount.get());
+    }
+
+    InputLineProcessor createInputLineProcessor(Grok grok,
+            MatchingLineMode matchingLineMode,
+            OutputMatchResultMode outputMatchResultMode,
+            PrintWriter pw,
+            int readMaxLinesCount) {
+        final IOutputGrokResultFormatter outputGrokResultConverter
+                = OutputGrokResultFormatters.createOutputGrokResultConverter(outputMatchResultMode, pw, null, grok);
+        return new InputLineProcessor(
+                grok,
+                matchingLineMode,
+                outputGrokResultConverter,
+                readMaxLinesCount);
+    }
+}
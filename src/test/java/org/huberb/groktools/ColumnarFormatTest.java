@@ -0,0 +1,219 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.huberb.groktools.ColumnarFormat.BytesInput;
+import org.huberb.groktools.ColumnarFormat.ColumnarCompression;
+import org.huberb.groktools.ColumnarFormat.Reader;
+import org.huberb.groktools.ColumnarFormat.RowGroup;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ *
+ * @author berni3
+ */
+public class ColumnarFormatTest {
+
+    static RowGroup createRowGroup() {
+        final Map<String, String[]> columns = new LinkedHashMap<>();
+        columns.put("level", new String[]{"INFO", "INFO", "WARN", null, "INFO", "INFO"});
+        columns.put("message", new String[]{"a", "b", "", "c ä 😀", null, "d"});
+        return new RowGroup(6, new int[]{1, 2, 5, 4, 100, 70_000}, columns);
+    }
+
+    @ParameterizedTest
+    @EnumSource(ColumnarCompression.class)
+    public void testEncodeDecode(ColumnarCompression compression) throws IOException {
+        final RowGroup rowGroup = createRowGroup();
+        final String text = ColumnarFormat.encode(rowGroup, compression);
+        final RowGroup decoded = ColumnarFormat.decode(text, null);
+        assertAll(
+                () -> assertEquals(-1, text.indexOf('\n')),
+                () -> assertEquals(6, decoded.rowCount()),
+                () -> assertArrayEquals(rowGroup.linenos(), decoded.linenos()),
+                () -> assertEquals(Arrays.asList("level", "message"), decoded.columnNames()),
+                () -> assertArrayEquals(rowGroup.column("level"), decoded.column("level")),
+                () -> assertArrayEquals(rowGroup.column("message"), decoded.column("message"))
+        );
+    }
+
+    @Test
+    public void testEncode_dictionaryOfRepeatedValues() throws IOException {
+        final byte[] bytes = Base64.getDecoder().decode(ColumnarFormat.encode(createRowGroup(), ColumnarCompression.none));
+        final BytesInput body = new BytesInput(bytes, 0, bytes.length);
+        body.readInt();
+        body.read();
+        body.readVarint();
+        body.readVarint();
+        final int[] encodings = new int[3];
+        for (int c = 0; c < encodings.length; c++) {
+            assertEquals(Arrays.asList("lineno", "level", "message").get(c), body.readString());
+            encodings[c] = body.read();
+            assertEquals(ColumnarCompression.none.ordinal(), body.read());
+            body.readVarint();
+            body.slice(body.readVarint());
+        }
+        assertArrayEquals(new int[]{ColumnarFormat.ENCODING_DELTA, ColumnarFormat.ENCODING_DICTIONARY, ColumnarFormat.ENCODING_PLAIN}, encodings);
+    }
+
+    @Test
+    public void testEncode_columnsDeflatedEach() throws IOException {
+        final int rowCount = 1000;
+        final int[] linenos = new int[rowCount];
+        final String[] repeated = new String[rowCount];
+        final String[] distinct = new String[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            linenos[i] = i + 1;
+            repeated[i] = "the same message repeated over, and over " + (i % 3);
+            distinct[i] = Integer.toHexString(i * 0x9e3779b9);
+        }
+        final Map<String, String[]> columns = new LinkedHashMap<>();
+        columns.put("repeated", repeated);
+        columns.put("distinct", distinct);
+        final byte[] bytes = ColumnarFormat.encodeBytes(new RowGroup(rowCount, linenos, columns), ColumnarCompression.deflate);
+        final BytesInput body = new BytesInput(bytes, 0, bytes.length);
+        body.readInt();
+        body.read();
+        body.readVarint();
+        body.readVarint();
+        final int[] compressions = new int[3];
+        for (int c = 0; c < compressions.length; c++) {
+            body.readString();
+            body.read();
+            compressions[c] = body.read();
+            final int length = body.readVarint();
+            final int storedLength = body.readVarint();
+            assertTrue(compressions[c] == ColumnarCompression.none.ordinal() ? storedLength == length : storedLength < length);
+            body.slice(storedLength);
+        }
+        final RowGroup decoded = ColumnarFormat.decode(bytes, null);
+        assertAll(
+                () -> assertArrayEquals(new int[]{ColumnarCompression.deflate.ordinal(), ColumnarCompression.deflate.ordinal(),
+            ColumnarCompression.deflate.ordinal()}, compressions),
+                () -> assertArrayEquals(linenos, decoded.linenos()),
+                () -> assertArrayEquals(repeated, decoded.column("repeated")),
+                () -> assertArrayEquals(distinct, decoded.column("distinct"))
+        );
+    }
+
+    @Test
+    public void testEncode_columnNotShrinkingStoredUncompressed() throws IOException {
+        final Map<String, String[]> columns = new LinkedHashMap<>();
+        columns.put("level", new String[]{"INFO"});
+        final byte[] bytes = ColumnarFormat.encodeBytes(new RowGroup(1, new int[]{1}, columns), ColumnarCompression.deflate);
+        final BytesInput body = new BytesInput(bytes, 0, bytes.length);
+        body.readInt();
+        body.read();
+        body.readVarint();
+        body.readVarint();
+        for (int c = 0; c < 2; c++) {
+            body.readString();
+            body.read();
+            assertEquals(ColumnarCompression.none.ordinal(), body.read());
+            body.readVarint();
+            body.slice(body.readVarint());
+        }
+        assertArrayEquals(new String[]{"INFO"}, ColumnarFormat.decode(bytes, null).column("level"));
+    }
+
+    @Test
+    public void testDecode_selectedColumns() throws IOException {
+        final RowGroup decoded = ColumnarFormat.decode(ColumnarFormat.encode(createRowGroup(), ColumnarCompression.deflate),
+                Collections.singleton("message"));
+        assertAll(
+                () -> assertEquals(Arrays.asList("message"), decoded.columnNames()),
+                () -> assertNull(decoded.column("level")),
+                () -> assertEquals(70_000, decoded.linenos()[5])
+        );
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"not base64 !", "AAAA", "R1JLQwEAAA==", "R1JLQwIBAg=="})
+    public void testDecode_invalid(String text) {
+        assertThrows(IOException.class, () -> ColumnarFormat.decode(text, null));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, -1, 63, -64, 64, Integer.MAX_VALUE, Integer.MIN_VALUE})
+    public void testZigZag(int v) {
+        assertEquals(v, ColumnarFormat.unZigZag(ColumnarFormat.zigZag(v)));
+    }
+
+    @Test
+    public void testReader_bytes() throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (final DataOutputStream dos = new DataOutputStream(baos)) {
+            for (ColumnarCompression compression : ColumnarCompression.values()) {
+                final byte[] bytes = ColumnarFormat.encodeBytes(createRowGroup(), compression);
+                dos.writeInt(bytes.length);
+                dos.write(bytes);
+            }
+        }
+        final byte[] output = baos.toByteArray();
+        try (final Reader reader = new Reader(new ByteArrayInputStream(output), Collections.singleton("message"))) {
+            final RowGroup rowGroup = reader.readAll();
+            assertAll(
+                    () -> assertEquals(12, rowGroup.rowCount()),
+                    () -> assertEquals(70_000, rowGroup.linenos()[11]),
+                    () -> assertEquals("c ä 😀", rowGroup.column("message")[9]),
+                    () -> assertNull(rowGroup.column("level")),
+                    () -> assertNull(reader.read())
+            );
+        }
+        // truncated
+        try (final Reader reader = new Reader(new ByteArrayInputStream(Arrays.copyOf(output, output.length - 1)), null)) {
+            reader.read();
+            assertThrows(IOException.class, () -> reader.read());
+        }
+    }
+
+    @Test
+    public void testReader_readAll() throws IOException {
+        final String text = ColumnarFormat.encode(createRowGroup(), ColumnarCompression.deflate) + "\n"
+                + "\n"
+                + ColumnarFormat.encode(createRowGroup(), ColumnarCompression.none) + "\n";
+        try (final Reader reader = new Reader(new BufferedReader(new StringReader(text)), Collections.singleton("level"))) {
+            final RowGroup rowGroup = reader.readAll();
+            assertAll(
+                    () -> assertEquals(12, rowGroup.rowCount()),
+                    () -> assertEquals(2, rowGroup.linenos()[7]),
+                    () -> assertEquals("WARN", rowGroup.column("level")[8]),
+                    () -> assertNull(rowGroup.column("level")[9]),
+                    () -> assertNull(reader.read())
+            );
+        }
+    }
+}
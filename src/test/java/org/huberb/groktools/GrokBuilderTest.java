@@ -18,10 +18,27 @@ package org.huberb.groktools;
 import io.krakens.grok.api.Grok;
 import java.io.File;
 import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.stream.Collectors;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
 
 /**
  *
@@ -115,4 +132,163 @@ public class GrokBuilderTest {
         assertNotNull(result);
     }
 
+
+    /**
+     * Test of dropFields method, of class GrokBuilder.
+     */
+    @ParameterizedTest
+    @CsvSource(value = {
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/server.log,   true",
+        "%{ACTIVEMQ_ACTIVEMQLOG}, src/main/resources/examples/activemq.log, true",
+        "%{FLUME_FLUMELOG},       src/main/resources/examples/flume.log,    true",
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/server.log,   false"
+    })
+    public void testDropFields_unwanted(String pattern, String filename, boolean namedOnly) throws IOException {
+        final Grok grok = new GrokBuilder()
+                .namedOnly(namedOnly)
+                .patternDefinitionsFromClasspath("/groktoolspatterns/server_log")
+                .pattern(pattern)
+                .build();
+        final Grok grokDropped = new GrokBuilder()
+                .namedOnly(namedOnly)
+                .patternDefinitionsFromClasspath("/groktoolspatterns/server_log")
+                .pattern(pattern)
+                .dropFields(Arrays.asList("UNWANTED"))
+                .build();
+        assertTrue(grokDropped.namedGroups.size() < grok.namedGroups.size());
+        assertFalse(grokDropped.getNamedRegexCollection().containsValue("UNWANTED"));
+        final List<String> lines = Files.readAllLines(Paths.get(filename), StandardCharsets.UTF_8);
+        for (String line : lines) {
+            assertEquals(grok.match(line).capture(), grokDropped.match(line).capture(), line);
+        }
+    }
+
+    /**
+     * Test of dropFields method, of class GrokBuilder, dropping a field.
+     */
+    @Test
+    public void testDropFields() throws IOException {
+        final Grok grok = new GrokBuilder()
+                .pattern("%{WORD:word} %{INT:count:int} %{WORD:other}")
+                .dropFields(Arrays.asList("count", "unknown"))
+                .build();
+        final Map<String, Object> expected = new HashMap<>();
+        expected.put("word", "abc");
+        expected.put("other", "def");
+        assertEquals(expected, grok.match("abc 42 def").capture());
+        assertTrue(GrokMatcher.isSupported(grok));
+        // no field dropped
+        final Grok grokAsIs = new GrokBuilder().pattern("%{WORD:word}").build();
+        assertSame(grokAsIs, GrokBuilder.demoteGroups(grokAsIs, Collections.singleton("unknown"), ZoneOffset.UTC));
+    }
+
+    /**
+     * Test of dropFields method, of class GrokBuilder, keeping a group
+     * referenced by a backreference.
+     */
+    @ParameterizedTest
+    @CsvSource(value = {
+        "'(?<w>\\w+) \\k<w> %{INT:count}',      'w=abc, count=42', 'abc abc 42'",
+        "'(?<w>\\w+) \\1 %{INT:count}',         'w=abc, count=42', 'abc abc 42'",
+        "'(?<w>\\w+) \\\\1 %{INT:count}',     'count=42',        'abc \\1 42'"
+    })
+    public void testDropFields_backreference(String pattern, String expected, String line) throws IOException {
+        final Grok grok = new GrokBuilder()
+                .pattern(pattern)
+                .dropFields(Arrays.asList("w"))
+                .build();
+        final Map<String, Object> m = grok.match(line).capture();
+        assertEquals(expected, m.entrySet().stream()
+                .filter((e) -> e.getValue() != null)
+                .sorted(Map.Entry.<String, Object>comparingByKey().reversed())
+                .map(Object::toString)
+                .collect(Collectors.joining(", ")));
+    }
+
+    /**
+     * Test of readPatternDefinitions method, of class GrokBuilder.
+     */
+    @Test
+    public void testReadPatternDefinitions() throws IOException {
+        final Map<String, String> definitions = new HashMap<>();
+        GrokBuilder.readPatternDefinitions(new StringReader("# comment\n"
+                + "A  \\d+ \n"
+                + "\n"
+                + "B %{A}\n"
+                + "C \n"
+                + "A \\w+\n"), definitions);
+        final Map<String, String> expected = new HashMap<>();
+        expected.put("A", "\\w+");
+        expected.put("B", "%{A}");
+        assertEquals(expected, definitions);
+    }
+
+    /**
+     * Test of lazyPatternDefinitions method, of class GrokBuilder, a later
+     * source replacing a definition.
+     */
+    @Test
+    public void testLazyPatternDefinitions_replacedDefinition() throws IOException {
+        final Map<String, String> patternDefinitions = new HashMap<>();
+        patternDefinitions.put("INT", "[0-9]{2}");
+        final Grok grokLazy = new GrokBuilder()
+                .pattern("%{INT:count}")
+                .patternDefinitions(patternDefinitions)
+                .lazyPatternDefinitions(true)
+                .build();
+        assertAll(
+                () -> assertEquals(Collections.singletonMap("count", "42"), grokLazy.match("x 42 y").capture()),
+                () -> assertEquals(Collections.singletonMap("INT", "[0-9]{2}"), grokLazy.getPatterns())
+        );
+    }
+
+    /**
+     * Test of lazyPatternDefinitions method, of class GrokBuilder.
+     */
+    @ParameterizedTest
+    @CsvSource(value = {
+        "%{WILDFLY_SERVERLOG},                 17",
+        "%{FLUME_FLUMELOG},                    17",
+        "%{WORD:word} %{INT:count:int},        2",
+        "%{MYINT:count=\\d+} %{WORD:word},    2"
+    })
+    public void testLazyPatternDefinitions(String pattern, int expectedSize) throws IOException {
+        final Grok grok = new GrokBuilder()
+                .namedOnly(true)
+                .patternDefinitionsFromClasspath("/groktoolspatterns/server_log")
+                .pattern(pattern)
+                .build();
+        final Grok grokLazy = new GrokBuilder()
+                .namedOnly(true)
+                .patternDefinitionsFromClasspath("/groktoolspatterns/server_log")
+                .pattern(pattern)
+                .lazyPatternDefinitions(true)
+                .build();
+        assertAll(
+                () -> assertEquals(grok.getNamedRegex(), grokLazy.getNamedRegex()),
+                () -> assertEquals(grok.getNamedRegexCollection(), grokLazy.getNamedRegexCollection()),
+                () -> assertEquals(expectedSize, grokLazy.getPatterns().size(), grokLazy.getPatterns().keySet().toString()),
+                () -> assertTrue(grokLazy.getPatterns().size() < grok.getPatterns().size())
+        );
+    }
+
+    /**
+     * Test of referencedPatternDefinitions method, of class GrokBuilder.
+     */
+    @Test
+    public void testReferencedPatternDefinitions() {
+        final Map<String, String> patternDefinitions = new HashMap<>();
+        patternDefinitions.put("A", "%{B}-%{C:c}");
+        patternDefinitions.put("B", "%{A}|b");
+        patternDefinitions.put("C", "c");
+        patternDefinitions.put("D", "d");
+        assertAll(
+                () -> assertEquals(Arrays.asList("A", "B", "C"),
+                        new ArrayList<>(GrokBuilder.referencedPatternDefinitions("%{A}", patternDefinitions).keySet())),
+                () -> assertEquals(Arrays.asList("C"),
+                        new ArrayList<>(GrokBuilder.referencedPatternDefinitions("%{E:e=[0-9]+} %{C} %{X}", patternDefinitions).keySet())),
+                () -> assertEquals(Collections.emptyMap(),
+                        GrokBuilder.referencedPatternDefinitions("[a-z]+", patternDefinitions))
+        );
+    }
 }
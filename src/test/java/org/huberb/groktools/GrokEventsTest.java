@@ -0,0 +1,119 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Collectors;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.huberb.groktools.GrokMain.InputLineProcessor;
+import org.huberb.groktools.GrokMain.InputLineProcessor.MatchingLineMode;
+import org.huberb.groktools.OutputGrokResultFormatters.IOutputGrokResultFormatter;
+import org.huberb.groktools.OutputGrokResultFormatters.OutputMatchResultMode;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ *
+ * @author berni3
+ */
+public class GrokEventsTest {
+
+    static final String LINE_MATCHED = "org.huberb.groktools.GrokLineMatched";
+    static final String SLOW_MATCH = "org.huberb.groktools.GrokSlowMatch";
+    static final String RECORD_FORMATTED = "org.huberb.groktools.GrokRecordFormatted";
+
+    static final String LINES = "1\n22\nno number\n333\n";
+
+    /**
+     * Process {@link #LINES} emitting events, while recording.
+     */
+    static List<RecordedEvent> processLinesRecording(Recording recording, Path tempDir) throws IOException {
+        final Grok grok = new GrokBuilder().pattern("%{INT:number}").build();
+        final GrokEvents grokEvents = GrokEvents.create();
+        final IOutputGrokResultFormatter outputGrokResultFormatter = grokEvents.eventFormatter(
+                OutputGrokResultFormatters.createOutputGrokResultConverter(OutputMatchResultMode.asCsv, new PrintWriter(new StringWriter()), null));
+        final InputLineProcessor inputLineProcessor = new InputLineProcessor(grok, MatchingLineMode.singleLineMode, outputGrokResultFormatter, -1,
+                new GrokIt.Options().grokEvents(grokEvents));
+        final Path recordingFile = tempDir.resolve("recording.jfr");
+        try {
+            recording.start();
+            inputLineProcessor.processLines(new BufferedReader(new StringReader(LINES)));
+            recording.stop();
+            recording.dump(recordingFile);
+        } finally {
+            recording.close();
+        }
+        return RecordingFile.readAllEvents(recordingFile).stream()
+                .filter((event) -> event.getEventType().getName().startsWith("org.huberb.groktools."))
+                .collect(Collectors.toList());
+    }
+
+    static List<RecordedEvent> eventsOf(List<RecordedEvent> events, String name) {
+        return events.stream()
+                .filter((event) -> event.getEventType().getName().equals(name))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void testIsAvailable() {
+        assertTrue(GrokEvents.isAvailable());
+    }
+
+    @Test
+    public void testProcessLines_enabledEvents(@TempDir Path tempDir) throws IOException {
+        final Recording recording = new Recording();
+        recording.enable(LINE_MATCHED);
+        recording.enable(SLOW_MATCH).withThreshold(Duration.ZERO);
+        recording.enable(RECORD_FORMATTED);
+        final List<RecordedEvent> events = processLinesRecording(recording, tempDir);
+
+        final List<RecordedEvent> lineMatchedEvents = eventsOf(events, LINE_MATCHED);
+        final List<RecordedEvent> recordFormattedEvents = eventsOf(events, RECORD_FORMATTED);
+        assertAll(
+                () -> assertEquals(4, lineMatchedEvents.size()),
+                () -> assertEquals(4, eventsOf(events, SLOW_MATCH).size()),
+                () -> assertEquals(3, recordFormattedEvents.size()),
+                () -> assertEquals("%{INT:number}", lineMatchedEvents.get(0).getString("pattern")),
+                () -> assertEquals(2, lineMatchedEvents.get(1).getInt("lineLength")),
+                () -> assertTrue(lineMatchedEvents.get(1).getBoolean("matched")),
+                () -> assertEquals(false, lineMatchedEvents.get(2).getBoolean("matched")),
+                () -> assertEquals(4, recordFormattedEvents.get(2).getInt("lineno"))
+        );
+    }
+
+    @Test
+    public void testProcessLines_defaultConfiguration(@TempDir Path tempDir) throws IOException, ParseException {
+        final List<RecordedEvent> events = processLinesRecording(
+                new Recording(Configuration.getConfiguration("default")), tempDir);
+        // per line events are disabled, matching these lines is not slow
+        assertEquals(0, events.size(), events.toString());
+    }
+}
@@ -15,14 +15,30 @@
  */
 package org.huberb.groktools;
 
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringReader;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.huberb.groktools.ColumnarFormat.RowGroup;
 import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.ValueSource;
@@ -141,6 +157,15 @@ public class GrokMainTest {
         "%{ELKSTACK_LOGSTASHLOG}, target/classes/examples/logstash-plain.log, asJson, singleLineMode, 100",
         "%{FLUME_FLUMELOG},       target/classes/examples/flume.log,          asJson, singleLineMode, 100",
         //---
+        "%{WILDFLY_SERVERLOG},    target/classes/examples/server.log,         asJsonLines, multiLinesMode, 100",
+        "%{FLUME_FLUMELOG},       target/classes/examples/flume.log,          asJsonLines, singleLineMode, 100",
+        //---
+        "%{WILDFLY_SERVERLOG},    target/classes/examples/server.log,         asCsvColumns, multiLinesMode, 100",
+        "%{FLUME_FLUMELOG},       target/classes/examples/flume.log,          asCsvColumns, singleLineMode, 100",
+        //---
+        "%{WILDFLY_SERVERLOG},    target/classes/examples/server.log,         asColumnar, multiLinesMode, 100",
+        "%{FLUME_FLUMELOG},       target/classes/examples/flume.log,          asColumnar, singleLineMode, 100",
+        //---
         "%{ACTIVEMQ_ACTIVEMQLOG}, target/classes/examples/activemq.log,       asCsv, multiLinesMode, 100",
         "%{WILDFLY_SERVERLOG},    target/classes/examples/server.log,         asCsv, multiLinesMode, 100",
         "%{ELKSTACK_LOGSTASHLOG}, target/classes/examples/logstash-plain.log, asCsv, multiLinesMode, 100",
@@ -173,4 +198,453 @@ public class GrokMainTest {
                 () -> assertNotEquals(0, swOutAsString.length(), m)
         );
     }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "%{WILDFLY_SERVERLOG}, target/classes/examples/server.log, asCsv, singleLineMode, --threads=4",
+        "%{WILDFLY_SERVERLOG}, target/classes/examples/server.log, asCsv, multiLinesMode, --threads=4",
+        "%{WILDFLY_SERVERLOG}, target/classes/examples/server.log, asJson, multiLinesMode, --input-mode=mmap",
+        "%{FLUME_FLUMELOG},    target/classes/examples/flume.log,  asCsv, multiLinesMode, --input-mode=mmap",
+        "%{WILDFLY_SERVERLOG}, target/classes/examples/server.log, asJson, multiLinesMode, --pipelined",
+        "%{FLUME_FLUMELOG},    target/classes/examples/flume.log,  asCsv, singleLineMode, --pipelined",
+        "%{WILDFLY_SERVERLOG}, target/classes/examples/server.log, asJson, multiLinesMode, --prefilter",
+        "%{FLUME_FLUMELOG},    target/classes/examples/flume.log,  asCsv, singleLineMode, --prefilter",
+        "%{WILDFLY_SERVERLOG}, target/classes/examples/server.log, asJson, multiLinesMode, --drop-fields=",
+        "%{FLUME_FLUMELOG},    target/classes/examples/flume.log,  asCsv, singleLineMode, --drop-fields=",
+        "%{WILDFLY_SERVERLOG}, target/classes/examples/server.log, asJson, multiLinesMode, --lazy-pattern-definitions",
+        "%{WILDFLY_SERVERLOG}, target/classes/examples/server.log, asJson, multiLinesMode, --regex-engine=linear",
+        "%{FLUME_FLUMELOG},    target/classes/examples/flume.log,  asCsv, singleLineMode, --regex-engine=linear",
+        "%{WILDFLY_SERVERLOG}, target/classes/examples/server.log, asJson, multiLinesMode, --stats",
+        "%{FLUME_FLUMELOG},    target/classes/examples/flume.log,  asCsv, singleLineMode, --stats",
+        "%{WILDFLY_SERVERLOG}, target/classes/examples/server.log, asJson, multiLinesMode, --jfr-events",
+        "%{FLUME_FLUMELOG},    target/classes/examples/flume.log,  asCsv, singleLineMode, --jmx",
+        "%{WILDFLY_SERVERLOG}, target/classes/examples/server.log, asCsvColumns, multiLinesMode, --threads=4",
+        "%{FLUME_FLUMELOG},    target/classes/examples/flume.log,  asCsvColumns, singleLineMode, --pipelined",
+        "%{WILDFLY_SERVERLOG}, target/classes/examples/server.log, asColumnar, multiLinesMode, --threads=4",
+        "%{FLUME_FLUMELOG},    target/classes/examples/flume.log,  asColumnar, singleLineMode, --pipelined",
+        "%{WILDFLY_SERVERLOG}, target/classes/examples/server.log, asJson, multiLinesMode, --async-output",
+        "%{FLUME_FLUMELOG},    target/classes/examples/flume.log,  asCsvColumns, singleLineMode, --async-output",
+        "%{WILDFLY_SERVERLOG}, target/classes/examples/server.log, asColumnar, multiLinesMode, --async-output",}
+    )
+    public void testCommandLine_sameOutputAs_default(String pattern,
+            String filename,
+            String outputMatchResult,
+            String matchingLineMode,
+            String additionalOption) {
+        final String[] option = new String[]{
+            "--output-matchresult=" + outputMatchResult,
+            "--matching-line-mode=" + matchingLineMode,
+            "--pattern-definitions-classpath=//groktoolspatterns/server_log",
+            "--match-pattern=" + pattern,
+            "--file=" + filename};
+        final int exitCode = cmd.execute(option);
+        assertEquals(0, exitCode);
+        final String expected = swOut.toString();
+
+        setUp();
+        final String[] optionWithAdditionalOption = Arrays.copyOf(option, option.length + 1);
+        optionWithAdditionalOption[option.length] = additionalOption;
+        final int exitCodeWithAdditionalOption = cmd.execute(optionWithAdditionalOption);
+        assertEquals(0, exitCodeWithAdditionalOption);
+        assertEquals(expected, swOut.toString());
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "asCsv, --output-buffer-size=100",
+        "asJson, --output-flush-records=1",
+        "asJsonLines, --output-flush-chars=10",
+        "asCsvColumns, --pipelined"
+    })
+    public void testCommandLine_outputFile_sameOutputAs_default(String outputMatchResult, String additionalOption, @TempDir Path tempDir) throws IOException {
+        final String[] option = new String[]{
+            "--output-matchresult=" + outputMatchResult,
+            "--matching-line-mode=multiLinesMode",
+            "--pattern-definitions-classpath=//groktoolspatterns/server_log",
+            "--match-pattern=%{WILDFLY_SERVERLOG}",
+            "--file=target/classes/examples/server.log"};
+        final int exitCode = cmd.execute(option);
+        assertEquals(0, exitCode);
+        final String expected = swOut.toString();
+
+        setUp();
+        final Path outputFile = tempDir.resolve("output");
+        final String[] optionWithOutputFile = Arrays.copyOf(option, option.length + 2);
+        optionWithOutputFile[option.length] = "--output-file=" + outputFile;
+        optionWithOutputFile[option.length + 1] = additionalOption;
+        final int exitCodeWithOutputFile = cmd.execute(optionWithOutputFile);
+        assertAll(
+                () -> assertEquals(0, exitCodeWithOutputFile),
+                () -> assertEquals("", swOut.toString()),
+                () -> assertEquals(expected, new String(Files.readAllBytes(outputFile), StandardCharsets.UTF_8))
+        );
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "%{WILDFLY_SERVERLOG}, target/classes/examples/server.log, multiLinesMode",
+        "%{FLUME_FLUMELOG},    target/classes/examples/flume.log,  multiLinesMode",
+        "%{FLUME_FLUMELOG},    target/classes/examples/flume.log,  singleLineMode"
+    })
+    public void testCommandLine_asJsonLines_sameEntriesAsJson(String pattern, String filename, String matchingLineMode) {
+        final Function<String, List<List<String>>> entriesOf = (output) -> {
+            // entries of asJson are separated by "}", and records of asJsonLines by newline
+            final Pattern keyValue = Pattern.compile("\"([^\"]+)\": ?\"([^\"\\\\]*+(?:\\\\.[^\"\\\\]*+)*+)\"");
+            final List<List<String>> entries = new ArrayList<>();
+            for (String entry : output.split("\\}\\r?\\n|\\}\\s*,")) {
+                final List<String> keysAndValues = new ArrayList<>();
+                for (Matcher m = keyValue.matcher(entry); m.find();) {
+                    keysAndValues.add(m.group(1) + "=" + m.group(2));
+                }
+                if (!keysAndValues.isEmpty()) {
+                    entries.add(keysAndValues);
+                }
+            }
+            return entries;
+        };
+        final String[] option = new String[]{
+            "--output-matchresult=asJson",
+            "--matching-line-mode=" + matchingLineMode,
+            "--pattern-definitions-classpath=//groktoolspatterns/server_log",
+            "--match-pattern=" + pattern,
+            "--file=" + filename};
+        assertEquals(0, cmd.execute(option));
+        final List<List<String>> expected = entriesOf.apply(swOut.toString());
+
+        setUp();
+        option[0] = "--output-matchresult=asJsonLines";
+        assertEquals(0, cmd.execute(option));
+        final String swOutAsString = swOut.toString();
+        final List<String> lines = Arrays.asList(swOutAsString.split("\\r?\\n"));
+        assertAll(
+                () -> assertEquals(expected.size(), lines.size()),
+                () -> assertTrue(lines.stream().allMatch((line) -> line.startsWith("{\"lineno\":\"") && line.endsWith("}"))),
+                () -> assertEquals(expected, entriesOf.apply(swOutAsString))
+        );
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "%{WILDFLY_SERVERLOG}, target/classes/examples/server.log, singleLineMode, 'lineno,timestampIso8601,level,category,thread,message', true",
+        "%{WILDFLY_SERVERLOG}, target/classes/examples/server.log, multiLinesMode, 'lineno,timestampIso8601,level,category,thread,message,extra', true",
+        // no line matches, the header is printed anyway
+        "%{WILDFLY_SERVERLOG}, target/classes/examples/flume.log,  singleLineMode, 'lineno,timestampIso8601,level,category,thread,message', false",})
+    public void testCommandLine_asCsvColumns(String pattern, String filename, String matchingLineMode, String expectedHeader, boolean matching) {
+        final String[] option = new String[]{
+            "--output-matchresult=asCsvColumns",
+            "--matching-line-mode=" + matchingLineMode,
+            "--pattern-definitions-classpath=//groktoolspatterns/server_log",
+            "--read-max-lines-count=100",
+            "--match-pattern=" + pattern,
+            "--file=" + filename};
+        assertEquals(0, cmd.execute(option));
+        final List<String> lines = Arrays.asList(swOut.toString().split("\\r?\\n"));
+        assertAll(
+                () -> assertEquals(expectedHeader, lines.get(0)),
+                () -> assertEquals(matching, lines.size() > 1)
+        );
+    }
+
+    @Test
+    public void testCommandLine_asCsvColumns_severalPatterns() {
+        final String[] option = new String[]{
+            "--output-matchresult=asCsvColumns",
+            "--pattern-definitions-classpath=//groktoolspatterns/server_log",
+            "--match-pattern", "%{ACTIVEMQ_ACTIVEMQLOG}", "%{WILDFLY_SERVERLOG}",
+            "--file", "target/classes/examples/server.log", "target/classes/examples/activemq.log"};
+        final int exitCode = cmd.execute(option);
+
+        final String swErrAsString = swErr.toString();
+        final List<String> lines = Arrays.asList(swOut.toString().split("\\r?\\n"));
+        assertAll(
+                () -> assertEquals(0, exitCode, swErrAsString),
+                () -> assertEquals("lineno,file,timestampIso8601,level,message,category,thread,pattern", lines.get(0)),
+                () -> assertTrue(lines.size() > 1)
+        );
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "deflate, 7",
+        "none, 4096",})
+    public void testCommandLine_asColumnar_sameRecordsAsCsvColumns(String compression, int rowGroupSize) throws IOException {
+        final String[] option = new String[]{
+            "--output-matchresult=asCsvColumns",
+            "--pattern-definitions-classpath=//groktoolspatterns/server_log",
+            "--match-pattern=%{WILDFLY_SERVERLOG}",
+            "--fields=level,thread",
+            "--file=target/classes/examples/server.log"};
+        assertEquals(0, cmd.execute(option));
+        final List<String> expected = Arrays.asList(swOut.toString().split("\\r?\\n"));
+
+        setUp();
+        option[0] = "--output-matchresult=asColumnar";
+        final String[] optionColumnar = Arrays.copyOf(option, option.length + 2);
+        optionColumnar[option.length] = "--columnar-compression=" + compression;
+        optionColumnar[option.length + 1] = "--columnar-row-group-size=" + rowGroupSize;
+        assertEquals(0, cmd.execute(optionColumnar));
+        final RowGroup rowGroup;
+        try (final ColumnarFormat.Reader reader = new ColumnarFormat.Reader(
+                new BufferedReader(new StringReader(swOut.toString())), null)) {
+            rowGroup = reader.readAll();
+        }
+        final List<String> lines = new ArrayList<>();
+        lines.add("lineno,level,thread");
+        for (int i = 0; i < rowGroup.rowCount(); i++) {
+            lines.add(rowGroup.linenos()[i] + "," + rowGroup.column("level")[i] + "," + rowGroup.column("thread")[i]);
+        }
+        assertEquals(expected, lines);
+    }
+
+    /**
+     * The csv header is printed before the first record, even if its line
+     * number is not 1.
+     */
+    @ParameterizedTest
+    @CsvSource(value = {
+        "singleLineMode, '\"lineno\",\"count\",\"word\"|\"2\",\"2\",\"line\"|\"3\",\"3\",\"line\"'",
+        "multiLinesMode, '\"lineno\",\"count\",\"extra\",\"word\"|\"2\",\"2\",\"\",\"line\"|\"3\",\"3\",\"\",\"line\"'"
+    })
+    public void testCommandLine_asCsv_headerOfFirstRecordNotFirstLine(String matchingLineMode, String expectedLines,
+            @TempDir Path tempDir) throws IOException {
+        final Path inputFile = tempDir.resolve("input.log");
+        Files.write(inputFile, Arrays.asList("not matching", "line 2", "line 3"), StandardCharsets.UTF_8);
+        final String[] option = new String[]{
+            "--output-matchresult=asCsv",
+            "--matching-line-mode=" + matchingLineMode,
+            "--match-pattern=%{WORD:word} %{INT:count}",
+            "--file=" + inputFile};
+        assertEquals(0, cmd.execute(option));
+        final List<String> lines = new ArrayList<>();
+        try (final BufferedReader br = new BufferedReader(new StringReader(swOut.toString()))) {
+            br.lines().forEach(lines::add);
+        }
+        assertEquals(Arrays.asList(expectedLines.split("\\|")), lines);
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "deflate, 7, --threads=4",
+        "none, 4096, --pipelined",})
+    public void testCommandLine_asColumnar_outputFileOfBytes(String compression, int rowGroupSize, String additionalOption,
+            @TempDir Path tempDir) throws IOException {
+        final String[] option = new String[]{
+            "--output-matchresult=asColumnar",
+            "--pattern-definitions-classpath=//groktoolspatterns/server_log",
+            "--match-pattern=%{WILDFLY_SERVERLOG}",
+            "--columnar-compression=" + compression,
+            "--columnar-row-group-size=" + rowGroupSize,
+            "--file=target/classes/examples/server.log"};
+        assertEquals(0, cmd.execute(option));
+        final String text = swOut.toString();
+        final RowGroup expected;
+        try (final ColumnarFormat.Reader reader = new ColumnarFormat.Reader(
+                new BufferedReader(new StringReader(text)), null)) {
+            expected = reader.readAll();
+        }
+
+        setUp();
+        final Path outputFile = tempDir.resolve("server.columnar");
+        final String[] optionOutputFile = Arrays.copyOf(option, option.length + 2);
+        optionOutputFile[option.length] = "--output-file=" + outputFile;
+        optionOutputFile[option.length + 1] = additionalOption;
+        assertEquals(0, cmd.execute(optionOutputFile));
+        final RowGroup rowGroup;
+        try (final ColumnarFormat.Reader reader = new ColumnarFormat.Reader(Files.newInputStream(outputFile), null)) {
+            rowGroup = reader.readAll();
+        }
+        assertAll(
+                () -> assertEquals("", swOut.toString()),
+                () -> assertTrue(Files.size(outputFile) < text.length() * 4 / 5,
+                        String.format("bytes %d, base64 text %d", Files.size(outputFile), text.length())),
+                () -> assertEquals(expected.rowCount(), rowGroup.rowCount()),
+                () -> assertArrayEquals(expected.linenos(), rowGroup.linenos()),
+                () -> assertEquals(expected.columnNames(), rowGroup.columnNames()),
+                () -> assertArrayEquals(expected.column("message"), rowGroup.column("message"))
+        );
+    }
+
+    @Test
+    public void testCommandLine_severalPatterns() {
+        final String[] option = new String[]{
+            "--output-matchresult=asCsv",
+            "--pattern-definitions-classpath=//groktoolspatterns/server_log",
+            "--match-pattern", "%{ACTIVEMQ_ACTIVEMQLOG}", "%{WILDFLY_SERVERLOG}",
+            "--file", "target/classes/examples/server.log", "target/classes/examples/activemq.log"};
+        final int exitCode = cmd.execute(option);
+
+        final String swErrAsString = swErr.toString();
+        final String swOutAsString = swOut.toString();
+        assertEquals(0, exitCode, swErrAsString);
+        final List<String> lines = Arrays.asList(swOutAsString.split("\\r?\\n"));
+        assertEquals("\"lineno\",\"file\",\"timestampIso8601\",\"level\",\"message\",\"category\",\"thread\",\"pattern\"", lines.get(0));
+        assertEquals(1 + 265 + 144, lines.size());
+        assertEquals(265, lines.stream().filter((line) -> line.contains("\"WILDFLY_SERVERLOG\"")).count());
+        assertEquals(144, lines.stream().filter((line) -> line.contains("\"ACTIVEMQ_ACTIVEMQLOG\"")).count());
+        assertTrue(swErrAsString.contains("multi pattern statistics"), swErrAsString);
+    }
+
+    @Test
+    public void testCommandLine_asCsv_severalPatternsCapturingOtherKeys(@TempDir Path tempDir) throws IOException {
+        final Path inputFile = tempDir.resolve("input.log");
+        Files.write(inputFile, Arrays.asList("42", "foo bar"), StandardCharsets.UTF_8);
+        final String[] option = new String[]{
+            "--output-matchresult=asCsv",
+            "--match-pattern", "^%{INT:a}$", "%{WORD:w} %{WORD:z}",
+            "--file=" + inputFile};
+        final int exitCode = cmd.execute(option);
+
+        final String swErrAsString = swErr.toString();
+        final List<String> lines = Arrays.asList(swOut.toString().split("\\r?\\n"));
+        assertAll(
+                () -> assertEquals(0, exitCode, swErrAsString),
+                () -> assertEquals(Arrays.asList(
+                        "\"lineno\",\"a\",\"w\",\"z\",\"pattern\"",
+                        "\"1\",\"42\",\"\",\"\",\"^%{INT:a}$\"",
+                        "\"2\",\"\",\"foo\",\"bar\",\"%{WORD:w} %{WORD:z}\""), lines)
+        );
+    }
+
+    @Test
+    public void testCommandLine_severalPatternsCapturingPattern() {
+        final String[] option = new String[]{
+            "--match-pattern", "%{INT:a}", "%{WORD:pattern}"};
+        assertNotEquals(0, cmd.execute(option));
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "--threads=4, --file=target/classes/examples/server.log",
+        "--threads=1, --file=target/classes/examples/server.log*"
+    })
+    public void testCommandLine_pipelinedRejected(String threadsOption, String fileOption) {
+        final String[] option = new String[]{
+            "--pattern-definitions-classpath=//groktoolspatterns/server_log",
+            "--match-pattern=%{WILDFLY_SERVERLOG}",
+            "--pipelined",
+            threadsOption,
+            fileOption};
+        assertNotEquals(0, cmd.execute(option));
+        assertEquals("", swOut.toString());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"--threads=4", "--pipelined", "--input-mode=mmap", "--follow"})
+    public void testCommandLine_checkpointRejected(String additionalOption, @TempDir Path tempDir) {
+        final Path checkpointFile = tempDir.resolve("checkpoint.properties");
+        final String[] option = new String[]{
+            "--pattern-definitions-classpath=//groktoolspatterns/server_log",
+            "--match-pattern=%{WILDFLY_SERVERLOG}",
+            "--checkpoint-file=" + checkpointFile,
+            additionalOption,
+            "--file=target/classes/examples/server.log"};
+        assertNotEquals(0, cmd.execute(option));
+        assertAll(
+                () -> assertEquals("", swOut.toString()),
+                () -> assertFalse(Files.exists(checkpointFile))
+        );
+    }
+
+    @Test
+    public void testCommandLine_severalFilesPatternCapturingFile() {
+        final String[] option = new String[]{
+            "--match-pattern=%{WORD:file}",
+            "--file=target/classes/examples/server.log",
+            "--file=target/classes/examples/activemq.log"};
+        assertNotEquals(0, cmd.execute(option));
+    }
+
+    @Test
+    public void testCommandLine_fields() {
+        final String[] option = new String[]{
+            "--output-matchresult=asCsv",
+            "--pattern-definitions-classpath=//groktoolspatterns/server_log",
+            "--match-pattern=%{WILDFLY_SERVERLOG}",
+            "--fields=timestampIso8601,level,message",
+            "--file=target/classes/examples/server.log"};
+        final int exitCode = cmd.execute(option);
+
+        final String swErrAsString = swErr.toString();
+        final String swOutAsString = swOut.toString();
+        assertEquals(0, exitCode, swErrAsString);
+        final List<String> lines = Arrays.asList(swOutAsString.split("\\r?\\n"));
+        assertEquals("\"lineno\",\"timestampIso8601\",\"level\",\"message\"", lines.get(0));
+        assertEquals("\"1\",\"2019-03-04 22:30:15,465\",\"INFO\",\"JBoss Modules version 1.9.0.Final\"", lines.get(1));
+        assertEquals(1 + 265, lines.size());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"level,unknown", "pattern"})
+    public void testCommandLine_fieldsUnknown(String fields) {
+        final String[] option = new String[]{
+            "--pattern-definitions-classpath=//groktoolspatterns/server_log",
+            "--match-pattern=%{WILDFLY_SERVERLOG}",
+            "--fields=" + fields,
+            "--file=target/classes/examples/server.log"};
+        final int exitCode = cmd.execute(option);
+
+        assertNotEquals(0, exitCode);
+        assertTrue(swErr.toString().contains("IllegalArgumentException"), swErr.toString());
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "singleLineMode, --threads=1",
+        "singleLineMode, --threads=4",
+        "singleLineMode, --pipelined",
+        "multiLinesMode, --input-mode=mmap",
+        "multiLinesMode, --threads=4",
+        "multiLinesMode, --pipelined"
+    })
+    public void testCommandLine_stats(String matchingLineMode, String additionalOption) {
+        final String[] option = new String[]{
+            "--matching-line-mode=" + matchingLineMode,
+            "--pattern-definitions-classpath=//groktoolspatterns/server_log",
+            "--match-pattern=%{WILDFLY_SERVERLOG}",
+            "--file=target/classes/examples/server.log",
+            "--stats",
+            additionalOption};
+        final int exitCode = cmd.execute(option);
+
+        final String swErrAsString = swErr.toString();
+        assertEquals(0, exitCode, swErrAsString);
+        final boolean folding = "multiLinesMode".equals(matchingLineMode);
+        assertAll(
+                () -> assertTrue(swErrAsString.contains("run statistics"), swErrAsString),
+                () -> assertTrue(swErrAsString.contains(String.format("lines read: 1016, matched: 265, "
+                        + "not matching skipped: %d, not matching folded into extra: %d",
+                        folding ? 0 : 751, folding ? 751 : 0)), swErrAsString),
+                () -> assertTrue(swErrAsString.contains("records output: 265"), swErrAsString),
+                () -> assertTrue(swErrAsString.contains("match ratio: 26.1 %"), swErrAsString),
+                () -> assertTrue(swErrAsString.contains("match latency micros p50: "), swErrAsString),
+                () -> assertTrue(swErrAsString.contains("stage read: "), swErrAsString)
+        );
+    }
+
+    @Test
+    public void testCommandLine_matchTimeout(@TempDir Path tempDir) throws IOException {
+        final Path inputFile = tempDir.resolve("input.log");
+        final Path timedOutFile = tempDir.resolve("timedout.log");
+        Files.write(inputFile, Arrays.asList("a b c d (e)", MatchTimeoutTest.pathologicalLine(), "w x y z (v)"),
+                StandardCharsets.UTF_8);
+        final String[] option = new String[]{
+            "--output-matchresult=asCsv",
+            "--match-pattern=" + MatchTimeoutTest.PATTERN,
+            "--match-timeout-micros=50000",
+            "--match-timeout-file=" + timedOutFile,
+            "--stats",
+            "--file=" + inputFile};
+        final int exitCode = cmd.execute(option);
+
+        final String swErrAsString = swErr.toString();
+        final String swOutAsString = swOut.toString();
+        assertEquals(0, exitCode, swErrAsString);
+        final List<String> lines = Arrays.asList(swOutAsString.split("\\r?\\n"));
+        assertEquals(Arrays.asList(
+                "\"lineno\",\"a\",\"b\",\"c\",\"d\",\"e\"",
+                "\"1\",\"a\",\"b\",\"c\",\"d\",\"e\"",
+                "\"3\",\"w\",\"x\",\"y\",\"z\",\"v\""), lines);
+        assertTrue(swErrAsString.contains("lines timed out after 50000 micros: 1"), swErrAsString);
+        assertEquals(Arrays.asList(MatchTimeoutTest.pathologicalLine()), Files.readAllLines(timedOutFile, StandardCharsets.UTF_8));
+    }
 }
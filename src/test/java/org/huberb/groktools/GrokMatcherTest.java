@@ -0,0 +1,280 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import io.krakens.grok.api.Match;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.huberb.groktools.GrokIt.GrokMatchResult;
+import org.huberb.groktools.GrokMatcher.CapturedValues;
+import org.huberb.groktools.GrokMatcher.ITypedValues;
+import org.huberb.groktools.GrokMatcher.ValueType;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+/**
+ *
+ * @author berni3
+ */
+public class GrokMatcherTest {
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "%{ACTIVEMQ_ACTIVEMQLOG}, src/main/resources/examples/activemq.log",
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/server.log",
+        "%{ELKSTACK_LOGSTASHLOG}, src/main/resources/examples/logstash-plain.log",
+        "%{FLUME_FLUMELOG},       src/main/resources/examples/flume.log",
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/flume.log"
+    })
+    public void testFind_sameAsMatchCapture(String pattern, String filename) throws IOException {
+        final Grok grok = new GrokBuilder()
+                .namedOnly(true)
+                .patternDefinitionsFromClasspath("/groktoolspatterns/server_log")
+                .pattern(pattern)
+                .build();
+        final GrokMatcher grokMatcher = new GrokMatcher(grok);
+        final List<String> lines = Files.readAllLines(Paths.get(filename), StandardCharsets.UTF_8);
+        for (String line : lines) {
+            final Match match = grok.match(line);
+            final Map<String, Object> expected = match.capture();
+            final boolean found = grokMatcher.find(line);
+            assertEquals(!expected.isEmpty(), found, line);
+            if (found) {
+                final CapturedValues capturedValues = grokMatcher.capture(line);
+                assertFalse(capturedValues.isEmpty());
+                assertEquals(match.getStart(), grokMatcher.start(), line);
+                assertEquals(match.getEnd(), grokMatcher.end(), line);
+                assertEquals(expected, capturedValues, line);
+                // same iteration order, e.g. for outputting as is
+                assertEquals(expected.toString(), capturedValues.toString(), line);
+            }
+        }
+    }
+
+    @Test
+    public void testFind_keywordsNamedOnlyFalse() throws IOException {
+        final Grok grok = new GrokBuilder()
+                .namedOnly(false)
+                .pattern("%{WORD:word} %{WORD:word} (?:%{INT:number})?%{GREEDYDATA:rest}")
+                .build();
+        final GrokMatcher grokMatcher = new GrokMatcher(grok);
+        for (String line : new String[]{"abc def 42 'quoted'", "abc def \"quoted\"", "abc", " ", ""}) {
+            final Map<String, Object> expected = grok.match(line).capture();
+            assertEquals(!expected.isEmpty(), grokMatcher.find(line), line);
+            if (!expected.isEmpty()) {
+                assertEquals(expected.toString(), grokMatcher.capture(line).toString(), line);
+            }
+        }
+    }
+
+    @Test
+    public void testFind_fields() throws IOException {
+        final Grok grok = new GrokBuilder()
+                .namedOnly(true)
+                .patternDefinitionsFromClasspath("/groktoolspatterns/server_log")
+                .pattern("%{WILDFLY_SERVERLOG}")
+                .build();
+        final Set<String> fields = new HashSet<>(Arrays.asList("level", "message"));
+        final GrokMatcher grokMatcher = new GrokMatcher(grok, fields);
+        final List<String> lines = Files.readAllLines(Paths.get("src/main/resources/examples/server.log"), StandardCharsets.UTF_8);
+        for (String line : lines) {
+            final Map<String, Object> expected = new HashMap<>(grok.match(line).capture());
+            expected.keySet().retainAll(fields);
+            assertEquals(!expected.isEmpty(), grokMatcher.find(line), line);
+            if (!expected.isEmpty()) {
+                assertEquals(expected, grokMatcher.capture(line), line);
+            }
+        }
+        assertEquals(new LinkedHashSet<>(Arrays.asList("timestampIso8601", "level", "category", "thread", "message")),
+                GrokMatcher.captureKeys(grok));
+    }
+
+    @Test
+    public void testCapture_independentOfFurtherMatching() throws IOException {
+        final Grok grok = new GrokBuilder()
+                .pattern("%{WORD:word}")
+                .build();
+        final GrokMatcher grokMatcher = new GrokMatcher(grok);
+        final StringBuilder line = new StringBuilder("first");
+        assertTrue(grokMatcher.find(line));
+        final CapturedValues capturedValues = grokMatcher.capture(line);
+        line.setLength(0);
+        line.append("second");
+        assertTrue(grokMatcher.find(line));
+        assertEquals("first", capturedValues.get("word"));
+        assertEquals("second", grokMatcher.capture(line).get("word"));
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "'count 42 2021-03-04T22:30:15Z'",
+        "'count 42 2021-03-04T22:30:15.465123Z'",
+        "'count 42 2021-03-04T22:30:15+01:00'",
+        "'count 42 2021-03-04 22:30:15'"
+    })
+    public void testTypeConversion_datetimeFallsBackToMatchCapture(String line) throws IOException {
+        final Grok grok = new GrokBuilder()
+                .pattern("%{WORD:w} %{INT:count:int} %{TIMESTAMP_ISO8601:timestamp:datetime}")
+                .build();
+        assertFalse(GrokMatcher.isSupported(grok));
+        assertThrows(IllegalArgumentException.class, () -> new GrokMatcher(grok));
+        // GrokIt falls back to Grok#match, datetime values stay boxed
+        final GrokMatchResult grokResult = new GrokIt().match(grok, line);
+        final Map<String, Object> expected = grok.match(line).capture();
+        assertAll(
+                () -> assertEquals(expected, grokResult.m),
+                () -> assertEquals(42, grokResult.m.get("count")),
+                () -> assertFalse(grokResult.m instanceof ITypedValues)
+        );
+        if (!grokResult.m.containsKey("timestamp_grokfailure")) {
+            assertTrue(grokResult.m.get("timestamp") instanceof Instant, line);
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "'b 42 -7 300 12345678901 1.5 2.25 true x'",
+        "'b +42 0 -32768 -9223372036854775808 -0.0 1e308 TRUE \"quoted\"'",
+        "'b 128 32768 2147483648 9223372036854775808 1 1 false x'",
+        "'b a b c d e f g h'",
+        "'b - + 1a 1.2.3 NaN Infinity yes x'",
+        "'b 1 2 3 4 5 6 7'"
+    })
+    public void testTypeConversion_sameAsMatchCapture(String line) throws IOException {
+        final Grok grok = new GrokBuilder()
+                .pattern("%{WORD:w} %{NOTSPACE:b:byte} %{NOTSPACE:s:short} %{NOTSPACE:i:int} %{NOTSPACE:l:long} "
+                        + "%{NOTSPACE:f:float} %{NOTSPACE:d:double} %{NOTSPACE:bool:boolean}(?: %{NOTSPACE:text:string})?")
+                .build();
+        assertTrue(GrokMatcher.isSupported(grok));
+        final GrokMatcher grokMatcher = new GrokMatcher(grok);
+        final Map<String, Object> expected = grok.match(line).capture();
+        assertEquals(!expected.isEmpty(), grokMatcher.find(line), line);
+        if (!expected.isEmpty()) {
+            final CapturedValues capturedValues = grokMatcher.capture(line);
+            // single values are read without creating the map
+            for (String key : expected.keySet()) {
+                assertEquals(expected.get(key), capturedValues.get(key), key);
+            }
+            assertEquals(expected, capturedValues, line);
+            assertEquals(expected.toString(), capturedValues.toString(), line);
+        }
+    }
+
+    @Test
+    public void testTypedValues() throws IOException {
+        final Grok grok = new GrokBuilder()
+                .pattern("%{INT:count:int} %{NUMBER:ratio:float} %{WORD:flag:boolean} %{INT:bad:byte} %{WORD:word}")
+                .build();
+        final GrokMatcher grokMatcher = new GrokMatcher(grok);
+        final String line = "42 0.5 true 999 abc";
+        assertTrue(grokMatcher.find(line));
+        final CapturedValues capturedValues = grokMatcher.capture(line);
+        final StringBuilder sb = new StringBuilder();
+        assertAll(
+                () -> assertEquals(ValueType.INT, capturedValues.valueType("count")),
+                () -> assertEquals(42L, capturedValues.longValue("count")),
+                () -> assertEquals(42.0, capturedValues.doubleValue("count")),
+                () -> assertEquals(ValueType.FLOAT, capturedValues.valueType("ratio")),
+                () -> assertEquals(0.5, capturedValues.doubleValue("ratio")),
+                () -> assertEquals(1L, capturedValues.longValue("flag")),
+                () -> assertNull(capturedValues.valueType("bad")),
+                () -> assertNull(capturedValues.valueType("word")),
+                () -> assertThrows(IllegalArgumentException.class, () -> capturedValues.longValue("ratio")),
+                () -> assertThrows(IllegalArgumentException.class, () -> capturedValues.longValue("word")),
+                () -> assertTrue(capturedValues.appendValue(sb, "count")),
+                () -> assertTrue(capturedValues.appendValue(sb.append(','), "ratio")),
+                () -> assertFalse(capturedValues.appendValue(sb, "word")),
+                () -> assertEquals("42,0.5", sb.toString())
+        );
+        // typed values are read through an added entry
+        final Map<String, Object> withEntry = GrokMatcher.withEntry(capturedValues, "pattern", "P");
+        assertEquals(ValueType.INT, ((ITypedValues) withEntry).valueType("count"));
+        assertNull(((ITypedValues) withEntry).valueType("pattern"));
+        assertEquals("P", withEntry.get("pattern"));
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "0", "-0", "+0", "7", "-7", "+7", "00012",
+        "9223372036854775807", "-9223372036854775808",
+        "9223372036854775808", "-9223372036854775809", "99999999999999999999",
+        "''", "-", "+", "--1", "+-1", "1-", "1 ", " 1", "0x1", "\u0661\u0662"
+    })
+    public void testParseLong_sameAsLongParseLong(String s) {
+        Long expected;
+        try {
+            expected = Long.parseLong(s);
+        } catch (NumberFormatException ex) {
+            expected = null;
+        }
+        Long parsed;
+        try {
+            parsed = ValueType.parseLong("x" + s + "x", 1, 1 + s.length(), Long.MIN_VALUE, Long.MAX_VALUE);
+        } catch (NumberFormatException ex) {
+            parsed = null;
+        }
+        assertEquals(expected, parsed, s);
+    }
+
+    @Test
+    public void testWithEntry() {
+        final Map<String, Object> m = new HashMap<>();
+        m.put("level", "INFO");
+        m.put("message", "started");
+        final Map<String, Object> expected = new HashMap<>(m);
+        expected.put("extra", "at line 2\n");
+        final Map<String, Object> withEntry = GrokMatcher.withEntry(m, "extra", "at line 2\n");
+        assertAll(
+                () -> assertFalse(withEntry.isEmpty()),
+                () -> assertEquals(expected, withEntry),
+                () -> assertEquals(expected.toString(), withEntry.toString()),
+                () -> assertEquals(2, m.size())
+        );
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "abc,           abc",
+        "'\"abc\"',     abc",
+        "'''abc''',     abc",
+        "'\"\"',        ''",
+        "'\"',          ''",
+        "'\"a\"b\"',    '\"a\"b\"'",
+        "'\"abc''',     '\"abc'''",
+        "'',            ''"
+    })
+    public void testCleanString(String value, String expected) {
+        assertEquals(expected, CapturedValues.cleanString(value));
+    }
+}
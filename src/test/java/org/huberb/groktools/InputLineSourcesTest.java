@@ -0,0 +1,190 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.huberb.groktools.GrokMain.InputLineProcessor;
+import org.huberb.groktools.GrokMain.InputLineProcessor.MatchingLineMode;
+import org.huberb.groktools.InputLineSources.BufferedReaderLineSource;
+import org.huberb.groktools.InputLineSources.FollowingFileLineSource;
+import org.huberb.groktools.InputLineSources.ILineSource;
+import org.huberb.groktools.InputLineSources.MappedFileLineSource;
+import org.huberb.groktools.OutputGrokResultFormatters.OutputGrokResultFormatterAsIs;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ *
+ * @author berni3
+ */
+public class InputLineSourcesTest {
+
+    @TempDir
+    Path tempDir;
+
+    @ParameterizedTest
+    @ValueSource(ints = {16, 17, 64, 1024, MappedFileLineSource.DEFAULT_WINDOW_SIZE})
+    public void testMappedFileLineSource_lineTerminators(int windowSize) throws IOException {
+        final String content = ""
+                + "line1\n"
+                + "line2\r\n"
+                + "line3\r"
+                + "\n"
+                + "\r\n"
+                + "läne6 €€€\n"
+                + "a rather long line7, longer than the smallest window\r"
+                + "line8";
+        final File f = tempDir.resolve("lines.log").toFile();
+        Files.write(f.toPath(), content.getBytes(StandardCharsets.UTF_8));
+
+        final List<String> expected = readLines(new BufferedReaderLineSource(new BufferedReader(new StringReader(content))));
+        try (final FileChannel fc = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            final List<String> lines = readLines(new MappedFileLineSource(fc, false, 0L, -1L, windowSize));
+            assertEquals(expected, lines);
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "%{ACTIVEMQ_ACTIVEMQLOG}, src/main/resources/examples/activemq.log,       singleLineMode",
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/server.log,         singleLineMode",
+        "%{ELKSTACK_LOGSTASHLOG}, src/main/resources/examples/logstash-plain.log, singleLineMode",
+        "%{FLUME_FLUMELOG},       src/main/resources/examples/flume.log,          singleLineMode",
+        "%{ACTIVEMQ_ACTIVEMQLOG}, src/main/resources/examples/activemq.log,       multiLinesMode",
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/server.log,         multiLinesMode",
+        "%{ELKSTACK_LOGSTASHLOG}, src/main/resources/examples/logstash-plain.log, multiLinesMode",
+        "%{FLUME_FLUMELOG},       src/main/resources/examples/flume.log,          multiLinesMode"
+    })
+    public void testMappedFileLineSource_sameOutputAsReader(String pattern, String filename, MatchingLineMode matchingLineMode) throws IOException {
+        final Grok grok = new GrokBuilder()
+                .namedOnly(true)
+                .patternDefinitionsFromClasspath("/groktoolspatterns/server_log")
+                .pattern(pattern)
+                .build();
+        final File f = new File(filename);
+
+        final String expected = processLines(grok, matchingLineMode,
+                new GrokMain.ReaderFactory(f).createLineSource(InputLineSources.InputMode.reader));
+        assertFalse(expected.isEmpty());
+        final String mmapped = processLines(grok, matchingLineMode,
+                new GrokMain.ReaderFactory(f).createLineSource(InputLineSources.InputMode.mmap));
+        assertEquals(expected, mmapped);
+        try (final FileChannel fc = FileChannel.open(f.toPath(), StandardOpenOption.READ)) {
+            final String mmappedSmallWindows = processLines(grok, matchingLineMode,
+                    new MappedFileLineSource(fc, false, 0L, -1L, 4096));
+            assertEquals(expected, mmappedSmallWindows);
+        }
+    }
+
+    @Test
+    public void testFollowingFileLineSource() throws Exception {
+        final Path logFile = tempDir.resolve("server.log");
+        Files.write(logFile, "old line\n".getBytes(StandardCharsets.UTF_8));
+        final AtomicInteger idleCount = new AtomicInteger();
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try (final FollowingFileLineSource lineSource = new FollowingFileLineSource(logFile.toFile(), 10L, idleCount::incrementAndGet)) {
+            // start at the end of the file
+            append(logFile, "line1\nline2\r\n");
+            assertEquals("line1", lineSource.readLine().toString());
+            assertEquals("line2", lineSource.readLine().toString());
+            assertEquals(Files.size(logFile), lineSource.position());
+
+            // hold back a partial line
+            append(logFile, "part");
+            final Future<CharSequence> partialLine = executorService.submit(lineSource::readLine);
+            Thread.sleep(100L);
+            assertFalse(partialLine.isDone());
+            assertTrue(idleCount.get() > 0);
+            append(logFile, "ial line\n");
+            assertEquals("partial line", partialLine.get(5, TimeUnit.SECONDS).toString());
+
+            // truncation
+            Files.write(logFile, "t1\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.TRUNCATE_EXISTING);
+            assertEquals("t1", lineSource.readLine().toString());
+
+            // rotation, the rotated file is read completely first
+            final Path rotatedLogFile = tempDir.resolve("server.log.1");
+            Files.move(logFile, rotatedLogFile);
+            append(rotatedLogFile, "t2\nt3");
+            Files.write(logFile, "r1\n".getBytes(StandardCharsets.UTF_8));
+            assertEquals("t2", lineSource.readLine().toString());
+            assertEquals("t3", lineSource.readLine().toString());
+            assertEquals("r1", lineSource.readLine().toString());
+
+            // stop
+            final Future<CharSequence> stoppedLine = executorService.submit(lineSource::readLine);
+            Thread.sleep(50L);
+            lineSource.stop();
+            assertNull(stoppedLine.get(5, TimeUnit.SECONDS));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    static void append(Path path, String s) throws IOException {
+        Files.write(path, s.getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+    }
+
+    static List<String> readLines(ILineSource lineSource) throws IOException {
+        final List<String> lines = new ArrayList<>();
+        try (final ILineSource ls = lineSource) {
+            for (CharSequence line; (line = ls.readLine()) != null;) {
+                lines.add(line.toString());
+            }
+        }
+        return lines;
+    }
+
+    static String processLines(Grok grok, MatchingLineMode matchingLineMode, ILineSource lineSource) throws IOException {
+        try (final StringWriter sw = new StringWriter();
+                final PrintWriter pw = new PrintWriter(sw);
+                final ILineSource ls = lineSource) {
+            final InputLineProcessor inputLineProcessor = new InputLineProcessor(
+                    grok,
+                    matchingLineMode,
+                    new OutputGrokResultFormatterAsIs(pw),
+                    -1);
+            inputLineProcessor.processLines(ls);
+            pw.flush();
+            return sw.toString();
+        }
+    }
+}
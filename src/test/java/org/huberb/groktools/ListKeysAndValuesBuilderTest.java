@@ -15,6 +15,8 @@
  */
 package org.huberb.groktools;
 
+import io.krakens.grok.api.Grok;
+import java.io.IOException;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
@@ -25,6 +27,7 @@ import java.util.Map;
 import java.util.stream.Stream;
 import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
@@ -108,6 +111,30 @@ public class ListKeysAndValuesBuilderTest {
         );
     }
 
+    /**
+     * Test of appendValue method, of class ListKeysAndValuesBuilder, having
+     * converted values.
+     */
+    @Test
+    public void testAppendValue_typedValues() throws IOException {
+        final Grok grok = new GrokBuilder()
+                .pattern("%{INT:count:int} %{NUMBER:ratio:double} %{INT:bad:byte} %{NOTSPACE:word}")
+                .build();
+        final GrokMatcher grokMatcher = new GrokMatcher(grok);
+        final String line = "42 1.25 999 a\"b";
+        assertTrue(grokMatcher.find(line));
+        final Map<String, Object> m = grokMatcher.capture(line);
+        final List<String> keysAllowed = Arrays.asList("count", "ratio", "bad", "word", "missing");
+        final ListKeysAndValuesBuilder instance = new ListKeysAndValuesBuilder().addKeys(keysAllowed, m);
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < keysAllowed.size(); i++) {
+            sb.append('|');
+            instance.appendValue(sb, i, (s) -> s.replace("\"", "\"\""));
+        }
+        assertEquals("|42|1.25|999|a\"\"b|", sb.toString());
+        assertEquals(Arrays.asList("42", "1.25", "999", "a\"b", ""), instance.values());
+    }
+
     /**
      * Test of keys method, of class ListKeysAndValuesBuilder.
      */
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import org.huberb.groktools.GrokMain.InputLineProcessor;
+import org.huberb.groktools.GrokMain.InputLineProcessor.MatchingLineMode;
+import org.huberb.groktools.InputLineSources.ILineSource;
+import org.huberb.groktools.InputLineSources.InputMode;
+import org.huberb.groktools.LiteralPrefilter.RequiredLiteralsAnalyzer;
+import org.huberb.groktools.OutputGrokResultFormatters.OutputMatchResultMode;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+/**
+ *
+ * @author berni3
+ */
+public class LiteralPrefilterTest {
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "'abc',                     'abc'",
+        "'a.c',                     'a|c'",
+        "'ab?c',                    'a|c'",
+        "'ab*c',                    'a|c'",
+        "'ab+c',                    'ab|c'",
+        "'ab{2}c',                  'ab|c'",
+        "'ab{0,2}c',                'a|c'",
+        "'ab{1}c',                  'abc'",
+        "'a(?:bc)d',                'a|bc|d'",
+        "'a(?<name0>bc)?d',         'a|d'",
+        "'(?:xab|yab)',             ''",
+        "'(?:ab|ab)c',              'ab|c'",
+        "'a\\.b\\-',                'a.b-'",
+        "'\\[\\d+\\]\\[',           '[|]['",
+        "'a[|]b',                   'a|b'",
+        "'a[^]x]b',                 'a|b'",
+        "'a\\sb\\tc',               'a|b\tc'",
+        "'^start (?=look)end$',     'start |end'",
+        "'a\\x41\\u0042c',          'aABc'",
+        "'(?i)abc',                 ''",
+        "'a\\Qb\\E',                ''",
+        "'a(b',                     ''",
+        "'a)b',                     ''"
+    })
+    public void testRequiredLiteralsAnalyzer(String regex, String expected) {
+        final Set<String> required = new RequiredLiteralsAnalyzer(regex).analyze();
+        final Set<String> expectedSet = expected.isEmpty()
+                ? Collections.emptySet()
+                : new LinkedHashSet<>(Arrays.asList(expected.split("\\|", -1)));
+        assertEquals(expectedSet, required, regex);
+    }
+
+    @Test
+    public void testOf_examplePatterns() {
+        assertAll(
+                () -> assertTrue(createPrefilter("%{ACTIVEMQ_ACTIVEMQLOG}").literals().contains("|")),
+                () -> assertTrue(createPrefilter("%{ELKSTACK_LOGSTASHLOG}").literals().contains("][")),
+                () -> assertTrue(createPrefilter("%{WILDFLY_SERVERLOG}").literals().contains("(")),
+                () -> assertTrue(createPrefilter("%{FLUME_FLUMELOG}").literals().contains(")"))
+        );
+    }
+
+    @Test
+    public void testSelectLiterals() {
+        assertEquals(Arrays.asList("abcd", "xyz", "-"),
+                LiteralPrefilter.selectLiterals(new HashSet<>(Arrays.asList("-", "bc", "abcd", "xyz", ""))));
+        assertEquals(Collections.emptyList(),
+                LiteralPrefilter.selectLiterals(Collections.emptySet()));
+    }
+
+    @Test
+    public void testContains() {
+        assertAll(
+                () -> assertTrue(LiteralPrefilter.contains("a | b", " | ")),
+                () -> assertTrue(LiteralPrefilter.contains(new StringBuilder("a | b"), " | ")),
+                () -> assertTrue(LiteralPrefilter.contains(new StringBuilder("a | b"), "b")),
+                () -> assertFalse(LiteralPrefilter.contains(new StringBuilder("a | b"), " |  ")),
+                () -> assertFalse(LiteralPrefilter.contains(new StringBuilder(""), "|"))
+        );
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "%{ACTIVEMQ_ACTIVEMQLOG}, src/main/resources/examples/activemq.log,       singleLineMode",
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/server.log,         singleLineMode",
+        "%{ELKSTACK_LOGSTASHLOG}, src/main/resources/examples/logstash-plain.log, singleLineMode",
+        "%{FLUME_FLUMELOG},       src/main/resources/examples/flume.log,          singleLineMode",
+        "%{ACTIVEMQ_ACTIVEMQLOG}, src/main/resources/examples/server.log,         multiLinesMode",
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/server.log,         multiLinesMode",
+        "%{ELKSTACK_LOGSTASHLOG}, src/main/resources/examples/activemq.log,       multiLinesMode",
+        "%{FLUME_FLUMELOG},       src/main/resources/examples/flume.log,          multiLinesMode"
+    })
+    public void testProcessLines_sameOutputAsWithoutPrefilter(String pattern, String filename, MatchingLineMode matchingLineMode) throws IOException {
+        final Grok grok = new GrokBuilder()
+                .namedOnly(true)
+                .patternDefinitionsFromClasspath("/groktoolspatterns/server_log")
+                .pattern(pattern)
+                .build();
+        final File f = new File(filename);
+        for (InputMode inputMode : InputMode.values()) {
+            final String expected = processLines(grok, matchingLineMode, f, inputMode, null);
+            final LiteralPrefilter literalPrefilter = LiteralPrefilter.of(grok);
+            final String output = processLines(grok, matchingLineMode, f, inputMode, literalPrefilter);
+            assertEquals(expected, output, inputMode.toString());
+            assertTrue(literalPrefilter.checkedCount() > 0);
+            assertTrue(literalPrefilter.formatStatistics().contains("lines rejected: " + literalPrefilter.rejectedCount()));
+        }
+    }
+
+    @Test
+    public void testProcessLines_rejectsLinesOfOtherLogs() throws IOException {
+        final Grok grok = new GrokBuilder()
+                .namedOnly(true)
+                .patternDefinitionsFromClasspath("/groktoolspatterns/server_log")
+                .pattern("%{ELKSTACK_LOGSTASHLOG}")
+                .build();
+        final LiteralPrefilter literalPrefilter = LiteralPrefilter.of(grok);
+        final String output = processLines(grok, MatchingLineMode.singleLineMode,
+                new File("src/main/resources/examples/server.log"), InputMode.reader, literalPrefilter);
+        assertEquals("", output);
+        assertEquals(literalPrefilter.checkedCount(), literalPrefilter.rejectedCount());
+        assertTrue(literalPrefilter.rejectedCount() > 0);
+    }
+
+    static LiteralPrefilter createPrefilter(String pattern) throws IOException {
+        final Grok grok = new GrokBuilder()
+                .namedOnly(true)
+                .patternDefinitionsFromClasspath("/groktoolspatterns/server_log")
+                .pattern(pattern)
+                .build();
+        return LiteralPrefilter.of(grok);
+    }
+
+    static String processLines(Grok grok,
+            MatchingLineMode matchingLineMode,
+            File f,
+            InputMode inputMode,
+            LiteralPrefilter literalPrefilter) throws IOException {
+        try (final StringWriter sw = new StringWriter();
+                final PrintWriter pw = new PrintWriter(sw);
+                final ILineSource lineSource = new GrokMain.ReaderFactory(f).createLineSource(inputMode)) {
+            new InputLineProcessor(grok,
+                    matchingLineMode,
+                    OutputGrokResultFormatters.createOutputGrokResultConverter(OutputMatchResultMode.asIs, pw),
+                    -1,
+                    new GrokIt.Options().literalPrefilter(literalPrefilter)).processLines(lineSource);
+            pw.flush();
+            return sw.toString();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import org.huberb.groktools.GrokIt.GrokMatchResult;
+import org.huberb.groktools.MatchTimeout.DeadlineCharSequence;
+import org.huberb.groktools.MatchTimeout.MatchTimeoutException;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ *
+ * @author berni3
+ */
+public class MatchTimeoutTest {
+
+    /**
+     * Stacked lazy groups, backtracking catastrophically on a long line
+     * lacking a closing parenthesis after the opening one.
+     */
+    static final String PATTERN = "%{DATA:a} %{DATA:b} %{DATA:c} %{DATA:d} \\(%{DATA:e}\\)";
+
+    static String pathologicalLine() {
+        // contains the literals of the pattern, passing the prefilter
+        return ") " + String.join("", Collections.nCopies(200, "a ")) + "(";
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void testMatch_timedOut(boolean severalPatterns) throws IOException {
+        final GrokBuilder grokBuilder = new GrokBuilder().pattern(PATTERN);
+        final Grok grok = grokBuilder.build();
+        final MultiPatternMatcher multiPatternMatcher = severalPatterns
+                ? GrokMain.createMultiPatternMatcher(grokBuilder, Arrays.asList("%{INT:a} %{INT:b}", PATTERN))
+                : null;
+        final StringWriter sw = new StringWriter();
+        try (final MatchTimeout matchTimeout = new MatchTimeout(50_000L, new PrintWriter(sw))) {
+            final GrokIt grokIt = new GrokIt(new GrokIt.Options().multiPatternMatcher(multiPatternMatcher).matchTimeout(matchTimeout));
+            final String line = pathologicalLine();
+            final long startNanos = System.nanoTime();
+            assertSame(GrokIt.NO_MATCH, grokIt.match(grok, line));
+            final long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000L;
+            assertTrue(elapsedMillis < 5_000L, "elapsed " + elapsedMillis);
+
+            final String matchingLine = "a b c d (e)";
+            final GrokMatchResult grokResult = grokIt.match(grok, matchingLine);
+            assertAll(
+                    () -> assertSame(matchingLine, grokResult.subject),
+                    () -> assertEquals("e", grokResult.m.get("e")),
+                    () -> assertEquals(1L, matchTimeout.timedOutCount()),
+                    () -> assertEquals(line + System.lineSeparator(), sw.toString()),
+                    () -> assertEquals(50_000L, matchTimeout.timeoutMicros())
+            );
+        }
+    }
+
+    @Test
+    public void testDeadlineCharSequence() {
+        final String line = String.join("", Collections.nCopies(DeadlineCharSequence.CHECK_INTERVAL, "x"));
+        final DeadlineCharSequence deadlineLine = new DeadlineCharSequence(line, System.nanoTime() - 1L);
+        assertAll(
+                () -> assertEquals(line.length(), deadlineLine.length()),
+                () -> assertEquals(line, deadlineLine.toString()),
+                () -> assertEquals("xx", deadlineLine.subSequence(0, 2))
+        );
+        assertThrows(MatchTimeoutException.class, () -> {
+            for (int i = 0; i < line.length(); i++) {
+                deadlineLine.charAt(i);
+            }
+        });
+        deadlineLine.disarm();
+        for (int i = 0; i < 2 * line.length(); i++) {
+            assertEquals('x', deadlineLine.charAt(i % line.length()));
+        }
+    }
+
+    @Test
+    public void testMatchTimeout_notPositive() {
+        assertThrows(IllegalArgumentException.class, () -> new MatchTimeout(0L, null));
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.huberb.groktools.GrokMain.InputLineProcessor;
+import org.huberb.groktools.GrokMain.InputLineProcessor.MatchingLineMode;
+import org.huberb.groktools.InputLineSources.InputMode;
+import org.huberb.groktools.OutputGrokResultFormatters.OutputGrokResultFormatterAsCsv;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ *
+ * @author berni3
+ */
+public class MultiFileInputLineProcessorTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testIsGlob() {
+        assertAll(
+                () -> assertTrue(MultiFileInputLineProcessor.isGlob("server.log*")),
+                () -> assertTrue(MultiFileInputLineProcessor.isGlob("logs/**/server.log")),
+                () -> assertTrue(MultiFileInputLineProcessor.isGlob("server.log.2026-10-0?")),
+                () -> assertTrue(MultiFileInputLineProcessor.isGlob("{server,activemq}.log")),
+                () -> assertFalse(MultiFileInputLineProcessor.isGlob("server.log")),
+                () -> assertFalse(MultiFileInputLineProcessor.isGlob("logs/server.log.2026-10-01"))
+        );
+    }
+
+    @Test
+    public void testExpandFileNames() throws IOException {
+        final Path logs = Files.createDirectories(tempDir.resolve("logs"));
+        Files.createFile(logs.resolve("server.log"));
+        Files.createFile(logs.resolve("server.log.2026-10-02"));
+        Files.createFile(logs.resolve("server.log.2026-10-01"));
+        Files.createFile(logs.resolve("activemq.log"));
+        Files.createDirectories(logs.resolve("archive"));
+        Files.createFile(logs.resolve("archive").resolve("server.log.2026-09-30"));
+
+        final List<File> files = MultiFileInputLineProcessor.expandFileNames(Arrays.asList(
+                logs.resolve("server.log*").toString(),
+                logs.resolve("activemq.log").toString()));
+        assertEquals(Arrays.asList(
+                logs.resolve("server.log").toFile(),
+                logs.resolve("server.log.2026-10-01").toFile(),
+                logs.resolve("server.log.2026-10-02").toFile(),
+                logs.resolve("activemq.log").toFile()),
+                files);
+
+        final List<File> filesRecursive = MultiFileInputLineProcessor.expandFileNames(Collections.singletonList(
+                logs.resolve("**").resolve("server.log.*").toString()));
+        assertEquals(Collections.singletonList(
+                logs.resolve("archive").resolve("server.log.2026-09-30").toFile()),
+                filesRecursive);
+
+        assertThrows(IllegalArgumentException.class,
+                () -> MultiFileInputLineProcessor.expandFileNames(Collections.singletonList(
+                        logs.resolve("flume.log*").toString())));
+    }
+
+    @Test
+    public void testPatternCapturingFile() throws IOException {
+        final PrintWriter pw = new PrintWriter(new StringWriter());
+        final Grok grokCapturingFile = new GrokBuilder().pattern("%{WORD:file} %{INT:size}").build();
+        final InputLineProcessor capturingFile = new InputLineProcessor(grokCapturingFile,
+                MatchingLineMode.singleLineMode,
+                new OutputGrokResultFormatterAsCsv(pw),
+                -1);
+        assertThrows(IllegalArgumentException.class, () -> new MultiFileInputLineProcessor(capturingFile, InputMode.reader, 1));
+
+        final Grok grokDroppingFile = new GrokBuilder()
+                .pattern("%{WORD:file} %{INT:size}")
+                .dropFields(Collections.singletonList("file"))
+                .build();
+        final InputLineProcessor droppingFile = new InputLineProcessor(grokDroppingFile,
+                MatchingLineMode.singleLineMode,
+                new OutputGrokResultFormatterAsCsv(pw),
+                -1);
+        assertDoesNotThrow(() -> new MultiFileInputLineProcessor(droppingFile, InputMode.reader, 1));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 4})
+    public void testProcessFiles(int workers) throws IOException {
+        final Grok grok = new GrokBuilder()
+                .namedOnly(true)
+                .patternDefinitionsFromClasspath("/groktoolspatterns/server_log")
+                .pattern("%{WILDFLY_SERVERLOG}")
+                .build();
+        final Path serverLog = Paths.get("src/main/resources/examples/server.log");
+        final List<File> files = Arrays.asList(
+                Files.copy(serverLog, tempDir.resolve("server.log"), StandardCopyOption.REPLACE_EXISTING).toFile(),
+                Files.copy(serverLog, tempDir.resolve("server.log.2026-10-01"), StandardCopyOption.REPLACE_EXISTING).toFile(),
+                Files.copy(serverLog, tempDir.resolve("server.log.2026-10-02"), StandardCopyOption.REPLACE_EXISTING).toFile());
+
+        try (final StringWriter sw = new StringWriter();
+                final PrintWriter pw = new PrintWriter(sw)) {
+            new MultiFileInputLineProcessor(
+                    new InputLineProcessor(grok,
+                            MatchingLineMode.singleLineMode,
+                            new OutputGrokResultFormatterAsCsv(pw),
+                            -1),
+                    InputMode.reader,
+                    workers).processFiles(files);
+            pw.flush();
+
+            final List<String> lines = Arrays.asList(sw.toString().split("\\r?\\n"));
+            assertEquals("\"lineno\",\"file\",\"category\",\"level\",\"message\",\"thread\",\"timestampIso8601\"", lines.get(0));
+            for (File file : files) {
+                final String prefix = String.format("\"%s\"", file.getPath());
+                final List<String> linesOfFile = lines.stream()
+                        .filter((line) -> line.contains(prefix))
+                        .collect(Collectors.toList());
+                assertEquals(265, linesOfFile.size(), file.getPath());
+                assertTrue(linesOfFile.get(0).startsWith("\"1\"," + prefix), linesOfFile.get(0));
+            }
+            assertEquals(1 + 3 * 265, lines.size());
+        }
+    }
+}
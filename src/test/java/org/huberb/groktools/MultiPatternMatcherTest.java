@@ -0,0 +1,226 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.huberb.groktools.GrokIt.GrokMatchResult;
+import org.huberb.groktools.GrokMain.InputLineProcessor;
+import org.huberb.groktools.GrokMain.InputLineProcessor.MatchingLineMode;
+import org.huberb.groktools.InputLineSources.ILineSource;
+import org.huberb.groktools.InputLineSources.InputMode;
+import org.huberb.groktools.MultiPatternMatcher.Ordering;
+import org.huberb.groktools.OutputGrokResultFormatters.IOutputGrokResultFormatter;
+import org.huberb.groktools.OutputGrokResultFormatters.OutputMatchResultMode;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/**
+ *
+ * @author berni3
+ */
+public class MultiPatternMatcherTest {
+
+    static final List<String> PATTERNS = Arrays.asList(
+            "%{FLUME_FLUMELOG}",
+            "%{ACTIVEMQ_ACTIVEMQLOG}",
+            "%{WILDFLY_SERVERLOG}");
+
+    @TempDir
+    Path tempDir;
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "'%{WILDFLY_SERVERLOG}',         'WILDFLY_SERVERLOG'",
+        "' %{WILDFLY_SERVERLOG} ',       'WILDFLY_SERVERLOG'",
+        "'%{WORD:word}',                 'WORD'",
+        "'%{INT:count:int}',             'INT'",
+        "'%{WORD:word} %{INT:count}',    '%{WORD:word} %{INT:count}'",
+        "'[a-z]+',                       '[a-z]+'"
+    })
+    public void testPatternName(String pattern, String expected) {
+        assertEquals(expected, MultiPatternMatcher.patternName(pattern));
+    }
+
+    @Test
+    public void testOrdering_hit() {
+        final Ordering ordering = new Ordering(3);
+        assertArrayEquals(new int[]{0, 1, 2}, ordering.order);
+        ordering.hit(2);
+        assertArrayEquals(new int[]{2, 0, 1}, ordering.order);
+        ordering.hit(1);
+        assertArrayEquals(new int[]{2, 0, 1}, ordering.order);
+        ordering.hit(1);
+        assertArrayEquals(new int[]{0, 2, 1}, ordering.order);
+        ordering.hit(2);
+        ordering.hit(2);
+        assertArrayEquals(new int[]{0, 1, 2}, ordering.order);
+        assertArrayEquals(new long[]{2, 2, 1}, ordering.hits);
+    }
+
+    @Test
+    public void testNew_invalid() throws IOException {
+        final Grok grok = new GrokBuilder().pattern("%{WORD:word}").build();
+        assertThrows(IllegalArgumentException.class, () -> new MultiPatternMatcher(new ArrayList<>(), new ArrayList<>()));
+        assertThrows(IllegalArgumentException.class, () -> new MultiPatternMatcher(Arrays.asList("%{WORD:word}", "%{INT:int}"), Arrays.asList(grok)));
+        final Grok grokCapturingPattern = new GrokBuilder().pattern("%{WORD:pattern}").build();
+        assertThrows(IllegalArgumentException.class, () -> new MultiPatternMatcher(Arrays.asList("%{WORD:word}", "%{WORD:pattern}"),
+                Arrays.asList(grok, grokCapturingPattern)));
+    }
+
+    @Test
+    public void testMatch_mixedLines() throws IOException {
+        final MultiPatternMatcher multiPatternMatcher = createMultiPatternMatcher();
+        final File mixedLog = createMixedLog();
+
+        final List<GrokMatchResult> grokResults = new ArrayList<>();
+        processLines(new InputLineProcessor(multiPatternMatcher.groks().get(0),
+                MatchingLineMode.singleLineMode,
+                new CollectingFormatter(grokResults),
+                -1,
+                new GrokIt.Options().multiPatternMatcher(multiPatternMatcher)), mixedLog);
+
+        final Map<String, Integer> countByPattern = new HashMap<>();
+        for (GrokMatchResult grokResult : grokResults) {
+            final String patternName = (String) grokResult.m.get(MultiPatternMatcher.PATTERN_FIELD);
+            countByPattern.merge(patternName, 1, Integer::sum);
+            // same captures as matching the matching pattern only
+            final int patternIndex = multiPatternMatcher.patternNames().indexOf(patternName);
+            final Map<String, Object> expected = new HashMap<>(new GrokIt()
+                    .match(multiPatternMatcher.groks().get(patternIndex), grokResult.subject).m);
+            expected.put(MultiPatternMatcher.PATTERN_FIELD, patternName);
+            assertEquals(expected, grokResult.m);
+        }
+        final Map<String, Integer> expectedCountByPattern = new HashMap<>();
+        expectedCountByPattern.put("FLUME_FLUMELOG", 968);
+        expectedCountByPattern.put("ACTIVEMQ_ACTIVEMQLOG", 144);
+        expectedCountByPattern.put("WILDFLY_SERVERLOG", 265);
+        assertEquals(expectedCountByPattern, countByPattern);
+        assertEquals(968L, multiPatternMatcher.hitCount(0));
+        assertEquals(144L, multiPatternMatcher.hitCount(1));
+        assertEquals(265L, multiPatternMatcher.hitCount(2));
+        assertTrue(multiPatternMatcher.formatStatistics().contains("pattern WILDFLY_SERVERLOG: lines matched: 265"));
+    }
+
+    @ParameterizedTest
+    @EnumSource(MatchingLineMode.class)
+    public void testMatch_chunkedSameOutputAsSingleThreaded(MatchingLineMode matchingLineMode) throws IOException {
+        final File mixedLog = createMixedLog();
+        final String expected;
+        try (final StringWriter sw = new StringWriter();
+                final PrintWriter pw = new PrintWriter(sw)) {
+            final MultiPatternMatcher multiPatternMatcher = createMultiPatternMatcher();
+            processLines(new InputLineProcessor(multiPatternMatcher.groks().get(0),
+                    matchingLineMode,
+                    OutputGrokResultFormatters.createOutputGrokResultConverter(OutputMatchResultMode.asCsv, pw),
+                    -1,
+                    new GrokIt.Options().multiPatternMatcher(multiPatternMatcher)), mixedLog);
+            pw.flush();
+            expected = sw.toString();
+        }
+        try (final StringWriter sw = new StringWriter();
+                final PrintWriter pw = new PrintWriter(sw)) {
+            final MultiPatternMatcher multiPatternMatcher = createMultiPatternMatcher();
+            new ChunkedInputLineProcessor(new InputLineProcessor(multiPatternMatcher.groks().get(0),
+                    matchingLineMode,
+                    OutputGrokResultFormatters.createOutputGrokResultConverter(OutputMatchResultMode.asCsv, pw),
+                    -1,
+                    new GrokIt.Options().multiPatternMatcher(multiPatternMatcher)), 4, 16 * 1024).processFile(mixedLog);
+            pw.flush();
+            assertEquals(expected, sw.toString());
+        }
+    }
+
+    static void processLines(InputLineProcessor inputLineProcessor, File f) throws IOException {
+        try (final ILineSource lineSource = new GrokMain.ReaderFactory(f).createLineSource(InputMode.reader)) {
+            inputLineProcessor.processLines(lineSource);
+        }
+    }
+
+    MultiPatternMatcher createMultiPatternMatcher() throws IOException {
+        final GrokBuilder grokBuilder = new GrokBuilder()
+                .namedOnly(true)
+                .patternDefinitionsFromClasspath("/groktoolspatterns/server_log");
+        return GrokMain.createMultiPatternMatcher(grokBuilder, PATTERNS);
+    }
+
+    /**
+     * Interleave the lines of the example log files.
+     */
+    File createMixedLog() throws IOException {
+        final List<List<String>> logs = Arrays.asList(
+                Files.readAllLines(Paths.get("src/main/resources/examples/server.log"), StandardCharsets.UTF_8),
+                Files.readAllLines(Paths.get("src/main/resources/examples/activemq.log"), StandardCharsets.UTF_8),
+                Files.readAllLines(Paths.get("src/main/resources/examples/flume.log"), StandardCharsets.UTF_8));
+        final List<String> mixed = new ArrayList<>();
+        while (logs.stream().anyMatch((log) -> !log.isEmpty())) {
+            for (List<String> log : logs) {
+                if (!log.isEmpty()) {
+                    mixed.add(log.remove(0));
+                }
+            }
+        }
+        return Files.write(tempDir.resolve("mixed.log"), mixed, StandardCharsets.UTF_8).toFile();
+    }
+
+    /**
+     * Formatter collecting all results.
+     */
+    static class CollectingFormatter implements IOutputGrokResultFormatter {
+
+        private final List<GrokMatchResult> grokResults;
+
+        CollectingFormatter(List<GrokMatchResult> grokResults) {
+            this.grokResults = grokResults;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void output(int readLineCount, GrokMatchResult grokResult) {
+            this.grokResults.add(grokResult);
+        }
+
+        @Override
+        public void end() {
+        }
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.huberb.groktools.ColumnarFormat.ColumnarCompression;
+import org.huberb.groktools.ColumnarFormat.Reader;
+import org.huberb.groktools.ColumnarFormat.RowGroup;
+import org.huberb.groktools.GrokIt.GrokMatchResult;
+import org.huberb.groktools.OutputGrokResultFormatters.OutputGrokResultFormatterAsColumnar;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ *
+ * @author berni3
+ */
+public class OutputGrokResultFormatterAsColumnarTest {
+
+    static GrokMatchResult grokResultOf(String... keysAndValues) {
+        final Map<String, Object> m = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            m.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return new GrokMatchResult("subject", 0, 5, m);
+    }
+
+    static List<RowGroup> readRowGroups(String output) throws IOException {
+        final List<RowGroup> rowGroups = new ArrayList<>();
+        try (final Reader reader = new Reader(new BufferedReader(new StringReader(output)), null)) {
+            for (RowGroup rowGroup; (rowGroup = reader.read()) != null;) {
+                rowGroups.add(rowGroup);
+            }
+        }
+        return rowGroups;
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 2, 3, 100})
+    public void testOutputGrokResultAsColumnar(int rowGroupSize) throws IOException {
+        final StringWriter sw = new StringWriter();
+        try (final OutputGrokResultFormatterAsColumnar instance = new OutputGrokResultFormatterAsColumnar(
+                new PrintWriter(sw), null, rowGroupSize, ColumnarCompression.deflate)) {
+            instance.start();
+            instance.output(1, grokResultOf("level", "INFO", "message", "m1"));
+            instance.output(3, grokResultOf("level", "INFO", "message", "m2"));
+            instance.output(4, grokResultOf("level", "WARN", "other", "o3"));
+            instance.end();
+        }
+        final List<RowGroup> rowGroups = readRowGroups(sw.toString());
+        final RowGroup all;
+        try (final Reader reader = new Reader(new BufferedReader(new StringReader(sw.toString())), null)) {
+            all = reader.readAll();
+        }
+        assertAll(
+                () -> assertEquals((3 + rowGroupSize - 1) / rowGroupSize, rowGroups.size()),
+                () -> assertEquals(Math.min(3, rowGroupSize), rowGroups.get(0).rowCount()),
+                () -> assertArrayEquals(new int[]{1, 3, 4}, all.linenos()),
+                () -> assertArrayEquals(new String[]{"INFO", "INFO", "WARN"}, all.column("level")),
+                () -> assertArrayEquals(new String[]{"m1", "m2", null}, all.column("message")),
+                () -> assertArrayEquals(new String[]{null, null, "o3"}, all.column("other")),
+                () -> assertNull(all.column(ColumnarFormat.FILE_COLUMN))
+        );
+    }
+
+    @Test
+    public void testOutputGrokResultAsColumnar_fieldsAndFile() throws IOException {
+        final StringWriter sw = new StringWriter();
+        try (final OutputGrokResultFormatterAsColumnar instance = new OutputGrokResultFormatterAsColumnar(
+                new PrintWriter(sw), Arrays.asList("message", "level"), 10, ColumnarCompression.none)) {
+            instance.output("a.log", 7, grokResultOf("level", "INFO", "message", "m1", "other", "o1"));
+            instance.output("b.log", 2, grokResultOf("level", "INFO"));
+            instance.end();
+        }
+        final RowGroup rowGroup = readRowGroups(sw.toString()).get(0);
+        assertAll(
+                () -> assertEquals(Arrays.asList("file", "message", "level"), rowGroup.columnNames()),
+                () -> assertArrayEquals(new int[]{7, 2}, rowGroup.linenos()),
+                () -> assertArrayEquals(new String[]{"a.log", "b.log"}, rowGroup.column("file")),
+                () -> assertArrayEquals(new String[]{"m1", null}, rowGroup.column("message"))
+        );
+    }
+
+    @Test
+    public void testOutputGrokResultAsColumnar_flushWritesRowGroup() throws IOException {
+        final StringWriter sw = new StringWriter();
+        try (final OutputGrokResultFormatterAsColumnar instance = new OutputGrokResultFormatterAsColumnar(new PrintWriter(sw))) {
+            instance.output(1, grokResultOf("level", "INFO"));
+            instance.flush();
+            assertEquals(1, readRowGroups(sw.toString()).size());
+            instance.flush();
+            instance.output(2, grokResultOf("level", "WARN"));
+            instance.end();
+        }
+        assertEquals(2, readRowGroups(sw.toString()).size());
+    }
+
+    @Test
+    public void testOutputGrokResultAsColumnar_typedValues() throws IOException {
+        final Grok grok = new GrokBuilder().pattern("%{INT:count:int} %{NUMBER:ratio:float} %{WORD:word}").build();
+        final GrokMatchResult grokResult = new GrokIt().match(grok, "42 0.5 word");
+        final StringWriter sw = new StringWriter();
+        try (final OutputGrokResultFormatterAsColumnar instance = new OutputGrokResultFormatterAsColumnar(new PrintWriter(sw))) {
+            instance.output(1, grokResult);
+            instance.end();
+        }
+        final RowGroup rowGroup = readRowGroups(sw.toString()).get(0);
+        assertAll(
+                () -> assertEquals(Arrays.asList("count", "ratio", "word"), rowGroup.columnNames()),
+                () -> assertEquals("42", rowGroup.column("count")[0]),
+                () -> assertEquals("0.5", rowGroup.column("ratio")[0])
+        );
+    }
+
+    @Test
+    public void testOutputGrokResultAsColumnar_invalidRowGroupSize() {
+        assertThrows(IllegalArgumentException.class, () -> new OutputGrokResultFormatterAsColumnar(
+                new PrintWriter(new StringWriter()), null, 0, ColumnarCompression.none));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.huberb.groktools.GrokIt.GrokMatchResult;
+import org.huberb.groktools.OutputGrokResultFormatters.IOutputGrokResultFormatter;
+import org.huberb.groktools.OutputGrokResultFormatters.OutputGrokResultFormatterAsCsvColumns;
+import org.huberb.groktools.OutputGrokResultFormatters.OutputMatchResultMode;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+/**
+ *
+ * @author berni3
+ */
+public class OutputGrokResultFormatterAsCsvColumnsTest {
+
+    static List<String> outputLines(List<String> columns, GrokMatchResult... grokResults) throws IOException {
+        final StringWriter sw = new StringWriter();
+        try (final OutputGrokResultFormatterAsCsvColumns instance = new OutputGrokResultFormatterAsCsvColumns(new PrintWriter(sw), columns, false)) {
+            instance.start();
+            for (int i = 0; i < grokResults.length; i++) {
+                instance.output(i + 1, grokResults[i]);
+            }
+            instance.end();
+        }
+        return Arrays.asList(sw.toString().split("\\r?\\n"));
+    }
+
+    static GrokMatchResult grokResultOf(String... keysAndValues) {
+        final Map<String, Object> m = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            m.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return new GrokMatchResult("subject", 0, 5, m);
+    }
+
+    @Test
+    public void testOutputGrokResultAsCsvColumns() throws IOException {
+        assertEquals(Arrays.asList(
+                "lineno,k2,k1",
+                "1,v2,v1",
+                // missing keys are empty, other keys are not output
+                "2,,v3"),
+                outputLines(Arrays.asList("k2", "k1"),
+                        grokResultOf("k1", "v1", "k2", "v2"),
+                        grokResultOf("k1", "v3", "k3", "v4")));
+    }
+
+    @Test
+    public void testOutputGrokResultAsCsvColumns_headerAtStart() throws IOException {
+        assertEquals(Arrays.asList("lineno,k1"), outputLines(Arrays.asList("k1")));
+    }
+
+    @Test
+    public void testOutputGrokResultAsCsvColumns_columnsUnknown() {
+        final PrintWriter pw = new PrintWriter(new StringWriter());
+        assertAll(
+                () -> assertThrows(IllegalArgumentException.class, () -> new OutputGrokResultFormatterAsCsvColumns(pw, null, false)),
+                () -> assertThrows(IllegalArgumentException.class,
+                        () -> OutputGrokResultFormatters.createOutputGrokResultConverter(OutputMatchResultMode.asCsvColumns, pw)),
+                () -> assertThrows(IllegalArgumentException.class,
+                        () -> OutputGrokResultFormatters.createOutputGrokResultConverter(OutputMatchResultMode.asCsvColumns, pw, null))
+        );
+    }
+
+    @Test
+    public void testCreateOutputGrokResultConverter_columnsOfGrok() throws IOException {
+        final Grok grok = new GrokBuilder().pattern("%{WORD:w} %{INT:i}").build();
+        final StringWriter sw = new StringWriter();
+        try (final IOutputGrokResultFormatter instance = OutputGrokResultFormatters.createOutputGrokResultConverter(
+                OutputMatchResultMode.asCsvColumns, new PrintWriter(sw), null, grok)) {
+            instance.start();
+            // the first line does not match
+            instance.output(2, new GrokIt().match(grok, "a 1"));
+            instance.end();
+        }
+        assertEquals(Arrays.asList("lineno,w,i", "2,a,1"), Arrays.asList(sw.toString().split("\\r?\\n")));
+    }
+
+    @Test
+    public void testOutputGrokResultAsCsvColumns_file() throws IOException {
+        final StringWriter sw = new StringWriter();
+        try (final OutputGrokResultFormatterAsCsvColumns instance = new OutputGrokResultFormatterAsCsvColumns(new PrintWriter(sw), Arrays.asList("k1"), true)) {
+            instance.start();
+            instance.output("dir/server,1.log", 7, grokResultOf("k1", "v1"));
+        }
+        assertEquals(Arrays.asList("lineno,file,k1", "7,\"dir/server,1.log\",v1"), Arrays.asList(sw.toString().split("\\r?\\n")));
+    }
+
+    @Test
+    public void testOutputGrokResultAsCsvColumns_resume() throws IOException {
+        final StringWriter sw = new StringWriter();
+        try (final OutputGrokResultFormatterAsCsvColumns instance = new OutputGrokResultFormatterAsCsvColumns(new PrintWriter(sw), Arrays.asList("k1"), false)) {
+            instance.resume(0L);
+            instance.output(3, grokResultOf("k1", "v1"));
+        }
+        assertEquals("3,v1", sw.toString().trim());
+    }
+
+    @Test
+    public void testOutputGrokResultAsCsvColumns_typedValues() throws IOException {
+        final Grok grok = new GrokBuilder().pattern("%{INT:count:int} %{NUMBER:ratio:float} %{WORD:flag:boolean}").build();
+        final GrokMatchResult grokResult = new GrokIt().match(grok, "42 0.5 TRUE");
+        assertEquals(Arrays.asList("lineno,count,ratio,flag", "1,42,0.5,true"),
+                outputLines(Arrays.asList("count", "ratio", "flag"), grokResult));
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "plain, plain",
+        "'v 1', 'v 1'",
+        "'a,b', '\"a,b\"'",
+        "'v \"1', '\"v \"\"1\"'",
+        "'\"\"', '\"\"\"\"\"\"'",
+        "'v \r1', '\"v \r1\"'",
+        "'v \n1', '\"v \n1\"'",
+        "'', ''"
+    })
+    public void testAppendCsv(String s, String expected) {
+        final StringBuilder sb = new StringBuilder("x");
+        OutputGrokResultFormatterAsCsvColumns.appendCsv(sb, s);
+        assertEquals("x" + expected, sb.toString());
+    }
+}
@@ -15,6 +15,7 @@
  */
 package org.huberb.groktools;
 
+import io.krakens.grok.api.Grok;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -27,6 +28,7 @@ import java.util.stream.Stream;
 import org.huberb.groktools.GrokIt.GrokMatchResult;
 import org.huberb.groktools.OutputGrokResultFormatters.OutputGrokResultFormatterAsCsv;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -62,6 +64,62 @@ public class OutputGrokResultFormatterAsCsvTest {
         }
     }
 
+    /**
+     * Test of outputGrokResultAsCsv method, of class OutputGrokResult, having
+     * fixed fields.
+     */
+    @Test
+    public void testOutputGrokResultAsCsv_fields() throws IOException {
+        final Map<String, Object> m1 = new HashMapBuilder<String, Object>()
+                .addKeyValue("k1", "v1")
+                .addKeyValue("k2", "v2")
+                .build();
+        final Map<String, Object> m2 = new HashMapBuilder<String, Object>()
+                .addKeyValue("k1", "v3")
+                .build();
+        try (final StringWriter sw = new StringWriter();
+                final PrintWriter pw = new PrintWriter(sw)) {
+            try (final OutputGrokResultFormatterAsCsv instance = new OutputGrokResultFormatterAsCsv(pw, Arrays.asList("k2", "k1"))) {
+                instance.start();
+                instance.output(1, new GrokMatchResult("subject", 0, 5, m1));
+                instance.output(2, new GrokMatchResult("subject", 0, 5, m2));
+                instance.end();
+            }
+            final String[] result = sw.toString().split("\\r?\\n");
+            assertEquals("\"lineno\",\"k2\",\"k1\"", result[0]);
+            assertEquals("\"1\",\"v2\",\"v1\"", result[1]);
+            assertEquals("\"2\",\"\",\"v3\"", result[2]);
+        }
+    }
+
+    /**
+     * Test of outputGrokResultAsCsv method, of class OutputGrokResult, having
+     * converted values.
+     */
+    @Test
+    public void testOutputGrokResultAsCsv_typedValues() throws IOException {
+        final Grok grok = new GrokBuilder()
+                .pattern("%{INT:count:int} %{NUMBER:ratio:float} %{WORD:flag:boolean} %{INT:bad:byte}")
+                .build();
+        final GrokMatcher grokMatcher = new GrokMatcher(grok);
+        final String line = "42 0.1 TRUE 999";
+        assertTrue(grokMatcher.find(line));
+        final Map<String, Object> typed = grokMatcher.capture(line);
+        final Map<String, Object> boxed = new HashMap<>(grok.match(line).capture());
+        final String[] outputs = new String[2];
+        for (int i = 0; i < outputs.length; i++) {
+            try (final StringWriter sw = new StringWriter();
+                    final PrintWriter pw = new PrintWriter(sw)) {
+                try (final OutputGrokResultFormatterAsCsv instance = new OutputGrokResultFormatterAsCsv(pw)) {
+                    instance.output(1, new GrokMatchResult(line, 0, line.length(), i == 0 ? typed : boxed));
+                }
+                outputs[i] = sw.toString();
+            }
+        }
+        assertEquals(outputs[1], outputs[0]);
+        assertTrue(outputs[0].contains("\"42\",\"true\",\"0.1\""), outputs[0]);
+    }
+
     /**
      * Test of outputGrokResultAsCsv method, of class OutputGrokResult.
      */
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.huberb.groktools.GrokIt.GrokMatchResult;
+import org.huberb.groktools.OutputGrokResultFormatters.OutputGrokResultFormatterAsJsonLines;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+/**
+ *
+ * @author berni3
+ */
+public class OutputGrokResultFormatterAsJsonLinesTest {
+
+    static List<String> outputLines(List<String> fields, GrokMatchResult... grokResults) throws IOException {
+        final StringWriter sw = new StringWriter();
+        try (final OutputGrokResultFormatterAsJsonLines instance = new OutputGrokResultFormatterAsJsonLines(new PrintWriter(sw), fields)) {
+            instance.start();
+            for (int i = 0; i < grokResults.length; i++) {
+                instance.output(i + 1, grokResults[i]);
+            }
+            instance.end();
+        }
+        return Arrays.asList(sw.toString().split("\\r?\\n"));
+    }
+
+    static GrokMatchResult grokResultOf(String... keysAndValues) {
+        final Map<String, Object> m = new HashMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            m.put(keysAndValues[i], keysAndValues[i + 1]);
+        }
+        return new GrokMatchResult("subject", 0, 5, m);
+    }
+
+    @Test
+    public void testOutputGrokResultAsJsonLines() throws IOException {
+        assertEquals(Arrays.asList(
+                "{\"lineno\":\"1\",\"k1\":\"v1\",\"k2\":\"v2\"}",
+                "{\"lineno\":\"2\",\"k1\":\"v3\",\"k2\":\"v4\"}",
+                // other keys sorted by name
+                "{\"lineno\":\"3\",\"a\":\"v5\",\"k1\":\"v6\"}"),
+                outputLines(null,
+                        grokResultOf("k2", "v2", "k1", "v1"),
+                        grokResultOf("k1", "v3", "k2", "v4"),
+                        grokResultOf("k1", "v6", "a", "v5")));
+    }
+
+    @Test
+    public void testOutputGrokResultAsJsonLines_fields() throws IOException {
+        assertEquals(Arrays.asList(
+                "{\"lineno\":\"1\",\"k2\":\"v2\",\"missing\":\"\"}"),
+                outputLines(Arrays.asList("k2", "missing"), grokResultOf("k1", "v1", "k2", "v2")));
+    }
+
+    @Test
+    public void testOutputGrokResultAsJsonLines_file() throws IOException {
+        final StringWriter sw = new StringWriter();
+        try (final OutputGrokResultFormatterAsJsonLines instance = new OutputGrokResultFormatterAsJsonLines(new PrintWriter(sw))) {
+            instance.output("dir\\server.log", 7, grokResultOf("k1", "v1"));
+        }
+        assertEquals("{\"lineno\":\"7\",\"file\":\"dir\\\\server.log\",\"k1\":\"v1\"}", sw.toString().trim());
+    }
+
+    @Test
+    public void testOutputGrokResultAsJsonLines_multiLineValue() throws IOException {
+        final List<String> lines = outputLines(null, grokResultOf("message", "first", "extra", "\tat a.B.c(B.java:1)\n\tat d.E.f(E.java:2)"));
+        assertAll(
+                () -> assertEquals(1, lines.size()),
+                () -> assertEquals("{\"lineno\":\"1\",\"extra\":\"\\tat a.B.c(B.java:1)\\n\\tat d.E.f(E.java:2)\",\"message\":\"first\"}", lines.get(0))
+        );
+    }
+
+    @Test
+    public void testOutputGrokResultAsJsonLines_convertedValues() throws IOException {
+        final Grok grok = new GrokBuilder().pattern("%{INT:count:int} %{NUMBER:ratio:float} %{WORD:word}").build();
+        final GrokMatchResult grokResult = new GrokIt().match(grok, "42 0.5 word");
+        assertEquals(Arrays.asList("{\"lineno\":\"1\",\"count\":\"42\",\"ratio\":\"0.5\",\"word\":\"word\"}"),
+                outputLines(null, grokResult));
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "plain, plain",
+        "'a \"b\" c', 'a \\\"b\\\" c'",
+        "'back\\slash', 'back\\\\slash'",
+        "'\r\n\t\b\f', '\\r\\n\\t\\b\\f'",
+        "'\u0000\u001f ', '\\u0000\\u001f '",
+        "'café 😀', 'café 😀'",
+        "'lone \ud83d high', 'lone \\ud83d high'",
+        "'lone \ude00 low', 'lone \\ude00 low'",
+        "'\ude00\ud83d', '\\ude00\\ud83d'",
+        "'', ''"
+    })
+    public void testAppendEscapedJson(String s, String expected) {
+        final StringBuilder sb = new StringBuilder("x");
+        OutputGrokResultFormatterAsJsonLines.appendEscapedJson(sb, s);
+        assertEquals("x" + expected, sb.toString());
+    }
+}
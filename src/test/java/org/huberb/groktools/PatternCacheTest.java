@@ -0,0 +1,135 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import org.huberb.groktools.PatternCache.KeyBuilder;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+/**
+ *
+ * @author berni3
+ */
+public class PatternCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/server.log,   true",
+        "%{ACTIVEMQ_ACTIVEMQLOG}, src/main/resources/examples/activemq.log, true",
+        "%{FLUME_FLUMELOG},       src/main/resources/examples/flume.log,    false"
+    })
+    public void testBuild_sameGrokFromCache(String pattern, String filename, boolean namedOnly) throws IOException {
+        final File cacheDir = tempDir.resolve("cache").toFile();
+        final Grok grok = createGrokBuilder(pattern, namedOnly).build();
+        final GrokBuilder grokBuilder = createGrokBuilder(pattern, namedOnly).patternCacheDir(cacheDir);
+        final Grok grokCompiled = grokBuilder.build();
+        final File entryFile = new PatternCache(cacheDir).entryFile(grokBuilder.cacheKey());
+        assertTrue(entryFile.exists());
+        final Grok grokCached = grokBuilder.build();
+        for (Grok g : Arrays.asList(grokCompiled, grokCached)) {
+            assertAll(
+                    () -> assertEquals(grok.getOriginalGrokPattern(), g.getOriginalGrokPattern()),
+                    () -> assertEquals(grok.getNamedRegex(), g.getNamedRegex()),
+                    () -> assertEquals(grok.getNamedRegexCollection(), g.getNamedRegexCollection()),
+                    () -> assertEquals(grok.getPatterns(), g.getPatterns()),
+                    () -> assertEquals(grok.namedGroups, g.namedGroups)
+            );
+        }
+        final List<String> lines = Files.readAllLines(Paths.get(filename), StandardCharsets.UTF_8);
+        for (String line : lines) {
+            assertEquals(grok.match(line).capture(), grokCached.match(line).capture(), line);
+        }
+    }
+
+    @Test
+    public void testCacheKey_changesWithDefinitionsFile() throws IOException {
+        final File definitionsFile = tempDir.resolve("definitions").toFile();
+        Files.write(definitionsFile.toPath(), Arrays.asList("MYWORD \\b\\w+\\b"), StandardCharsets.UTF_8);
+        final File cacheDir = tempDir.resolve("cache").toFile();
+        final GrokBuilder grokBuilder = new GrokBuilder()
+                .patternDefinitionsFromFile(definitionsFile)
+                .pattern("%{MYWORD:word}")
+                .patternCacheDir(cacheDir);
+        final String cacheKey = grokBuilder.cacheKey();
+        assertEquals("abc", grokBuilder.build().match("abc 42").capture().get("word"));
+
+        Files.write(definitionsFile.toPath(), Arrays.asList("MYWORD \\b\\d+\\b"), StandardCharsets.UTF_8);
+        assertNotEquals(cacheKey, grokBuilder.cacheKey());
+        assertEquals("42", grokBuilder.build().match("abc 42").capture().get("word"));
+        assertEquals(2, cacheDir.list().length);
+    }
+
+    @Test
+    public void testCacheKey_dependsOnSettings() throws IOException {
+        final String cacheKey = new GrokBuilder().pattern("%{WORD:word}").cacheKey();
+        assertAll(
+                () -> assertEquals(cacheKey, new GrokBuilder().pattern("%{WORD:word}").cacheKey()),
+                () -> assertNotEquals(cacheKey, new GrokBuilder().pattern("%{WORD:other}").cacheKey()),
+                () -> assertNotEquals(cacheKey, new GrokBuilder().pattern("%{WORD:word}").namedOnly(true).cacheKey()),
+                () -> assertNotEquals(cacheKey, new GrokBuilder().pattern("%{WORD:word}").registerDefaultPatterns(false).cacheKey()),
+                () -> assertNotEquals(cacheKey, new GrokBuilder().pattern("%{WORD:word}")
+                        .patternDefinitionsFromString("WORD \\w+").cacheKey())
+        );
+    }
+
+    @Test
+    public void testRead_unreadableEntry() throws IOException {
+        final PatternCache patternCache = new PatternCache(tempDir.toFile());
+        assertFalse(patternCache.read("missing", ZoneOffset.UTC).isPresent());
+        Files.write(patternCache.entryFile("empty").toPath(), new byte[0]);
+        assertFalse(patternCache.read("empty", ZoneOffset.UTC).isPresent());
+        Files.write(patternCache.entryFile("invalid").toPath(), "namedRegex=\\uZZZZ".getBytes(StandardCharsets.ISO_8859_1));
+        assertFalse(patternCache.read("invalid", ZoneOffset.UTC).isPresent());
+    }
+
+    @Test
+    public void testKeyBuilder() {
+        final String key = new KeyBuilder().add("ab").add("c").build();
+        assertAll(
+                () -> assertEquals(64, key.length()),
+                () -> assertEquals(key, new KeyBuilder().add("ab").add("c").build()),
+                () -> assertNotEquals(key, new KeyBuilder().add("a").add("bc").build()),
+                () -> assertNotEquals(new KeyBuilder().add("").build(), new KeyBuilder().add((String) null).build())
+        );
+    }
+
+    static GrokBuilder createGrokBuilder(String pattern, boolean namedOnly) {
+        return new GrokBuilder()
+                .namedOnly(namedOnly)
+                .patternDefinitionsFromClasspath("/groktoolspatterns/server_log")
+                .pattern(pattern);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import org.huberb.groktools.GrokMain.InputLineProcessor;
+import org.huberb.groktools.GrokMain.InputLineProcessor.MatchingLineMode;
+import org.huberb.groktools.InputLineSources.ILineSource;
+import org.huberb.groktools.OutputGrokResultFormatters.IOutputGrokResultFormatter;
+import org.huberb.groktools.OutputGrokResultFormatters.OutputMatchResultMode;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+/**
+ *
+ * @author berni3
+ */
+public class PipelinedInputLineProcessorTest {
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "%{ACTIVEMQ_ACTIVEMQLOG}, src/main/resources/examples/activemq.log,       singleLineMode, -1",
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/server.log,         singleLineMode, -1",
+        "%{ELKSTACK_LOGSTASHLOG}, src/main/resources/examples/logstash-plain.log, singleLineMode, -1",
+        "%{FLUME_FLUMELOG},       src/main/resources/examples/flume.log,          singleLineMode, -1",
+        "%{ACTIVEMQ_ACTIVEMQLOG}, src/main/resources/examples/activemq.log,       multiLinesMode, -1",
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/server.log,         multiLinesMode, -1",
+        "%{ELKSTACK_LOGSTASHLOG}, src/main/resources/examples/logstash-plain.log, multiLinesMode, -1",
+        "%{FLUME_FLUMELOG},       src/main/resources/examples/flume.log,          multiLinesMode, -1",
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/server.log,         singleLineMode, 100",
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/server.log,         multiLinesMode, 100",
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/server.log,         multiLinesMode, 1"
+    })
+    public void testProcessLines_sameOutputAsSequential(String pattern,
+            String filename,
+            MatchingLineMode matchingLineMode,
+            int readMaxLinesCount) throws IOException {
+        final Grok grok = new GrokBuilder()
+                .namedOnly(true)
+                .patternDefinitionsFromClasspath("/groktoolspatterns/server_log")
+                .pattern(pattern)
+                .build();
+        final File f = new File(filename);
+        for (OutputMatchResultMode outputMatchResultMode : OutputMatchResultMode.values()) {
+            final String expected;
+            try (final StringWriter sw = new StringWriter();
+                    final PrintWriter pw = new PrintWriter(sw);
+                    final ILineSource lineSource = new GrokMain.ReaderFactory(f).createLineSource(InputLineSources.InputMode.reader)) {
+                createInputLineProcessor(grok, matchingLineMode, outputMatchResultMode, pw, readMaxLinesCount)
+                        .processLines(lineSource);
+                expected = sw.toString();
+            }
+            assertFalse(expected.isEmpty());
+            for (int[] batchSizeAndQueueDepth : new int[][]{{1, 1}, {7, 2}, {100, 4}, {1024, 4}}) {
+                final int batchSize = batchSizeAndQueueDepth[0];
+                final int queueDepth = batchSizeAndQueueDepth[1];
+                try (final StringWriter sw = new StringWriter();
+                        final PrintWriter pw = new PrintWriter(sw);
+                        final ILineSource lineSource = new GrokMain.ReaderFactory(f).createLineSource(InputLineSources.InputMode.mmap)) {
+                    final InputLineProcessor inputLineProcessor = createInputLineProcessor(grok, matchingLineMode, outputMatchResultMode, pw, readMaxLinesCount);
+                    new PipelinedInputLineProcessor(inputLineProcessor, batchSize, queueDepth)
+                            .processLines(lineSource);
+                    assertEquals(expected, sw.toString(), "batchSize " + batchSize + ", queueDepth " + queueDepth + ", " + outputMatchResultMode);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testProcessLines_statistics() throws IOException {
+        final Grok grok = new GrokBuilder()
+                .namedOnly(true)
+                .patternDefinitionsFromClasspath("/groktoolspatterns/server_log")
+                .pattern("%{WILDFLY_SERVERLOG}")
+                .build();
+        final File f = new File("src/main/resources/examples/server.log");
+        try (final StringWriter sw = new StringWriter();
+                final PrintWriter pw = new PrintWriter(sw);
+                final ILineSource lineSource = new GrokMain.ReaderFactory(f).createLineSource(InputLineSources.InputMode.reader)) {
+            final PipelinedInputLineProcessor pipelinedInputLineProcessor = new PipelinedInputLineProcessor(
+                    createInputLineProcessor(grok, MatchingLineMode.singleLineMode, OutputMatchResultMode.asCsv, pw, -1),
+                    10, 2);
+            pipelinedInputLineProcessor.processLines(lineSource);
+
+            // server.log has less than 1000 lines, the last batch is not full
+            final long batches = pipelinedInputLineProcessor.readerCounters.batches;
+            final String statistics = pipelinedInputLineProcessor.formatStatistics();
+            assertAll(
+                    () -> assertTrue(batches > 1, "" + batches),
+                    () -> assertEquals(batches, pipelinedInputLineProcessor.matcherCounters.batches),
+                    () -> assertEquals(batches, pipelinedInputLineProcessor.writerCounters.batches),
+                    () -> assertTrue(statistics.contains("reader "), statistics),
+                    () -> assertTrue(statistics.contains("matcher "), statistics),
+                    () -> assertTrue(statistics.contains("writer "), statistics)
+            );
+        }
+    }
+
+    @Test
+    public void testProcessLines_readFailure() throws IOException {
+        final Grok grok = new GrokBuilder()
+                .namedOnly(true)
+                .pattern("%{GREEDYDATA:line}")
+                .build();
+        final ILineSource failingLineSource = new ILineSource() {
+            @Override
+            public CharSequence readLine() throws IOException {
+                throw new IOException("read failed");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        final StringWriter sw = new StringWriter();
+        final PipelinedInputLineProcessor pipelinedInputLineProcessor = new PipelinedInputLineProcessor(
+                createInputLineProcessor(grok, MatchingLineMode.singleLineMode, OutputMatchResultMode.asCsv, new PrintWriter(sw), -1),
+                10, 2);
+        final IOException ex = assertThrows(IOException.class, () -> pipelinedInputLineProcessor.processLines(failingLineSource));
+        assertEquals("read failed", ex.getMessage());
+    }
+
+    InputLineProcessor createInputLineProcessor(Grok grok,
+            MatchingLineMode matchingLineMode,
+            OutputMatchResultMode outputMatchResultMode,
+            PrintWriter pw,
+            int readMaxLinesCount) {
+        final IOutputGrokResultFormatter outputGrokResultConverter
+                = OutputGrokResultFormatters.createOutputGrokResultConverter(outputMatchResultMode, pw, null, grok);
+        return new InputLineProcessor(
+                grok,
+                matchingLineMode,
+                outputGrokResultConverter,
+                readMaxLinesCount);
+    }
+}
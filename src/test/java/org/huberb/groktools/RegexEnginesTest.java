@@ -0,0 +1,189 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import io.krakens.grok.api.Match;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.huberb.groktools.GrokIt.GrokMatchResult;
+import org.huberb.groktools.PikeVm.UnsupportedRegexException;
+import org.huberb.groktools.RegexEngines.IRegexMatcher;
+import org.huberb.groktools.RegexEngines.JdkRegexEngine;
+import org.huberb.groktools.RegexEngines.LinearRegexEngine;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ *
+ * @author berni3
+ */
+public class RegexEnginesTest {
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "%{ACTIVEMQ_ACTIVEMQLOG}, src/main/resources/examples/activemq.log",
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/server.log",
+        "%{ELKSTACK_LOGSTASHLOG}, src/main/resources/examples/logstash-plain.log",
+        "%{FLUME_FLUMELOG},       src/main/resources/examples/flume.log",
+        "%{WILDFLY_SERVERLOG},    src/main/resources/examples/flume.log"
+    })
+    public void testLinear_sameAsMatchCapture(String pattern, String filename) throws IOException {
+        final Grok grok = new GrokBuilder()
+                .namedOnly(true)
+                .patternDefinitionsFromClasspath("/groktoolspatterns/server_log")
+                .pattern(pattern)
+                .build();
+        assertTrue(LinearRegexEngine.isLinear(grok.getNamedRegex()));
+        final GrokMatcher grokMatcher = new GrokMatcher(grok, null, new LinearRegexEngine());
+        final List<String> lines = Files.readAllLines(Paths.get(filename), StandardCharsets.UTF_8);
+        for (String line : lines) {
+            final Match match = grok.match(line);
+            final Map<String, Object> expected = match.capture();
+            final boolean found = grokMatcher.find(line);
+            assertEquals(!expected.isEmpty(), found, line);
+            if (found) {
+                assertEquals(match.getStart(), grokMatcher.start(), line);
+                assertEquals(match.getEnd(), grokMatcher.end(), line);
+                assertEquals(expected, grokMatcher.capture(line), line);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "(?<x>a+)b, xaaab",
+        "(?<x>a+?)b, aab",
+        "(?<x>a*?)(?<y>a*), aaa",
+        "(?<x>a|ab)(?<y>c|bcd), abcd",
+        "'(?<x>a{2,3})(?<y>a{1,2}?)', aaaaa",
+        "(?<x>\\d+)\\.(?<y>\\d*), 'v 10.25 '",
+        "(?<x>\\b\\w+\\b), '  hello world'",
+        "(?<x>\\B\\w), 'ab'",
+        "(?<x>[^\\]\\s]+), 'x [a b] c'",
+        "(?<x>\\w+)$, 'line end\r\n'",
+        "(?<x>\\w+)\\Z, 'line end\n'",
+        "(?<x>\\w+)\\z, 'line end\n'",
+        "\\A(?<x>\\S+), 'first second'",
+        "(?<![0-9])(?<x>[0-9]{2})(?![0-9]), '123 45 678'",
+        "(?<x>(?>\\d\\d))-, '1-22-'",
+        "(?<x>(?:[+-]?(?:[0-9]+))), 'n=-42'",
+        "(?<x>x)?y, 'y'",
+        "(?<x>.*)(?<y>\\s.*), 'a b c'",
+        "(?<x>café)\\b, 'un café'"
+    })
+    public void testLinear_sameOffsetsAsJdk(String regex, String line) {
+        final String[] groupNames = regex.contains("(?<y>") ? new String[]{"x", "y"} : new String[]{"x"};
+        assertTrue(LinearRegexEngine.isLinear(regex), regex);
+        final IRegexMatcher jdkMatcher = new JdkRegexEngine().compile(regex, groupNames);
+        final IRegexMatcher linearMatcher = new LinearRegexEngine().compile(regex, groupNames);
+        final int[] expected = new int[2 + 2 * groupNames.length];
+        final int[] offsets = new int[2 + 2 * groupNames.length];
+        assertAll(
+                () -> assertEquals(jdkMatcher.find(line, expected), linearMatcher.find(line, offsets)),
+                () -> assertArrayEquals(expected, offsets)
+        );
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "(?<x>a)(?<y>b), 1, 2",
+        "(a)(?<y>b)(?<x>c), 3, 2",
+        "(?:a)(?<x>(?<y>b))(?=c), 1, 2",
+        "(?<=a)(?<!b)(?>c)(?<x>d)(?i:e)(?<y>f), 1, 2",
+        "\\((?<x>a)\\)(?<y>b), 1, 2",
+        "[(](?<x>a)[^](](?<y>b)[]a(], 1, 2",
+        "[a[(]](?<x>a)(?<y>b), 1, 2",
+        "\\Q(?<z>\\E(?<x>a)\\Q(\\E(?<y>b), 1, 2"
+    })
+    public void testJdk_groupNumbers(String regex, int x, int y) {
+        final String[] groupNames = new String[]{"x", "y"};
+        final int groupCount = java.util.regex.Pattern.compile(regex).matcher("").groupCount();
+        assertArrayEquals(new int[]{x, y}, JdkRegexEngine.groupNumbers(regex, groupNames, groupCount), regex);
+    }
+
+    @Test
+    public void testJdk_groupNumbersNotAgreeing() {
+        final String regex = "(?x)(?<x>a) # (b\n(?<y>c)";
+        final String[] groupNames = new String[]{"x", "y"};
+        assertEquals(null, JdkRegexEngine.groupNumbers(regex, groupNames, 2));
+        // falls back to looking up the group names
+        final int[] offsets = new int[6];
+        assertTrue(new JdkRegexEngine().compile(regex, groupNames).find("ac", offsets));
+        assertArrayEquals(new int[]{0, 2, 0, 1, 1, 2}, offsets);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "(?<x>a)\\k<x>",
+        "(?<x>a)\\1",
+        "(?i)(?<x>a)",
+        "(?<x>a++)",
+        "(?<x>(?>a|ab))c",
+        "(?<x>a?)*",
+        "(?<x>\\p{L}+)",
+        "(?<x>[a-z&&[^b]])"
+    })
+    public void testLinear_unsupportedFallsBackToJdk(String regex) {
+        assertAll(
+                () -> assertFalse(LinearRegexEngine.isLinear(regex)),
+                () -> assertThrows(UnsupportedRegexException.class, () -> PikeVm.compile(regex, new String[]{"x"}))
+        );
+        final int[] expected = new int[4];
+        final int[] offsets = new int[4];
+        final String line = "aab abc aa";
+        assertEquals(new JdkRegexEngine().compile(regex, new String[]{"x"}).find(line, expected),
+                new LinearRegexEngine().compile(regex, new String[]{"x"}).find(line, offsets));
+        assertArrayEquals(expected, offsets);
+    }
+
+    @Test
+    public void testLinear_surrogatesFallBackToJdk() {
+        final IRegexMatcher linearMatcher = new LinearRegexEngine().compile("(?<x>.)b", new String[]{"x"});
+        final int[] offsets = new int[4];
+        assertTrue(linearMatcher.find("😀b", offsets));
+        assertArrayEquals(new int[]{0, 3, 0, 2}, offsets);
+    }
+
+    @Test
+    public void testLinear_pathologicalLine() throws IOException {
+        final Grok grok = new GrokBuilder().pattern(MatchTimeoutTest.PATTERN).build();
+        assertTrue(LinearRegexEngine.isLinear(grok.getNamedRegex()));
+        final GrokIt grokIt = new GrokIt(new GrokIt.Options().regexEngine(new LinearRegexEngine()));
+        final long startNanos = System.nanoTime();
+        assertSame(GrokIt.NO_MATCH, grokIt.match(grok, MatchTimeoutTest.pathologicalLine()));
+        final long elapsedMillis = (System.nanoTime() - startNanos) / 1_000_000L;
+        assertTrue(elapsedMillis < 1_000L, "elapsed " + elapsedMillis);
+
+        final GrokMatchResult grokResult = grokIt.match(grok, "a b c d (e)");
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e"), Arrays.asList(
+                grokResult.m.get("a"), grokResult.m.get("b"), grokResult.m.get("c"), grokResult.m.get("d"), grokResult.m.get("e")));
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+import org.huberb.groktools.GrokMain.InputLineProcessor;
+import org.huberb.groktools.GrokMain.InputLineProcessor.MatchingLineMode;
+import org.huberb.groktools.InputLineSources.BufferedReaderLineSource;
+import org.huberb.groktools.InputLineSources.ILineSource;
+import org.huberb.groktools.OutputGrokResultFormatters.IOutputGrokResultFormatter;
+import org.huberb.groktools.OutputGrokResultFormatters.OutputMatchResultMode;
+import org.huberb.groktools.RunStatistics.LatencyHistogram;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+/**
+ *
+ * @author berni3
+ */
+public class RunStatisticsTest {
+
+    @ParameterizedTest
+    @ValueSource(longs = {0L, 1L, 7L, 8L, 9L, 15L, 16L, 17L, 1000L, 123_456L, 1L << 40, Long.MAX_VALUE})
+    public void testBucketIndex_valueWithinBucketBounds(long value) {
+        final int index = LatencyHistogram.bucketIndex(value);
+        final long upperBound = LatencyHistogram.bucketUpperBound(index);
+        final long lowerBound = index == 0 ? 0L : LatencyHistogram.bucketUpperBound(index - 1) + 1L;
+        assertAll(
+                () -> assertTrue(lowerBound <= value && value <= upperBound,
+                        String.format("value %d, index %d, bounds [%d, %d]", value, index, lowerBound, upperBound)),
+                // relative error of 1 / SUB_BUCKETS at most
+                () -> assertTrue(upperBound - lowerBound <= Math.max(0L, lowerBound / LatencyHistogram.SUB_BUCKETS),
+                        String.format("bounds [%d, %d]", lowerBound, upperBound))
+        );
+    }
+
+    @Test
+    public void testBucketIndex_consecutiveBuckets() {
+        long expectedLowerBound = 0L;
+        for (int index = 0; index <= LatencyHistogram.bucketIndex(Long.MAX_VALUE); index++) {
+            assertEquals(index, LatencyHistogram.bucketIndex(expectedLowerBound), "index " + index);
+            expectedLowerBound = LatencyHistogram.bucketUpperBound(index) + 1L;
+        }
+        // the last bucket ends at Long.MAX_VALUE
+        assertEquals(Long.MIN_VALUE, expectedLowerBound);
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "0.0, 1000",
+        "0.5, 50000",
+        "0.99, 99000",
+        "1.0, 100000"
+    })
+    public void testQuantile(double q, long expected) {
+        final LatencyHistogram latencyHistogram = new LatencyHistogram();
+        for (long i = 1; i <= 100; i++) {
+            latencyHistogram.record(i * 1000L);
+        }
+        final long quantile = latencyHistogram.quantile(q);
+        assertAll(
+                () -> assertEquals(100L, latencyHistogram.count()),
+                () -> assertEquals(100_000L, latencyHistogram.max()),
+                () -> assertTrue(quantile >= expected && quantile <= expected + expected / LatencyHistogram.SUB_BUCKETS,
+                        String.format("quantile %f: %d, expected %d", q, quantile, expected))
+        );
+    }
+
+    @Test
+    public void testQuantile_empty() {
+        final LatencyHistogram latencyHistogram = new LatencyHistogram();
+        latencyHistogram.record(-5L);
+        assertAll(
+                () -> assertEquals(0L, new LatencyHistogram().quantile(0.5d)),
+                () -> assertEquals(0L, latencyHistogram.quantile(0.5d)),
+                () -> assertEquals(1L, latencyHistogram.count())
+        );
+    }
+
+    @Test
+    public void testMatchLatency_mergedOverThreads() throws InterruptedException {
+        final RunStatistics runStatistics = new RunStatistics(MatchingLineMode.singleLineMode);
+        final List<Thread> threads = new ArrayList<>();
+        for (int t = 1; t <= 4; t++) {
+            final long nanos = t * 1000L;
+            threads.add(new Thread(() -> {
+                final LatencyHistogram matchLatency = runStatistics.newMatchLatency();
+                for (int i = 0; i < 1000; i++) {
+                    runStatistics.recordMatch(matchLatency, true, nanos);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        final LatencyHistogram matchLatency = runStatistics.matchLatency();
+        assertAll(
+                () -> assertEquals(4000L, matchLatency.count()),
+                () -> assertEquals(4000L, matchLatency.max()),
+                () -> assertEquals(4000L, runStatistics.matchedLineCount()),
+                () -> assertTrue(matchLatency.quantile(0.25d) >= 1000L && matchLatency.quantile(0.25d) < 2000L),
+                () -> assertTrue(matchLatency.quantile(0.5d) >= 2000L && matchLatency.quantile(0.5d) < 3000L)
+        );
+    }
+
+    @Test
+    public void testFormatStatistics_matchTimeout() {
+        final RunStatistics runStatistics = new RunStatistics(MatchingLineMode.singleLineMode);
+        assertFalse(runStatistics.formatStatistics().contains("timed out"));
+        final MatchTimeout matchTimeout = new MatchTimeout(50_000L, null);
+        runStatistics.registerMatchTimeout(matchTimeout);
+        matchTimeout.timedOut("line");
+        assertAll(
+                () -> assertEquals(1L, runStatistics.getLinesTimedOut()),
+                () -> assertTrue(runStatistics.formatStatistics().contains("lines timed out after 50000 micros: 1"),
+                        runStatistics.formatStatistics())
+        );
+    }
+
+    @Test
+    public void testCountingLineSource() throws IOException {
+        final RunStatistics runStatistics = new RunStatistics(MatchingLineMode.singleLineMode);
+        final List<String> lines = new ArrayList<>();
+        try (final ILineSource lineSource = runStatistics.countingLineSource(
+                new BufferedReaderLineSource(new BufferedReader(new StringReader("a\nbb\n\nccc\n"))))) {
+            for (CharSequence line; (line = lineSource.readLine()) != null;) {
+                lines.add(line.toString());
+            }
+            assertNull(lineSource.readLine());
+        }
+        assertAll(
+                () -> assertEquals(4, lines.size()),
+                () -> assertEquals(4L, runStatistics.readLineCount()),
+                () -> assertTrue(runStatistics.formatStatistics().contains("lines read: 4,"), runStatistics.formatStatistics())
+        );
+    }
+
+    @ParameterizedTest
+    @EnumSource(MatchingLineMode.class)
+    public void testProcessLines(MatchingLineMode matchingLineMode) throws IOException {
+        final Grok grok = new GrokBuilder().pattern("%{INT:number}").build();
+        final RunStatistics runStatistics = new RunStatistics(matchingLineMode);
+        final StringWriter sw = new StringWriter();
+        final IOutputGrokResultFormatter outputGrokResultFormatter = runStatistics.timingFormatter(
+                OutputGrokResultFormatters.createOutputGrokResultConverter(OutputMatchResultMode.asCsv, new PrintWriter(sw), null));
+        final InputLineProcessor inputLineProcessor = new InputLineProcessor(grok, matchingLineMode, outputGrokResultFormatter, -1,
+                new GrokIt.Options().runStatistics(runStatistics));
+        inputLineProcessor.processLines(new BufferedReader(new StringReader("1\n2\nno number\n3\nno number\n")));
+
+        final String formatted = runStatistics.formatStatistics();
+        final boolean folding = matchingLineMode == MatchingLineMode.multiLinesMode;
+        assertAll(
+                () -> assertEquals(5L, runStatistics.readLineCount()),
+                () -> assertEquals(3L, runStatistics.matchedLineCount()),
+                () -> assertEquals(2L, runStatistics.notMatchedLineCount()),
+                () -> assertEquals(3L, runStatistics.outputRecordCount()),
+                () -> assertEquals(5L, runStatistics.matchLatency().count()),
+                () -> assertTrue(formatted.contains(folding
+                        ? "not matching skipped: 0, not matching folded into extra: 2"
+                        : "not matching skipped: 2, not matching folded into extra: 0"), formatted),
+                () -> assertTrue(formatted.contains("match ratio: 60.0 %"), formatted),
+                () -> assertTrue(formatted.contains("records output: 3"), formatted)
+        );
+    }
+
+    @Test
+    public void testStartProgress() throws InterruptedException {
+        final CountDownLatch printed = new CountDownLatch(1);
+        final List<String> progressLines = Collections.synchronizedList(new ArrayList<>());
+        try (final RunStatistics runStatistics = new RunStatistics(MatchingLineMode.singleLineMode)) {
+            runStatistics.recordMatch(runStatistics.newMatchLatency(), true, 1000L);
+            runStatistics.startProgress(1L, (progress) -> {
+                progressLines.add(progress);
+                printed.countDown();
+            });
+            assertTrue(printed.await(10L, TimeUnit.SECONDS));
+        }
+        assertTrue(progressLines.get(0).startsWith("progress: ") && progressLines.get(0).contains("matched: 1,"),
+                progressLines.get(0));
+    }
+
+    @Test
+    public void testStartProgress_invalidInterval() {
+        try (final RunStatistics runStatistics = new RunStatistics(MatchingLineMode.singleLineMode)) {
+            assertThrows(IllegalArgumentException.class, () -> runStatistics.startProgress(0L, (progress) -> {
+            }));
+        }
+    }
+
+    @Test
+    public void testRegisterMXBean() throws JMException {
+        final MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName objectName = new ObjectName(RunStatistics.OBJECT_NAME);
+        try (final RunStatistics runStatistics = new RunStatistics(MatchingLineMode.multiLinesMode)) {
+            runStatistics.registerMXBean();
+            runStatistics.recordMatch(runStatistics.newMatchLatency(), true, 1000L);
+            runStatistics.recordMatch(runStatistics.newMatchLatency(), false, 2000L);
+            runStatistics.registerQueue("q", () -> 3);
+            final MatchTimeout matchTimeout = new MatchTimeout(1L, null);
+            runStatistics.registerMatchTimeout(matchTimeout);
+            matchTimeout.timedOut("line");
+            final TabularData queueDepths = (TabularData) mBeanServer.getAttribute(objectName, "QueueDepths");
+            assertAll(
+                    () -> assertEquals(1L, mBeanServer.getAttribute(objectName, "LinesMatched")),
+                    () -> assertEquals(0L, mBeanServer.getAttribute(objectName, "LinesSkipped")),
+                    () -> assertEquals(1L, mBeanServer.getAttribute(objectName, "LinesFoldedIntoExtra")),
+                    () -> assertEquals(1L, mBeanServer.getAttribute(objectName, "LinesTimedOut")),
+                    () -> assertEquals(2.0d, (Double) mBeanServer.getAttribute(objectName, "MatchLatencyMaxMicros"), 0.0d),
+                    () -> assertEquals(3, queueDepths.get(new Object[]{"q"}).get("value"))
+            );
+            // a later run replaces the registered instance
+            try (final RunStatistics laterRunStatistics = new RunStatistics(MatchingLineMode.singleLineMode)) {
+                laterRunStatistics.registerMXBean();
+                assertEquals(0L, mBeanServer.getAttribute(objectName, "LinesMatched"));
+            }
+        }
+        assertFalse(mBeanServer.isRegistered(objectName));
+    }
+}
@@ -0,0 +1,448 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import picocli.CommandLine;
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Model.CommandSpec;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.Spec;
+
+/**
+ * Generate large synthetic logs, shaped like the example logs, for load
+ * testing.
+ * <p>
+ * A log consists of records matching the pattern of its format, some followed
+ * by a multi line java stack trace, and of lines not matching the pattern. The
+ * output is determined by the seed, thus load tests are reproducible offline.
+ * <p>
+ * A test tool, not part of the grokmain jar, run from the test classpath.
+ *
+ * @author berni3
+ */
+@Command(name = "syntheticLogGenerator",
+        mixinStandardHelpOptions = true,
+        showDefaultValues = true,
+        version = "syntheticLogGenerator 1.0-SNAPSHOT",
+        description = "generate a synthetic log shaped like an example log")
+public class SyntheticLogGenerator implements Callable<Integer> {
+
+    /**
+     * Command line entry point.
+     *
+     * @param args
+     */
+    public static void main(String[] args) {
+        int exitCode = new CommandLine(new SyntheticLogGenerator()).execute(args);
+        System.exit(exitCode);
+    }
+
+    @Spec
+    private CommandSpec spec;
+
+    @Option(names = {"--log-format"},
+            defaultValue = "wildfly",
+            description = "shape of the log; valid values: \"${COMPLETION-CANDIDATES}\"")
+    private LogFormat logFormat;
+    @Option(names = {"-o", "--output"},
+            description = "write to this file, if not specified write to stdout")
+    private File outputFile;
+    @Option(names = {"--size"},
+            defaultValue = "10M",
+            description = "size of the log in bytes, with an optional suffix K, M, or G")
+    private String size;
+    @Option(names = {"--seed"},
+            defaultValue = "0",
+            description = "seed of the random numbers, the same seed generates the same log")
+    private long seed;
+    @Option(names = {"--match-ratio"},
+            defaultValue = "0.95",
+            description = "ratio of the records matching the pattern of the log format, "
+            + "the other records are lines not matching")
+    private double matchRatio;
+    @Option(names = {"--stack-trace-ratio"},
+            defaultValue = "0.02",
+            description = "ratio of the matching records followed by a multi line stack trace")
+    private double stackTraceRatio;
+    @Option(names = {"--mean-message-length"},
+            defaultValue = "80",
+            description = "mean length of a message, the lengths are exponentially distributed")
+    private int meanMessageLength;
+    @Option(names = {"--max-message-length"},
+            defaultValue = "2000",
+            description = "maximum length of a message")
+    private int maxMessageLength;
+
+    @Override
+    public Integer call() throws Exception {
+        final Generator generator = new Generator(this.logFormat, new Random(this.seed),
+                this.matchRatio, this.stackTraceRatio,
+                this.meanMessageLength, this.maxMessageLength);
+        final long sizeBytes = parseSize(this.size);
+        if (this.outputFile != null) {
+            try (final Writer w = Files.newBufferedWriter(this.outputFile.toPath(), StandardCharsets.UTF_8)) {
+                generator.generate(w, sizeBytes);
+            }
+        } else {
+            final Writer w = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+            generator.generate(w, sizeBytes);
+            w.flush();
+        }
+        this.spec.commandLine().getErr().print(generator.formatStatistics());
+        return 0;
+    }
+
+    /**
+     * Parse a size in bytes, like "512", "64K", "10M", or "2G".
+     *
+     * @param size
+     * @return
+     */
+    static long parseSize(String size) {
+        final String s = size.trim().toUpperCase(Locale.ROOT);
+        new GrokBuilder.Validations(s.isEmpty())
+                .throwIllegalArgumentExceptionIf("Size must not be empty");
+        final char unit = s.charAt(s.length() - 1);
+        final long factor;
+        switch (unit) {
+            case 'K':
+                factor = 1L << 10;
+                break;
+            case 'M':
+                factor = 1L << 20;
+                break;
+            case 'G':
+                factor = 1L << 30;
+                break;
+            default:
+                factor = 1L;
+                break;
+        }
+        final String digits = factor == 1L ? s : s.substring(0, s.length() - 1);
+        final long sizeBytes;
+        try {
+            sizeBytes = Long.parseLong(digits.trim()) * factor;
+        } catch (NumberFormatException ex) {
+            throw new IllegalArgumentException("Invalid size " + size, ex);
+        }
+        new GrokBuilder.Validations(sizeBytes < 0)
+                .throwIllegalArgumentExceptionIf("Size must not be negative");
+        return sizeBytes;
+    }
+
+    /**
+     * Describe the shape of a log, and the pattern matching its records.
+     */
+    static enum LogFormat {
+        wildfly("WILDFLY_SERVERLOG"),
+        activemq("ACTIVEMQ_ACTIVEMQLOG"),
+        flume("FLUME_FLUMELOG"),
+        logstash("ELKSTACK_LOGSTASHLOG");
+
+        final String patternName;
+
+        private LogFormat(String patternName) {
+            this.patternName = patternName;
+        }
+    }
+
+    /**
+     * Generate the lines of a log, not thread-safe.
+     */
+    static class Generator {
+
+        private static final String[] LEVELS = {"INFO", "INFO", "INFO", "INFO", "INFO", "INFO",
+            "DEBUG", "DEBUG", "WARN", "ERROR", "TRACE", "FATAL"};
+        private static final String[] PACKAGES = {"org.jboss.as.server", "org.jboss.as.ejb3.invocation",
+            "org.wildfly.extension.undertow", "org.apache.activemq.broker", "org.apache.activemq.store.kahadb",
+            "org.apache.flume.node", "org.apache.flume.conf", "org.apache.flume.sink",
+            "logstash.pipeline", "logstash.inputs.file", "logstash.codecs.multiline",
+            "org.springframework.beans.factory.support", "java.util.concurrent"};
+        private static final String[] CLASSES = {"BrokerService", "FlumeConfiguration", "ThreadPoolExecutor",
+            "InterceptorContext", "CMTTxInterceptor", "PollingPropertiesFileConfigurationProvider",
+            "DisposableBeanAdapter", "KahaDBPersistenceAdapter", "LoggerSink", "Pipeline"};
+        private static final String[] METHODS = {"run", "start", "stop", "proceed", "processInvocation",
+            "validateSources", "invokeInOurTx", "register", "call", "doFilter"};
+        private static final String[] THREADS = {"main", "default task-1", "default task-7",
+            "MSC service thread 1-2", "ServerService Thread Pool -- 5", "conf-file-poller-0",
+            "lifecycleSupervisor-1-0", "ActiveMQ Transport: tcp:///127.0.0.1:61616",
+            "SinkRunner-PollingRunner-DefaultSinkProcessor"};
+        private static final String[] EXCEPTIONS = {"java.lang.IllegalStateException",
+            "java.lang.NullPointerException", "java.io.IOException", "javax.ejb.EJBException",
+            "org.apache.flume.conf.ConfigurationException", "java.util.concurrent.TimeoutException"};
+        private static final String[] WORDS = {"configuration", "provider", "starting", "stopping",
+            "deployed", "registered", "web", "context", "failed", "connection", "queue", "message",
+            "broker", "channel", "sink", "source", "pipeline", "plugin", "module", "transaction",
+            "invocation", "component", "service", "started", "in", "for", "with", "the", "a", "of",
+            "to", "on", "from", "id=4711", "size=125", "took", "ms", "retry", "timeout", "file",
+            "path=D:/projects/elkstack/test.log", "{:plugin=>\"file\"}", "'/eebatch-1.0-SNAPSHOT'"};
+        private static final String[] NO_MATCH_WORDS = {"property", "value", "awt", "toolkit", "file",
+            "encoding", "separator", "java", "home", "user", "dir", "classpath", "standalone", "=", "-",
+            "no", "timestamp", "here", "continued", "output", "of", "a", "command"};
+
+        private static final DateTimeFormatter ISO_FORMATTER = DateTimeFormatter.ofPattern(
+                "yyyy-MM-dd HH:mm:ss,SSS", Locale.ENGLISH);
+        private static final DateTimeFormatter LOGSTASH_FORMATTER = DateTimeFormatter.ofPattern(
+                "yyyy-MM-dd'T'HH:mm:ss,SSS", Locale.ENGLISH);
+        private static final DateTimeFormatter FLUME_FORMATTER = DateTimeFormatter.ofPattern(
+                "dd MMM yyyy HH:mm:ss,SSS", Locale.ENGLISH);
+
+        private final LogFormat logFormat;
+        private final Random random;
+        private final double matchRatio;
+        private final double stackTraceRatio;
+        private final int meanMessageLength;
+        private final int maxMessageLength;
+        private final StringBuilder sb = new StringBuilder(4096);
+        private LocalDateTime timestamp = LocalDateTime.of(2021, 3, 1, 0, 0, 0);
+
+        private long recordCount;
+        private long matchingRecordCount;
+        private long stackTraceCount;
+        private long lineCount;
+        private long byteCount;
+
+        /**
+         * Create an setup.
+         *
+         * @param logFormat
+         * @param random source of all random choices
+         * @param matchRatio ratio of the records matching the pattern
+         * @param stackTraceRatio ratio of the matching records followed by a
+         * stack trace
+         * @param meanMessageLength mean length of a message
+         * @param maxMessageLength maximum length of a message
+         */
+        Generator(LogFormat logFormat, Random random,
+                double matchRatio, double stackTraceRatio,
+                int meanMessageLength, int maxMessageLength) {
+            new GrokBuilder.Validations(matchRatio < 0.0 || matchRatio > 1.0)
+                    .throwIllegalArgumentExceptionIf("Match ratio must be between 0 and 1");
+            new GrokBuilder.Validations(stackTraceRatio < 0.0 || stackTraceRatio > 1.0)
+                    .throwIllegalArgumentExceptionIf("Stack trace ratio must be between 0 and 1");
+            new GrokBuilder.Validations(meanMessageLength <= 0 || maxMessageLength < meanMessageLength)
+                    .throwIllegalArgumentExceptionIf("Message lengths must be positive, "
+                            + "and the maximum not less than the mean");
+            this.logFormat = logFormat;
+            this.random = random;
+            this.matchRatio = matchRatio;
+            this.stackTraceRatio = stackTraceRatio;
+            this.meanMessageLength = meanMessageLength;
+            this.maxMessageLength = maxMessageLength;
+        }
+
+        /**
+         * Write records until a number of bytes is written.
+         * <p>
+         * The last record is written completely, thus the log may be larger
+         * by the size of a record.
+         *
+         * @param w
+         * @param sizeBytes
+         * @throws IOException
+         */
+        void generate(Writer w, long sizeBytes) throws IOException {
+            final long limit = this.byteCount + sizeBytes;
+            while (this.byteCount < limit) {
+                this.sb.setLength(0);
+                appendRecord(this.sb);
+                // all characters are ascii, one byte each
+                this.byteCount += this.sb.length();
+                w.append(this.sb);
+            }
+        }
+
+        /**
+         * Append a record, a single line, or a matching line followed by a
+         * stack trace.
+         *
+         * @param sb
+         */
+        void appendRecord(StringBuilder sb) {
+            this.recordCount += 1;
+            this.timestamp = this.timestamp.plusNanos((long) this.random.nextInt(1000) * 1_000_000L);
+            if (this.random.nextDouble() >= this.matchRatio) {
+                appendNoMatchLine(sb);
+                return;
+            }
+            this.matchingRecordCount += 1;
+            final boolean withStackTrace = this.random.nextDouble() < this.stackTraceRatio;
+            final String level = withStackTrace ? "ERROR" : pick(LEVELS);
+            final String category = pick(PACKAGES) + "." + pick(CLASSES);
+            final String thread = pick(THREADS);
+            final String message = message();
+            switch (this.logFormat) {
+                case wildfly:
+                    sb.append(ISO_FORMATTER.format(this.timestamp)).append(' ')
+                            .append(pad(level, 5)).append(" [").append(category).append("] (")
+                            .append(thread).append(") ").append(message);
+                    break;
+                case activemq:
+                    sb.append(ISO_FORMATTER.format(this.timestamp)).append(" | ")
+                            .append(pad(level, 5)).append(" | ").append(message).append(" | ")
+                            .append(category).append(" | ").append(thread);
+                    break;
+                case flume:
+                    sb.append(FLUME_FORMATTER.format(this.timestamp)).append(' ')
+                            .append(pad(level, 5)).append(" [").append(thread).append("] (")
+                            .append(category).append('.').append(pick(METHODS)).append(':')
+                            .append(1 + this.random.nextInt(2000)).append(")  - ").append(message);
+                    break;
+                case logstash:
+                default:
+                    sb.append('[').append(LOGSTASH_FORMATTER.format(this.timestamp)).append("][")
+                            .append(pad(level, 5)).append("][").append(pad(category, 25)).append("] ")
+                            .append(message);
+                    break;
+            }
+            appendNewline(sb);
+            if (withStackTrace) {
+                this.stackTraceCount += 1;
+                appendStackTrace(sb);
+            }
+        }
+
+        /**
+         * Append a line without timestamp, like a dumped property, or output
+         * of a command.
+         */
+        private void appendNoMatchLine(StringBuilder sb) {
+            if (this.random.nextBoolean()) {
+                sb.append('\t');
+            }
+            final int length = messageLength();
+            final int start = sb.length();
+            while (sb.length() - start < length) {
+                if (sb.length() > start) {
+                    sb.append(' ');
+                }
+                sb.append(pick(NO_MATCH_WORDS));
+            }
+            appendNewline(sb);
+        }
+
+        /**
+         * Append a java stack trace, optionally with a cause.
+         */
+        private void appendStackTrace(StringBuilder sb) {
+            sb.append(pick(EXCEPTIONS)).append(": ").append(message());
+            appendNewline(sb);
+            appendFrames(sb, 5 + this.random.nextInt(40));
+            if (this.random.nextBoolean()) {
+                sb.append("Caused by: ").append(pick(EXCEPTIONS)).append(": ").append(message());
+                appendNewline(sb);
+                appendFrames(sb, 2 + this.random.nextInt(10));
+                sb.append("\t... ").append(1 + this.random.nextInt(60)).append(" more");
+                appendNewline(sb);
+            }
+        }
+
+        private void appendFrames(StringBuilder sb, int count) {
+            for (int i = 0; i < count; i++) {
+                final String className = pick(CLASSES);
+                sb.append("\tat ").append(pick(PACKAGES)).append('.').append(className)
+                        .append('.').append(pick(METHODS))
+                        .append('(').append(className).append(".java:")
+                        .append(1 + this.random.nextInt(2000)).append(')');
+                appendNewline(sb);
+            }
+        }
+
+        private String message() {
+            final int length = messageLength();
+            final StringBuilder message = new StringBuilder(length + 40);
+            while (message.length() < length) {
+                if (message.length() > 0) {
+                    message.append(' ');
+                }
+                message.append(pick(WORDS));
+            }
+            return message.toString();
+        }
+
+        /**
+         * Draw an exponentially distributed length, capped by the maximum.
+         */
+        private int messageLength() {
+            final double length = -this.meanMessageLength * Math.log(1.0 - this.random.nextDouble());
+            return (int) Math.max(1L, Math.min(this.maxMessageLength, Math.round(length)));
+        }
+
+        private String pick(String[] values) {
+            return values[this.random.nextInt(values.length)];
+        }
+
+        private void appendNewline(StringBuilder sb) {
+            sb.append('\n');
+            this.lineCount += 1;
+        }
+
+        private static String pad(String s, int width) {
+            final StringBuilder padded = new StringBuilder(s);
+            while (padded.length() < width) {
+                padded.append(' ');
+            }
+            return padded.toString();
+        }
+
+        long recordCount() {
+            return this.recordCount;
+        }
+
+        long matchingRecordCount() {
+            return this.matchingRecordCount;
+        }
+
+        long stackTraceCount() {
+            return this.stackTraceCount;
+        }
+
+        long lineCount() {
+            return this.lineCount;
+        }
+
+        long byteCount() {
+            return this.byteCount;
+        }
+
+        /**
+         * Format the numbers of the generated lines, and records.
+         *
+         * @return
+         */
+        String formatStatistics() {
+            return String.format("synthetic log statistics%n"
+                    + "log format: %s, pattern: %s%n"
+                    + "bytes: %d, lines: %d%n"
+                    + "records: %d, matching: %d, with stack trace: %d%n",
+                    this.logFormat, this.logFormat.patternName,
+                    this.byteCount, this.lineCount,
+                    this.recordCount, this.matchingRecordCount, this.stackTraceCount);
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2021 berni3.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.huberb.groktools;
+
+import io.krakens.grok.api.Grok;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.huberb.groktools.SyntheticLogGenerator.Generator;
+import org.huberb.groktools.SyntheticLogGenerator.LogFormat;
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+import picocli.CommandLine;
+
+/**
+ *
+ * @author berni3
+ */
+public class SyntheticLogGeneratorTest {
+
+    static String generate(LogFormat logFormat, long seed, double matchRatio, double stackTraceRatio, long sizeBytes) throws IOException {
+        final Generator generator = new Generator(logFormat, new Random(seed), matchRatio, stackTraceRatio, 80, 2000);
+        final StringWriter sw = new StringWriter();
+        generator.generate(sw, sizeBytes);
+        return sw.toString();
+    }
+
+    static Grok grokOf(LogFormat logFormat) throws IOException {
+        return new GrokBuilder()
+                .namedOnly(true)
+                .patternDefinitionsFromClasspath("/groktoolspatterns/server_log")
+                .pattern("%{" + logFormat.patternName + "}")
+                .build();
+    }
+
+    @ParameterizedTest
+    @EnumSource(LogFormat.class)
+    public void testGenerate_matchingRecordsMatchPattern(LogFormat logFormat) throws IOException {
+        final Grok grok = grokOf(logFormat);
+        final GrokIt grokIt = new GrokIt();
+        final String[] lines = generate(logFormat, 1L, 1.0, 0.0, 64 * 1024).split("\n");
+        assertTrue(lines.length > 100, "lines " + lines.length);
+        for (String line : lines) {
+            assertTrue(!grokIt.match(grok, line).m.isEmpty(), line);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(LogFormat.class)
+    public void testGenerate_noMatchAndStackTraceLinesDoNotMatchPattern(LogFormat logFormat) throws IOException {
+        final Grok grok = grokOf(logFormat);
+        final GrokIt grokIt = new GrokIt();
+        final Generator generator = new Generator(logFormat, new Random(2L), 0.5, 0.5, 80, 2000);
+        final StringWriter sw = new StringWriter();
+        generator.generate(sw, 256 * 1024);
+        final String[] lines = sw.toString().split("\n");
+
+        long matchingLines = 0L;
+        for (String line : lines) {
+            if (!grokIt.match(grok, line).m.isEmpty()) {
+                matchingLines += 1;
+            }
+        }
+        final long matchingLinesFinal = matchingLines;
+        final double ratio = (double) generator.matchingRecordCount() / generator.recordCount();
+        assertAll(
+                () -> assertEquals(generator.matchingRecordCount(), matchingLinesFinal),
+                () -> assertEquals(generator.lineCount(), lines.length),
+                () -> assertTrue(generator.stackTraceCount() > 0L),
+                () -> assertTrue(ratio > 0.4 && ratio < 0.6, "ratio " + ratio),
+                () -> assertTrue(generator.formatStatistics().contains("records: " + generator.recordCount()))
+        );
+    }
+
+    @Test
+    public void testGenerate_sameSeedSameLog() throws IOException {
+        final String log1 = generate(LogFormat.flume, 42L, 0.9, 0.1, 32 * 1024);
+        final String log2 = generate(LogFormat.flume, 42L, 0.9, 0.1, 32 * 1024);
+        final String log3 = generate(LogFormat.flume, 43L, 0.9, 0.1, 32 * 1024);
+        assertAll(
+                () -> assertEquals(log1, log2),
+                () -> assertNotEquals(log1, log3)
+        );
+    }
+
+    @ParameterizedTest
+    @ValueSource(longs = {0L, 1L, 1000L, 100_000L})
+    public void testGenerate_size(long sizeBytes) throws IOException {
+        final String log = generate(LogFormat.wildfly, 3L, 0.9, 0.1, sizeBytes);
+        assertTrue(log.length() >= sizeBytes, "length " + log.length());
+        // exceeding by the last record at most
+        final int lastRecordStart = log.lastIndexOf("\n2021-", log.length() - 2);
+        assertTrue(lastRecordStart < 0 || lastRecordStart < sizeBytes, "last record " + lastRecordStart);
+    }
+
+    @ParameterizedTest
+    @CsvSource(value = {
+        "512, 512",
+        "64K, 65536",
+        "64k, 65536",
+        "10M, 10485760",
+        "2G, 2147483648",
+        "' 3 G ', 3221225472"
+    })
+    public void testParseSize(String size, long expected) {
+        assertEquals(expected, SyntheticLogGenerator.parseSize(size));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "M", "1T", "-1K", "x"})
+    public void testParseSize_invalid(String size) {
+        assertThrows(IllegalArgumentException.class, () -> SyntheticLogGenerator.parseSize(size));
+    }
+
+    @Test
+    public void testGenerator_invalidRatios() {
+        assertAll(
+                () -> assertThrows(IllegalArgumentException.class, () -> new Generator(LogFormat.wildfly, new Random(), 1.5, 0.0, 80, 2000)),
+                () -> assertThrows(IllegalArgumentException.class, () -> new Generator(LogFormat.wildfly, new Random(), 0.5, -0.1, 80, 2000)),
+                () -> assertThrows(IllegalArgumentException.class, () -> new Generator(LogFormat.wildfly, new Random(), 0.5, 0.1, 80, 40))
+        );
+    }
+
+    @Test
+    public void testCommandLine_output(@TempDir Path tempDir) throws IOException {
+        final File outputFile = tempDir.resolve("synthetic.log").toFile();
+        final StringWriter swErr = new StringWriter();
+        final CommandLine cmd = new CommandLine(new SyntheticLogGenerator());
+        cmd.setErr(new PrintWriter(swErr));
+        final int exitCode = cmd.execute("--log-format=activemq", "--size=16K", "--seed=7",
+                "-o", outputFile.getPath());
+        final String log = new String(Files.readAllBytes(outputFile.toPath()), StandardCharsets.UTF_8);
+        assertAll(
+                () -> assertEquals(0, exitCode),
+                () -> assertTrue(log.length() >= 16 * 1024),
+                () -> assertEquals(generate(LogFormat.activemq, 7L, 0.95, 0.02, 16 * 1024), log),
+                () -> assertTrue(swErr.toString().contains("pattern: ACTIVEMQ_ACTIVEMQLOG"), swErr.toString())
+        );
+    }
+}